@@ -2,11 +2,15 @@ package com.Auctions.backEnd;
 
 import com.Auctions.backEnd.models.*;
 import com.Auctions.backEnd.repositories.*;
+import com.Auctions.backEnd.services.Account.AvailabilityIndex;
+import com.Auctions.backEnd.services.Auction.AuctionCloser;
+import com.Auctions.backEnd.services.Search.SearchIndexer;
 import org.apache.catalina.Context;
 import org.apache.catalina.connector.Connector;
 import org.apache.tomcat.util.descriptor.web.SecurityCollection;
 import org.apache.tomcat.util.descriptor.web.SecurityConstraint;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.CommandLineRunner;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
@@ -17,8 +21,6 @@ import org.springframework.data.jpa.repository.config.EnableJpaAuditing;
 import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
 import org.springframework.security.crypto.password.PasswordEncoder;
 
-import java.util.Collections;
-import java.util.List;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
@@ -33,8 +35,8 @@ public class BackEndApplication implements CommandLineRunner {
 	}
 
 	@Bean
-	public PasswordEncoder passwordEncoder() {
-		return new BCryptPasswordEncoder(12);
+	public PasswordEncoder passwordEncoder(@Value("${app.password-hashing.cost:12}") int cost) {
+		return new BCryptPasswordEncoder(cost);
 	}
 
 	@Bean
@@ -83,13 +85,21 @@ public class BackEndApplication implements CommandLineRunner {
 	@Autowired
 	private PasswordEncoder passwordEncoder;
 
+	@Autowired
+	private AuctionCloser auctionCloser;
+
+	@Autowired
+	private AvailabilityIndex availabilityIndex;
+
+	@Autowired
+	private SearchIndexer searchIndexer;
+
 
 	@Override
 	public void run(String... args) throws Exception {
 		System.out.println("App is running...");
 
 		ScheduledExecutorService exec = Executors.newSingleThreadScheduledExecutor();
-		ScheduledExecutorService exec1 = Executors.newSingleThreadScheduledExecutor();
 
 		exec.scheduleAtFixedRate(new Runnable() {
 
@@ -113,6 +123,7 @@ public class BackEndApplication implements CommandLineRunner {
 
 					userRepository.save(user);
 					accountRepository.save(admin);
+					availabilityIndex.add(admin.getUsername(), admin.getEmail());
 
 					if(itemCategoryRepository.findItemCategoryByName("All categories") == null) {
 						ItemCategory root = new ItemCategory();
@@ -126,57 +137,21 @@ public class BackEndApplication implements CommandLineRunner {
 
 
 		/**
-		 * Auction auto-closure utility
-		 *
-		 * Thread that retrieves every 5 seconds the non-completed auctions set
-		 * and for every item it checks if the current time is after the
-		 * 'endsAt' time meaning that the auction must be completed
+		 * Search bar index
 		 *
+		 * The items are tokenized into posting lists once at startup and
+		 * kept up to date by the changes of the items (see SearchIndexer)
 		 */
-		exec1.scheduleAtFixedRate(new Runnable() {
-
-			@Override
-			public void run() {
-				System.out.println("Updating...");
-				try {
-					List<Item> auctions = itemRepository.getAllOpenAuctions();
-					auctions.forEach(item -> {
-
-						if (item.getEndsAt().getTime() < System.currentTimeMillis()) {
+		searchIndexer.start();
 
-							System.err.println("Closing auction with id " + item.getId());
 
-							item.setAuctionCompleted(true);
-							itemRepository.save(item);
-
-							Notification toSeller = new Notification();
-							toSeller.setRecipient(item.getSeller());
-							toSeller.setItemId(item.getId());
-							toSeller.setMessage("Your auction has been completed! Click here for details");
-							notificationRepository.save(toSeller);
-
-							item.getSeller().getNotifications().add(toSeller);
-							userRepository.save(item.getSeller());
-
-
-							if(!item.getBids().isEmpty()) {
-								Notification toBuyer = new Notification();
-								User highestBidder = Collections.max(item.getBids(), Bid.cmp).getBidder();
-								toBuyer.setRecipient(highestBidder);
-								toBuyer.setItemId(item.getId());
-								toBuyer.setMessage("Congratulations, you won an auction! Click here for details");
-								notificationRepository.save(toBuyer);
-
-								highestBidder.getNotifications().add(toBuyer);
-								userRepository.save(highestBidder);
-							}
-						}
-					});
-				}
-				catch (Exception e){
-					e.printStackTrace();
-				}
-			}
-		}, 0, 5, TimeUnit.SECONDS);
+		/**
+		 * Auction auto-closure utility
+		 *
+		 * The open auctions are indexed by their 'endsAt' time once and
+		 * every auction is closed as soon as its time is reached
+		 * (see AuctionCloser)
+		 */
+		auctionCloser.start();
 	}
 }
@@ -3,6 +3,7 @@ package com.Auctions.backEnd.configs;
 import com.Auctions.backEnd.responses.Message;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
+import org.springframework.security.core.userdetails.UsernameNotFoundException;
 import org.springframework.web.bind.annotation.ControllerAdvice;
 import org.springframework.web.bind.annotation.ExceptionHandler;
 
@@ -35,4 +36,19 @@ public class ErrorHandler {
                         "Invalid input or request"
                 ));
     }
-}
\ No newline at end of file
+
+    /**
+     * The account of a valid token has been deleted
+     *
+     * @param ex - exception
+     * @return an <HTTP>UNAUTHORIZED</HTTP>
+     */
+    @ExceptionHandler(UsernameNotFoundException.class)
+    public ResponseEntity<Object> handle(UsernameNotFoundException ex) {
+        return ResponseEntity.status(HttpStatus.UNAUTHORIZED)
+                .body(new Message(
+                        "Error",
+                        "Your account no longer exists"
+                ));
+    }
+}
@@ -1,5 +1,7 @@
 package com.Auctions.backEnd.configs;
 
+import com.Auctions.backEnd.services.Idempotency.IdempotencyStore;
+import com.Auctions.backEnd.services.RateLimit.RateLimiter;
 import com.Auctions.backEnd.services.Security.JWTConfigurer;
 import com.Auctions.backEnd.services.Security.TokenProvider;
 import org.springframework.context.annotation.Bean;
@@ -13,9 +15,14 @@ import org.springframework.security.config.http.SessionCreationPolicy;
 public class SecurityConfig extends WebSecurityConfigurerAdapter {
 
     private final TokenProvider tokenProvider;
+    private final IdempotencyStore idempotencyStore;
+    private final RateLimiter rateLimiter;
 
-    public SecurityConfig(TokenProvider tokenProvider) {
+    public SecurityConfig(TokenProvider tokenProvider, IdempotencyStore idempotencyStore,
+                          RateLimiter rateLimiter) {
         this.tokenProvider = tokenProvider;
+        this.idempotencyStore = idempotencyStore;
+        this.rateLimiter = rateLimiter;
     }
 
     @Bean
@@ -46,10 +53,12 @@ public class SecurityConfig extends WebSecurityConfigurerAdapter {
                 .antMatchers("/search/partialMatch").permitAll()
                 .antMatchers("/search/searchBar").permitAll()
                 .antMatchers("/search/filters").permitAll()
+                .antMatchers("/search/nearby").permitAll()
                 .antMatchers("/recommend/visitor").permitAll()
+                .antMatchers("/bid/stream/{itemId}").permitAll()
                 .anyRequest().authenticated()
                 .and()
-                .apply(new JWTConfigurer(this.tokenProvider))
+                .apply(new JWTConfigurer(this.tokenProvider, this.idempotencyStore, this.rateLimiter))
                 .and()
                 .requiresChannel()
                 .anyRequest().requiresSecure()
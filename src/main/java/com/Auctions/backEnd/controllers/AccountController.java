@@ -6,6 +6,8 @@ import com.Auctions.backEnd.repositories.UserRepository;
 import com.Auctions.backEnd.requests.AccountRequest;
 import com.Auctions.backEnd.responses.Message;
 import com.Auctions.backEnd.responses.Valid;
+import com.Auctions.backEnd.services.Account.AvailabilityIndex;
+import com.Auctions.backEnd.services.Security.TokenProvider;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
@@ -20,13 +22,18 @@ public class AccountController extends BaseController{
     private final PasswordEncoder passwordEncoder;
     private final AccountRepository accountRepository;
     private final UserRepository userRepository;
+    private final TokenProvider tokenProvider;
+    private final AvailabilityIndex availabilityIndex;
 
     @Autowired
     public AccountController(PasswordEncoder passwordEncoder, AccountRepository accountRepository,
-                             UserRepository userRepository) {
+                             UserRepository userRepository, TokenProvider tokenProvider,
+                             AvailabilityIndex availabilityIndex) {
         this.passwordEncoder = passwordEncoder;
         this.accountRepository = accountRepository;
         this.userRepository = userRepository;
+        this.tokenProvider = tokenProvider;
+        this.availabilityIndex = availabilityIndex;
     }
 
 
@@ -37,13 +44,15 @@ public class AccountController extends BaseController{
      * If a username exists we get back an: <HTTP>BAD REQUEST</HTTP> with Valid.valid = false
      * If a username does not exist we get back an: <HTTP>OK</HTTP> with Valid.valid = true
      *
+     * Names that were never taken are answered by the AvailabilityIndex
+     * without querying the database
+     *
      * @param username - the username we wish to check
      * @return a validity field {false,true}
      */
     @GetMapping("/checkUsername")
     public ResponseEntity checkUsername(@RequestParam(value="username") String username) {
-        Account account = accountRepository.findByUsername(username);
-        if (account != null) {
+        if (availabilityIndex.usernameTaken(username)) {
             return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(new Valid(false));
         } else {
             return ResponseEntity.ok(new Valid(true));
@@ -58,12 +67,15 @@ public class AccountController extends BaseController{
      * If an email exists we get back an: <HTTP>BAD REQUEST</HTTP> with Valid.valid = false
      * If an email does not exist we get back an: <HTTP>OK</HTTP> with Valid.valid = true
      *
+     * Emails that were never taken are answered by the AvailabilityIndex
+     * without querying the database
+     *
      * @param email - the email we wish to check
      * @return a validity field {false,true}
      */
     @GetMapping("/checkEmail")
     public ResponseEntity checkEmail(@RequestParam(value="email") String email) {
-        if (accountRepository.findByEmail(email) != null) {
+        if (availabilityIndex.emailTaken(email)) {
             return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(new Valid(false));
         } else {
             return ResponseEntity.ok(new Valid(true));
@@ -109,6 +121,7 @@ public class AccountController extends BaseController{
         account.setPassword(accountRequest.getNewPassword());
         account.encodePassword(passwordEncoder);
         accountRepository.save(account);
+        tokenProvider.forget(account.getUsername());
 
         return ResponseEntity.ok(new Message(
                 "Ok",
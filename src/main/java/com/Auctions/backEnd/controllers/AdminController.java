@@ -3,6 +3,12 @@ package com.Auctions.backEnd.controllers;
 import com.Auctions.backEnd.models.*;
 import com.Auctions.backEnd.repositories.*;
 import com.Auctions.backEnd.responses.Message;
+import com.Auctions.backEnd.services.RateLimit.RateLimiter;
+import com.Auctions.backEnd.services.Search.CompletionIndex;
+import com.Auctions.backEnd.services.Search.SearchIndexer;
+import com.Auctions.backEnd.services.Security.PasswordHasher;
+import com.Auctions.backEnd.services.Security.RequestIdentity;
+import com.Auctions.backEnd.services.Security.TokenProvider;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.data.domain.Pageable;
 import org.springframework.http.HttpStatus;
@@ -10,6 +16,7 @@ import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
 import java.util.List;
+import java.util.Map;
 
 @RestController
 @CrossOrigin(origins = "*")
@@ -20,14 +27,27 @@ public class AdminController extends BaseController{
     private final AccountRepository accountRepository;
     private final ItemCategoryRepository itemCategoryRepository;
     private final ItemRepository itemRepository;
+    private final RateLimiter rateLimiter;
+    private final TokenProvider tokenProvider;
+    private final PasswordHasher passwordHasher;
+    private final SearchIndexer searchIndexer;
+    private final CompletionIndex completionIndex;
 
     @Autowired
     public AdminController(UserRepository userRepository, AccountRepository accountRepository,
-                          ItemCategoryRepository itemCategoryRepository, ItemRepository itemRepository){
+                          ItemCategoryRepository itemCategoryRepository, ItemRepository itemRepository,
+                          RateLimiter rateLimiter, TokenProvider tokenProvider,
+                          PasswordHasher passwordHasher, SearchIndexer searchIndexer,
+                          CompletionIndex completionIndex){
         this.userRepository = userRepository;
         this.accountRepository = accountRepository;
         this.itemCategoryRepository = itemCategoryRepository;
         this.itemRepository = itemRepository;
+        this.rateLimiter = rateLimiter;
+        this.tokenProvider = tokenProvider;
+        this.passwordHasher = passwordHasher;
+        this.searchIndexer = searchIndexer;
+        this.completionIndex = completionIndex;
     }
 
 
@@ -212,6 +232,7 @@ public class AdminController extends BaseController{
 
         parent.getSubcategories().add(category);
         itemCategoryRepository.save(parent);
+        completionIndex.addCategory(category);
 
         return ResponseEntity.ok(category);
     }
@@ -275,6 +296,7 @@ public class AdminController extends BaseController{
         }
 
 
+        tokenProvider.forget(user.getUsername());
         accountRepository.deleteById(user.getAccount().getId());
         userRepository.deleteById(user.getId());
 
@@ -285,4 +307,125 @@ public class AdminController extends BaseController{
         ));
     }
 
-}
\ No newline at end of file
+
+    /**
+     * The Administrator can get the counters of the rate limiter:
+     * allowed and rejected requests and tracked clients per route group
+     *
+     * @return the counters
+     */
+    @GetMapping("/rateLimits")
+    public ResponseEntity getRateLimits(){
+
+        User requester = requestUser();
+        if(!requester.isAdmin()){
+
+            return ResponseEntity.status(HttpStatus.UNAUTHORIZED).body(new Message(
+                    "Error",
+                    "You need to be an admin to perform this action"
+            ));
+        }
+
+        return ResponseEntity.ok(rateLimiter.getCounters());
+    }
+
+
+    /**
+     * The Administrator can get the counters of the request identity:
+     * token verifications, verified-token cache hits and user lookups
+     * of the authenticated requests
+     *
+     * @return the counters
+     */
+    @GetMapping("/identityMetrics")
+    public ResponseEntity getIdentityMetrics(){
+
+        User requester = requestUser();
+        if(!requester.isAdmin()){
+
+            return ResponseEntity.status(HttpStatus.UNAUTHORIZED).body(new Message(
+                    "Error",
+                    "You need to be an admin to perform this action"
+            ));
+        }
+
+        Map<String, Long> counters = RequestIdentity.getCounters();
+        counters.put("tokenCacheHits", tokenProvider.getCacheHits());
+        counters.put("tokenCacheMisses", tokenProvider.getCacheMisses());
+
+        return ResponseEntity.ok(counters);
+    }
+
+
+    /**
+     * The Administrator can get the counters of the password hashing pool:
+     * queue depth, rejections and average wait and hashing time
+     *
+     * @return the counters
+     */
+    @GetMapping("/passwordHashing")
+    public ResponseEntity getPasswordHashing(){
+
+        User requester = requestUser();
+        if(!requester.isAdmin()){
+
+            return ResponseEntity.status(HttpStatus.UNAUTHORIZED).body(new Message(
+                    "Error",
+                    "You need to be an admin to perform this action"
+            ));
+        }
+
+        return ResponseEntity.ok(passwordHasher.getCounters());
+    }
+
+
+    /**
+     * The Administrator can get the state of the search index:
+     * indexed items, segments, queued changes and rebuilds
+     *
+     * @return the counters
+     */
+    @GetMapping("/searchIndex")
+    public ResponseEntity getSearchIndex(){
+
+        User requester = requestUser();
+        if(!requester.isAdmin()){
+
+            return ResponseEntity.status(HttpStatus.UNAUTHORIZED).body(new Message(
+                    "Error",
+                    "You need to be an admin to perform this action"
+            ));
+        }
+
+        return ResponseEntity.ok(searchIndexer.getCounters());
+    }
+
+
+    /**
+     * The Administrator can have the search index built again from the
+     * database, e.g. after items were changed outside the platform
+     * The rebuild runs in the background
+     *
+     * @return an <HTTP>OK</HTTP>
+     */
+    @PostMapping("/rebuildSearchIndex")
+    public ResponseEntity rebuildSearchIndex(){
+
+        User requester = requestUser();
+        if(!requester.isAdmin()){
+
+            return ResponseEntity.status(HttpStatus.UNAUTHORIZED).body(new Message(
+                    "Error",
+                    "You need to be an admin to perform this action"
+            ));
+        }
+
+        searchIndexer.requestRebuild();
+
+        return ResponseEntity.ok(new Message(
+                "Ok",
+                "The search index will be rebuilt"
+        ));
+    }
+
+}
@@ -10,19 +10,25 @@ import com.Auctions.backEnd.requests.SignUp;
 import com.Auctions.backEnd.responses.FormattedUser;
 import com.Auctions.backEnd.responses.LoginRes;
 import com.Auctions.backEnd.responses.Message;
+import com.Auctions.backEnd.services.Account.AvailabilityIndex;
+import com.Auctions.backEnd.services.Security.AppAccountDetailService;
+import com.Auctions.backEnd.services.Security.PasswordHasher;
 import com.Auctions.backEnd.services.Security.TokenProvider;
-import java.security.*;
 
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.authentication.AuthenticationManager;
 import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
 import org.springframework.security.core.AuthenticationException;
 import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
 import org.springframework.web.bind.annotation.*;
-import org.springframework.web.servlet.mvc.method.RequestMappingInfo;
-import org.springframework.web.servlet.mvc.method.annotation.RequestMappingHandlerMapping;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.regex.Pattern;
 
 @RestController
@@ -36,7 +42,9 @@ public class AuthController extends BaseController{
     private final UserRepository userRepository;
     private final AccountRepository accountRepository;
     private final GeolocationRepository geolocationRepository;
-    private final RequestMappingHandlerMapping requestMappingHandlerMapping;
+    private final PasswordHasher passwordHasher;
+    private final AvailabilityIndex availabilityIndex;
+    private final TransactionTemplate transactionTemplate;
 
     @Autowired
     public AuthController(PasswordEncoder passwordEncoder,
@@ -45,14 +53,18 @@ public class AuthController extends BaseController{
                           UserRepository userRepository,
                           AccountRepository accountRepository,
                           GeolocationRepository geolocationRepository,
-                          RequestMappingHandlerMapping requestMappingHandlerMapping) {
+                          PasswordHasher passwordHasher,
+                          AvailabilityIndex availabilityIndex,
+                          PlatformTransactionManager transactionManager) {
         this.tokenProvider = tokenProvider;
         this.passwordEncoder = passwordEncoder;
         this.authenticationManager = authenticationManager;
         this.userRepository = userRepository;
         this.accountRepository = accountRepository;
         this.geolocationRepository = geolocationRepository;
-        this.requestMappingHandlerMapping = requestMappingHandlerMapping;
+        this.passwordHasher = passwordHasher;
+        this.availabilityIndex = availabilityIndex;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
     }
 
 
@@ -67,16 +79,26 @@ public class AuthController extends BaseController{
     }
 
 
+    /**
+     * Login with username or email
+     *
+     * The credentials are verified on the PasswordHasher pool, so the
+     * request thread is released while bcrypt runs; hashes of a lower
+     * cost than the current one are upgraded on a successful login.
+     *
+     * @param account - the username or the email and the password
+     * @return the token and the user
+     */
     @PostMapping("/login")
-    public ResponseEntity authorize(@RequestBody Account account) {
+    public CompletableFuture<ResponseEntity> authorize(@RequestBody Account account) {
 
         Account requestAccount;
         try {
             if (account.getUsername() != null && account.getEmail()!= null){
-                return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(new Message(
+                return CompletableFuture.completedFuture(ResponseEntity.status(HttpStatus.BAD_REQUEST).body(new Message(
                         "Error",
                         "Username and email missing"
-                ));
+                )));
             }
             if (account.getEmail() != null) {
                 requestAccount = accountRepository.findByEmail(account.getEmail());
@@ -89,11 +111,17 @@ public class AuthController extends BaseController{
             }
 
             if (requestAccount == null) {
-                return ResponseEntity.status(HttpStatus.NOT_FOUND).body(new Message(
+                return CompletableFuture.completedFuture(ResponseEntity.status(HttpStatus.NOT_FOUND).body(new Message(
                         "Error",
                         "Account not found"
-                ));
+                )));
             }
+        } catch (NullPointerException e) {
+            return CompletableFuture.completedFuture(badCredentials());
+        }
+
+        final Account found = requestAccount;
+        return passwordHasher.<ResponseEntity>submit(() -> {
 
             UsernamePasswordAuthenticationToken authenticationToken =
                     new UsernamePasswordAuthenticationToken(
@@ -102,118 +130,167 @@ public class AuthController extends BaseController{
                     );
 
             this.authenticationManager.authenticate(authenticationToken);
-            String token = this.tokenProvider.createToken(account.getUsername());
+
+            if (passwordHasher.needsUpgrade(found.getPassword())) {
+                found.setPassword(account.getPassword());
+                found.encodePassword(passwordEncoder);
+                accountRepository.save(found);
+                passwordHasher.upgraded();
+            }
+
             User user = userRepository.findByAccount_Username(account.getUsername());
+            String token = this.tokenProvider.createToken(account.getUsername(), user.getId(),
+                    AppAccountDetailService.roles(found));
             return ResponseEntity.ok(new LoginRes(token, new FormattedUser(user)));
 
-        } catch (NullPointerException | AuthenticationException e) {
-            System.err.println("Bad credentials");
-            return ResponseEntity.status(HttpStatus.UNAUTHORIZED).body(new Message(
-                    "Error",
-                    "Bad credentials"
-            ));
-        }
+        }).exceptionally(this::hashingFailure);
     }
 
 
+    /**
+     * Signup of a new user
+     *
+     * The request is validated on the request thread and the password is
+     * hashed on the PasswordHasher pool. The pool threads have no session
+     * of their own, so the account, the user and the location are saved
+     * in one transaction there
+     *
+     * @param signupAccount - the details of the new user
+     * @return the token and the user
+     */
     @PostMapping("/signup")
-    public ResponseEntity signup(@RequestBody SignUp signupAccount)
-            throws NoSuchProviderException, NoSuchAlgorithmException{
+    public CompletableFuture<ResponseEntity> signup(@RequestBody SignUp signupAccount) {
 
         if (signupAccount.getUsername() == null || !checkUsername(signupAccount.getUsername()) ||
                 signupAccount.getUsername().length() < 5 || signupAccount.getUsername().length() > 15) {
-            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(new Message(
+            return CompletableFuture.completedFuture(ResponseEntity.status(HttpStatus.BAD_REQUEST).body(new Message(
                     "Error",
                     "Invalid username"
-            ));
+            )));
         }
 
         if (signupAccount.getPassword() == null) {
-            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(new Message(
+            return CompletableFuture.completedFuture(ResponseEntity.status(HttpStatus.BAD_REQUEST).body(new Message(
                     "Error",
                     "Invalid password"
-            ));
+            )));
         }
 
         if (signupAccount.getFirstName() == null || signupAccount.getLastName() == null) {
-            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(new Message(
+            return CompletableFuture.completedFuture(ResponseEntity.status(HttpStatus.BAD_REQUEST).body(new Message(
                     "Error",
                     "Invalid full name"
-            ));
+            )));
         }
 
         if (signupAccount.getTelNumber() == null || signupAccount.getTaxNumber() == null ||
                 signupAccount.getTelNumber().length() > 12 || signupAccount.getTelNumber().length() < 10){
-            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(new Message(
+            return CompletableFuture.completedFuture(ResponseEntity.status(HttpStatus.BAD_REQUEST).body(new Message(
                     "Error",
                     "Invalid telephone or tax number"
-            ));
+            )));
         }
 
         if ((accountRepository.findByUsername(signupAccount.getUsername()) != null) ||
                 accountRepository.findByEmail(signupAccount.getEmail()) != null) {
-            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(new Message(
+            return CompletableFuture.completedFuture(ResponseEntity.status(HttpStatus.BAD_REQUEST).body(new Message(
                     "Error",
                     "The account already exists"
-            ));
+            )));
         }
 
-
-        String pwd = this.passwordEncoder.encode(signupAccount.getPassword());
-
-        Account account = new Account();
-        account.setUsername(signupAccount.getUsername());
-        account.setPassword(pwd);
-        account.setEmail(signupAccount.getEmail());
-
-        account = accountRepository.save(account);
-
-        User user = new User();
-        user.setFirstName(signupAccount.getFirstName());
-        user.setLastName(signupAccount.getLastName());
-        user.setTelNumber(signupAccount.getTelNumber());
-        user.setTaxNumber(signupAccount.getTaxNumber());
-        user.setAccount(account);
-
         if(signupAccount.getLatitude() == null || signupAccount.getLongitude() == null ||
                 signupAccount.getLocationTitle() == null || signupAccount.getLocationTitle().isEmpty()){
 
-            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(new Message(
+            return CompletableFuture.completedFuture(ResponseEntity.status(HttpStatus.BAD_REQUEST).body(new Message(
                     "Error",
                     "Geospatial data missing"
-            ));
+            )));
         }
 
-        Geolocation location = geolocationRepository.findLocationByLatitudeAndLongitude
-                (signupAccount.getLatitude(), signupAccount.getLongitude());
-        if (location == null){
-            location = new Geolocation(signupAccount.getLongitude(),
-                    signupAccount.getLatitude(), signupAccount.getLocationTitle());
+        return passwordHasher.<ResponseEntity>submit(() -> {
+
+            String pwd = this.passwordEncoder.encode(signupAccount.getPassword());
+
+            ResponseEntity response = transactionTemplate.execute(status -> {
+
+                Account account = new Account();
+                account.setUsername(signupAccount.getUsername());
+                account.setPassword(pwd);
+                account.setEmail(signupAccount.getEmail());
+
+                account = accountRepository.save(account);
+
+                User user = new User();
+                user.setFirstName(signupAccount.getFirstName());
+                user.setLastName(signupAccount.getLastName());
+                user.setTelNumber(signupAccount.getTelNumber());
+                user.setTaxNumber(signupAccount.getTaxNumber());
+                user.setAccount(account);
+
+                Geolocation location = geolocationRepository.findLocationByLatitudeAndLongitude
+                        (signupAccount.getLatitude(), signupAccount.getLongitude());
+                if (location == null){
+                    location = new Geolocation(signupAccount.getLongitude(),
+                            signupAccount.getLatitude(), signupAccount.getLocationTitle());
+                }
+                user.setAddress(location);
+                location.getUsers().add(user);
+                geolocationRepository.save(location);
+
+                user = userRepository.save(user);
+
+                String token = this.tokenProvider.createToken(account.getUsername(), user.getId(),
+                        AppAccountDetailService.roles(account));
+                return ResponseEntity.ok(new LoginRes(
+                        token,
+                        new FormattedUser(user)
+                        )
+                );
+            });
+            availabilityIndex.add(signupAccount.getUsername(), signupAccount.getEmail());
+            return response;
+
+        }).exceptionally(this::hashingFailure);
+    }
+
+
+    /**
+     * Maps the failures of the password work to a response
+     *
+     * @param e - the failure
+     * @return <HTTP>SERVICE UNAVAILABLE</HTTP> if the pool is saturated,
+     *         <HTTP>UNAUTHORIZED</HTTP> for bad credentials
+     */
+    private ResponseEntity hashingFailure(Throwable e) {
+
+        Throwable cause = e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+
+        if (cause instanceof RejectedExecutionException) {
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                    .header(HttpHeaders.RETRY_AFTER, "1")
+                    .body(new Message(
+                            "Error",
+                            "The server is busy, please try again"
+                    ));
+        }
+        if (cause instanceof AuthenticationException || cause instanceof NullPointerException) {
+            return badCredentials();
         }
-        user.setAddress(location);
-        location.getUsers().add(user);
-        geolocationRepository.save(location);
-
-        userRepository.save(user);
-
-        String token = this.tokenProvider.createToken(account.getUsername());
-        return ResponseEntity.ok(new LoginRes(
-                token,
-                new FormattedUser(user)
-                )
-        );
+        throw new CompletionException(cause);
+    }
+
+    private ResponseEntity badCredentials() {
+        System.err.println("Bad credentials");
+        return ResponseEntity.status(HttpStatus.UNAUTHORIZED).body(new Message(
+                "Error",
+                "Bad credentials"
+        ));
     }
 
 
     private boolean checkUsername(String userName) {
         Pattern p = Pattern.compile("[^a-z0-9 ]", Pattern.CASE_INSENSITIVE);
-        for (RequestMappingInfo mapping : requestMappingHandlerMapping.getHandlerMethods().keySet()) {
-            for(String prc : mapping.getPatternsCondition().getPatterns()) {
-                if(prc.contains(userName)) {
-                    return false;
-                }
-            }
-        }
-        return !p.matcher(userName).find();
+        return !availabilityIndex.isReserved(userName) && !p.matcher(userName).find();
     }
-}
\ No newline at end of file
+}
@@ -2,9 +2,10 @@ package com.Auctions.backEnd.controllers;
 
 import com.Auctions.backEnd.models.*;
 import com.Auctions.backEnd.repositories.*;
+import com.Auctions.backEnd.services.Security.RequestIdentity;
 import com.Auctions.backEnd.services.Security.TokenProvider;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.security.core.Authentication;
+import org.springframework.security.core.userdetails.UsernameNotFoundException;
 import org.springframework.web.context.request.RequestContextHolder;
 import org.springframework.web.context.request.ServletRequestAttributes;
 
@@ -42,17 +43,41 @@ public abstract class BaseController {
      * Helper function that returns the User who makes a request
      * based on the token authentication
      *
+     * The token has already been verified by the JWTFilter, which left
+     * its identity on the request: the user is loaded by its id once
+     * and kept there for the rest of the request.
+     *
      * @return the user details
+     * @throws UsernameNotFoundException - if the account has been deleted
+     * since the token was issued
      */
      User requestUser(){
 
         final HttpServletRequest currentRequest =
                 ((ServletRequestAttributes) RequestContextHolder.currentRequestAttributes()).getRequest();
 
-        String token = resolveToken(currentRequest);
-        Authentication authentication = tokenProvider.getAuthentication(token);
+        RequestIdentity identity = RequestIdentity.of(currentRequest);
+        if (identity == null) {
+            //the request did not go through the JWTFilter
+            identity = tokenProvider.getIdentity(resolveToken(currentRequest));
+            RequestIdentity.bind(currentRequest, identity);
+        }
 
-        return userRepository.findByAccount_Username(authentication.getName());
+        User user = identity.getUser();
+        if (user == null) {
+            if (identity.getUserId() != null) {
+                user = userRepository.findById(identity.getUserId()).orElse(null);
+                identity.setUser(user, true);
+            } else {
+                //tokens issued before the 'uid' claim
+                user = userRepository.findByAccount_Username(identity.getUsername());
+                identity.setUser(user, false);
+            }
+        }
+        if (user == null) {
+            throw new UsernameNotFoundException("User '" + identity.getUsername() + "' not found");
+        }
+        return user;
     }
 
 
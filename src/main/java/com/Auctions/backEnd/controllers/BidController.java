@@ -2,30 +2,61 @@ package com.Auctions.backEnd.controllers;
 
 import com.Auctions.backEnd.models.*;
 import com.Auctions.backEnd.repositories.*;
+import com.Auctions.backEnd.requests.BidRequest;
+import com.Auctions.backEnd.responses.BidBatchEntry;
+import com.Auctions.backEnd.responses.BidEntry;
+import com.Auctions.backEnd.responses.BidHistory;
 import com.Auctions.backEnd.responses.BidRes;
 import com.Auctions.backEnd.responses.Message;
+import com.Auctions.backEnd.responses.PriceEvent;
+import com.Auctions.backEnd.responses.ProxyBidRes;
+import com.Auctions.backEnd.services.Auction.AuctionCloser;
+import com.Auctions.backEnd.services.Bid.BidEngine;
+import com.Auctions.backEnd.services.Bid.PriceFeed;
+import com.Auctions.backEnd.services.Search.ItemEvent;
+import com.Auctions.backEnd.services.Search.SearchIndexer;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
+import org.springframework.lang.Nullable;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
-import java.util.Date;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 @RestController
 @CrossOrigin(origins = "*")
 @RequestMapping("/bid")
 public class BidController extends BaseController{
 
+    private static final int MAX_BATCH = 500;
+
     private final UserRepository userRepository;
     private final ItemRepository itemRepository;
     private final BidRepository bidRepository;
+    private final BidEngine bidEngine;
+    private final AuctionCloser auctionCloser;
+    private final PriceFeed priceFeed;
+    private final SearchIndexer searchIndexer;
 
     @Autowired
     public BidController(UserRepository userRepository, ItemRepository itemRepository,
-                          BidRepository bidRepository) {
+                          BidRepository bidRepository, BidEngine bidEngine,
+                          AuctionCloser auctionCloser, PriceFeed priceFeed, SearchIndexer searchIndexer) {
         this.userRepository = userRepository;
         this.itemRepository = itemRepository;
         this.bidRepository = bidRepository;
+        this.bidEngine = bidEngine;
+        this.auctionCloser = auctionCloser;
+        this.priceFeed = priceFeed;
+        this.searchIndexer = searchIndexer;
     }
 
 
@@ -49,9 +80,84 @@ public class BidController extends BaseController{
     }
 
 
+    /**
+     * A user can browse all the bids of an auction, highest first
+     *
+     * The pages are keyed on (offer, id) of the last bid of the previous
+     * page instead of an offset, so every page costs the same however
+     * deep it is
+     *
+     * @param itemId - the auction
+     * @param offer - optionally the 'nextOffer' of the previous page
+     * @param id - optionally the 'nextId' of the previous page
+     * @param size - optionally the page size, 20 by default and at most 100
+     * @return a page of bids and the cursor of the next one
+     */
+    @GetMapping("/history/{itemId}")
+    public ResponseEntity getBidHistory(@PathVariable (value = "itemId") long itemId,
+                                        @Nullable @RequestParam Double offer,
+                                        @Nullable @RequestParam Long id,
+                                        @Nullable @RequestParam Integer size){
+
+        if(!itemRepository.existsById(itemId)){
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).body(new Message(
+                    "Error",
+                    "Item not found. Invalid item Id"
+            ));
+        }
+
+        if((offer == null) != (id == null)){
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(new Message(
+                    "Error",
+                    "Both offer and id are needed to continue the history"
+            ));
+        }
+
+        int pageSize = size == null ? 20 : Math.max(1, Math.min(size, 100));
+        PageRequest page = PageRequest.of(0, pageSize);
+
+        List<BidEntry> bids = offer == null ?
+                bidRepository.getHistory(itemId, page) :
+                bidRepository.getHistoryAfter(itemId, offer, id, page);
+
+        if(bids.size() < pageSize){
+            return ResponseEntity.ok(new BidHistory(bids, null, null));
+        }
+        BidEntry last = bids.get(bids.size() - 1);
+        return ResponseEntity.ok(new BidHistory(bids, last.getOffer(), last.getId()));
+    }
+
+
+    /**
+     * Anyone can follow the price of an auction live instead of polling it
+     *
+     * Opens a Server-Sent Events stream that starts with the current state
+     * of the auction and then gets a 'price' event on every accepted bid and
+     * when the auction is completed, after which the stream ends
+     *
+     * @param itemId - the auction
+     * @return the event stream
+     */
+    @GetMapping(value = "/stream/{itemId}", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public ResponseEntity<SseEmitter> streamPrice(@PathVariable (value = "itemId") long itemId){
+
+        Item item = itemRepository.findItemById(itemId);
+        if(item == null){
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).build();
+        }
+
+        return ResponseEntity.ok(priceFeed.subscribe(itemId, new PriceEvent(item)));
+    }
+
+
     /**
      * A user can participate in an auction by making a bid
      *
+     * The bid is decided by the BidEngine which serializes the bids
+     * of the same auction, so two concurrent bidders cannot both pass
+     * the price check. The bid is stored asynchronously, hence the
+     * returned bid has no id yet
+     *
      * @param offer - the amount of the bid
      * @return the created bid
      */
@@ -61,54 +167,152 @@ public class BidController extends BaseController{
 
         User requester = requestUser();
 
-        Item item = itemRepository.findItemById(itemId);
-        if (item == null) {
-            return ResponseEntity.status(HttpStatus.NOT_FOUND).body(new Message(
-                    "Error",
-                    "Item not found. Invalid item Id"
-            ));
+        BidEngine.Result result = bidEngine.placeBid(itemId, requester, offer);
+        ResponseEntity rejection = rejection(result);
+        if(rejection != null){
+            return rejection;
         }
 
-        if(checkAuction(item)) {
-            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(new Message(
-                    "Error",
-                    "Auction has been completed and no bids can be made"
-            ));
+        afterBid(itemId, result);
+        return ResponseEntity.ok(new BidRes(result.getBid(), result.isAuctionCompleted()));
+    }
+
+
+    /**
+     * A user can let the platform bid on their behalf up to a hidden maximum
+     *
+     * The maximums of all bidders are resolved at once: the highest one
+     * leads one increment above the runner-up, so a bidding war costs a
+     * single request instead of one per raise. Registering again raises
+     * the maximum
+     *
+     * @param itemId - the auction
+     * @param maxOffer - the most the user is willing to pay
+     * @return the bids placed and whether the user leads
+     */
+    @PostMapping("/proxy/{itemId}")
+    public ResponseEntity makeProxyBid(@PathVariable (value = "itemId") long itemId,
+                                       @RequestParam Double maxOffer){
+
+        User requester = requestUser();
+
+        BidEngine.Result result = bidEngine.placeProxyBid(itemId, requester, maxOffer);
+        ResponseEntity rejection = rejection(result);
+        if(rejection != null){
+            return rejection;
         }
 
-        if(item.getSeller().equals(requester)) {
-            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(new Message(
-                    "Error",
-                    "You cannot bid at your own auction"
-            ));
+        if(!result.getBids().isEmpty()){
+            afterBid(itemId, result);
         }
 
-        if(java.lang.Double.compare(offer, item.getCurrently()) <= 0){
+        //the bids of the other proxies only carry a reference to their bidder
+        Map<Long, String> usernames = new HashMap<>();
+        usernames.put(requester.getId(), requester.getUsername());
+        List<BidEntry> bids = new ArrayList<>(result.getBids().size());
+        result.getBids().forEach(bid -> {
+            Long bidderId = bid.getBidder().getId();
+            String username = usernames.computeIfAbsent(bidderId, id -> {
+                User bidder = userRepository.findUserById(id);
+                return bidder != null ? bidder.getUsername() : null;
+            });
+            bids.add(new BidEntry(null, bid.getOffer(), bid.getCreatedAt(), bidderId, username));
+        });
+        return ResponseEntity.ok(new ProxyBidRes(maxOffer, result.getPrice().getCurrently(),
+                result.isLeading(), result.isAuctionCompleted(), bids));
+    }
+
+
+    /**
+     * A user can place bids on many auctions with one request
+     *
+     * Every entry is judged by the same rules as /bid/makeBid, in the
+     * given order, and gets its own result; a rejected entry does not
+     * affect the others, as does an entry that is null or misses its
+     * item id or offer. The auctions are looked up with one query
+     *
+     * @param requests - the (itemId, offer) pairs, at most MAX_BATCH
+     * @return the result of every entry
+     */
+    @PostMapping("/makeBids")
+    public ResponseEntity makeBids(@RequestBody List<BidRequest> requests){
+
+        if(requests == null || requests.isEmpty() || requests.size() > MAX_BATCH){
             return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(new Message(
                     "Error",
-                    "Offer cannot be equal or less than the current best offer or the initial price"
+                    "A batch must contain from 1 up to " + MAX_BATCH + " bids"
             ));
         }
 
-        item.setCurrently(offer);
-        if(item.getBuyPrice() != null &&
-                java.lang.Double.compare(item.getBuyPrice(), offer) <= 0){
-            item.setAuctionCompleted(true);
-            notifySeller(item);
+        User requester = requestUser();
+
+        Set<Long> itemIds = new HashSet<>();
+        requests.forEach(request -> {
+            if(request != null && request.getItemId() != null){
+                itemIds.add(request.getItemId());
+            }
+        });
+        bidEngine.preload(itemIds);
+
+        List<BidBatchEntry> entries = new ArrayList<>(requests.size());
+        for(BidRequest request : requests){
+
+            if(request == null || request.getItemId() == null || request.getOffer() == null){
+                entries.add(new BidBatchEntry(request != null ? request.getItemId() : null,
+                        request != null ? request.getOffer() : null, false,
+                        "Item id and offer are required", null, false));
+                continue;
+            }
+
+            BidEngine.Result result = bidEngine.placeBid(request.getItemId(), requester, request.getOffer());
+            if(result.getStatus() != BidEngine.Status.ACCEPTED){
+                entries.add(new BidBatchEntry(request.getItemId(), request.getOffer(), false,
+                        rejectionMessage(result.getStatus()), null, false));
+                continue;
+            }
+
+            afterBid(request.getItemId(), result);
+            entries.add(new BidBatchEntry(request.getItemId(), request.getOffer(), true,
+                    null, result.getBid(), result.isAuctionCompleted()));
         }
 
-        Bid bid = new Bid(new Date());
-        bid.setBidder(requester);
-        bid.setItem(item);
-        bid.setOffer(offer);
-        bidRepository.save(bid);
+        return ResponseEntity.ok(entries);
+    }
 
-        requester.getBids().add(bid);
-        userRepository.save(requester);
 
-        item.getBids().add(bid);
-        itemRepository.save(item);
+    private ResponseEntity rejection(BidEngine.Result result){
+        if(result.getStatus() == BidEngine.Status.ACCEPTED){
+            return null;
+        }
+        HttpStatus status = result.getStatus() == BidEngine.Status.NOT_FOUND ?
+                HttpStatus.NOT_FOUND : HttpStatus.BAD_REQUEST;
+        return ResponseEntity.status(status).body(new Message(
+                "Error",
+                rejectionMessage(result.getStatus())
+        ));
+    }
 
-        return ResponseEntity.ok(new BidRes(bid, item.isAuctionCompleted()));
+    private static String rejectionMessage(BidEngine.Status status){
+        switch (status) {
+            case NOT_FOUND:
+                return "Item not found. Invalid item Id";
+            case COMPLETED:
+                return "Auction has been completed and no bids can be made";
+            case OWN_AUCTION:
+                return "You cannot bid at your own auction";
+            default:
+                return "Offer cannot be equal or less than the current best offer or the initial price";
+        }
+    }
+
+    private void afterBid(long itemId, BidEngine.Result result){
+
+        priceFeed.publish(result.getPrice());
+        searchIndexer.publish(ItemEvent.price(result.getPrice()));
+
+        if(result.isAuctionCompleted()){
+            auctionCloser.cancel(itemId);
+            notifySeller(itemRepository.findItemById(itemId));
+        }
     }
 }
\ No newline at end of file
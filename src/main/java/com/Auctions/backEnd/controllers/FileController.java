@@ -6,23 +6,33 @@ import com.Auctions.backEnd.repositories.UserRepository;
 import com.Auctions.backEnd.responses.Message;
 import com.Auctions.backEnd.repositories.DBFileRepository;
 import com.Auctions.backEnd.services.File.DBFileStorageService;
+import com.Auctions.backEnd.services.File.ImagePipeline;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.core.io.ByteArrayResource;
+import org.springframework.core.io.FileSystemResource;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
 
-import java.io.File;
-import java.io.FileInputStream;
+import javax.servlet.http.HttpServletRequest;
 import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
 
 @RestController
 @CrossOrigin(origins = "*")
 @RequestMapping("/media")
 public class FileController extends BaseController{
 
+    private static final String IMMUTABLE = "public, max-age=31536000, immutable";
+
+    private static final String SENDFILE_SUPPORT = "org.apache.tomcat.sendfile.support";
+    private static final String SENDFILE_FILENAME = "org.apache.tomcat.sendfile.filename";
+    private static final String SENDFILE_START = "org.apache.tomcat.sendfile.start";
+    private static final String SENDFILE_END = "org.apache.tomcat.sendfile.end";
+
     private final DBFileStorageService dBFileStorageService;
     private final DBFileRepository dbFileRepository;
     private final ItemRepository itemRepository;
@@ -43,40 +53,80 @@ public class FileController extends BaseController{
      * A user can download an item picture
      * The pictures are stored in the system not in the database
      *
+     * The content of a file never changes, so its id is used as a strong
+     * ETag and the picture may be cached forever: a repeat view with a
+     * matching 'If-None-Match' gets a <HTTP>NOT MODIFIED</HTTP> without
+     * even looking the file up. The picture is streamed from disk, by
+     * Tomcat's sendfile when the connector supports it, and 'Range'
+     * requests get the requested part.
+     *
+     * A resized variant (see ImagePipeline) can be asked for with 'size'.
+     * Until the variant is ready the original is sent instead, without
+     * the long-lived caching.
+     *
      * @param fileId - id of the picture
+     * @param size - optional variant {thumb, medium}
      * @return the picture
      */
     @GetMapping("/downloadFile/{fileId}")
-    public ResponseEntity downloadFile(@PathVariable(value = "fileId") String fileId) {
+    public ResponseEntity downloadFile(@PathVariable(value = "fileId") String fileId,
+                                       @RequestParam(value = "size", required = false) String size,
+                                       WebRequest webRequest, HttpServletRequest request) {
 
-        DBFile dbFile = dBFileStorageService.getFile(fileId);
-        FileInputStream FIS = null;
+        if (size != null && !DBFile.VARIANTS.containsKey(size)) {
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(new Message(
+                    "Error",
+                    "Unknown picture size"
+            ));
+        }
 
-        try{
-            final File f = new File("media/" + dbFile.getId());
-            byte[] fileBytes = new byte[(int) f.length()];
-            FIS = new FileInputStream(f);
-            int numberOfBytes = FIS.read(fileBytes);
-            System.out.println(numberOfBytes);
+        String etag = "\"" + fileId + (size != null ? "-" + size : "") + "\"";
+        if (webRequest.checkNotModified(etag)) {
+            return null;
+        }
+
+        DBFile dbFile = dBFileStorageService.getFile(fileId);
+        Path path = dBFileStorageService.getPath(dbFile);
+        MediaType contentType = MediaType.parseMediaType(dbFile.getFileType());
+        String cacheControl = IMMUTABLE;
 
-            return ResponseEntity.ok()
-                    .contentType(MediaType.parseMediaType(dbFile.getFileType()))
-                    .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"" + dbFile.getFileName() + "\"")
-                    .body(new ByteArrayResource(fileBytes));
+        if (size != null) {
+            Path variant = dbFile.getHash() != null ? dBFileStorageService.variantPath(dbFile.getHash(), size) : null;
+            if (variant != null && Files.exists(variant)) {
+                path = variant;
+                contentType = MediaType.parseMediaType(ImagePipeline.variantType(dbFile.getFileType()));
+            } else {
+                etag = "\"" + fileId + "\"";
+                cacheControl = "no-cache";
+            }
+        }
 
+        long length;
+        try {
+            length = Files.size(path);
         } catch (IOException e) {
             return ResponseEntity.status(HttpStatus.NOT_FOUND).body(new Message(
                     "Error",
                     "File not found"
                     ));
+        }
+
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok()
+                .contentType(contentType)
+                .eTag(etag)
+                .header(HttpHeaders.CACHE_CONTROL, cacheControl)
+                .header(HttpHeaders.ACCEPT_RANGES, "bytes")
+                .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"" + dbFile.getFileName() + "\"");
 
-        } finally {
-            if (FIS != null)
-                try {
-                    FIS.close();
-                } catch (IOException ioex) {
-                    System.out.println("Found Error Closing the File: "+ ioex);
-                }
+        if (request.getHeader(HttpHeaders.RANGE) == null &&
+                Boolean.TRUE.equals(request.getAttribute(SENDFILE_SUPPORT))) {
+            //Tomcat writes the file from the kernel once the response is committed
+            request.setAttribute(SENDFILE_FILENAME, path.toAbsolutePath().toString());
+            request.setAttribute(SENDFILE_START, 0L);
+            request.setAttribute(SENDFILE_END, length);
+            return response.contentLength(length).build();
         }
+
+        return response.body(new FileSystemResource(path));
     }
 }
@@ -3,13 +3,22 @@ package com.Auctions.backEnd.controllers;
 import com.Auctions.backEnd.models.*;
 import com.Auctions.backEnd.repositories.*;
 import com.Auctions.backEnd.responses.Message;
+import com.Auctions.backEnd.services.Auction.AuctionCloser;
+import com.Auctions.backEnd.services.Bid.BidEngine;
 import com.Auctions.backEnd.services.File.DBFileStorageService;
+import com.Auctions.backEnd.services.File.ImagePipeline;
+import com.Auctions.backEnd.services.Search.CompletionIndex;
+import com.Auctions.backEnd.services.Search.ItemEvent;
+import com.Auctions.backEnd.services.Search.SearchIndexer;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
 import org.springframework.format.annotation.DateTimeFormat;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.lang.Nullable;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.multipart.MultipartFile;
 
@@ -22,21 +31,38 @@ public class ItemController extends BaseController{
 
     private final UserRepository userRepository;
     private final ItemRepository itemRepository;
+    private final BidRepository bidRepository;
     private final ItemCategoryRepository itemCategoryRepository;
     private final DBFileRepository dbFileRepository;
     private final DBFileStorageService dBFileStorageService;
     private final GeolocationRepository geolocationRepository;
+    private final BidEngine bidEngine;
+    private final AuctionCloser auctionCloser;
+    private final ImagePipeline imagePipeline;
+    private final SearchIndexer searchIndexer;
+    private final CompletionIndex completionIndex;
+    private final TransactionTemplate transactionTemplate;
 
     @Autowired
-    public ItemController(UserRepository userRepository,ItemRepository itemRepository,
+    public ItemController(UserRepository userRepository,ItemRepository itemRepository, BidRepository bidRepository,
                           ItemCategoryRepository itemCategoryRepository, DBFileRepository dbFileRepository,
-                          DBFileStorageService dBFileStorageService, GeolocationRepository geolocationRepository){
+                          DBFileStorageService dBFileStorageService, GeolocationRepository geolocationRepository,
+                          BidEngine bidEngine, AuctionCloser auctionCloser, ImagePipeline imagePipeline,
+                          SearchIndexer searchIndexer, CompletionIndex completionIndex,
+                          PlatformTransactionManager transactionManager){
         this.userRepository = userRepository;
         this.itemRepository = itemRepository;
+        this.bidRepository = bidRepository;
         this.itemCategoryRepository = itemCategoryRepository;
         this.dbFileRepository = dbFileRepository;
         this.dBFileStorageService = dBFileStorageService;
         this.geolocationRepository = geolocationRepository;
+        this.bidEngine = bidEngine;
+        this.auctionCloser = auctionCloser;
+        this.imagePipeline = imagePipeline;
+        this.searchIndexer = searchIndexer;
+        this.completionIndex = completionIndex;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
     }
 
 
@@ -65,6 +91,7 @@ public class ItemController extends BaseController{
             userRepository.save(requester);
         }
 
+        item.setTopBids(bidRepository.findByItem_IdOrderByOfferDesc(itemId, PageRequest.of(0, Item.TOP_BIDS)));
         return ResponseEntity.ok(item);
     }
 
@@ -87,6 +114,7 @@ public class ItemController extends BaseController{
             ));
         }
 
+        item.setTopBids(bidRepository.findByItem_IdOrderByOfferDesc(itemId, PageRequest.of(0, Item.TOP_BIDS)));
         return ResponseEntity.ok(item);
     }
 
@@ -235,6 +263,7 @@ public class ItemController extends BaseController{
                 DBFile dbFile = dBFileStorageService.storeFile(picture);
                 dbFile.setDownloadLink("/downloadFile/" + dbFile.getId() + "." + dbFile.getFileType().split("/")[1]);
                 dbFile = dbFileRepository.save(dbFile);
+                imagePipeline.submit(dbFile);
                 item.getMedia().add(dbFile);
             }
         }
@@ -259,6 +288,9 @@ public class ItemController extends BaseController{
         }
 
         itemRepository.save(item);
+        auctionCloser.schedule(item.getId(), item.getEndsAt());
+        searchIndexer.publish(ItemEvent.saved(item));
+        completionIndex.addItem(item);
 
         requestUser.getItems().add(item);
         userRepository.save(requestUser);
@@ -307,17 +339,15 @@ public class ItemController extends BaseController{
             ));
         }
 
-        if(!item.getBids().isEmpty() || checkAuction(item)){
+        String previousName = item.getName();
+
+        if(hasBids(item) || checkAuction(item)){
             return ResponseEntity.status(HttpStatus.FORBIDDEN).body(new Message(
                     "Error",
                     "You cannot modify the auction after the first bid or if it is completed"
             ));
         }
 
-        if(name != null){ item.setName(name); }
-        if(endsAt != null){ item.setEndsAt(endsAt); }
-        if(description != null){ item.setDescription(description); }
-
         if(buyPrice != null){
 
             if((firstBid != null && java.lang.Double.compare(buyPrice, firstBid) < 0) ||
@@ -328,7 +358,6 @@ public class ItemController extends BaseController{
                 ));
             }
         }
-        item.setBuyPrice(buyPrice);
 
         if(firstBid != null){
 
@@ -338,7 +367,6 @@ public class ItemController extends BaseController{
                         "Buy price cannot be less than the first bid"
                 ));
             }
-            item.setFirstBid(firstBid);
         }
 
 
@@ -351,17 +379,9 @@ public class ItemController extends BaseController{
                         "Category not found"
                 ));
             }
-
-            item.getCategories().clear();
-            ItemCategory cat = category;
-            do{
-                item.getCategories().add(cat);
-                cat.getItems().add(item);
-                itemCategoryRepository.save(cat);
-                cat = cat.getParent();
-            }while(cat != null && !cat.getName().equals("All categories"));
         }
 
+        List<DBFile> pictures = new ArrayList<>();
         if(media != null){
 
             for(MultipartFile picture : media){
@@ -384,12 +404,56 @@ public class ItemController extends BaseController{
                 DBFile dbFile = dBFileStorageService.storeFile(picture);
                 dbFile.setDownloadLink("/downloadFile/" + dbFile.getId() + "." + dbFile.getFileType().split("/")[1]);
                 dbFile = dbFileRepository.save(dbFile);
-                item.getMedia().add(dbFile);
+                imagePipeline.submit(dbFile);
+                pictures.add(dbFile);
             }
         }
 
-        itemRepository.save(item);
-        return ResponseEntity.ok(item);
+        //the columns are written only while the auction has no bids, so a bid
+        //accepted since the check above is never overwritten (see ItemRepository.placeBid)
+        Item modified = transactionTemplate.execute(status -> {
+
+            if(itemRepository.modifyDetails(itemId,
+                    name != null ? name : item.getName(),
+                    description != null ? description : item.getDescription(),
+                    endsAt != null ? endsAt : item.getEndsAt(),
+                    buyPrice,
+                    firstBid != null ? firstBid : item.getFirstBid(),
+                    new Date()) == 0){
+                return null;
+            }
+
+            //the row stays locked by the update until the end of the transaction
+            Item fresh = itemRepository.findItemById(itemId);
+            if(categoryId != null){
+                fresh.getCategories().clear();
+                ItemCategory cat = itemCategoryRepository.findItemCategoryById(categoryId);
+                do{
+                    fresh.getCategories().add(cat);
+                    cat.getItems().add(fresh);
+                    itemCategoryRepository.save(cat);
+                    cat = cat.getParent();
+                }while(cat != null && !cat.getName().equals("All categories"));
+            }
+            fresh.getMedia().addAll(pictures);
+            return itemRepository.save(fresh);
+        });
+
+        if(modified == null){
+            return ResponseEntity.status(HttpStatus.FORBIDDEN).body(new Message(
+                    "Error",
+                    "You cannot modify the auction after the first bid or if it is completed"
+            ));
+        }
+
+        bidEngine.evict(itemId);
+        auctionCloser.schedule(itemId, modified.getEndsAt());
+        searchIndexer.publish(ItemEvent.saved(modified));
+        if(!modified.getName().equals(previousName)){
+            completionIndex.removeItem(previousName);
+            completionIndex.addItem(modified);
+        }
+        return ResponseEntity.ok(modified);
     }
 
 
@@ -420,7 +484,7 @@ public class ItemController extends BaseController{
             ));
         }
 
-        if(!item.getBids().isEmpty() || checkAuction(item)){
+        if(hasBids(item) || checkAuction(item)){
             return ResponseEntity.status(HttpStatus.FORBIDDEN).body(new Message(
                     "Error",
                     "You cannot delete the auction after the first bid or if it is completed"
@@ -432,10 +496,27 @@ public class ItemController extends BaseController{
         userRepository.save(item.getSeller());
 
         itemRepository.deleteById(item.getId());
+        bidEngine.evict(item.getId());
+        auctionCloser.cancel(item.getId());
+        searchIndexer.publish(ItemEvent.deleted(item.getId()));
+        completionIndex.removeItem(item.getName());
 
         return ResponseEntity.status(HttpStatus.OK).body(new Message(
                 "Ok",
                 "Auction has been deleted"
         ));
     }
+
+
+    /**
+     * Bid rows reach the database through the BidJournal, so a bid that was
+     * just accepted may not be in item.getBids() yet. The bid count however is
+     * raised together with the price
+     *
+     * @param item - the auction
+     * @return true if the auction has received a bid
+     */
+    private boolean hasBids(Item item){
+        return item.getBidCount() > 0;
+    }
 }
\ No newline at end of file
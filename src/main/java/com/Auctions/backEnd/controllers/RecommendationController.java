@@ -4,6 +4,9 @@ import com.Auctions.backEnd.models.*;
 import com.Auctions.backEnd.repositories.*;
 import com.Auctions.backEnd.responses.Message;
 import com.Auctions.backEnd.responses.RatedItem;
+import com.Auctions.backEnd.services.Account.AvailabilityIndex;
+import com.Auctions.backEnd.services.Auction.AuctionCloser;
+import com.Auctions.backEnd.services.Search.SearchIndexer;
 import info.debatty.java.lsh.LSHSuperBit;
 import org.jdom.Attribute;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -34,13 +37,17 @@ public class RecommendationController extends BaseController{
     private final GeolocationRepository geolocationRepository;
     private final ItemCategoryRepository itemCategoryRepository;
     private final AccountRepository accountRepository;
+    private final AuctionCloser auctionCloser;
     private final PasswordEncoder passwordEncoder;
+    private final AvailabilityIndex availabilityIndex;
+    private final SearchIndexer searchIndexer;
 
     @Autowired
     public RecommendationController(UserRepository userRepository, ItemRepository itemRepository,
                          BidRepository bidRepository, GeolocationRepository geolocationRepository,
                          ItemCategoryRepository itemCategoryRepository, PasswordEncoder passwordEncoder,
-                                    AccountRepository accountRepository) {
+                                    AccountRepository accountRepository, AuctionCloser auctionCloser,
+                                    AvailabilityIndex availabilityIndex, SearchIndexer searchIndexer) {
         this.userRepository = userRepository;
         this.itemRepository = itemRepository;
         this.bidRepository = bidRepository;
@@ -48,6 +55,9 @@ public class RecommendationController extends BaseController{
         this.itemCategoryRepository = itemCategoryRepository;
         this.passwordEncoder = passwordEncoder;
         this.accountRepository = accountRepository;
+        this.auctionCloser = auctionCloser;
+        this.availabilityIndex = availabilityIndex;
+        this.searchIndexer = searchIndexer;
     }
 
 
@@ -192,6 +202,7 @@ public class RecommendationController extends BaseController{
                 }
 
                 //bids
+                Bid highestBid = null;
                 List<Element> bids = xmlItem.getChildren("Bids");
                 for (int a = 0; a < bids.size(); a++) {
 
@@ -226,6 +237,7 @@ public class RecommendationController extends BaseController{
                             bidder.setAccount(account);
 
                             accountRepository.save(account);
+                            availabilityIndex.add(account.getUsername(), account.getEmail());
                         }
 
                         if(bidder.getAddress() == null){
@@ -249,6 +261,10 @@ public class RecommendationController extends BaseController{
                         userRepository.save(bidder);
 
                         item.getBids().add(newBid);
+                        item.setBidCount(item.getBidCount() + 1);
+                        if(highestBid == null || newBid.getOffer() > highestBid.getOffer()){
+                            highestBid = newBid;
+                        }
                     }
                 }
 
@@ -271,6 +287,7 @@ public class RecommendationController extends BaseController{
                     account.setVerified(true);
 
                     account  = accountRepository.save(account);
+                    availabilityIndex.add(account.getUsername(), account.getEmail());
 
                     seller = new User();
                     seller.setFirstName("FirstName");
@@ -291,10 +308,18 @@ public class RecommendationController extends BaseController{
                             Integer.valueOf(xmlItem.getChild("Seller").getAttribute("Rating").getValue()));
                 }
 
+                if(highestBid != null){
+                    item.setHighestBidder(highestBid.getBidder());
+                    item.setHighestBidId(highestBid.getId());
+                }
+
                 item.setSeller(seller);
                 userRepository.save(seller);
                 seller.getItems().add(item);
                 itemRepository.save(item);
+                if(!item.isAuctionCompleted()){
+                    auctionCloser.schedule(item.getId(), item.getEndsAt());
+                }
             }
         } catch(JDOMException e) {
             e.printStackTrace();
@@ -302,6 +327,9 @@ public class RecommendationController extends BaseController{
             ioe.printStackTrace();
         }
 
+        //one pass over the imported items rather than one update each
+        searchIndexer.requestRebuild();
+
         return ResponseEntity.ok(new Message(
                 "Ok",
                 "All Items have bee imported"
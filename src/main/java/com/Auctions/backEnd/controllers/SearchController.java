@@ -6,8 +6,9 @@ import com.Auctions.backEnd.repositories.ItemCategoryRepository;
 import com.Auctions.backEnd.repositories.ItemRepository;
 import com.Auctions.backEnd.responses.Message;
 import com.Auctions.backEnd.responses.ResultPage;
-import com.Auctions.backEnd.services.Search.SortComparator;
-import com.google.common.collect.Lists;
+import com.Auctions.backEnd.services.Search.CompletionIndex;
+import com.Auctions.backEnd.services.Search.ResultPager;
+import com.Auctions.backEnd.services.Search.SearchIndex;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
@@ -25,27 +26,36 @@ import java.util.*;
 @RequestMapping("/search")
 public class SearchController extends BaseController{
 
+    private static final double MAX_RADIUS_KM = 1000;
+
     private final ItemRepository itemRepository;
     private final ItemCategoryRepository itemCategoryRepository;
+    private final SearchIndex searchIndex;
+    private final CompletionIndex completionIndex;
 
     @Autowired
-    public SearchController(ItemRepository itemRepository, ItemCategoryRepository itemCategoryRepository){
+    public SearchController(ItemRepository itemRepository, ItemCategoryRepository itemCategoryRepository,
+                            SearchIndex searchIndex, CompletionIndex completionIndex){
         this.itemRepository = itemRepository;
         this.itemCategoryRepository = itemCategoryRepository;
+        this.searchIndex = searchIndex;
+        this.completionIndex = completionIndex;
     }
 
 
     /**
      * A user can get a list of suggestions when typing in the search bar
      *
+     * The suggestions are the item and category names containing the
+     * keyword, each one once, the most bidden and recent ones first
+     * (see CompletionIndex)
+     *
      * @param keyword - partial or full word to be matched
      * @return the list of suggestiong
      */
     @GetMapping("/partialMatch")
     public ResponseEntity getPartialMatchedSearch(@RequestParam String keyword){
 
-        List<String> res = new ArrayList();
-
         if (keyword == null || keyword.isEmpty()) {
             return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(new Message(
                     "Error",
@@ -53,12 +63,7 @@ public class SearchController extends BaseController{
             ));
         }
 
-        keyword = keyword.toLowerCase();
-
-        res.addAll(itemRepository.searchByName(keyword));
-        res.addAll(itemRepository.searchByCategory(keyword));
-
-        return ResponseEntity.ok(res);
+        return ResponseEntity.ok(completionIndex.complete(keyword));
     }
 
 
@@ -66,23 +71,25 @@ public class SearchController extends BaseController{
      * A User can use a search bar to find items/auctions based on:
      * the category name, the item's name and the item's description
      *
-     * For every word of the text given we search for partial matching
-     * in the above mentioned fields and we collect the results in a set
-     * called 'res'. Afterwards, we sort the results on a best fit basis
-     * i.e. the items appearing more times in the set are moved first in
-     * the set
+     * The words of the text are looked up in the SearchIndex, where every
+     * word also matches the longer words starting with it. The results are
+     * sorted on a best fit basis: the items matching more of the words come
+     * first and the ones matching equally are ordered by their BM25 score
+     * i.e. rare words and words of the name count more
      *
-     * The front-end part specifies a sublist range of the used as pagination
+     * Only the items of the requested page are ranked and loaded
      * We return items of both open and completed auctions
      *
-     * Algorithm for sorting elements by times of appearance was taken from:
-     * https://www.geeksforgeeks.org/sort-elements-by-frequency-set-5-using-java-map/
+     * Deep pages can be asked for with the cursor returned with the
+     * previous page instead of the page number
      *
      * @param text - the keyword string
+     * @param cursor - optionally where the previous page ended
      * @return a list of items
      */
     @PutMapping("/searchBar")
     public ResponseEntity searchBar(@RequestBody String text,
+                                    @Nullable @RequestParam String cursor,
                                     Pageable pageable){
 
         if(text == null || text.isEmpty()){
@@ -92,44 +99,108 @@ public class SearchController extends BaseController{
             ));
         }
 
-        List<Item> res = new ArrayList<>();
+        int size = pageable.getPageSize();
 
-        //split string to words
-        String[] values = text.split(" ");
-        for (String element : values) {
-            res.addAll(itemRepository.searchItems(element.toLowerCase()));
+        ResultPager pager;
+        try {
+            pager = new ResultPager(pageable.getPageNumber(), size, cursor, text.hashCode());
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(new Message(
+                    "Error",
+                    "Invalid cursor"
+            ));
         }
 
-        Map<Item, Integer> map = new HashMap<>();
-        List<Item> outputArray = new ArrayList<>();
+        searchIndex.search(text, pager);
+        int totalElements = pager.getTotal();
 
-        //assign elements and their count in the list and map
-        for (Item current : res) {
-            int count = map.getOrDefault(current, 0);
-            map.put(current, count + 1);
-            outputArray.add(current);
+        if(totalElements == 0){
+            return ResponseEntity.ok(new ResultPage(null, totalElements, 0));
         }
 
-        //compare the map by value
-        SortComparator comp = new SortComparator(map);
+        return ResponseEntity.ok(new ResultPage(loadPage(pager), totalElements,
+                (int)Math.ceil((double)totalElements / size), pager.isExact(), pager.next()));
+    }
 
-        //sort the map using Collections CLass
-        Collections.sort(outputArray, comp);
 
-        ArrayList<Item> result = new ArrayList<>(new LinkedHashSet<>(outputArray));
+    /**
+     * A user can find the open auctions around a location, the nearest first,
+     * optionally only of a category and within a price range
+     *
+     * The auctions are looked up in the location grid of the SearchIndex,
+     * the item table is only read for the items of the page
+     *
+     * @param lat - latitude of the location
+     * @param lon - longitude of the location
+     * @param radiusKm - the distance from the location, up to MAX_RADIUS_KM
+     * @param categoryId - optionally the id of a category
+     * @param lowerPrice - optionally the lowest current price
+     * @param higherPrice - optionally the highest current price
+     * @param cursor - optionally where the previous page ended
+     * @param pageable - pageable (page number, page size)
+     * @return a page of items
+     */
+    @GetMapping("/nearby")
+    public ResponseEntity nearby(@RequestParam Double lat,
+                                 @RequestParam Double lon,
+                                 @RequestParam Double radiusKm,
+                                 @Nullable @RequestParam Long categoryId,
+                                 @Nullable @RequestParam Double lowerPrice,
+                                 @Nullable @RequestParam Double higherPrice,
+                                 @Nullable @RequestParam String cursor,
+                                 Pageable pageable){
+
+        if(lat < -90 || lat > 90 || lon < -180 || lon > 180 || !(radiusKm > 0) || radiusKm > MAX_RADIUS_KM){
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(new Message(
+                    "Error",
+                    "Invalid location or radius"
+            ));
+        }
 
-        int page = pageable.getPageNumber();
         int size = pageable.getPageSize();
-        int totalElements = result.size();
+        int scope = Objects.hash(lat, lon, radiusKm, categoryId, lowerPrice, higherPrice);
+
+        ResultPager pager;
+        try {
+            pager = new ResultPager(pageable.getPageNumber(), size, cursor, scope);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(new Message(
+                    "Error",
+                    "Invalid cursor"
+            ));
+        }
+
+        searchIndex.nearby(lat, lon, radiusKm, categoryId, lowerPrice, higherPrice, pager);
+        int totalElements = pager.getTotal();
 
         if(totalElements == 0){
             return ResponseEntity.ok(new ResultPage(null, totalElements, 0));
         }
 
-        List<List<Item>> subset = Lists.partition(result, size);
+        return ResponseEntity.ok(new ResultPage(loadPage(pager), totalElements,
+                (int)Math.ceil((double)totalElements / size), pager.isExact(), pager.next()));
+    }
+
+
+    /**
+     * @return the items of the page, in the order of the pager
+     */
+    private List<Item> loadPage(ResultPager pager){
+
+        List<Long> pageIds = new ArrayList<>();
+        for(long id : pager.page()){
+            pageIds.add(id);
+        }
 
-        return ResponseEntity.ok(new ResultPage(subset.get(page),
-                totalElements, (int)Math.ceil((double)totalElements / size)));
+        Map<Long, Item> items = new HashMap<>();
+        itemRepository.findAllById(pageIds).forEach(item -> items.put(item.getId(), item));
+        List<Item> content = new ArrayList<>();
+        pageIds.forEach(id -> {
+            if(items.containsKey(id)){
+                content.add(items.get(id));
+            }
+        });
+        return content;
     }
 
 
@@ -6,15 +6,14 @@ import com.Auctions.backEnd.responses.FormattedUser;
 import com.Auctions.backEnd.responses.ResultPage;
 import com.Auctions.backEnd.responses.Message;
 import org.springframework.beans.factory.annotation.Autowired;
-import com.google.common.collect.Lists;
 
 import java.util.List;
+import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
-import java.util.Collections;
 import java.util.Set;
 
 @RestController
@@ -132,22 +131,22 @@ public class UserController extends BaseController{
     /**
      * User can get a list of the auctions he has visited
      *
+     * Only the requested page is loaded, the total is counted
+     * by the database
+     *
      * @return list of history
      */
     @GetMapping("/myHistory")
     public ResponseEntity getMyHistory(Pageable pageable) {
 
-        int page = pageable.getPageNumber();
-        int size = pageable.getPageSize();
-        int totalElements = requestUser().getItemSeen().size();
+        Page<Item> page = itemRepository.getSeenItems(requestUser().getId(), pageable);
+        int totalElements = (int)page.getTotalElements();
 
         if(totalElements == 0){
             return ResponseEntity.ok(new ResultPage(null, totalElements, 0));
         }
 
-        List<List<Item>> subset = Lists.partition(requestUser().getItemSeen(), size);
-
-        return ResponseEntity.ok(new ResultPage(subset.get(page), totalElements, (int)Math.ceil((double)totalElements / size)));
+        return ResponseEntity.ok(new ResultPage(page.getContent(), totalElements, page.getTotalPages()));
     }
 
 
@@ -289,10 +288,17 @@ public class UserController extends BaseController{
                 ));
         }
 
-        User highestBidder = Collections.max(item.getBids(), Bid.cmp).getBidder();
+        User highestBidder = item.getHighestBidder();
 
         if(requester.equals(item.getSeller())){
 
+            if(highestBidder == null){
+                return ResponseEntity.status(HttpStatus.NOT_FOUND).body(new Message(
+                        "Error",
+                        "This auction has no highest bidder"
+                ));
+            }
+
             if(item.getBidderRating() != null){
                 return ResponseEntity.status(HttpStatus.UNAUTHORIZED).body(new Message(
                         "Error",
@@ -389,7 +395,7 @@ public class UserController extends BaseController{
             ));
         }
 
-        User highestBidder = Collections.max(item.getBids(), Bid.cmp).getBidder();
+        User highestBidder = item.getHighestBidder();
         if(highestBidder == null){
             return ResponseEntity.status(HttpStatus.NOT_FOUND).body(new Message(
                     "Error",
@@ -447,7 +453,7 @@ public class UserController extends BaseController{
             ));
         }
 
-        User highestBidder = Collections.max(item.getBids(), Bid.cmp).getBidder();
+        User highestBidder = item.getHighestBidder();
         if(highestBidder == null || !requester.getUsername().equals(highestBidder.getUsername())){
             return ResponseEntity.status(HttpStatus.NOT_FOUND).body(new Message(
                     "Error",
@@ -12,7 +12,7 @@ import java.util.Date;
 @Entity
 @Setter
 @Getter
-@Table(name = "bid")
+@Table(name = "bid", indexes = @Index(name = "bid_item_offer", columnList = "item_id, offer_amount, id"))
 @NoArgsConstructor
 public class Bid extends AuditModel {
 
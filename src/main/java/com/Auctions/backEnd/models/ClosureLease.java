@@ -0,0 +1,36 @@
+package com.Auctions.backEnd.models;
+
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+import javax.persistence.*;
+import java.util.Date;
+
+/**
+ * Lease of a shard of auctions (item id mod number of shards)
+ * held by the node that closes them until 'expiresAt'
+ */
+@Entity
+@Setter
+@Getter
+@Table(name = "closure_lease")
+@NoArgsConstructor
+public class ClosureLease {
+
+    @Id
+    @Column(name = "shard")
+    private Integer shard;
+
+    @Column(name = "owner_node")
+    private String owner;
+
+    @Temporal(TemporalType.TIMESTAMP)
+    @Column(name = "expires_at")
+    private Date expiresAt;
+
+    public ClosureLease(Integer shard) {
+        this.shard = shard;
+        this.expiresAt = new Date(0);
+    }
+}
@@ -0,0 +1,33 @@
+package com.Auctions.backEnd.models;
+
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+import javax.persistence.*;
+import java.util.Date;
+
+/**
+ * Heartbeat of a node taking part in the auction closure,
+ * used to split the closure shards between the live nodes
+ */
+@Entity
+@Setter
+@Getter
+@Table(name = "closure_node")
+@NoArgsConstructor
+public class ClosureNode {
+
+    @Id
+    @Column(name = "node_id")
+    private String id;
+
+    @Temporal(TemporalType.TIMESTAMP)
+    @Column(name = "last_seen")
+    private Date lastSeen;
+
+    public ClosureNode(String id, Date lastSeen) {
+        this.id = id;
+        this.lastSeen = lastSeen;
+    }
+}
@@ -7,16 +7,32 @@ import org.hibernate.annotations.GenericGenerator;
 
 import javax.persistence.*;
 import java.io.Serializable;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
 
 @Setter
 @Getter
 @Entity
 @NoArgsConstructor
-@Table(name = "file")
+@Table(name = "file", indexes = @Index(name = "file_hash", columnList = "hash"))
 public class DBFile implements Serializable {
 
     public static final long MAXIMUM_IMAGE_SIZE = 10000000L;
 
+    /**
+     * Resized variants of the pictures: name -> the longest side in pixels
+     * (see ImagePipeline)
+     */
+    public static final Map<String, Integer> VARIANTS;
+
+    static {
+        Map<String, Integer> variants = new LinkedHashMap<>();
+        variants.put("thumb", 200);
+        variants.put("medium", 800);
+        VARIANTS = Collections.unmodifiableMap(variants);
+    }
+
     @Id
     @GeneratedValue(generator = "uuid")
     @GenericGenerator(name = "uuid", strategy = "uuid2")
@@ -31,9 +47,18 @@ public class DBFile implements Serializable {
     @Column
     private String downloadLink;
 
+    /**
+     * SHA-256 of the content, in hex
+     * The content is stored once per hash and shared by every file
+     * with the same content (see DBFileStorageService)
+     */
+    @Column(length = 64)
+    private String hash;
+
 
-    public DBFile(String fileName, String fileType, byte[] data) {
+    public DBFile(String fileName, String fileType, String hash) {
         this.fileName = fileName;
         this.fileType = fileType;
+        this.hash = hash;
     }
 }
@@ -0,0 +1,39 @@
+package com.Auctions.backEnd.models;
+
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+import javax.persistence.*;
+import java.util.Date;
+
+/**
+ * Response stored for an Idempotency-Key, kept so that a retried
+ * request gets the same answer even after a restart
+ */
+@Entity
+@Setter
+@Getter
+@Table(name = "idempotency_record")
+@NoArgsConstructor
+public class IdempotencyRecord {
+
+    @Id
+    @Column(name = "record_key", length = 64)
+    private String key;
+
+    @Column(name = "request_hash", length = 64)
+    private String requestHash;
+
+    private int status;
+
+    @Column(name = "content_type")
+    private String contentType;
+
+    @Lob
+    private byte[] body;
+
+    @Temporal(TemporalType.TIMESTAMP)
+    @Column(name = "created_at")
+    private Date createdAt;
+}
@@ -13,12 +13,21 @@ import java.util.*;
 @Entity
 @Setter
 @Getter
-@Table(name = "item")
+@Table(name = "item", indexes = {
+        @Index(name = "item_open_ends_at", columnList = "auction_completed, ends_at"),
+        @Index(name = "item_updated_at", columnList = "updated_at")
+})
 @NoArgsConstructor
 public class Item extends AuditModel implements Serializable {
 
     public static final long serialVersionUID = 69L;
 
+    /**
+     * Number of highest bids returned with the details of an auction,
+     * the rest is paged through /bid/history/{itemId}
+     */
+    public static final int TOP_BIDS = 10;
+
     @ManyToOne
     private User seller;
 
@@ -41,11 +50,28 @@ public class Item extends AuditModel implements Serializable {
             inverseJoinColumns = @JoinColumn(name = "item_category_id"))
     private List<ItemCategory> categories = new ArrayList<>();
 
-    @OneToMany( mappedBy = "item", fetch = FetchType.EAGER)
+    @OneToMany( mappedBy = "item", fetch = FetchType.LAZY)
     @OrderBy(value = "offer DESC")
-    @JsonIgnoreProperties("item")
+    @JsonIgnore
     private List<Bid> bids = new ArrayList<>();
 
+    /** the highest bids, under the key the whole list was sent with */
+    @Transient
+    @JsonProperty("bids")
+    @JsonIgnoreProperties("item")
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private List<Bid> topBids;
+
+    @ManyToOne
+    @JsonIgnore
+    private User highestBidder;
+
+    @Column(name = "highest_bid_id")
+    private Long highestBidId;
+
+    @Column(name = "bid_count")
+    private Integer bidCount = 0;
+
     @Temporal(TemporalType.TIMESTAMP)
     @Column(name = "ends_at")
     private Date endsAt;
@@ -53,6 +79,12 @@ public class Item extends AuditModel implements Serializable {
     @Column(name = "auction_completed")
     private Boolean auctionCompleted = false;
 
+    /** last change of the row, the search index of every node catches up on it (see SearchIndexer) */
+    @JsonIgnore
+    @Temporal(TemporalType.TIMESTAMP)
+    @Column(name = "updated_at")
+    private Date updatedAt;
+
     @Column(name = "description")
     private String description;
 
@@ -69,6 +101,13 @@ public class Item extends AuditModel implements Serializable {
     private Integer bidderRating;
 
 
+    @PrePersist
+    @PreUpdate
+    private void touch() {
+        this.updatedAt = new Date();
+    }
+
+
     @JsonGetter("getMediaPath")
     public List<String> getMediaPath() {
         if(media != null) {
@@ -81,6 +120,25 @@ public class Item extends AuditModel implements Serializable {
         return null;
     }
 
+    /**
+     * @return per picture, the links of the original and of its resized variants
+     */
+    @JsonGetter("getMediaVariants")
+    public List<Map<String, String>> getMediaVariants() {
+        if(media != null) {
+            List<Map<String, String>> variants = new ArrayList<>();
+            this.media.forEach(picture -> {
+                Map<String, String> links = new LinkedHashMap<>();
+                links.put("original", picture.getDownloadLink());
+                DBFile.VARIANTS.keySet().forEach(variant ->
+                        links.put(variant, picture.getDownloadLink() + "?size=" + variant));
+                variants.add(links);
+            });
+            return variants;
+        }
+        return null;
+    }
+
     public Item(final Date createdAt) { super(createdAt); }
 
     public boolean isAuctionCompleted() { return this.auctionCompleted; }
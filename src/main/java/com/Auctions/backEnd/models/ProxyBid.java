@@ -0,0 +1,40 @@
+package com.Auctions.backEnd.models;
+
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+import org.hibernate.annotations.OnDelete;
+import org.hibernate.annotations.OnDeleteAction;
+
+import javax.persistence.*;
+import java.util.Date;
+
+/**
+ * Hidden maximum of a user on an auction. The BidEngine bids on behalf
+ * of the user, by the minimum increment, up to 'maxOffer'. Of two equal
+ * maximums the one set first wins, so 'raisedAt' is when the maximum was
+ * last set
+ */
+@Entity
+@Setter
+@Getter
+@Table(name = "proxy_bid", uniqueConstraints = @UniqueConstraint(columnNames = {"item_id", "bidder_id"}))
+@NoArgsConstructor
+public class ProxyBid extends AuditModel {
+
+    @ManyToOne
+    @OnDelete(action = OnDeleteAction.CASCADE)
+    private Item item;
+
+    @ManyToOne
+    private User bidder;
+
+    @Column(name = "max_offer")
+    private Double maxOffer;
+
+    @Temporal(TemporalType.TIMESTAMP)
+    @Column(name = "raised_at")
+    private Date raisedAt;
+
+    private boolean active = true;
+}
@@ -2,10 +2,16 @@ package com.Auctions.backEnd.repositories;
 
 import com.Auctions.backEnd.models.Account;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
 import org.springframework.stereotype.Repository;
 
+import java.util.List;
+
 @Repository
 public interface AccountRepository extends JpaRepository<Account, Long> {
     Account findByUsername(String username);
     Account findByEmail(String email);
+
+    @Query("SELECT a.username, a.email FROM Account a")
+    List<Object[]> getUsernamesAndEmails();
 }
@@ -2,10 +2,40 @@
 package com.Auctions.backEnd.repositories;
 
 import com.Auctions.backEnd.models.Bid;
+import com.Auctions.backEnd.responses.BidEntry;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.util.List;
+
 @Repository
 public interface BidRepository extends JpaRepository<Bid, Long> {
     Bid findBidById(Long id);
-}
\ No newline at end of file
+
+    boolean existsByItem_IdAndBidder_IdAndOffer(Long itemId, Long bidderId, Double offer);
+
+    List<Bid> findByItem_IdOrderByOfferDesc(Long itemId, Pageable pageable);
+
+    @Query(
+            "SELECT new com.Auctions.backEnd.responses.BidEntry(b.id, b.offer, b.createdAt, u.id, a.username) " +
+            "FROM Bid b JOIN b.bidder u JOIN u.account a WHERE b.item.id = :itemId " +
+            "ORDER BY b.offer DESC, b.id DESC"
+    )
+    List<BidEntry> getHistory(@Param("itemId") Long itemId, Pageable pageable);
+
+    /**
+     * Keyset page of the history: the bids right after (offer, id)
+     * in descending order, without counting or skipping rows
+     */
+    @Query(
+            "SELECT new com.Auctions.backEnd.responses.BidEntry(b.id, b.offer, b.createdAt, u.id, a.username) " +
+            "FROM Bid b JOIN b.bidder u JOIN u.account a WHERE b.item.id = :itemId " +
+            "AND (b.offer < :offer OR (b.offer = :offer AND b.id < :id)) " +
+            "ORDER BY b.offer DESC, b.id DESC"
+    )
+    List<BidEntry> getHistoryAfter(@Param("itemId") Long itemId, @Param("offer") Double offer,
+                                   @Param("id") Long id, Pageable pageable);
+}
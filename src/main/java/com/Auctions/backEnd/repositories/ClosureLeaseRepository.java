@@ -0,0 +1,41 @@
+package com.Auctions.backEnd.repositories;
+
+import com.Auctions.backEnd.models.ClosureLease;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.Date;
+
+@Repository
+public interface ClosureLeaseRepository extends JpaRepository<ClosureLease, Integer> {
+
+    /**
+     * Takes or renews the lease of a shard, only if it is free,
+     * expired (by the clock of the database) or already held by the same node
+     *
+     * @return 1 if the node holds the lease until 'expiresAt', 0 otherwise
+     */
+    @Modifying
+    @Transactional
+    @Query(
+            "update ClosureLease l set l.owner = :owner, l.expiresAt = :expiresAt " +
+            "where l.shard = :shard and (l.owner = :owner or l.owner is null or l.expiresAt < CURRENT_TIMESTAMP)"
+    )
+    int claim(@Param("shard") Integer shard, @Param("owner") String owner,
+              @Param("expiresAt") Date expiresAt);
+
+    /**
+     * The clock of the database, shared by all nodes
+     */
+    @Query(value = "SELECT CURRENT_TIMESTAMP", nativeQuery = true)
+    Date currentTime();
+
+    @Modifying
+    @Transactional
+    @Query("update ClosureLease l set l.owner = null where l.shard = :shard and l.owner = :owner")
+    int release(@Param("shard") Integer shard, @Param("owner") String owner);
+}
@@ -0,0 +1,23 @@
+package com.Auctions.backEnd.repositories;
+
+import com.Auctions.backEnd.models.ClosureNode;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.Date;
+
+@Repository
+public interface ClosureNodeRepository extends JpaRepository<ClosureNode, String> {
+
+    @Query("SELECT COUNT(n) FROM ClosureNode n WHERE n.lastSeen > :since")
+    long countLive(@Param("since") Date since);
+
+    @Modifying
+    @Transactional
+    @Query("delete from ClosureNode n where n.lastSeen < :before")
+    int deleteStale(@Param("before") Date before);
+}
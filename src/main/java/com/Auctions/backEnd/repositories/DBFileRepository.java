@@ -2,9 +2,15 @@ package com.Auctions.backEnd.repositories;
 
 import com.Auctions.backEnd.models.DBFile;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.util.List;
+
 @Repository
 public interface DBFileRepository extends JpaRepository<DBFile, String> {
 
+    @Query("SELECT DISTINCT f.hash FROM DBFile f WHERE f.hash LIKE CONCAT(:prefix, '%')")
+    List<String> getHashes(@Param("prefix") String prefix);
 }
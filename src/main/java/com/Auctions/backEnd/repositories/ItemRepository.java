@@ -1,14 +1,21 @@
 package com.Auctions.backEnd.repositories;
 
 import  com.Auctions.backEnd.models.Item;
+import com.Auctions.backEnd.models.User;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.JpaSpecificationExecutor;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 
+import javax.persistence.LockModeType;
+import java.util.Collection;
+import java.util.Date;
 import java.util.List;
 
 @Repository
@@ -21,28 +28,154 @@ public interface ItemRepository extends JpaRepository<Item, Long>, JpaSpecificat
     @Query("SELECT i FROM Item i WHERE i.auctionCompleted = 'false' ORDER BY i.createdAt DESC")
     List<Item> getAllOpenAuctions();
 
+    @Query("SELECT i.id, i.endsAt FROM Item i WHERE i.auctionCompleted = false")
+    List<Object[]> getOpenAuctionDeadlines();
+
     @Query("SELECT i FROM Item i ORDER BY i.createdAt DESC")
     List<Item> getAll();
 
-    @Query("SELECT i.name from Item i WHERE (locate(:query, lower(i.name)) <> 0)")
-    List<String> searchByName(@Param("query") String query);
+    @Query(
+            "select i from Item i " +
+            "order by i.bidCount DESC "
+    )
+    List<Item> popularItems();
 
+    /**
+     * The searchable fields of the items after the given id, by ascending id,
+     * as (id, name, description, currently, bidCount, auctionCompleted,
+     * latitude, longitude, endsAt) rows for the search index
+     */
     @Query(
-            "select ic.name from Item i join i.categories ic " +
-            "where locate(:query, lower(ic.name)) <> 0")
-    List<String> searchByCategory(@Param("query") String query);
+            "SELECT i.id, i.name, i.description, i.currently, i.bidCount, i.auctionCompleted, " +
+            "l.latitude, l.longitude, i.endsAt FROM Item i LEFT JOIN i.location l WHERE i.id > :after ORDER BY i.id"
+    )
+    List<Object[]> getSearchRows(@Param("after") Long after, Pageable pageable);
 
+    /**
+     * The rows of getSearchRows changed since the given time
+     */
     @Query(
-            "select i from Item i join i.categories ic " +
-            "where (locate(:query, lower(i.name)) <> 0) or " +
-            "(locate(:query, lower(i.description)) <> 0) or " +
-            "locate(:query, lower(ic.name)) <> 0"
+            "SELECT i.id, i.name, i.description, i.currently, i.bidCount, i.auctionCompleted, " +
+            "l.latitude, l.longitude, i.endsAt FROM Item i LEFT JOIN i.location l " +
+            "WHERE i.updatedAt >= :since AND i.id > :after ORDER BY i.id"
     )
-    List<Item> searchItems(@Param("query") String query);
+    List<Object[]> getSearchRowsChangedSince(@Param("since") Date since, @Param("after") Long after,
+                                             Pageable pageable);
 
+    /**
+     * The auctions a user has visited, a page at a time, by ascending id
+     *
+     * The visited list has no order column, so the id is the only stable
+     * order for the pages
+     */
     @Query(
-            "select i from Item i " +
-            "order by i.bids.size DESC "
+            value = "SELECT i FROM User u JOIN u.itemSeen i WHERE u.id = :userId ORDER BY i.id",
+            countQuery = "SELECT count(i) FROM User u JOIN u.itemSeen i WHERE u.id = :userId"
     )
-    List<Item> popularItems();
-}
\ No newline at end of file
+    Page<Item> getSeenItems(@Param("userId") Long userId, Pageable pageable);
+
+    /**
+     * The items after the given id, by ascending id,
+     * as (id, name, bidCount, createdAt) rows for the search suggestions
+     */
+    @Query("SELECT i.id, i.name, i.bidCount, i.createdAt FROM Item i WHERE i.id > :after ORDER BY i.id")
+    List<Object[]> getCompletionRows(@Param("after") Long after, Pageable pageable);
+
+    /**
+     * The categories of the given items as (itemId, categoryId, categoryName) rows
+     */
+    @Query("SELECT i.id, ic.id, ic.name FROM Item i JOIN i.categories ic WHERE i.id IN :ids")
+    List<Object[]> getCategoryNames(@Param("ids") Collection<Long> ids);
+
+    /**
+     * Compare-and-set bid acceptance
+     *
+     * Raises the price of an open auction only if the offer is higher than
+     * the stored price, so concurrent bidders (or nodes) cannot overwrite
+     * each other. Reaching the buy price completes the auction in the same
+     * statement, which also records the bidder as the highest one and counts
+     * the bid.
+     *
+     * @return 1 if the bid was accepted, 0 otherwise
+     */
+    @Modifying(clearAutomatically = true)
+    @Transactional
+    @Query(
+            "update Item i set i.currently = :offer, i.highestBidder = :bidder, " +
+            "i.highestBidId = null, i.bidCount = i.bidCount + 1, i.updatedAt = :now, " +
+            "i.auctionCompleted = case when i.buyPrice is not null and i.buyPrice <= :offer " +
+            "then true else false end " +
+            "where i.id = :id and i.currently < :offer and i.auctionCompleted = false and i.endsAt > :now"
+    )
+    int placeBid(@Param("id") Long id, @Param("bidder") User bidder,
+                 @Param("offer") Double offer, @Param("now") Date now);
+
+    /**
+     * Writes the details of an auction as long as it has no bids and is
+     * open, so that a bid accepted meanwhile by placeBid is never
+     * overwritten with the price from before it
+     *
+     * @return 1 if the auction was modified, 0 if it has bids or is completed
+     */
+    @Modifying(clearAutomatically = true)
+    @Transactional
+    @Query(
+            "update Item i set i.name = :name, i.description = :description, i.endsAt = :endsAt, " +
+            "i.buyPrice = :buyPrice, i.firstBid = :firstBid, i.updatedAt = :now " +
+            "where i.id = :id and i.bidCount = 0 and i.auctionCompleted = false"
+    )
+    int modifyDetails(@Param("id") Long id, @Param("name") String name, @Param("description") String description,
+                      @Param("endsAt") Date endsAt, @Param("buyPrice") Double buyPrice,
+                      @Param("firstBid") Double firstBid, @Param("now") Date now);
+
+    /**
+     * Links the auction to the row of its highest bid once the row
+     * is written, unless a higher offer has been accepted meanwhile
+     */
+    @Modifying
+    @Transactional
+    @Query("update Item i set i.highestBidId = :bidId where i.id = :id and i.currently = :offer")
+    int setHighestBid(@Param("id") Long id, @Param("bidId") Long bidId, @Param("offer") Double offer);
+
+    /**
+     * The highest bidder of each of the given auctions
+     * as (itemId, bidderId) pairs; auctions without bids are left out
+     */
+    @Query("SELECT i.id, hb.id FROM Item i JOIN i.highestBidder hb WHERE i.id IN :ids")
+    List<Object[]> getWinners(@Param("ids") Collection<Long> ids);
+
+    /**
+     * Open auctions of the given shards (id mod shardCount) whose time is up
+     * as (itemId, sellerId) pairs. The rows stay locked until the closing
+     * transaction ends
+     */
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query(
+            "SELECT i.id, i.seller.id FROM Item i WHERE i.auctionCompleted = false AND i.endsAt <= :now " +
+            "AND MOD(i.id, :shardCount) IN :shards"
+    )
+    List<Object[]> getDueAuctions(@Param("now") Date now, @Param("shardCount") Integer shardCount,
+                                  @Param("shards") Collection<Integer> shards, Pageable pageable);
+
+    /**
+     * The given auctions that are still open and whose time is up
+     * as (itemId, sellerId) pairs, looked up by primary key. The rows
+     * stay locked until the closing transaction ends
+     */
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("SELECT i.id, i.seller.id FROM Item i WHERE i.id IN :ids AND i.auctionCompleted = false AND i.endsAt <= :now")
+    List<Object[]> getDueAuctionsById(@Param("ids") Collection<Long> ids, @Param("now") Date now);
+
+    /**
+     * Completes the given auctions in one statement
+     *
+     * @return the number of auctions completed
+     */
+    @Modifying(clearAutomatically = true)
+    @Transactional
+    @Query(
+            "update Item i set i.auctionCompleted = true, i.updatedAt = :now " +
+            "where i.id in :ids and i.auctionCompleted = false and i.endsAt <= :now"
+    )
+    int completeAuctions(@Param("ids") Collection<Long> ids, @Param("now") Date now);
+}
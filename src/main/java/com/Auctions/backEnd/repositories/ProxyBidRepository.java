@@ -0,0 +1,38 @@
+package com.Auctions.backEnd.repositories;
+
+import com.Auctions.backEnd.models.ProxyBid;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.Collection;
+import java.util.List;
+
+@Repository
+public interface ProxyBidRepository extends JpaRepository<ProxyBid, Long> {
+
+    ProxyBid findByItem_IdAndBidder_Id(Long itemId, Long bidderId);
+
+    /**
+     * The active proxies of an auction in the order their maximums were
+     * set, which breaks the ties between them
+     */
+    List<ProxyBid> findByItem_IdAndActiveTrueOrderByRaisedAtAscIdAsc(Long itemId);
+
+    List<ProxyBid> findByItem_IdInAndActiveTrueOrderByRaisedAtAscIdAsc(Collection<Long> itemIds);
+
+    /**
+     * Retires the proxies that have been outbid for good
+     */
+    @Modifying
+    @Transactional
+    @Query(
+            "update ProxyBid p set p.active = false " +
+            "where p.item.id = :itemId and p.maxOffer <= :price and p.bidder.id <> :leaderId"
+    )
+    int deactivateOutbid(@Param("itemId") Long itemId, @Param("price") Double price,
+                         @Param("leaderId") Long leaderId);
+}
@@ -0,0 +1,12 @@
+package com.Auctions.backEnd.requests;
+
+import lombok.*;
+
+@Getter
+@Setter
+@AllArgsConstructor
+@NoArgsConstructor
+public class BidRequest {
+    private Long itemId;
+    private Double offer;
+}
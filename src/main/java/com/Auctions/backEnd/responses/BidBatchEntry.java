@@ -0,0 +1,24 @@
+package com.Auctions.backEnd.responses;
+
+import com.Auctions.backEnd.models.Bid;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+/**
+ * Outcome of one entry of /bid/makeBids: either the bid
+ * or the error that /bid/makeBid would have returned
+ */
+@NoArgsConstructor
+@AllArgsConstructor
+@Getter
+@Setter
+public class BidBatchEntry {
+    private Long itemId;
+    private Double offer;
+    private boolean accepted;
+    private String error;
+    private Bid bid;
+    private boolean auctionCompleted;
+}
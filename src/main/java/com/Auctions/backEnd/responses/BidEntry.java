@@ -0,0 +1,25 @@
+package com.Auctions.backEnd.responses;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+import java.util.Date;
+
+/**
+ * Compact form of a bid, as listed in the bid history of an auction
+ */
+@NoArgsConstructor
+@AllArgsConstructor
+@Getter
+@Setter
+public class BidEntry {
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private Long id;
+    private Double offer;
+    private Date createdAt;
+    private Long bidderId;
+    private String bidder;
+}
@@ -0,0 +1,22 @@
+package com.Auctions.backEnd.responses;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+import java.util.List;
+
+/**
+ * A page of the bid history of an auction. The next page starts
+ * after (nextOffer, nextId); both are null on the last page
+ */
+@NoArgsConstructor
+@AllArgsConstructor
+@Getter
+@Setter
+public class BidHistory {
+    private List<BidEntry> bids;
+    private Double nextOffer;
+    private Long nextId;
+}
@@ -0,0 +1,28 @@
+package com.Auctions.backEnd.responses;
+
+import com.Auctions.backEnd.models.Item;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+import java.util.Date;
+
+/**
+ * Price change of an auction as pushed to the subscribers of /bid/stream/{itemId}
+ */
+@NoArgsConstructor
+@AllArgsConstructor
+@Getter
+@Setter
+public class PriceEvent {
+    private Long itemId;
+    private Double currently;
+    private Integer bidCount;
+    private Date endsAt;
+    private boolean completed;
+
+    public PriceEvent(Item item) {
+        this(item.getId(), item.getCurrently(), item.getBidCount(), item.getEndsAt(), item.isAuctionCompleted());
+    }
+}
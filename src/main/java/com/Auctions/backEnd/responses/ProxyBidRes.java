@@ -0,0 +1,26 @@
+package com.Auctions.backEnd.responses;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+import java.util.List;
+
+/**
+ * Outcome of registering a proxy bid: the bids the proxies placed
+ * and whether the requester is now the highest bidder
+ *
+ * The bids are stored asynchronously, so they have no id yet
+ */
+@NoArgsConstructor
+@AllArgsConstructor
+@Getter
+@Setter
+public class ProxyBidRes {
+    private Double maxOffer;
+    private Double currently;
+    private boolean leading;
+    private boolean auctionCompleted;
+    private List<BidEntry> bids;
+}
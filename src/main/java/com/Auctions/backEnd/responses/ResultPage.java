@@ -1,6 +1,7 @@
 package com.Auctions.backEnd.responses;
 
 import com.Auctions.backEnd.models.Item;
+import com.fasterxml.jackson.annotation.JsonInclude;
 import lombok.AllArgsConstructor;
 import lombok.Getter;
 import lombok.NoArgsConstructor;
@@ -16,4 +17,17 @@ public class ResultPage {
     private List<Item> content;
     private int totalElements;
     private int totalPages;
+
+    /** false if totalElements is a lower bound */
+    private boolean totalExact = true;
+
+    /** where the next page starts, when paging by cursor */
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private String cursor;
+
+    public ResultPage(List<Item> content, int totalElements, int totalPages) {
+        this.content = content;
+        this.totalElements = totalElements;
+        this.totalPages = totalPages;
+    }
 }
@@ -0,0 +1,141 @@
+package com.Auctions.backEnd.services.Account;
+
+import com.Auctions.backEnd.repositories.AccountRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.web.servlet.mvc.method.RequestMappingInfo;
+import org.springframework.web.servlet.mvc.method.annotation.RequestMappingHandlerMapping;
+
+import javax.annotation.PostConstruct;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * Availability of usernames and emails
+ *
+ * Bloom filters over the usernames and the emails of the accounts are
+ * built at startup and updated whenever an account is created, so that
+ * a name that was never taken is answered without touching the database;
+ * only the possible hits fall through to the AccountRepository. The keys
+ * are lower-cased, so a name stored with other letter case is still a
+ * possible hit for a database that compares without case. The filters
+ * only serve the availability checks of the sign up form; the sign up
+ * itself always asks the database.
+ *
+ * The usernames that would clash with a route are kept in a set as well:
+ * a username is reserved if some route pattern contains it, so every
+ * substring of the patterns within the allowed username lengths is
+ * computed once instead of walking the handler mappings on every signup.
+ */
+@Service
+public class AvailabilityIndex {
+
+    public static final int MIN_USERNAME = 5;
+    public static final int MAX_USERNAME = 15;
+
+    private final AccountRepository accountRepository;
+    private final RequestMappingHandlerMapping requestMappingHandlerMapping;
+
+    private final BloomFilter usernames;
+    private final BloomFilter emails;
+    private volatile Set<String> reserved;
+
+    @Autowired
+    public AvailabilityIndex(AccountRepository accountRepository,
+                             RequestMappingHandlerMapping requestMappingHandlerMapping,
+                             @Value("${app.availability.expected-accounts:1000000}") int expected,
+                             @Value("${app.availability.false-positive-rate:0.01}") double falsePositiveRate) {
+        this.accountRepository = accountRepository;
+        this.requestMappingHandlerMapping = requestMappingHandlerMapping;
+        this.usernames = new BloomFilter(expected, falsePositiveRate);
+        this.emails = new BloomFilter(expected, falsePositiveRate);
+    }
+
+
+    @PostConstruct
+    public void load() {
+        List<Object[]> accounts = accountRepository.getUsernamesAndEmails();
+        accounts.forEach(row -> add((String) row[0], (String) row[1]));
+        System.out.println("Indexed " + accounts.size() + " account names");
+    }
+
+
+    /**
+     * Registers a new account
+     *
+     * @param username - its username
+     * @param email - its email
+     */
+    public void add(String username, String email) {
+        if (username != null) {
+            usernames.add(key(username));
+        }
+        if (email != null) {
+            emails.add(key(email));
+        }
+    }
+
+
+    /**
+     * @param username - a username
+     * @return true if an account with the username exists
+     */
+    public boolean usernameTaken(String username) {
+        if (username != null && !usernames.mightContain(key(username))) {
+            return false;
+        }
+        return accountRepository.findByUsername(username) != null;
+    }
+
+    /**
+     * @param email - an email
+     * @return true if an account with the email exists
+     */
+    public boolean emailTaken(String email) {
+        if (email != null && !emails.mightContain(key(email))) {
+            return false;
+        }
+        return accountRepository.findByEmail(email) != null;
+    }
+
+
+    /**
+     * @param username - a username
+     * @return true if some route pattern contains the username
+     */
+    public boolean isReserved(String username) {
+        if (username.length() < MIN_USERNAME || username.length() > MAX_USERNAME) {
+            //not a valid username anyway, check it the slow way
+            return routePatterns().stream().anyMatch(pattern -> pattern.contains(username));
+        }
+        Set<String> segments = reserved;
+        if (segments == null) {
+            segments = new HashSet<>();
+            for (String pattern : routePatterns()) {
+                for (int from = 0; from < pattern.length(); from++) {
+                    int last = Math.min(pattern.length(), from + MAX_USERNAME);
+                    for (int to = from + MIN_USERNAME; to <= last; to++) {
+                        segments.add(pattern.substring(from, to));
+                    }
+                }
+            }
+            reserved = segments;
+        }
+        return segments.contains(username);
+    }
+
+    private static String key(String name) {
+        return name.toLowerCase(Locale.ROOT);
+    }
+
+    private Set<String> routePatterns() {
+        Set<String> patterns = new HashSet<>();
+        for (RequestMappingInfo mapping : requestMappingHandlerMapping.getHandlerMethods().keySet()) {
+            patterns.addAll(mapping.getPatternsCondition().getPatterns());
+        }
+        return patterns;
+    }
+}
@@ -0,0 +1,276 @@
+package com.Auctions.backEnd.services.Auction;
+
+import com.Auctions.backEnd.models.Item;
+import com.Auctions.backEnd.repositories.ItemRepository;
+import com.Auctions.backEnd.responses.PriceEvent;
+import com.Auctions.backEnd.services.Bid.BidEngine;
+import com.Auctions.backEnd.services.Bid.PriceFeed;
+import com.Auctions.backEnd.services.Search.ItemEvent;
+import com.Auctions.backEnd.services.Search.SearchIndexer;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PreDestroy;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.Collectors;
+
+/**
+ * Auction auto-closure
+ *
+ * The open auctions are loaded once at startup as (endsAt, itemId) pairs
+ * in a min-heap. A single thread sleeps until the earliest 'endsAt' and
+ * wakes up only when auctions are due; they are then closed in bulk by the
+ * AuctionClosureService. ItemController keeps the heap up to date when
+ * auctions are created, modified or deleted.
+ *
+ * The heap holds every auction once, rescheduling moves its entry and
+ * cancelling removes it. The due auctions are closed by primary key; the
+ * rows are locked and checked to be open and due again when they are
+ * closed, so an auction that was extended or closed through another node
+ * meanwhile is left alone, and rescheduled from the database if open.
+ *
+ * Since the heap of a node only knows the changes made through that node,
+ * every node also sweeps the shards it holds through the ClosureCoordinator
+ * for due auctions, on the due index of 'item'. This is only a fallback for
+ * the auctions of a stopped node, so the shards are swept rarely and right
+ * after new shards are taken over.
+ */
+@Service
+public class AuctionCloser {
+
+    private static final long RETRY_MILLIS = 5000;
+    private static final long SHARD_CHECK_MILLIS = 5000;
+
+    private final ItemRepository itemRepository;
+    private final AuctionClosureService closureService;
+    private final BidEngine bidEngine;
+    private final ClosureCoordinator coordinator;
+    private final PriceFeed priceFeed;
+    private final SearchIndexer searchIndexer;
+    private final long sweepMillis;
+
+    private final DeadlineQueue queue = new DeadlineQueue();
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition changed = lock.newCondition();
+
+    /** the shards this node holds since it last swept them, only used by the closure thread */
+    private final Set<Integer> sweptShards = new HashSet<>();
+    private Thread thread;
+    private volatile boolean running;
+
+    @Autowired
+    public AuctionCloser(ItemRepository itemRepository, AuctionClosureService closureService,
+                         BidEngine bidEngine, ClosureCoordinator coordinator, PriceFeed priceFeed,
+                         SearchIndexer searchIndexer, @Value("${app.closure.sweep-seconds:300}") int sweepSeconds) {
+        this.itemRepository = itemRepository;
+        this.closureService = closureService;
+        this.bidEngine = bidEngine;
+        this.coordinator = coordinator;
+        this.priceFeed = priceFeed;
+        this.searchIndexer = searchIndexer;
+        this.sweepMillis = sweepSeconds * 1000L;
+    }
+
+
+    /**
+     * Joins the closure cluster, loads the deadlines of the open auctions
+     * and starts the closure thread
+     */
+    public void start() {
+
+        coordinator.start();
+
+        List<Object[]> open = itemRepository.getOpenAuctionDeadlines();
+        lock.lock();
+        try {
+            open.forEach(row -> push((Long) row[0], ((Date) row[1]).getTime()));
+        } finally {
+            lock.unlock();
+        }
+        System.out.println("Scheduled closure of " + open.size() + " open auctions");
+
+        running = true;
+        thread = new Thread(this::loop, "auction-closer");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+
+    /**
+     * Schedules (or reschedules) the closure of an auction
+     *
+     * @param itemId - the auction
+     * @param endsAt - when the auction ends
+     */
+    public void schedule(long itemId, Date endsAt) {
+        lock.lock();
+        try {
+            push(itemId, endsAt.getTime());
+            changed.signal();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+
+    /**
+     * Removes an auction from the closure schedule
+     * e.g. when it is deleted or completed through its buy price
+     *
+     * @param itemId - the auction
+     */
+    public void cancel(long itemId) {
+        lock.lock();
+        try {
+            queue.remove(itemId);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+
+    private void push(long itemId, long deadline) {
+        queue.push(deadline, itemId);
+    }
+
+
+    /**
+     * Pops the auctions due at 'now'. Called with the lock held
+     *
+     * @param now - the current time
+     * @return the auctions whose deadline has passed
+     */
+    List<Long> takeDue(long now) {
+        List<Long> due = new ArrayList<>();
+        while (!queue.isEmpty() && queue.peekDeadline() <= now) {
+            due.add(queue.peekId());
+            queue.pop();
+        }
+        return due;
+    }
+
+
+    private void loop() {
+        long nextSweep = System.currentTimeMillis();
+
+        while (running) {
+            List<Long> due;
+            boolean sweep;
+
+            lock.lock();
+            try {
+                long now = System.currentTimeMillis();
+                due = takeDue(now);
+
+                List<Integer> shards = coordinator.currentShards();
+                sweptShards.retainAll(shards);
+                sweep = now >= nextSweep || !sweptShards.containsAll(shards);
+                if (due.isEmpty() && !sweep) {
+                    long wakeUp = Math.min(now + SHARD_CHECK_MILLIS, nextSweep);
+                    if (!queue.isEmpty()) {
+                        wakeUp = Math.min(queue.peekDeadline(), wakeUp);
+                    }
+                    changed.await(wakeUp - now, TimeUnit.MILLISECONDS);
+                    continue;
+                }
+            } catch (InterruptedException e) {
+                return;
+            } finally {
+                lock.unlock();
+            }
+
+            if (sweep) {
+                nextSweep = System.currentTimeMillis() + sweepMillis;
+            }
+
+            try {
+                closeDue(due, sweep);
+            } catch (InterruptedException e) {
+                return;
+            } catch (Exception e) {
+                System.err.println("Could not close auctions");
+                e.printStackTrace();
+                lock.lock();
+                try {
+                    //retried on the next pass
+                    long retry = System.currentTimeMillis() + RETRY_MILLIS;
+                    due.forEach(itemId -> push(itemId, retry));
+                } finally {
+                    lock.unlock();
+                }
+            }
+        }
+    }
+
+
+    /**
+     * Closes the triggered auctions that are still due and, on a sweep,
+     * every due auction of the shards this node holds, in batches of
+     * AuctionClosureService
+     *
+     * @param triggered - the auctions whose deadline came up in the heap
+     * @param sweep - whether to sweep the shards of this node
+     */
+    private void closeDue(List<Long> triggered, boolean sweep) throws InterruptedException {
+
+        Date now = new Date();
+        int batchSize = closureService.getBatchSize();
+        Set<Long> closed = new HashSet<>();
+        for (int from = 0; from < triggered.size(); from += batchSize) {
+            List<Long> batch = closureService.closeDue(
+                    triggered.subList(from, Math.min(from + batchSize, triggered.size())), now);
+            batch.forEach(this::completed);
+            closed.addAll(batch);
+        }
+
+        //the auctions that were not due after all have been extended through another node meanwhile
+        List<Long> open = triggered.stream()
+                .filter(itemId -> !closed.contains(itemId))
+                .collect(Collectors.toList());
+        if (!open.isEmpty()) {
+            itemRepository.findAllById(open).forEach(item -> {
+                if (!item.isAuctionCompleted()) {
+                    schedule(item.getId(), item.getEndsAt());
+                }
+            });
+        }
+
+        if (!sweep) {
+            return;
+        }
+        List<Integer> shards = coordinator.currentShards();
+        sweptShards.addAll(shards);
+        if (shards.isEmpty()) {
+            return;
+        }
+        List<Long> batch;
+        do {
+            batch = closureService.closeDue(now, coordinator.getShardCount(), shards);
+            batch.forEach(this::completed);
+        } while (batch.size() == batchSize);
+    }
+
+    private void completed(long itemId) {
+        bidEngine.evict(itemId);
+        searchIndexer.publish(ItemEvent.completed(itemId));
+        if (priceFeed.hasSubscribers(itemId)) {
+            Item item = itemRepository.findItemById(itemId);
+            if (item != null) {
+                priceFeed.publish(new PriceEvent(item));
+            }
+        }
+    }
+
+
+    @PreDestroy
+    public void shutdown() {
+        running = false;
+        if (thread != null) {
+            thread.interrupt();
+        }
+    }
+}
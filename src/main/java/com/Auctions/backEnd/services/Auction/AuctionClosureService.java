@@ -0,0 +1,115 @@
+package com.Auctions.backEnd.services.Auction;
+
+import com.Auctions.backEnd.models.Notification;
+import com.Auctions.backEnd.repositories.ItemRepository;
+import com.Auctions.backEnd.repositories.NotificationRepository;
+import com.Auctions.backEnd.repositories.UserRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * Closes expired auctions in batches
+ *
+ * Every batch is one transaction: the due auctions are selected, by
+ * primary key or by shard, and locked, completed by a single update,
+ * their winners are read from the 'highestBidder' column in a single
+ * query and the seller and winner notifications are inserted together,
+ * so Hibernate sends them as JDBC batches.
+ *
+ * The notifications only reference their recipient, so the users are
+ * neither loaded nor saved.
+ */
+@Service
+public class AuctionClosureService {
+
+    private final ItemRepository itemRepository;
+    private final UserRepository userRepository;
+    private final NotificationRepository notificationRepository;
+
+    private final int batchSize;
+
+    @Autowired
+    public AuctionClosureService(ItemRepository itemRepository, UserRepository userRepository,
+                                 NotificationRepository notificationRepository,
+                                 @Value("${app.closure.batch-size:1000}") int batchSize) {
+        this.itemRepository = itemRepository;
+        this.userRepository = userRepository;
+        this.notificationRepository = notificationRepository;
+        this.batchSize = batchSize;
+    }
+
+
+    /**
+     * Closes the next batch of auctions of the given shards that ended until 'now'
+     *
+     * @param now - the closing time
+     * @param shardCount - the number of shards
+     * @param shards - the shards to close auctions of
+     * @return the ids of the closed auctions, at most one batch
+     */
+    @Transactional
+    public List<Long> closeDue(Date now, int shardCount, Collection<Integer> shards) {
+        return close(itemRepository.getDueAuctions(now, shardCount, shards, PageRequest.of(0, batchSize)), now);
+    }
+
+    /**
+     * Closes the given auctions if they are still open and ended until 'now'
+     *
+     * @param itemIds - the auctions, at most one batch
+     * @param now - the closing time
+     * @return the ids of the closed auctions
+     */
+    @Transactional
+    public List<Long> closeDue(Collection<Long> itemIds, Date now) {
+        return close(itemRepository.getDueAuctionsById(itemIds, now), now);
+    }
+
+
+    private List<Long> close(List<Object[]> due, Date now) {
+
+        if (due.isEmpty()) {
+            return Collections.emptyList();
+        }
+
+        List<Long> ids = new ArrayList<>(due.size());
+        due.forEach(row -> ids.add((Long) row[0]));
+        itemRepository.completeAuctions(ids, now);
+
+        List<Notification> notifications = new ArrayList<>(due.size() * 2);
+        due.forEach(row -> notifications.add(notification((Long) row[1], (Long) row[0],
+                "Your auction has been completed! Click here for details")));
+
+        itemRepository.getWinners(ids).forEach(row -> notifications.add(notification((Long) row[1], (Long) row[0],
+                "Congratulations, you won an auction! Click here for details")));
+
+        notificationRepository.saveAll(notifications);
+
+        System.err.println("Closed " + ids.size() + " auctions");
+        return ids;
+    }
+
+    /**
+     * @return the maximum number of auctions closed by one call of closeDue
+     */
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+
+    private Notification notification(Long recipientId, Long itemId, String message) {
+        Notification notification = new Notification();
+        notification.setRecipient(userRepository.getOne(recipientId));
+        notification.setItemId(itemId);
+        notification.setMessage(message);
+        return notification;
+    }
+}
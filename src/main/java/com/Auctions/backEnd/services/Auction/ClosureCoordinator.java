@@ -0,0 +1,193 @@
+package com.Auctions.backEnd.services.Auction;
+
+import com.Auctions.backEnd.models.ClosureLease;
+import com.Auctions.backEnd.models.ClosureNode;
+import com.Auctions.backEnd.repositories.ClosureLeaseRepository;
+import com.Auctions.backEnd.repositories.ClosureNodeRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PreDestroy;
+import java.util.*;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Splits the auction closure between the running nodes
+ *
+ * The auctions are split in shards by 'item id mod shards'. Every node
+ * sends a heartbeat to the 'closure_node' table and holds time-bounded
+ * leases on its share of the shards in the 'closure_lease' table; a lease
+ * is taken or renewed by a conditional update, so two nodes never hold
+ * the same shard. Every node aims at ceil(shards / live nodes) shards:
+ * a node above that releases shards and the others pick up the free or
+ * expired ones, so shards move to the remaining nodes when a node stops
+ * renewing and spread again when nodes join.
+ *
+ * A node only sweeps shards whose lease is still valid for a safety
+ * margin, so a slow node cannot sweep a shard that has already moved.
+ *
+ * Heartbeats and lease expiries are written and compared in the clock of
+ * the database, so the clocks of the nodes need not agree. A node times
+ * its own leases on its local monotonic clock, starting from before it
+ * read the database time, so it always gives a lease up early.
+ */
+@Service
+public class ClosureCoordinator {
+
+    private final ClosureLeaseRepository leaseRepository;
+    private final ClosureNodeRepository nodeRepository;
+
+    private final String nodeId;
+    private final int shardCount;
+    private final long leaseMillis;
+
+    /** shard -> lease expiry (System.nanoTime) of the shards held by this node */
+    private volatile Map<Integer, Long> leases = Collections.emptyMap();
+
+    private ScheduledExecutorService executor;
+
+    @Autowired
+    public ClosureCoordinator(ClosureLeaseRepository leaseRepository, ClosureNodeRepository nodeRepository,
+                              @Value("${app.closure.node-id:}") String nodeId,
+                              @Value("${app.closure.shards:16}") int shardCount,
+                              @Value("${app.closure.lease-seconds:30}") int leaseSeconds) {
+        this.leaseRepository = leaseRepository;
+        this.nodeRepository = nodeRepository;
+        this.nodeId = nodeId.isEmpty() ? UUID.randomUUID().toString() : nodeId;
+        this.shardCount = shardCount;
+        this.leaseMillis = leaseSeconds * 1000L;
+    }
+
+
+    /**
+     * Creates the missing shard rows, takes a first share of the shards
+     * and keeps renewing and rebalancing them in the background
+     */
+    public void start() {
+
+        Set<Integer> existing = new HashSet<>();
+        leaseRepository.findAll().forEach(lease -> existing.add(lease.getShard()));
+        for (int shard = 0; shard < shardCount; shard++) {
+            if (!existing.contains(shard)) {
+                try {
+                    leaseRepository.save(new ClosureLease(shard));
+                } catch (DataIntegrityViolationException e) {
+                    //created by another node meanwhile
+                }
+            }
+        }
+
+        tick();
+
+        executor = Executors.newSingleThreadScheduledExecutor();
+        executor.scheduleAtFixedRate(() -> {
+            try {
+                tick();
+            } catch (Exception e) {
+                System.err.println("Could not renew closure leases");
+                e.printStackTrace();
+            }
+        }, leaseMillis / 3, leaseMillis / 3, TimeUnit.MILLISECONDS);
+    }
+
+
+    /**
+     * Heartbeat, lease renewal and rebalancing
+     */
+    synchronized void tick() {
+
+        long started = System.nanoTime();
+        Date nowDate = leaseRepository.currentTime();
+        long now = nowDate.getTime();
+        Date expiresAt = new Date(now + leaseMillis);
+        long validUntil = started + TimeUnit.MILLISECONDS.toNanos(leaseMillis);
+
+        nodeRepository.save(new ClosureNode(nodeId, nowDate));
+        nodeRepository.deleteStale(new Date(now - 10 * leaseMillis));
+
+        long live = Math.max(1, nodeRepository.countLive(new Date(now - leaseMillis)));
+        int target = (int) ((shardCount + live - 1) / live);
+
+        Set<Integer> held = new LinkedHashSet<>();
+        List<ClosureLease> others = new ArrayList<>();
+        for (ClosureLease lease : leaseRepository.findAll()) {
+            if (nodeId.equals(lease.getOwner()) && lease.getExpiresAt().getTime() > now) {
+                held.add(lease.getShard());
+            } else if (lease.getOwner() == null || lease.getExpiresAt().getTime() < now) {
+                others.add(lease);
+            }
+        }
+
+        //give back what is above the fair share
+        Iterator<Integer> it = held.iterator();
+        while (held.size() > target && it.hasNext()) {
+            Integer shard = it.next();
+            leaseRepository.release(shard, nodeId);
+            it.remove();
+        }
+
+        Map<Integer, Long> renewed = new HashMap<>();
+        for (Integer shard : held) {
+            if (leaseRepository.claim(shard, nodeId, expiresAt) == 1) {
+                renewed.put(shard, validUntil);
+            }
+        }
+
+        for (ClosureLease lease : others) {
+            if (renewed.size() >= target) {
+                break;
+            }
+            if (leaseRepository.claim(lease.getShard(), nodeId, expiresAt) == 1) {
+                renewed.put(lease.getShard(), validUntil);
+            }
+        }
+
+        if (!renewed.keySet().equals(leases.keySet())) {
+            System.out.println("Node " + nodeId + " closes shards " + new TreeSet<>(renewed.keySet()));
+        }
+        leases = renewed;
+    }
+
+
+    /**
+     * @return the shards this node may sweep right now
+     */
+    public List<Integer> currentShards() {
+        long limit = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(leaseMillis / 3);
+        List<Integer> shards = new ArrayList<>();
+        leases.forEach((shard, expiry) -> {
+            if (expiry - limit > 0) {
+                shards.add(shard);
+            }
+        });
+        return shards;
+    }
+
+    public int getShardCount() {
+        return shardCount;
+    }
+
+    public String getNodeId() {
+        return nodeId;
+    }
+
+
+    @PreDestroy
+    public void shutdown() {
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+        //let the other nodes take over without waiting for the leases to expire
+        try {
+            leases.keySet().forEach(shard -> leaseRepository.release(shard, nodeId));
+            nodeRepository.deleteById(nodeId);
+        } catch (Exception e) {
+            System.err.println("Could not release closure leases");
+        }
+        leases = Collections.emptyMap();
+    }
+}
@@ -0,0 +1,209 @@
+package com.Auctions.backEnd.services.Auction;
+
+import java.util.Arrays;
+
+/**
+ * Binary min-heap of (deadline, itemId) pairs kept in two parallel
+ * primitive arrays, so that hundreds of thousands of open auctions
+ * cost two longs each instead of an object per entry
+ *
+ * An auction is in the heap at most once: the position of every item id
+ * is kept in an open addressing table of primitive arrays, so that a new
+ * deadline moves the entry in place and a cancelled auction is removed
+ * right away.
+ *
+ * Not thread-safe, the AuctionCloser guards it with its lock
+ */
+class DeadlineQueue {
+
+    private long[] deadlines = new long[1024];
+    private long[] ids = new long[1024];
+    private int size;
+
+    /** item ids and their heap positions plus one, 0 for a free slot */
+    private long[] keys = new long[2048];
+    private int[] positions = new int[2048];
+
+    int size() {
+        return size;
+    }
+
+    boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Adds an auction, or moves it to its new deadline if it is in the heap
+     */
+    void push(long deadline, long itemId) {
+        int i = indexOf(itemId);
+        if (i >= 0) {
+            if (deadline < deadlines[i]) {
+                siftUp(i, deadline, itemId);
+            } else {
+                siftDown(i, deadline, itemId);
+            }
+            return;
+        }
+
+        if (size == deadlines.length) {
+            deadlines = Arrays.copyOf(deadlines, size * 2);
+            ids = Arrays.copyOf(ids, size * 2);
+        }
+        siftUp(size++, deadline, itemId);
+    }
+
+    long peekDeadline() {
+        return deadlines[0];
+    }
+
+    long peekId() {
+        return ids[0];
+    }
+
+    void pop() {
+        remove(ids[0]);
+    }
+
+    /**
+     * @return true if the auction was in the heap
+     */
+    boolean remove(long itemId) {
+        int i = indexOf(itemId);
+        if (i < 0) {
+            return false;
+        }
+        unindex(itemId);
+        size--;
+        if (i == size) {
+            return true;
+        }
+        long deadline = deadlines[size];
+        long lastId = ids[size];
+        if (i > 0 && deadlines[(i - 1) >>> 1] > deadline) {
+            siftUp(i, deadline, lastId);
+        } else {
+            siftDown(i, deadline, lastId);
+        }
+        return true;
+    }
+
+    /**
+     * @return the deadline of an auction, or -1 if it is not in the heap
+     */
+    long deadlineOf(long itemId) {
+        int i = indexOf(itemId);
+        return i < 0 ? -1 : deadlines[i];
+    }
+
+
+    private void siftUp(int i, long deadline, long itemId) {
+        while (i > 0) {
+            int parent = (i - 1) >>> 1;
+            if (deadlines[parent] <= deadline) {
+                break;
+            }
+            place(i, deadlines[parent], ids[parent]);
+            i = parent;
+        }
+        place(i, deadline, itemId);
+    }
+
+    private void siftDown(int i, long deadline, long itemId) {
+        int half = size >>> 1;
+        while (i < half) {
+            int child = 2 * i + 1;
+            if (child + 1 < size && deadlines[child + 1] < deadlines[child]) {
+                child++;
+            }
+            if (deadline <= deadlines[child]) {
+                break;
+            }
+            place(i, deadlines[child], ids[child]);
+            i = child;
+        }
+        place(i, deadline, itemId);
+    }
+
+    private void place(int i, long deadline, long itemId) {
+        deadlines[i] = deadline;
+        ids[i] = itemId;
+        index(itemId, i);
+    }
+
+
+    private int slot(long itemId) {
+        long mixed = itemId * 0x9E3779B97F4A7C15L;
+        return (int) (mixed ^ (mixed >>> 32)) & (keys.length - 1);
+    }
+
+    private int indexOf(long itemId) {
+        int mask = keys.length - 1;
+        for (int s = slot(itemId); positions[s] != 0; s = (s + 1) & mask) {
+            if (keys[s] == itemId) {
+                return positions[s] - 1;
+            }
+        }
+        return -1;
+    }
+
+    private void index(long itemId, int position) {
+        int mask = keys.length - 1;
+        int s = slot(itemId);
+        while (positions[s] != 0 && keys[s] != itemId) {
+            s = (s + 1) & mask;
+        }
+        boolean added = positions[s] == 0;
+        keys[s] = itemId;
+        positions[s] = position + 1;
+        //the table is kept at most half full
+        if (added && size * 2 > keys.length) {
+            rehash(keys.length * 2);
+        }
+    }
+
+    private void unindex(long itemId) {
+        int mask = keys.length - 1;
+        int s = slot(itemId);
+        while (keys[s] != itemId || positions[s] == 0) {
+            s = (s + 1) & mask;
+        }
+        //shift back the entries that would no longer be found past the hole
+        while (true) {
+            positions[s] = 0;
+            int next = s;
+            while (true) {
+                next = (next + 1) & mask;
+                if (positions[next] == 0) {
+                    return;
+                }
+                int home = slot(keys[next]);
+                boolean reachable = s <= next ? (s < home && home <= next) : (s < home || home <= next);
+                if (!reachable) {
+                    break;
+                }
+            }
+            keys[s] = keys[next];
+            positions[s] = positions[next];
+            s = next;
+        }
+    }
+
+    private void rehash(int capacity) {
+        long[] oldKeys = keys;
+        int[] oldPositions = positions;
+        keys = new long[capacity];
+        positions = new int[capacity];
+        int mask = capacity - 1;
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldPositions[i] != 0) {
+                int s = slot(oldKeys[i]);
+                while (positions[s] != 0) {
+                    s = (s + 1) & mask;
+                }
+                keys[s] = oldKeys[i];
+                positions[s] = oldPositions[i];
+            }
+        }
+    }
+}
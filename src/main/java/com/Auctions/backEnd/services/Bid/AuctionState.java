@@ -0,0 +1,42 @@
+package com.Auctions.backEnd.services.Bid;
+
+import com.Auctions.backEnd.models.Item;
+
+import java.util.LinkedHashMap;
+
+/**
+ * In-memory view of an open auction as seen by the BidEngine
+ *
+ * Only the fields needed to accept or reject a bid are kept here.
+ * Every field is guarded by the stripe lock of the item, so the
+ * class itself is not thread-safe
+ */
+class AuctionState {
+
+    final long itemId;
+    final long sellerId;
+    final double buyPrice;
+    long endsAt;
+    double currently;
+    long leaderId;
+    int bidCount;
+    boolean completed;
+
+    /** bidderId -> maximum of the active proxies, in the order their maximums were set */
+    final LinkedHashMap<Long, Double> proxies = new LinkedHashMap<>();
+
+    AuctionState(Item item) {
+        this.itemId = item.getId();
+        this.sellerId = item.getSeller().getId();
+        this.buyPrice = item.getBuyPrice() != null ? item.getBuyPrice() : Double.NaN;
+        this.endsAt = item.getEndsAt().getTime();
+        this.currently = item.getCurrently();
+        this.completed = item.isAuctionCompleted();
+        this.bidCount = item.getBidCount();
+        this.leaderId = item.getHighestBidder() == null ? 0L : item.getHighestBidder().getId();
+    }
+
+    boolean hasBuyPrice() {
+        return !Double.isNaN(buyPrice);
+    }
+}
@@ -0,0 +1,437 @@
+package com.Auctions.backEnd.services.Bid;
+
+import com.Auctions.backEnd.models.Bid;
+import com.Auctions.backEnd.models.Item;
+import com.Auctions.backEnd.models.ProxyBid;
+import com.Auctions.backEnd.models.User;
+import com.Auctions.backEnd.repositories.BidRepository;
+import com.Auctions.backEnd.repositories.ItemRepository;
+import com.Auctions.backEnd.repositories.ProxyBidRepository;
+import com.Auctions.backEnd.repositories.UserRepository;
+import com.Auctions.backEnd.responses.PriceEvent;
+import lombok.Getter;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Bid engine
+ *
+ * Keeps the price, buy price, end time and leader of every auction
+ * that received a bid in memory, so that losing bids are rejected
+ * without touching the database.
+ *
+ * Bids on the same item are serialized by a lock stripe chosen by the
+ * item id, so bids on different items run in parallel. A winning bid is
+ * confirmed by a single conditional update of the item row (see
+ * ItemRepository.placeBid), which also protects against other nodes
+ * bidding on the same item. The bid is journaled (BidJournal) before
+ * that update, so a crash in between cannot lose it, and its row
+ * reaches the 'bid' table in batches.
+ *
+ * Users may also register a hidden maximum (ProxyBid). After every change
+ * the competing maximums of an auction are resolved in one step and only
+ * the visible outcome becomes bids: the runner-up at its maximum and the
+ * winner one increment above it.
+ */
+@Service
+public class BidEngine {
+
+    public enum Status { ACCEPTED, NOT_FOUND, COMPLETED, OWN_AUCTION, TOO_LOW }
+
+    private final ItemRepository itemRepository;
+    private final UserRepository userRepository;
+    private final BidRepository bidRepository;
+    private final ProxyBidRepository proxyBidRepository;
+    private final TransactionTemplate transactionTemplate;
+    private final BidJournal bidJournal;
+
+    private final ConcurrentHashMap<Long, AuctionState> auctions = new ConcurrentHashMap<>();
+    private final Object[] locks;
+
+    @Autowired
+    public BidEngine(ItemRepository itemRepository, UserRepository userRepository,
+                     BidRepository bidRepository, ProxyBidRepository proxyBidRepository,
+                     PlatformTransactionManager transactionManager, BidJournal bidJournal) {
+        this.itemRepository = itemRepository;
+        this.userRepository = userRepository;
+        this.bidRepository = bidRepository;
+        this.proxyBidRepository = proxyBidRepository;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.bidJournal = bidJournal;
+
+        int cores = Runtime.getRuntime().availableProcessors();
+
+        this.locks = new Object[Integer.highestOneBit(cores * 16 - 1) << 1];
+        for (int i = 0; i < locks.length; i++) {
+            locks[i] = new Object();
+        }
+    }
+
+
+    /**
+     * Result of a bid as decided by the engine
+     */
+    @Getter
+    public static class Result {
+        private final Status status;
+        private final List<Bid> bids;
+        private final boolean auctionCompleted;
+        private final boolean leading;
+        private final PriceEvent price;
+
+        private Result(Status status, List<Bid> bids, boolean auctionCompleted, boolean leading, PriceEvent price) {
+            this.status = status;
+            this.bids = bids;
+            this.auctionCompleted = auctionCompleted;
+            this.leading = leading;
+            this.price = price;
+        }
+
+        private static Result rejected(Status status) {
+            return new Result(status, Collections.emptyList(), false, false, null);
+        }
+
+        /**
+         * @return the first bid placed, on a plain bid the one of the requester
+         */
+        public Bid getBid() {
+            return bids.isEmpty() ? null : bids.get(0);
+        }
+    }
+
+
+    /**
+     * Applies a bid of a user to an auction
+     *
+     * The checks are the ones of the former BidController.makeBid:
+     * the auction must exist and be open, the bidder cannot be the
+     * seller and the offer must be higher than the current price.
+     * Reaching the buy price completes the auction. The active proxies
+     * of other users answer the bid right away.
+     *
+     * @param itemId - the auction
+     * @param bidder - the user who bids
+     * @param offer - the amount of the bid
+     * @return the decision and, if accepted, the journaled bids and the new price
+     */
+    public Result placeBid(long itemId, User bidder, double offer) {
+
+        Date now = new Date();
+
+        synchronized (lockOf(itemId)) {
+
+            AuctionState state = auctions.get(itemId);
+            if (state == null) {
+                state = load(itemId);
+                if (state == null) {
+                    return Result.rejected(Status.NOT_FOUND);
+                }
+            }
+
+            Status check = check(state, bidder, offer, now);
+            if (check != null) {
+                return Result.rejected(check);
+            }
+
+            List<Bid> bids = new ArrayList<>();
+            //the database has the last word: another node may have moved the price
+            if (!accept(state, bidder.getId(), offer, now, bids)) {
+                state = load(itemId);
+                if (state == null) {
+                    return Result.rejected(Status.NOT_FOUND);
+                }
+                check = check(state, bidder, offer, now);
+                return Result.rejected(check != null ? check : Status.TOO_LOW);
+            }
+            bids.get(0).setBidder(bidder);
+
+            resolveProxies(state, now, bids);
+            return accepted(state, bidder, bids);
+        }
+    }
+
+
+    /**
+     * Registers (or raises) the hidden maximum of a user on an auction
+     * and bids on behalf of the user as far as needed to lead
+     *
+     * @param itemId - the auction
+     * @param bidder - the user
+     * @param maxOffer - the most the user is willing to pay
+     * @return the decision and the bids placed by the proxies
+     */
+    public Result placeProxyBid(long itemId, User bidder, double maxOffer) {
+
+        Date now = new Date();
+
+        synchronized (lockOf(itemId)) {
+
+            AuctionState state = load(itemId);
+            if (state == null) {
+                return Result.rejected(Status.NOT_FOUND);
+            }
+
+            Status check = check(state, bidder, maxOffer, now);
+            if (check != null) {
+                return Result.rejected(check);
+            }
+
+            Double previous = state.proxies.get(bidder.getId());
+            if (previous != null && Double.compare(maxOffer, previous) <= 0) {
+                return Result.rejected(Status.TOO_LOW);
+            }
+
+            ProxyBid proxy = proxyBidRepository.findByItem_IdAndBidder_Id(itemId, bidder.getId());
+            if (proxy == null) {
+                proxy = new ProxyBid();
+                proxy.setItem(itemRepository.getOne(itemId));
+                proxy.setBidder(bidder);
+            }
+            proxy.setMaxOffer(maxOffer);
+            proxy.setRaisedAt(now);
+            proxy.setActive(true);
+            proxyBidRepository.save(proxy);
+            //a raise goes behind the maximums set before it
+            state.proxies.remove(bidder.getId());
+            state.proxies.put(bidder.getId(), maxOffer);
+
+            List<Bid> bids = new ArrayList<>();
+            resolveProxies(state, now, bids);
+            return accepted(state, bidder, bids);
+        }
+    }
+
+
+    /**
+     * Resolves the active proxies of an auction in one step
+     *
+     * The highest maximum (the one set earliest on a tie) wins and ends up one
+     * increment above the runner-up or the current price, whichever is
+     * higher, but never above its own maximum or the buy price. The
+     * runner-up shows up in the history with a bid at its maximum.
+     */
+    private void resolveProxies(AuctionState state, Date now, List<Bid> bids) {
+
+        if (state.completed || state.proxies.isEmpty()) {
+            return;
+        }
+
+        long firstId = 0;
+        double firstMax = Double.NEGATIVE_INFINITY;
+        long secondId = 0;
+        double secondMax = Double.NEGATIVE_INFINITY;
+        for (Map.Entry<Long, Double> proxy : state.proxies.entrySet()) {
+            double max = proxy.getValue();
+            if (max > firstMax) {
+                secondId = firstId;
+                secondMax = firstMax;
+                firstId = proxy.getKey();
+                firstMax = max;
+            } else if (max > secondMax) {
+                secondId = proxy.getKey();
+                secondMax = max;
+            }
+        }
+
+        double competitor = state.currently;
+        if (secondId != 0 && secondMax > state.currently) {
+            if (secondMax < firstMax && !accept(state, secondId, secondMax, now, bids)) {
+                return;
+            }
+            competitor = secondMax;
+        }
+
+        if (!state.completed && firstMax > state.currently
+                && (firstId != state.leaderId || competitor > state.currently)) {
+
+            double target = Math.min(firstMax, BidIncrement.raise(competitor));
+            if (state.hasBuyPrice()) {
+                target = Math.min(target, state.buyPrice);
+            }
+            if (target > state.currently && !accept(state, firstId, target, now, bids)) {
+                return;
+            }
+        }
+
+        retireOutbid(state);
+    }
+
+    private void retireOutbid(AuctionState state) {
+        boolean outbid = state.proxies.entrySet().removeIf(proxy ->
+                proxy.getKey() != state.leaderId && proxy.getValue() <= state.currently);
+        if (outbid) {
+            proxyBidRepository.deactivateOutbid(state.itemId, state.currently, state.leaderId);
+        }
+    }
+
+
+    /**
+     * Journals a bid and confirms it against the item row
+     *
+     * @return false if the database refused the bid, the cached state is then dropped
+     */
+    private boolean accept(AuctionState state, long bidderId, double offer, Date now, List<Bid> bids) {
+
+        //journaled under the lock so the records keep the acceptance order
+        if (!place(state.itemId, bidderId, offer, now)) {
+            auctions.remove(state.itemId);
+            return false;
+        }
+
+        state.currently = offer;
+        state.leaderId = bidderId;
+        state.bidCount++;
+        if (state.hasBuyPrice() && Double.compare(state.buyPrice, offer) <= 0) {
+            state.completed = true;
+            auctions.remove(state.itemId);
+        }
+
+        Bid bid = new Bid(now);
+        bid.setBidder(userRepository.getOne(bidderId));
+        bid.setOffer(offer);
+        bids.add(bid);
+        return true;
+    }
+
+    private static Result accepted(AuctionState state, User requester, List<Bid> bids) {
+        PriceEvent price = new PriceEvent(state.itemId, state.currently, state.bidCount,
+                new Date(state.endsAt), state.completed);
+        return new Result(Status.ACCEPTED, bids, state.completed, state.leaderId == requester.getId(), price);
+    }
+
+
+    /**
+     * Caches the auctions that are not cached yet with one query for the
+     * items and one for their proxies, ahead of a series of bids
+     *
+     * @param itemIds - the auctions
+     */
+    public void preload(Collection<Long> itemIds) {
+
+        List<Long> missing = new ArrayList<>();
+        itemIds.forEach(itemId -> {
+            if (!auctions.containsKey(itemId)) {
+                missing.add(itemId);
+            }
+        });
+        if (missing.isEmpty()) {
+            return;
+        }
+
+        Map<Long, AuctionState> states = new HashMap<>();
+        itemRepository.findAllById(missing).forEach(item -> states.put(item.getId(), new AuctionState(item)));
+        if (states.isEmpty()) {
+            //none of them exists; an empty IN () is not valid SQL everywhere
+            return;
+        }
+        proxyBidRepository.findByItem_IdInAndActiveTrueOrderByRaisedAtAscIdAsc(states.keySet())
+                .forEach(proxy -> states.get(proxy.getItem().getId()).proxies
+                        .put(proxy.getBidder().getId(), proxy.getMaxOffer()));
+
+        states.forEach((itemId, state) -> {
+            synchronized (lockOf(itemId)) {
+                auctions.putIfAbsent(itemId, state);
+            }
+        });
+    }
+
+    private AuctionState load(long itemId) {
+        Item item = itemRepository.findItemById(itemId);
+        if (item == null) {
+            auctions.remove(itemId);
+            return null;
+        }
+        AuctionState state = new AuctionState(item);
+        proxyBidRepository.findByItem_IdAndActiveTrueOrderByRaisedAtAscIdAsc(itemId)
+                .forEach(proxy -> state.proxies.put(proxy.getBidder().getId(), proxy.getMaxOffer()));
+        auctions.put(itemId, state);
+        return state;
+    }
+
+    private static Status check(AuctionState state, User bidder, double offer, Date now) {
+
+        if (state.completed || state.endsAt < now.getTime()) {
+            return Status.COMPLETED;
+        }
+
+        if (state.sellerId == bidder.getId()) {
+            return Status.OWN_AUCTION;
+        }
+
+        if (Double.compare(offer, state.currently) <= 0) {
+            return Status.TOO_LOW;
+        }
+        return null;
+    }
+
+
+    /**
+     * Drops the cached state of an auction so that the next bid
+     * reloads it. Must be called whenever an item is modified,
+     * deleted or closed outside of the engine
+     *
+     * @param itemId - the auction
+     */
+    public void evict(long itemId) {
+        synchronized (lockOf(itemId)) {
+            auctions.remove(itemId);
+        }
+    }
+
+
+    private boolean place(long itemId, long bidderId, double offer, Date createdAt) {
+
+        long seq;
+        try {
+            seq = bidJournal.append(itemId, bidderId, offer, createdAt.getTime());
+        } catch (InterruptedException | RuntimeException e) {
+            if (e instanceof InterruptedException) {
+                Thread.currentThread().interrupt();
+            }
+            //without the journal the price and the bid row are written together
+            System.err.println("Could not journal bid on item " + itemId + ", saving it directly");
+            Boolean placed = transactionTemplate.execute(status -> {
+                if (itemRepository.placeBid(itemId, userRepository.getOne(bidderId), offer, createdAt) == 0) {
+                    return false;
+                }
+                Bid bid = new Bid(createdAt);
+                bid.setBidder(userRepository.getOne(bidderId));
+                bid.setItem(itemRepository.getOne(itemId));
+                bid.setOffer(offer);
+                bidRepository.save(bid);
+                itemRepository.setHighestBid(itemId, bid.getId(), offer);
+                return true;
+            });
+            return Boolean.TRUE.equals(placed);
+        }
+
+        boolean placed = false;
+        try {
+            placed = itemRepository.placeBid(itemId, userRepository.getOne(bidderId), offer, createdAt) > 0;
+        } finally {
+            bidJournal.complete(seq, placed);
+        }
+        return placed;
+    }
+
+
+    private Object lockOf(long itemId) {
+        return locks[spread(itemId) & (locks.length - 1)];
+    }
+
+    private static int spread(long itemId) {
+        int h = Long.hashCode(itemId);
+        return h ^ (h >>> 16);
+    }
+}
@@ -0,0 +1,28 @@
+package com.Auctions.backEnd.services.Bid;
+
+/**
+ * Minimum raise over a price, used when bidding on behalf of a proxy
+ */
+final class BidIncrement {
+
+    private static final double[] LIMITS =     { 1.0,  5.0, 25.0, 100.0, 250.0, 500.0, 1000.0, 2500.0, 5000.0 };
+    private static final double[] INCREMENTS = { 0.05, 0.25, 0.5, 1.0,   2.5,   5.0,   10.0,   25.0,   50.0, 100.0 };
+
+    private BidIncrement() {
+    }
+
+    /**
+     * @return the lowest bid that beats 'price', rounded to cents
+     */
+    static double raise(double price) {
+        return Math.round((price + over(price)) * 100) / 100.0;
+    }
+
+    static double over(double price) {
+        int i = 0;
+        while (i < LIMITS.length && price >= LIMITS[i]) {
+            i++;
+        }
+        return INCREMENTS[i];
+    }
+}
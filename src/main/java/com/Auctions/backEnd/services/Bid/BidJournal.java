@@ -0,0 +1,429 @@
+package com.Auctions.backEnd.services.Bid;
+
+import com.Auctions.backEnd.models.Bid;
+import com.Auctions.backEnd.models.Item;
+import com.Auctions.backEnd.repositories.BidRepository;
+import com.Auctions.backEnd.repositories.ItemRepository;
+import com.Auctions.backEnd.repositories.UserRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Write-ahead journal of bids
+ *
+ * An append-only ring of fixed-size records in a memory-mapped file:
+ *
+ *   header : magic (int) | version (int) | write sequence (long) | flushed sequence (long)
+ *   record : itemId (long) | bidderId (long) | offer (double) | timestamp (long) | state (long)
+ *
+ * A bid is journaled as PENDING and forced to the file before the price
+ * of the item is raised; the outcome of the update then marks it ACCEPTED
+ * or CANCELLED. Appenders that arrive while another one is forcing are
+ * covered by that force, so bursts of bids cost one sync. A background
+ * thread drains the accepted records to the 'bid' table in batches, in
+ * journal order up to the first record still PENDING, and then advances
+ * the flushed sequence.
+ *
+ * Records between the flushed and the write sequence are the ones not yet
+ * in the database. They are found again after a restart:
+ *  - a record left PENDING by a crash is reconciled with its item: it is
+ *    accepted if the item still shows its offer and bidder, cancelled
+ *    otherwise (also when the price has moved on since, e.g. on another
+ *    node, as it can no longer be told apart from a refused bid)
+ *  - since a bidder cannot offer the same amount twice on an item, the
+ *    replayed records are skipped if the bid already exists
+ *
+ * A record that cannot be saved stays in the journal and is retried, unless
+ * its item or its bidder has been deleted.
+ */
+@Service
+public class BidJournal {
+
+    private static final int MAGIC = 0x42494453;
+    private static final int VERSION = 2;
+    private static final int HEADER_SIZE = 64;
+    private static final int RECORD_SIZE = 40;
+    private static final int WRITE_SEQ = 8;
+    private static final int FLUSHED_SEQ = 16;
+    private static final int STATE = 32;
+
+    private static final long PENDING = 0;
+    private static final long ACCEPTED = 1;
+    private static final long CANCELLED = 2;
+
+    private final ItemRepository itemRepository;
+    private final UserRepository userRepository;
+    private final BidRepository bidRepository;
+    private final TransactionTemplate transactionTemplate;
+
+    private final String path;
+    private final int capacity;
+    private final int batchSize;
+
+    private MappedByteBuffer buffer;
+    private long writeSeq;
+    private long flushedSeq;
+    private long replayUntil;
+
+    private final Object forceLock = new Object();
+    private volatile long durableSeq;
+
+    private Thread drainer;
+    private volatile boolean running;
+
+    @Autowired
+    public BidJournal(ItemRepository itemRepository, UserRepository userRepository,
+                      BidRepository bidRepository, PlatformTransactionManager transactionManager,
+                      @Value("${app.bid-journal.path:journal/bids.journal}") String path,
+                      @Value("${app.bid-journal.capacity:65536}") int capacity,
+                      @Value("${app.bid-journal.batch-size:500}") int batchSize) {
+        this.itemRepository = itemRepository;
+        this.userRepository = userRepository;
+        this.bidRepository = bidRepository;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.path = path;
+        this.capacity = capacity;
+        this.batchSize = batchSize;
+    }
+
+
+    @PostConstruct
+    public void open() throws IOException {
+
+        map();
+
+        running = true;
+        drainer = new Thread(this::drainLoop, "bid-journal-drainer");
+        drainer.setDaemon(true);
+        drainer.start();
+    }
+
+
+    /**
+     * Maps the journal file and settles the records a crash left pending,
+     * without starting the drainer
+     */
+    void map() throws IOException {
+
+        File file = new File(path);
+        if (file.getParentFile() != null) {
+            file.getParentFile().mkdirs();
+        }
+
+        long size = HEADER_SIZE + (long) capacity * RECORD_SIZE;
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            boolean existing = raf.length() >= size;
+            buffer = raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, size);
+
+            if (existing && buffer.getInt(0) == MAGIC && buffer.getInt(4) != VERSION
+                    && buffer.getLong(WRITE_SEQ) > buffer.getLong(FLUSHED_SEQ)) {
+                throw new IllegalStateException("Bid journal " + path + " holds undrained bids of version "
+                        + buffer.getInt(4) + ", drain it with the release that wrote it");
+            }
+
+            if (existing && buffer.getInt(0) == MAGIC && buffer.getInt(4) == VERSION) {
+                writeSeq = buffer.getLong(WRITE_SEQ);
+                flushedSeq = buffer.getLong(FLUSHED_SEQ);
+                if (writeSeq > flushedSeq) {
+                    System.err.println("Replaying " + (writeSeq - flushedSeq) + " journaled bids");
+                }
+            } else {
+                buffer.putInt(0, MAGIC);
+                buffer.putInt(4, VERSION);
+                buffer.putLong(WRITE_SEQ, 0L);
+                buffer.putLong(FLUSHED_SEQ, 0L);
+                buffer.force();
+            }
+        }
+        replayUntil = writeSeq;
+        durableSeq = writeSeq;
+
+        for (long seq = flushedSeq; seq < writeSeq; seq++) {
+            if (buffer.getLong(offsetOf(seq) + STATE) == PENDING) {
+                reconcile(seq);
+            }
+        }
+    }
+
+    private void reconcile(long seq) {
+
+        int offset = offsetOf(seq);
+        long itemId = buffer.getLong(offset);
+        long bidderId = buffer.getLong(offset + 8);
+        double offer = buffer.getDouble(offset + 16);
+
+        Boolean placed = transactionTemplate.execute(status -> {
+            Item item = itemRepository.findItemById(itemId);
+            return item != null && item.getHighestBidder() != null
+                    && item.getHighestBidder().getId() == bidderId
+                    && Double.compare(item.getCurrently(), offer) == 0;
+        });
+        buffer.putLong(offset + STATE, Boolean.TRUE.equals(placed) ? ACCEPTED : CANCELLED);
+    }
+
+
+    /**
+     * Journals a bid as pending and returns once it is durable,
+     * to be followed by complete() with the outcome of the bid
+     *
+     * @param itemId - the auction
+     * @param bidderId - the bidder
+     * @param offer - the amount of the bid
+     * @param timestamp - when the bid was placed
+     * @return the sequence of the record
+     * @throws InterruptedException - if interrupted while the journal is full
+     */
+    public long append(long itemId, long bidderId, double offer, long timestamp) throws InterruptedException {
+
+        long seq;
+        synchronized (this) {
+            while (writeSeq - flushedSeq >= capacity) {
+                notifyAll();
+                wait(100);
+            }
+            seq = writeSeq;
+            int offset = offsetOf(seq);
+            buffer.putLong(offset, itemId);
+            buffer.putLong(offset + 8, bidderId);
+            buffer.putDouble(offset + 16, offer);
+            buffer.putLong(offset + 24, timestamp);
+            buffer.putLong(offset + STATE, PENDING);
+
+            writeSeq = seq + 1;
+            buffer.putLong(WRITE_SEQ, writeSeq);
+            notifyAll();
+        }
+
+        synchronized (forceLock) {
+            if (durableSeq > seq) {
+                return seq;
+            }
+            long target;
+            synchronized (this) {
+                target = writeSeq;
+            }
+            buffer.force();
+            durableSeq = target;
+        }
+        return seq;
+    }
+
+
+    /**
+     * Records the outcome of a pending bid. It is not forced: a crash
+     * before the next force leaves the record to be reconciled
+     *
+     * @param seq - the sequence returned by append()
+     * @param accepted - whether the price of the item was raised
+     */
+    public synchronized void complete(long seq, boolean accepted) {
+        buffer.putLong(offsetOf(seq) + STATE, accepted ? ACCEPTED : CANCELLED);
+        notifyAll();
+    }
+
+
+    /**
+     * Waits until every bid appended so far has reached the database
+     *
+     * @param timeoutMillis - how long to wait at most
+     * @return false if the timeout elapsed first
+     * @throws InterruptedException - if interrupted while waiting
+     */
+    public synchronized boolean awaitDrained(long timeoutMillis) throws InterruptedException {
+
+        long target = writeSeq;
+        long deadline = System.currentTimeMillis() + timeoutMillis;
+        while (flushedSeq < target) {
+            long left = deadline - System.currentTimeMillis();
+            if (left <= 0) {
+                return false;
+            }
+            notifyAll();
+            wait(left);
+        }
+        return true;
+    }
+
+
+    private void drainLoop() {
+        while (running || pending() > 0) {
+            try {
+                if (drain() == 0) {
+                    synchronized (this) {
+                        if (!running) {
+                            //whatever is left is replayed on the next start
+                            return;
+                        }
+                        wait(100);
+                    }
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (Exception e) {
+                System.err.println("Could not drain bid journal");
+                e.printStackTrace();
+                try {
+                    Thread.sleep(1000);
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }
+    }
+
+    private synchronized long pending() {
+        return writeSeq - flushedSeq;
+    }
+
+    private synchronized long settledUntil(long limit) {
+        long seq = flushedSeq;
+        while (seq < limit && buffer.getLong(offsetOf(seq) + STATE) != PENDING) {
+            seq++;
+        }
+        return seq;
+    }
+
+
+    /**
+     * Moves the next batch of settled bids to the database
+     *
+     * @return the number of records the flushed sequence moved past
+     */
+    int drain() {
+
+        long from;
+        long to;
+        synchronized (this) {
+            from = flushedSeq;
+            to = settledUntil(Math.min(writeSeq, from + batchSize));
+        }
+        if (from == to) {
+            return 0;
+        }
+
+        List<Bid> bids = new ArrayList<>((int) (to - from));
+        try {
+            transactionTemplate.execute(status -> {
+                for (long seq = from; seq < to; seq++) {
+                    Bid bid = read(seq);
+                    if (bid != null) {
+                        bids.add(bid);
+                    }
+                }
+                bidRepository.saveAll(bids);
+
+                //records are in acceptance order, so the last one of an item is its highest
+                Map<Long, Bid> highest = new HashMap<>();
+                bids.forEach(bid -> highest.put(bid.getItem().getId(), bid));
+                highest.forEach((itemId, bid) -> itemRepository.setHighestBid(itemId, bid.getId(), bid.getOffer()));
+                return null;
+            });
+        } catch (Exception e) {
+            //one bad record (e.g. a deleted item) must not block the others
+            System.err.println("Batch of journaled bids failed, saving them one by one");
+            long done = to;
+            for (long seq = from; seq < to; seq++) {
+                final long current = seq;
+                try {
+                    transactionTemplate.execute(status -> {
+                        Bid bid = read(current);
+                        if (bid != null) {
+                            bidRepository.save(bid);
+                            itemRepository.setHighestBid(bid.getItem().getId(), bid.getId(), bid.getOffer());
+                        }
+                        return null;
+                    });
+                } catch (Exception ex) {
+                    if (stillValid(current)) {
+                        //kept, the drainer retries from here
+                        done = current;
+                        break;
+                    }
+                    System.err.println("Dropping journaled bid " + current
+                            + ", its item or bidder no longer exists: " + ex.getMessage());
+                }
+            }
+            advance(done);
+            if (done < to) {
+                throw new IllegalStateException("Could not save journaled bid " + done + ", keeping it");
+            }
+            return (int) (done - from);
+        }
+
+        advance(to);
+        return (int) (to - from);
+    }
+
+    private synchronized void advance(long seq) {
+        flushedSeq = seq;
+        buffer.putLong(FLUSHED_SEQ, flushedSeq);
+        notifyAll();
+    }
+
+    private boolean stillValid(long seq) {
+        int offset = offsetOf(seq);
+        try {
+            return itemRepository.existsById(buffer.getLong(offset))
+                    && userRepository.existsById(buffer.getLong(offset + 8));
+        } catch (Exception e) {
+            //cannot tell, so keep it
+            return true;
+        }
+    }
+
+    private Bid read(long seq) {
+
+        int offset = offsetOf(seq);
+        long itemId = buffer.getLong(offset);
+        long bidderId = buffer.getLong(offset + 8);
+        double offer = buffer.getDouble(offset + 16);
+        long timestamp = buffer.getLong(offset + 24);
+
+        if (buffer.getLong(offset + STATE) == CANCELLED) {
+            return null;
+        }
+
+        if (seq < replayUntil && bidRepository.existsByItem_IdAndBidder_IdAndOffer(itemId, bidderId, offer)) {
+            return null;
+        }
+
+        Bid bid = new Bid(new Date(timestamp));
+        bid.setItem(itemRepository.getOne(itemId));
+        bid.setBidder(userRepository.getOne(bidderId));
+        bid.setOffer(offer);
+        return bid;
+    }
+
+    private int offsetOf(long seq) {
+        return HEADER_SIZE + (int) (seq % capacity) * RECORD_SIZE;
+    }
+
+
+    @PreDestroy
+    public void close() throws InterruptedException {
+        running = false;
+        synchronized (this) {
+            notifyAll();
+        }
+        drainer.join(10000);
+        buffer.force();
+    }
+}
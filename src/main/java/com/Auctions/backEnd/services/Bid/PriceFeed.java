@@ -0,0 +1,201 @@
+package com.Auctions.backEnd.services.Bid;
+
+import com.Auctions.backEnd.responses.PriceEvent;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Service;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import javax.annotation.PreDestroy;
+import java.util.ArrayDeque;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Live price feed of the auctions
+ *
+ * Keeps the SSE connections of every auction in a registry. An event is
+ * only appended to the buffer of each subscriber; the buffers are written
+ * to the connections by a small pool, at most one task per subscriber at
+ * a time. A buffer holds a few events and drops the oldest one when full,
+ * so a slow client only misses intermediate prices (every event carries
+ * the full state) and never holds back the bidders or the other clients.
+ *
+ * The bids of an auction are published after the bid engine has let go
+ * of the auction, so two of them may arrive in the wrong order. A
+ * subscriber only takes an event that is newer than the last one it was
+ * given (more bids, or the closure), so it never goes back to an older
+ * price and the last event it gets is the latest state.
+ *
+ * The registry is local to the node: a connection only gets the bids
+ * accepted and the closures made by the node it is connected to. With
+ * several nodes, clients should reconnect from time to time (the first
+ * event of a connection is the current state) or the events have to be
+ * relayed between the nodes.
+ */
+@Service
+public class PriceFeed {
+
+    private final ConcurrentHashMap<Long, Set<Subscriber>> subscribers = new ConcurrentHashMap<>();
+    private final ExecutorService executor;
+    private final int bufferSize;
+    private final long timeoutMillis;
+
+    @Autowired
+    public PriceFeed(@Value("${app.price-feed.buffer-size:16}") int bufferSize,
+                     @Value("${app.price-feed.timeout-seconds:1800}") int timeoutSeconds,
+                     @Value("${app.price-feed.threads:4}") int threads) {
+        this.bufferSize = bufferSize;
+        this.timeoutMillis = timeoutSeconds * 1000L;
+        this.executor = Executors.newFixedThreadPool(threads);
+    }
+
+
+    /**
+     * A connection and its pending events
+     */
+    private static class Subscriber {
+        private final long itemId;
+        private final SseEmitter emitter;
+        private final ArrayDeque<PriceEvent> buffer;
+        private final AtomicBoolean scheduled = new AtomicBoolean();
+        /** the last event added to the buffer, guarded by the buffer */
+        private PriceEvent last;
+
+        private Subscriber(long itemId, SseEmitter emitter, int bufferSize) {
+            this.itemId = itemId;
+            this.emitter = emitter;
+            this.buffer = new ArrayDeque<>(bufferSize);
+        }
+    }
+
+
+    /**
+     * Opens a connection on the price of an auction
+     *
+     * @param itemId - the auction
+     * @param current - the state of the auction, sent as the first event
+     * @return the connection
+     */
+    public SseEmitter subscribe(long itemId, PriceEvent current) {
+
+        SseEmitter emitter = new SseEmitter(timeoutMillis);
+        Subscriber subscriber = new Subscriber(itemId, emitter, bufferSize);
+
+        emitter.onCompletion(() -> remove(subscriber));
+        emitter.onTimeout(() -> remove(subscriber));
+        emitter.onError(e -> remove(subscriber));
+
+        subscribers.compute(itemId, (id, set) -> {
+            Set<Subscriber> result = set != null ? set : ConcurrentHashMap.newKeySet();
+            result.add(subscriber);
+            return result;
+        });
+        enqueue(subscriber, current);
+        return emitter;
+    }
+
+
+    /**
+     * Pushes the new state of an auction to its subscribers
+     *
+     * @param event - the new state
+     */
+    public void publish(PriceEvent event) {
+        Set<Subscriber> set = subscribers.get(event.getItemId());
+        if (set == null) {
+            return;
+        }
+        set.forEach(subscriber -> enqueue(subscriber, event));
+    }
+
+    /**
+     * @param itemId - the auction
+     * @return true if someone follows the price of the auction
+     */
+    public boolean hasSubscribers(long itemId) {
+        Set<Subscriber> set = subscribers.get(itemId);
+        return set != null && !set.isEmpty();
+    }
+
+
+    private void enqueue(Subscriber subscriber, PriceEvent event) {
+        synchronized (subscriber.buffer) {
+            if (subscriber.last != null && !isNewer(event, subscriber.last)) {
+                return;
+            }
+            subscriber.last = event;
+            if (subscriber.buffer.size() == bufferSize) {
+                subscriber.buffer.pollFirst();
+            }
+            subscriber.buffer.addLast(event);
+        }
+        if (subscriber.scheduled.compareAndSet(false, true)) {
+            executor.execute(() -> drain(subscriber));
+        }
+    }
+
+    /**
+     * @return true if the event comes after the other one: it has more bids,
+     * or as many and closes the auction
+     */
+    private static boolean isNewer(PriceEvent event, PriceEvent other) {
+        int bids = event.getBidCount() == null ? 0 : event.getBidCount();
+        int otherBids = other.getBidCount() == null ? 0 : other.getBidCount();
+        return bids > otherBids || (bids == otherBids && event.isCompleted() && !other.isCompleted());
+    }
+
+    private void drain(Subscriber subscriber) {
+        while (true) {
+            PriceEvent event;
+            synchronized (subscriber.buffer) {
+                event = subscriber.buffer.pollFirst();
+            }
+
+            if (event == null) {
+                subscriber.scheduled.set(false);
+                //an event may have arrived after the last poll
+                synchronized (subscriber.buffer) {
+                    if (subscriber.buffer.isEmpty() || !subscriber.scheduled.compareAndSet(false, true)) {
+                        return;
+                    }
+                }
+                continue;
+            }
+
+            try {
+                subscriber.emitter.send(SseEmitter.event()
+                        .name("price")
+                        .data(event, MediaType.APPLICATION_JSON));
+                if (event.isCompleted()) {
+                    subscriber.emitter.complete();
+                    remove(subscriber);
+                    return;
+                }
+            } catch (Exception e) {
+                //the client went away
+                remove(subscriber);
+                return;
+            }
+        }
+    }
+
+    private void remove(Subscriber subscriber) {
+        subscribers.computeIfPresent(subscriber.itemId, (id, set) -> {
+            set.remove(subscriber);
+            return set.isEmpty() ? null : set;
+        });
+    }
+
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+        subscribers.values().forEach(set -> set.forEach(subscriber -> subscriber.emitter.complete()));
+        subscribers.clear();
+    }
+}
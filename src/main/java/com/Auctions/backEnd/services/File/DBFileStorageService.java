@@ -5,25 +5,88 @@ import com.Auctions.backEnd.models.DBFile;
 import com.Auctions.backEnd.repositories.DBFileRepository;
 import lombok.NoArgsConstructor;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 import org.springframework.util.StringUtils;
 import org.springframework.web.multipart.MultipartFile;
-import java.io.FileOutputStream;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.*;
+import java.nio.file.attribute.FileTime;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
 
+/**
+ * Content-addressed storage of the pictures
+ *
+ * An upload is streamed once to a temporary file while its SHA-256 is
+ * computed, and then moved to 'media/ab/cd/<hash>' (the first two bytes
+ * of the hash as directories, so that no directory grows too large).
+ * If the content is already there the upload is dropped: every DBFile
+ * keeps its own name and type and refers to the content by its hash, so
+ * the references of a content are the DBFiles with its hash.
+ *
+ * Contents no DBFile refers to any more, e.g. after an auction has been
+ * deleted, are removed by a periodic sweep. Contents written or reused
+ * lately are left alone, so that an upload whose DBFile is not saved yet
+ * is never swept.
+ */
 @Service
 @NoArgsConstructor
 public class DBFileStorageService {
 
+    private static final Pattern SHARD = Pattern.compile("[0-9a-f]{2}");
+    private static final int LOCKS = 64;
+
     @Autowired
     private DBFileRepository dbFileRepository;
 
+    @Value("${app.media.root:media}")
+    private String root;
+
+    @Value("${app.media.sweep-minutes:360}")
+    private int sweepMinutes;
+
+    @Value("${app.media.grace-minutes:60}")
+    private int graceMinutes;
+
+    /** a content is published and swept under the lock of its hash */
+    private final Object[] locks = new Object[LOCKS];
+
+    private ScheduledExecutorService executor;
+
+    @PostConstruct
+    public void start() {
+        for (int i = 0; i < LOCKS; i++) {
+            locks[i] = new Object();
+        }
+        executor = Executors.newSingleThreadScheduledExecutor();
+        executor.scheduleWithFixedDelay(() -> {
+            try {
+                sweep();
+            } catch (Exception e) {
+                System.err.println("Could not sweep media");
+                e.printStackTrace();
+            }
+        }, sweepMinutes, sweepMinutes, TimeUnit.MINUTES);
+    }
+
+
     public DBFile storeFile(MultipartFile file) {
-        FileOutputStream fs = null;
-        DBFile savedDbFile = null;
 
         try {
-            file.getBytes();
             // Normalize file name
             String fileName = StringUtils.cleanPath(file.getOriginalFilename());
             // Check if the file's name contains invalid characters
@@ -31,28 +94,168 @@ public class DBFileStorageService {
                 throw new FileStorageException("Sorry! Filename contains invalid path sequence " + fileName);
             }
 
-            DBFile dbFile = new DBFile(fileName, file.getContentType(), file.getBytes());
-
-            savedDbFile = dbFileRepository.save(dbFile);
-            String uuid = savedDbFile.getId();
+            String hash = storeContent(file);
 
-            fs = new FileOutputStream("media/" + uuid);
-            fs.write(file.getBytes());
-            return savedDbFile;
+            DBFile dbFile = new DBFile(fileName, file.getContentType(), hash);
+            return dbFileRepository.save(dbFile);
 
         } catch (IOException | NullPointerException ex) {
             System.out.println("Could not store file . Please try again!"+  ex);
-            return savedDbFile;
-        } finally {
-            if (fs != null) {
-                try{
-                    file.getSize();
-                    fs.close();
-                } catch (IOException ioex){
-                    System.out.println("Could not close file . Please try again! "+ ioex);
+            return null;
+        }
+    }
+
+
+    /**
+     * Streams an upload to the storage
+     *
+     * @param file - the upload
+     * @return the hash of its content
+     */
+    private String storeContent(MultipartFile file) throws IOException {
+
+        Path upload = tempPath(UUID.randomUUID().toString());
+
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+
+        try (InputStream in = new DigestInputStream(file.getInputStream(), digest);
+             OutputStream out = Files.newOutputStream(upload)) {
+            byte[] buffer = new byte[8192];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                out.write(buffer, 0, read);
+            }
+        }
+
+        String hash = toHex(digest.digest());
+        Path target = contentPath(hash);
+        Files.createDirectories(target.getParent());
+
+        synchronized (lockFor(hash)) {
+            if (Files.exists(target)) {
+                //same content uploaded before, keep it from the next sweep
+                Files.setLastModifiedTime(target, FileTime.fromMillis(System.currentTimeMillis()));
+                Files.delete(upload);
+            } else {
+                Files.move(upload, target, StandardCopyOption.ATOMIC_MOVE);
+            }
+        }
+        return hash;
+    }
+
+
+    /**
+     * Removes the contents no DBFile refers to
+     * one first-level directory at a time
+     */
+    void sweep() throws IOException {
+
+        Path base = Paths.get(root);
+        if (!Files.isDirectory(base)) {
+            return;
+        }
+        long limit = System.currentTimeMillis() - graceMinutes * 60000L;
+        int removed = 0;
+
+        try (DirectoryStream<Path> first = Files.newDirectoryStream(base, this::isShard)) {
+            for (Path level1 : first) {
+                Set<String> referenced = new HashSet<>(dbFileRepository.getHashes(level1.getFileName().toString()));
+
+                try (DirectoryStream<Path> second = Files.newDirectoryStream(level1, this::isShard)) {
+                    for (Path level2 : second) {
+                        try (DirectoryStream<Path> contents = Files.newDirectoryStream(level2)) {
+                            for (Path content : contents) {
+                                String name = content.getFileName().toString();
+                                //variants are kept as '<hash>_<variant>'
+                                int cut = name.indexOf('_');
+                                String hash = cut < 0 ? name : name.substring(0, cut);
+                                if (!referenced.contains(hash) && removeIfOld(hash, content, limit)) {
+                                    removed++;
+                                }
+                            }
+                        }
+                    }
+                }
+            }
+        }
+
+        //uploads interrupted half-way
+        Path tmp = base.resolve("tmp");
+        if (Files.isDirectory(tmp)) {
+            try (DirectoryStream<Path> uploads = Files.newDirectoryStream(tmp)) {
+                for (Path upload : uploads) {
+                    if (Files.getLastModifiedTime(upload).toMillis() < limit) {
+                        Files.deleteIfExists(upload);
+                    }
                 }
             }
         }
+
+        if (removed > 0) {
+            System.out.println("Removed " + removed + " unreferenced media files");
+        }
+    }
+
+    private boolean removeIfOld(String hash, Path content, long limit) throws IOException {
+        synchronized (lockFor(hash)) {
+            if (Files.getLastModifiedTime(content).toMillis() < limit) {
+                return Files.deleteIfExists(content);
+            }
+        }
+        return false;
+    }
+
+    private boolean isShard(Path path) {
+        return Files.isDirectory(path) && SHARD.matcher(path.getFileName().toString()).matches();
+    }
+
+    private Object lockFor(String hash) {
+        return locks[Math.floorMod(hash.hashCode(), LOCKS)];
+    }
+
+
+    /**
+     * @param hash - the hash of a content
+     * @return where the content is kept
+     */
+    public Path contentPath(String hash) {
+        return Paths.get(root, hash.substring(0, 2), hash.substring(2, 4), hash);
+    }
+
+    /**
+     * @param hash - the hash of a content
+     * @param variant - a variant of the content (see ImagePipeline)
+     * @return where the variant is kept, beside the content
+     */
+    public Path variantPath(String hash, String variant) {
+        return contentPath(hash).resolveSibling(hash + "_" + variant);
+    }
+
+    /**
+     * @param name - a file name
+     * @return a file in the directory of the unfinished writes
+     */
+    Path tempPath(String name) throws IOException {
+        Path tmp = Paths.get(root, "tmp");
+        Files.createDirectories(tmp);
+        return tmp.resolve(name);
+    }
+
+    /**
+     * @param dbFile - a stored file
+     * @return where its content is kept
+     */
+    public Path getPath(DBFile dbFile) {
+        if (dbFile.getHash() == null) {
+            //stored before the content addressing
+            return Paths.get(root, dbFile.getId());
+        }
+        return contentPath(dbFile.getHash());
     }
 
     public DBFile getFile(String fileId) {
@@ -60,4 +263,21 @@ public class DBFileStorageService {
         return dbFileRepository.findById(fileId)
                 .orElseThrow(() -> new FileStorageException("File not found with id " + fileId));
     }
-}
\ No newline at end of file
+
+
+    private static String toHex(byte[] bytes) {
+        StringBuilder hex = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes) {
+            hex.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+        }
+        return hex.toString();
+    }
+
+
+    @PreDestroy
+    public void shutdown() {
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+    }
+}
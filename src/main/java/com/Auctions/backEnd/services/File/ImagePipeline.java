@@ -0,0 +1,207 @@
+package com.Auctions.backEnd.services.File;
+
+import com.Auctions.backEnd.models.DBFile;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PreDestroy;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Resized variants of the item pictures
+ *
+ * After a picture is stored, a bounded pool of workers writes its
+ * variants (see DBFile.VARIANTS) beside the content, as '<hash>_<variant>', so item creation
+ * does not wait for the image processing. The variants belong to the
+ * content, so a picture uploaded again is not processed again.
+ *
+ * Variants are optional: when the queue is full or a picture can not be
+ * decoded the variants are skipped and the downloads fall back to the
+ * original picture.
+ *
+ * The dimensions are read from the header before anything is decoded, so
+ * a small file claiming a huge picture (more than 'app.media.max-pixels')
+ * is skipped instead of filling the heap. Large pictures are decoded
+ * subsampled, at no less than twice the size of the largest variant.
+ */
+@Service
+public class ImagePipeline {
+
+    private static final int LARGEST_VARIANT = Collections.max(DBFile.VARIANTS.values());
+
+    private final DBFileStorageService storageService;
+    private final ThreadPoolExecutor executor;
+    private final long maxPixels;
+
+    @Autowired
+    public ImagePipeline(DBFileStorageService storageService,
+                         @Value("${app.media.variant-threads:2}") int threads,
+                         @Value("${app.media.variant-queue-size:256}") int queueSize,
+                         @Value("${app.media.max-pixels:50000000}") long maxPixels) {
+        this.storageService = storageService;
+        this.maxPixels = maxPixels;
+        AtomicInteger counter = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueSize), runnable -> {
+                    Thread thread = new Thread(runnable, "image-pipeline-" + counter.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+    }
+
+
+    /**
+     * Schedules the variants of a stored picture
+     *
+     * @param dbFile - the picture
+     */
+    public void submit(DBFile dbFile) {
+        if (dbFile == null || dbFile.getHash() == null) {
+            return;
+        }
+        String hash = dbFile.getHash();
+        String format = formatOf(dbFile.getFileType());
+        try {
+            executor.execute(() -> {
+                try {
+                    createVariants(hash, format);
+                } catch (Exception e) {
+                    System.err.println("Could not create the variants of " + hash + ": " + e);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            System.err.println("Image pipeline is full, no variants for " + hash);
+        }
+    }
+
+
+    private void createVariants(String hash, String format) throws IOException {
+
+        if (DBFile.VARIANTS.keySet().stream().allMatch(variant -> Files.exists(storageService.variantPath(hash, variant)))) {
+            return;
+        }
+
+        BufferedImage original = decode(storageService.contentPath(hash), hash);
+        if (original == null) {
+            return;
+        }
+
+        for (Map.Entry<String, Integer> variant : DBFile.VARIANTS.entrySet()) {
+            Path target = storageService.variantPath(hash, variant.getKey());
+            if (Files.exists(target)) {
+                continue;
+            }
+
+            BufferedImage resized = resize(original, variant.getValue(), format);
+            Path tmp = storageService.tempPath(UUID.randomUUID().toString());
+            try (OutputStream out = Files.newOutputStream(tmp)) {
+                ImageIO.write(resized, format, out);
+            }
+            Files.move(tmp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+
+    /**
+     * Decodes a picture, subsampled when it is much larger than the variants
+     *
+     * @return the picture, or null if it is not supported or too large
+     */
+    private BufferedImage decode(Path content, String hash) throws IOException {
+
+        try (ImageInputStream in = ImageIO.createImageInputStream(content.toFile())) {
+            Iterator<ImageReader> readers = in != null ? ImageIO.getImageReaders(in) : Collections.emptyIterator();
+            if (!readers.hasNext()) {
+                System.err.println("Unsupported image " + hash);
+                return null;
+            }
+
+            ImageReader reader = readers.next();
+            try {
+                reader.setInput(in, true, true);
+                int width = reader.getWidth(0);
+                int height = reader.getHeight(0);
+                if ((long) width * height > maxPixels) {
+                    System.err.println("Image " + hash + " is too large: " + width + "x" + height);
+                    return null;
+                }
+
+                ImageReadParam param = reader.getDefaultReadParam();
+                int step = Math.max(1, Math.max(width, height) / (2 * LARGEST_VARIANT));
+                if (step > 1) {
+                    param.setSourceSubsampling(step, step, 0, 0);
+                }
+                return reader.read(0, param);
+            } finally {
+                reader.dispose();
+            }
+        }
+    }
+
+
+    /**
+     * Scales an image down so that its longest side fits, keeping the aspect ratio
+     */
+    private static BufferedImage resize(BufferedImage image, int longest, String format) {
+
+        double scale = Math.min(1.0, (double) longest / Math.max(image.getWidth(), image.getHeight()));
+        int width = Math.max(1, (int) Math.round(image.getWidth() * scale));
+        int height = Math.max(1, (int) Math.round(image.getHeight() * scale));
+
+        //jpeg has no alpha channel
+        int type = "png".equals(format) ? BufferedImage.TYPE_INT_ARGB : BufferedImage.TYPE_INT_RGB;
+        BufferedImage resized = new BufferedImage(width, height, type);
+        Graphics2D graphics = resized.createGraphics();
+        try {
+            graphics.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+            graphics.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+            graphics.drawImage(image, 0, 0, width, height, null);
+        } finally {
+            graphics.dispose();
+        }
+        return resized;
+    }
+
+
+    /**
+     * @param fileType - the content type of a picture
+     * @return the format of its variants: png keeps transparency, the rest become jpeg
+     */
+    static String formatOf(String fileType) {
+        return "image/png".equals(fileType) || "image/gif".equals(fileType) ? "png" : "jpg";
+    }
+
+    /**
+     * @param fileType - the content type of a picture
+     * @return the content type of its variants
+     */
+    public static String variantType(String fileType) {
+        return "png".equals(formatOf(fileType)) ? "image/png" : "image/jpeg";
+    }
+
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+}
@@ -0,0 +1,299 @@
+package com.Auctions.backEnd.services.Idempotency;
+
+import com.Auctions.backEnd.responses.Message;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.security.authentication.AnonymousAuthenticationToken;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.util.StreamUtils;
+import org.springframework.util.StringUtils;
+import org.springframework.web.filter.GenericFilterBean;
+import org.springframework.web.util.ContentCachingResponseWrapper;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ReadListener;
+import javax.servlet.ServletException;
+import javax.servlet.ServletInputStream;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletRequestWrapper;
+import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.Part;
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Map;
+import java.util.Objects;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Honours the Idempotency-Key header on the creating endpoints
+ *
+ * The first request with a key runs and its response is stored; repeated
+ * requests with the same key get the stored response without running the
+ * endpoint again, and requests arriving while the first one still runs
+ * wait for it. Keys are scoped by user, method and path. Server errors
+ * are not stored, so the client can retry them.
+ *
+ * The key is stored with a hash of the request (its parameters and body);
+ * reusing a key for a different request is answered with 422. Only
+ * authenticated requests are stored, the rest pass through untouched.
+ * When the store is full of running requests a new key gets 503.
+ *
+ * The waiting is local to the node (see IdempotencyStore).
+ */
+public class IdempotencyFilter extends GenericFilterBean {
+
+    public final static String IDEMPOTENCY_HEADER = "Idempotency-Key";
+    public final static String REPLAYED_HEADER = "Idempotent-Replayed";
+
+    private static final String[] PATHS = { "/bid/makeBid/", "/bid/makeBids", "/bid/proxy/", "/item" };
+    private static final long WAIT_SECONDS = 30;
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    private final IdempotencyStore store;
+
+    public IdempotencyFilter(IdempotencyStore store) {
+        this.store = store;
+    }
+
+    @Override
+    public void doFilter(ServletRequest servletRequest, ServletResponse servletResponse,
+                         FilterChain filterChain) throws IOException, ServletException {
+
+        HttpServletRequest request = (HttpServletRequest) servletRequest;
+        HttpServletResponse response = (HttpServletResponse) servletResponse;
+
+        String key = request.getHeader(IDEMPOTENCY_HEADER);
+        if (!StringUtils.hasText(key) || !"POST".equals(request.getMethod()) || !applies(request)
+                || !authenticated()) {
+            filterChain.doFilter(servletRequest, servletResponse);
+            return;
+        }
+
+        if (key.length() > 255) {
+            error(response, HttpStatus.BAD_REQUEST, "Idempotency-Key cannot be longer than 255 characters");
+            return;
+        }
+
+        String scopedKey = scope(request, key);
+        if (!isMultipart(request)) {
+            //read once here, so that the hash and the endpoint see the same body
+            request = new CachedBodyRequest(request);
+        }
+        String requestHash = fingerprint(request);
+        for (int attempt = 0; attempt < 3; attempt++) {
+
+            CompletableFuture<IdempotencyStore.StoredResponse> first;
+            try {
+                first = store.claim(scopedKey);
+            } catch (RejectedExecutionException e) {
+                //running it without a claim could run it twice
+                response.setHeader(HttpHeaders.RETRY_AFTER, "1");
+                error(response, HttpStatus.SERVICE_UNAVAILABLE, "The server is busy, please try again");
+                return;
+            }
+            if (first == null) {
+                execute(request, response, filterChain, scopedKey, requestHash);
+                return;
+            }
+
+            IdempotencyStore.StoredResponse stored;
+            try {
+                stored = first.get(WAIT_SECONDS, TimeUnit.SECONDS);
+            } catch (TimeoutException e) {
+                error(response, HttpStatus.CONFLICT, "A request with this Idempotency-Key is still in progress");
+                return;
+            } catch (InterruptedException | ExecutionException e) {
+                throw new ServletException(e);
+            }
+
+            if (stored != null) {
+                if (!requestHash.equals(stored.getRequestHash())) {
+                    error(response, HttpStatus.UNPROCESSABLE_ENTITY,
+                            "Idempotency-Key was already used for a different request");
+                    return;
+                }
+                response.setStatus(stored.getStatus());
+                if (stored.getContentType() != null) {
+                    response.setContentType(stored.getContentType());
+                }
+                response.setHeader(REPLAYED_HEADER, "true");
+                response.getOutputStream().write(stored.getBody());
+                return;
+            }
+            //the first request failed, try to run it ourselves
+        }
+        error(response, HttpStatus.CONFLICT, "A request with this Idempotency-Key is still in progress");
+    }
+
+
+    private void execute(HttpServletRequest request, HttpServletResponse response,
+                         FilterChain filterChain, String scopedKey, String requestHash)
+            throws IOException, ServletException {
+
+        ContentCachingResponseWrapper wrapper = new ContentCachingResponseWrapper(response);
+        boolean stored = false;
+        try {
+            filterChain.doFilter(request, wrapper);
+            if (wrapper.getStatus() < 500) {
+                store.complete(scopedKey, new IdempotencyStore.StoredResponse(requestHash,
+                        wrapper.getStatus(), wrapper.getContentType(), wrapper.getContentAsByteArray()));
+                stored = true;
+            }
+        } finally {
+            if (!stored) {
+                store.abandon(scopedKey);
+            }
+            wrapper.copyBodyToResponse();
+        }
+    }
+
+    private static boolean applies(HttpServletRequest request) {
+        String path = request.getRequestURI().substring(request.getContextPath().length());
+        for (String prefix : PATHS) {
+            if (prefix.endsWith("/") ? path.startsWith(prefix) : path.equals(prefix)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean authenticated() {
+        Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+        return authentication != null && authentication.isAuthenticated()
+                && !(authentication instanceof AnonymousAuthenticationToken);
+    }
+
+    private static boolean isMultipart(HttpServletRequest request) {
+        String contentType = request.getContentType();
+        return contentType != null && contentType.toLowerCase().startsWith("multipart/");
+    }
+
+    private static String scope(HttpServletRequest request, String key) {
+        String user = SecurityContextHolder.getContext().getAuthentication().getName();
+        String scoped = user + '\n' + request.getMethod() + '\n' + request.getRequestURI() + '\n' + key;
+        MessageDigest digest = sha256();
+        digest.update(scoped.getBytes(StandardCharsets.UTF_8));
+        return hex(digest);
+    }
+
+    /**
+     * Hash of what the request asks for: its parameters (the query string
+     * and any form fields), the uploaded parts or else the raw body
+     */
+    private static String fingerprint(HttpServletRequest request) throws IOException, ServletException {
+
+        MessageDigest digest = sha256();
+        for (Map.Entry<String, String[]> parameter : new TreeMap<>(request.getParameterMap()).entrySet()) {
+            for (String value : parameter.getValue()) {
+                digest.update((parameter.getKey() + '=' + value + '\n').getBytes(StandardCharsets.UTF_8));
+            }
+        }
+
+        if (request instanceof CachedBodyRequest) {
+            digest.update(((CachedBodyRequest) request).body);
+        } else {
+            for (Part part : request.getParts()) {
+                digest.update((part.getName() + '\n' + Objects.toString(part.getSubmittedFileName(), "") + '\n')
+                        .getBytes(StandardCharsets.UTF_8));
+                try (InputStream in = part.getInputStream()) {
+                    digest.update(StreamUtils.copyToByteArray(in));
+                }
+            }
+        }
+        return hex(digest);
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static String hex(MessageDigest digest) {
+        StringBuilder hex = new StringBuilder(64);
+        for (byte b : digest.digest()) {
+            hex.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+        }
+        return hex.toString();
+    }
+
+    private static void error(HttpServletResponse response, HttpStatus status, String message) throws IOException {
+        response.setStatus(status.value());
+        response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+        MAPPER.writeValue(response.getOutputStream(), new Message("Error", message));
+    }
+
+
+    /**
+     * A request whose body has been read up front and can be read again
+     */
+    private static class CachedBodyRequest extends HttpServletRequestWrapper {
+
+        private final byte[] body;
+
+        CachedBodyRequest(HttpServletRequest request) throws IOException {
+            super(request);
+            //form fields are parsed from the body, before it is consumed below
+            request.getParameterMap();
+            this.body = StreamUtils.copyToByteArray(request.getInputStream());
+        }
+
+        @Override
+        public ServletInputStream getInputStream() {
+            ByteArrayInputStream in = new ByteArrayInputStream(body);
+            return new ServletInputStream() {
+                @Override
+                public boolean isFinished() {
+                    return in.available() == 0;
+                }
+
+                @Override
+                public boolean isReady() {
+                    return true;
+                }
+
+                @Override
+                public void setReadListener(ReadListener readListener) {
+                    throw new UnsupportedOperationException();
+                }
+
+                @Override
+                public int read() {
+                    return in.read();
+                }
+
+                @Override
+                public int read(byte[] b, int off, int len) {
+                    return in.read(b, off, len);
+                }
+            };
+        }
+
+        @Override
+        public BufferedReader getReader() {
+            String encoding = getCharacterEncoding();
+            return new BufferedReader(new InputStreamReader(getInputStream(),
+                    encoding != null ? Charset.forName(encoding) : StandardCharsets.ISO_8859_1));
+        }
+    }
+}
@@ -0,0 +1,203 @@
+package com.Auctions.backEnd.services.Idempotency;
+
+import com.Auctions.backEnd.models.IdempotencyRecord;
+import com.Auctions.backEnd.repositories.IdempotencyRecordRepository;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.Date;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Responses of the requests that carried an Idempotency-Key
+ *
+ * A bounded map in insertion order: the oldest completed keys are
+ * dropped first, both when the map is full and when they outlive the time
+ * to live. While the first request of a key runs, its entry holds a
+ * pending future that the repeated requests wait on, so only one
+ * executes. A running request never loses its key; when the map is full
+ * of running requests a new key is refused instead.
+ *
+ * With 'app.idempotency.persistent' the completed responses are also
+ * written to the 'idempotency_record' table and found there after a
+ * restart or on another node. The claims of running requests stay in
+ * memory: only the requests of one node wait for each other, so two
+ * nodes given the same key at the same time may both execute it.
+ */
+@Service
+public class IdempotencyStore {
+
+    /**
+     * A response as replayed for a repeated key, with the hash of
+     * the request that produced it
+     */
+    @Getter
+    @AllArgsConstructor
+    public static class StoredResponse {
+        private final String requestHash;
+        private final int status;
+        private final String contentType;
+        private final byte[] body;
+    }
+
+    private static class Entry {
+        private final CompletableFuture<StoredResponse> response = new CompletableFuture<>();
+        private final long createdAt = System.currentTimeMillis();
+    }
+
+    private final IdempotencyRecordRepository recordRepository;
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>();
+    private final int maxEntries;
+    private final long ttlMillis;
+    private final boolean persistent;
+    private long lastCleanup = System.currentTimeMillis();
+
+    @Autowired
+    public IdempotencyStore(IdempotencyRecordRepository recordRepository,
+                            @Value("${app.idempotency.max-entries:10000}") int maxEntries,
+                            @Value("${app.idempotency.ttl-seconds:86400}") int ttlSeconds,
+                            @Value("${app.idempotency.persistent:false}") boolean persistent) {
+        this.recordRepository = recordRepository;
+        this.maxEntries = maxEntries;
+        this.ttlMillis = ttlSeconds * 1000L;
+        this.persistent = persistent;
+    }
+
+
+    /**
+     * Claims a key for execution
+     *
+     * @param key - the scoped idempotency key
+     * @return null if the caller must execute the request and then call
+     * complete or abandon, otherwise the (possibly pending) response of the
+     * first request; a null response means that request failed and the key
+     * may be claimed again
+     * @throws RejectedExecutionException if the store is full of running requests
+     */
+    public CompletableFuture<StoredResponse> claim(String key) {
+
+        synchronized (this) {
+            evictExpired();
+            Entry entry = entries.get(key);
+            if (entry != null) {
+                return entry.response;
+            }
+            if (entries.size() >= maxEntries) {
+                throw new RejectedExecutionException("Too many requests with an Idempotency-Key in progress");
+            }
+            if (!persistent) {
+                entries.put(key, new Entry());
+                return null;
+            }
+        }
+
+        cleanupRecords();
+        IdempotencyRecord record = recordRepository.findById(key).orElse(null);
+        synchronized (this) {
+            Entry entry = entries.get(key);
+            if (entry != null) {
+                return entry.response;
+            }
+            if (entries.size() >= maxEntries) {
+                throw new RejectedExecutionException("Too many requests with an Idempotency-Key in progress");
+            }
+            entry = new Entry();
+            entries.put(key, entry);
+            if (record != null && record.getCreatedAt().getTime() > System.currentTimeMillis() - ttlMillis) {
+                entry.response.complete(new StoredResponse(record.getRequestHash(), record.getStatus(), record.getContentType(), record.getBody()));
+                return entry.response;
+            }
+            return null;
+        }
+    }
+
+
+    /**
+     * Stores the response of a claimed key and releases the waiting requests
+     *
+     * @param key - the scoped idempotency key
+     * @param response - the response to replay
+     */
+    public void complete(String key, StoredResponse response) {
+
+        if (persistent) {
+            IdempotencyRecord record = new IdempotencyRecord();
+            record.setKey(key);
+            record.setRequestHash(response.getRequestHash());
+            record.setStatus(response.getStatus());
+            record.setContentType(response.getContentType());
+            record.setBody(response.getBody());
+            record.setCreatedAt(new Date());
+            try {
+                recordRepository.save(record);
+            } catch (Exception e) {
+                System.err.println("Could not persist idempotency key: " + e.getMessage());
+            }
+        }
+
+        Entry entry;
+        synchronized (this) {
+            entry = entries.get(key);
+        }
+        if (entry != null) {
+            entry.response.complete(response);
+        }
+    }
+
+
+    /**
+     * Releases a claimed key without a response, e.g. after a server error,
+     * so that a retry executes again
+     *
+     * @param key - the scoped idempotency key
+     */
+    public void abandon(String key) {
+        Entry entry;
+        synchronized (this) {
+            entry = entries.remove(key);
+        }
+        if (entry != null) {
+            entry.response.complete(null);
+        }
+    }
+
+
+    /**
+     * Drops the completed keys that are expired, and the oldest completed
+     * ones while there is no room for a new key; a running request keeps
+     * its key, its waiters still need the response
+     */
+    private void evictExpired() {
+
+        long now = System.currentTimeMillis();
+        Iterator<Map.Entry<String, Entry>> it = entries.entrySet().iterator();
+        while (it.hasNext()) {
+            Entry entry = it.next().getValue();
+            boolean full = entries.size() >= maxEntries;
+            if (!full && entry.createdAt > now - ttlMillis) {
+                break;
+            }
+            if (entry.response.isDone()) {
+                it.remove();
+            }
+        }
+    }
+
+    private void cleanupRecords() {
+        long now = System.currentTimeMillis();
+        synchronized (this) {
+            if (now - lastCleanup < ttlMillis / 24) {
+                return;
+            }
+            lastCleanup = now;
+        }
+        recordRepository.deleteExpired(new Date(now - ttlMillis));
+    }
+}
@@ -0,0 +1,58 @@
+package com.Auctions.backEnd.services.RateLimit;
+
+import com.Auctions.backEnd.responses.Message;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.security.authentication.AnonymousAuthenticationToken;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.web.filter.GenericFilterBean;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+
+/**
+ * Rejects the requests of a client that ran out of tokens
+ * with <HTTP>TOO MANY REQUESTS</HTTP> and a Retry-After header
+ */
+public class RateLimitFilter extends GenericFilterBean {
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    private final RateLimiter rateLimiter;
+
+    public RateLimitFilter(RateLimiter rateLimiter) {
+        this.rateLimiter = rateLimiter;
+    }
+
+    @Override
+    public void doFilter(ServletRequest servletRequest, ServletResponse servletResponse,
+                         FilterChain filterChain) throws IOException, ServletException {
+
+        HttpServletRequest request = (HttpServletRequest) servletRequest;
+        String path = request.getRequestURI().substring(request.getContextPath().length());
+
+        Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+        String username = authentication != null && authentication.isAuthenticated()
+                && !(authentication instanceof AnonymousAuthenticationToken) ? authentication.getName() : null;
+
+        long wait = rateLimiter.acquire(request.getMethod(), path, username, request.getRemoteAddr());
+        if (wait > 0) {
+            HttpServletResponse response = (HttpServletResponse) servletResponse;
+            response.setStatus(HttpStatus.TOO_MANY_REQUESTS.value());
+            response.setHeader(HttpHeaders.RETRY_AFTER, String.valueOf((wait + 999) / 1000));
+            response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+            MAPPER.writeValue(response.getOutputStream(), new Message("Error", "Too many requests, slow down"));
+            return;
+        }
+
+        filterChain.doFilter(servletRequest, servletResponse);
+    }
+}
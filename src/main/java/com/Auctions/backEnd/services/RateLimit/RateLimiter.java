@@ -0,0 +1,154 @@
+package com.Auctions.backEnd.services.RateLimit;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PreDestroy;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Per-client token buckets of the expensive route groups
+ *
+ * Every group has its own capacity (burst) and refill rate and its own
+ * buckets. Every request is charged to the bucket of its IP and, when
+ * authenticated, also to the bucket of its user, so that neither many
+ * accounts behind one address nor one account spread over many addresses
+ * get around the limit. The IP buckets are 'app.rate-limit.ip-factor'
+ * times larger, since several users may share an address. The buckets live in a ConcurrentHashMap, so clients only
+ * contend on their own bucket, and the idle ones are dropped by a
+ * periodic sweep: an idle bucket is full, so dropping it changes nothing.
+ */
+@Service
+public class RateLimiter {
+
+    /**
+     * A group of routes sharing the same limits
+     */
+    public static class Group {
+        private final String name;
+        private final String prefix;
+        private final String method;
+        private final int capacity;
+        private final int perSecond;
+        private final int ipCapacity;
+        private final int ipPerSecond;
+        private final ConcurrentHashMap<String, TokenBucket> buckets = new ConcurrentHashMap<>();
+        private final LongAdder allowed = new LongAdder();
+        private final LongAdder rejected = new LongAdder();
+
+        private Group(String name, String prefix, String method, int capacity, int perSecond, int ipFactor) {
+            if (capacity < 1 || perSecond < 1 || ipFactor < 1
+                    || (long) capacity * ipFactor > TokenBucket.MAX_CAPACITY) {
+                throw new IllegalArgumentException("Invalid rate limit for " + name);
+            }
+            this.name = name;
+            this.prefix = prefix;
+            this.method = method;
+            this.capacity = capacity;
+            this.perSecond = perSecond;
+            this.ipCapacity = capacity * ipFactor;
+            this.ipPerSecond = perSecond * ipFactor;
+        }
+
+        private boolean matches(String method, String path) {
+            return (this.method == null || this.method.equals(method)) && path.startsWith(prefix);
+        }
+    }
+
+    private final Group[] groups;
+    private final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor();
+
+    @Autowired
+    public RateLimiter(@Value("${app.rate-limit.bid.capacity:20}") int bidCapacity,
+                       @Value("${app.rate-limit.bid.per-second:5}") int bidPerSecond,
+                       @Value("${app.rate-limit.search.capacity:30}") int searchCapacity,
+                       @Value("${app.rate-limit.search.per-second:10}") int searchPerSecond,
+                       @Value("${app.rate-limit.recommend.capacity:5}") int recommendCapacity,
+                       @Value("${app.rate-limit.recommend.per-second:1}") int recommendPerSecond,
+                       @Value("${app.rate-limit.ip-factor:4}") int ipFactor) {
+        this.groups = new Group[] {
+                new Group("bid", "/bid/", "POST", bidCapacity, bidPerSecond, ipFactor),
+                new Group("search", "/search/", null, searchCapacity, searchPerSecond, ipFactor),
+                new Group("recommend", "/recommend/", null, recommendCapacity, recommendPerSecond, ipFactor)
+        };
+        executor.scheduleWithFixedDelay(this::evictIdle, 1, 1, TimeUnit.MINUTES);
+    }
+
+
+    /**
+     * Takes a token for a request from the bucket of its IP and,
+     * if it has one, from the bucket of its user
+     *
+     * @param method - the HTTP method
+     * @param path - the path inside the context
+     * @param username - the authenticated user, or null
+     * @param ip - the IP of the client
+     * @return 0 if the request may run, otherwise the milliseconds to wait
+     */
+    public long acquire(String method, String path, String username, String ip) {
+        for (Group group : groups) {
+            if (group.matches(method, path)) {
+                long now = System.currentTimeMillis();
+                TokenBucket ipBucket = bucket(group, "ip:" + ip, group.ipCapacity, now);
+                long wait = ipBucket.tryAcquire(group.ipCapacity, group.ipPerSecond, now);
+                if (wait == 0 && username != null) {
+                    wait = bucket(group, "user:" + username, group.capacity, now)
+                            .tryAcquire(group.capacity, group.perSecond, now);
+                    if (wait > 0) {
+                        //not run, the other users of the address keep the token
+                        ipBucket.refund(group.ipCapacity);
+                    }
+                }
+                (wait == 0 ? group.allowed : group.rejected).increment();
+                return wait;
+            }
+        }
+        return 0;
+    }
+
+    private static TokenBucket bucket(Group group, String client, int capacity, long now) {
+        TokenBucket bucket = group.buckets.get(client);
+        if (bucket == null) {
+            bucket = group.buckets.computeIfAbsent(client, key -> new TokenBucket(capacity, now));
+        }
+        return bucket;
+    }
+
+
+    /**
+     * @return per group, the allowed and rejected requests and the tracked clients
+     */
+    public Map<String, Map<String, Long>> getCounters() {
+        Map<String, Map<String, Long>> counters = new LinkedHashMap<>();
+        for (Group group : groups) {
+            Map<String, Long> counter = new LinkedHashMap<>();
+            counter.put("allowed", group.allowed.sum());
+            counter.put("rejected", group.rejected.sum());
+            counter.put("clients", (long) group.buckets.size());
+            counters.put(group.name, counter);
+        }
+        return counters;
+    }
+
+
+    private void evictIdle() {
+        long now = System.currentTimeMillis() - TokenBucket.BASE;
+        for (Group group : groups) {
+            //the IP buckets refill at the same pace, just scaled
+            long idle = Math.max(60000, 1000L * group.capacity / group.perSecond);
+            group.buckets.values().removeIf(bucket -> now - bucket.lastRefill() > idle);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+}
@@ -0,0 +1,79 @@
+package com.Auctions.backEnd.services.RateLimit;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Lock-free token bucket
+ *
+ * The tokens (in thousandths) and the time of the last refill are packed
+ * in a single long and updated with compare-and-set:
+ *
+ *   state : milli-tokens (23 bits) | milliseconds since BASE (40 bits)
+ *
+ * A rate of N tokens per second is N milli-tokens per millisecond, so the
+ * refill needs no division.
+ */
+final class TokenBucket {
+
+    static final long BASE = System.currentTimeMillis();
+    static final int MAX_CAPACITY = 8000;
+
+    private static final int TIME_BITS = 40;
+    private static final long TIME_MASK = (1L << TIME_BITS) - 1;
+    private static final long ONE = 1000;
+
+    private final AtomicLong state;
+
+    TokenBucket(int capacity, long now) {
+        this.state = new AtomicLong(pack(capacity * ONE, now - BASE));
+    }
+
+    /**
+     * Takes a token
+     *
+     * @return 0 if a token was taken, otherwise the milliseconds until the next one
+     */
+    long tryAcquire(int capacity, int perSecond, long now) {
+        long time = now - BASE;
+        while (true) {
+            long current = state.get();
+            long tokens = current >>> TIME_BITS;
+            long last = current & TIME_MASK;
+
+            long elapsed = Math.max(0, time - last);
+            tokens = Math.min(capacity * ONE, tokens + elapsed * perSecond);
+            long updatedTime = Math.max(time, last);
+
+            if (tokens < ONE) {
+                return (ONE - tokens + perSecond - 1) / perSecond;
+            }
+            if (state.compareAndSet(current, pack(tokens - ONE, updatedTime))) {
+                return 0;
+            }
+        }
+    }
+
+    /**
+     * Gives back a token taken for a request that did not run
+     */
+    void refund(int capacity) {
+        while (true) {
+            long current = state.get();
+            long tokens = Math.min(capacity * ONE, (current >>> TIME_BITS) + ONE);
+            if (state.compareAndSet(current, pack(tokens, current & TIME_MASK))) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * @return the time of the last refill, in milliseconds since BASE
+     */
+    long lastRefill() {
+        return state.get() & TIME_MASK;
+    }
+
+    private static long pack(long milliTokens, long time) {
+        return (milliTokens << TIME_BITS) | (time & TIME_MASK);
+    }
+}
@@ -0,0 +1,400 @@
+package com.Auctions.backEnd.services.Search;
+
+import com.Auctions.backEnd.models.Item;
+import com.Auctions.backEnd.models.ItemCategory;
+import com.Auctions.backEnd.repositories.ItemCategoryRepository;
+import com.Auctions.backEnd.repositories.ItemRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.*;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Suggestions of the search bar
+ *
+ * The distinct item and category names are kept in a trie of their
+ * suffixes, so that a keyword matches a name wherever it appears in it,
+ * as before. Only the first 'maxDepth' characters of every suffix are in
+ * the trie, which bounds its size; the nodes at that depth keep all the
+ * names passing through them, which are filtered for longer keywords.
+ *
+ * Every node caches its best completions, so a lookup is a walk of the
+ * keyword's characters. A name is weighed by the bids of its auctions and
+ * by how recent they are: ln(1 + bids) + createdAt / RECENCY_MILLIS, i.e.
+ * an auction a week newer counts as much as about e times the bids. The
+ * weights never decay, so the cached orders stay valid.
+ *
+ * Names are added as items and categories are created. A deleted name is
+ * only marked so and skipped by the lookups; the periodic rebuild drops it
+ * and refreshes the weights with the current number of bids.
+ */
+@Service
+public class CompletionIndex {
+
+    private static final double RECENCY_MILLIS = 7 * 24 * 3600 * 1000.0;
+
+    private final ItemRepository itemRepository;
+    private final ItemCategoryRepository itemCategoryRepository;
+    private final int maxDepth;
+    private final int limit;
+    private final int batchSize;
+    private final int rebuildMinutes;
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private Trie trie;
+
+    /** names added while a rebuild reads the database, added again to its result */
+    private List<Object[]> pending;
+
+    private ScheduledExecutorService executor;
+
+    @Autowired
+    public CompletionIndex(ItemRepository itemRepository, ItemCategoryRepository itemCategoryRepository,
+                           @Value("${app.completion.max-depth:10}") int maxDepth,
+                           @Value("${app.completion.results:10}") int limit,
+                           @Value("${app.search.batch-size:5000}") int batchSize,
+                           @Value("${app.completion.rebuild-minutes:60}") int rebuildMinutes) {
+        this.itemRepository = itemRepository;
+        this.itemCategoryRepository = itemCategoryRepository;
+        this.maxDepth = maxDepth;
+        this.limit = limit;
+        this.batchSize = batchSize;
+        this.rebuildMinutes = rebuildMinutes;
+        this.trie = new Trie(maxDepth, 2 * limit);
+    }
+
+    @PostConstruct
+    public void start() {
+        executor = Executors.newSingleThreadScheduledExecutor();
+        executor.scheduleWithFixedDelay(() -> {
+            try {
+                rebuild();
+            } catch (Exception e) {
+                System.err.println("Could not rebuild the suggestions");
+                e.printStackTrace();
+            }
+        }, rebuildMinutes, rebuildMinutes, TimeUnit.MINUTES);
+    }
+
+
+    /**
+     * @param keyword - the start of a word or any part of a name
+     * @return the best names containing the keyword, at most 'limit' of them
+     */
+    public List<String> complete(String keyword) {
+        String key = keyword.toLowerCase(Locale.ROOT);
+        lock.readLock().lock();
+        try {
+            return trie.complete(key, limit);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+
+    public void addItem(Item item) {
+        add(item.getName(), weight(item.getBidCount(), item.getCreatedAt()));
+    }
+
+    public void addCategory(ItemCategory category) {
+        add(category.getName(), weight(0, category.getCreatedAt()));
+    }
+
+    /**
+     * A name of a deleted or renamed item
+     */
+    public void removeItem(String name) {
+        if (name == null) {
+            return;
+        }
+        lock.writeLock().lock();
+        try {
+            trie.remove(name);
+            if (pending != null) {
+                pending.add(new Object[]{name, null});
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void add(String name, double weight) {
+        if (name == null || name.isEmpty()) {
+            return;
+        }
+        lock.writeLock().lock();
+        try {
+            trie.add(name, weight);
+            if (pending != null) {
+                pending.add(new Object[]{name, weight});
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private static double weight(Integer bidCount, Date createdAt) {
+        double recency = createdAt == null ? System.currentTimeMillis() : createdAt.getTime();
+        return Math.log1p(bidCount == null ? 0 : bidCount) + recency / RECENCY_MILLIS;
+    }
+
+
+    /**
+     * Builds the trie again from the database without blocking the lookups
+     */
+    public synchronized void rebuild() {
+
+        lock.writeLock().lock();
+        try {
+            pending = new ArrayList<>();
+        } finally {
+            lock.writeLock().unlock();
+        }
+
+        Trie rebuilt = new Trie(maxDepth, 2 * limit);
+        boolean done = false;
+        try {
+            long after = 0;
+            List<Object[]> rows;
+            do {
+                rows = itemRepository.getCompletionRows(after, PageRequest.of(0, batchSize));
+                for (Object[] row : rows) {
+                    rebuilt.add((String) row[1], weight((Integer) row[2], (Date) row[3]));
+                }
+                if (!rows.isEmpty()) {
+                    after = (Long) rows.get(rows.size() - 1)[0];
+                }
+            } while (rows.size() == batchSize);
+
+            for (ItemCategory category : itemCategoryRepository.findAll()) {
+                //the root is not a real category
+                if (category.getParent() != null) {
+                    rebuilt.add(category.getName(), weight(0, category.getCreatedAt()));
+                }
+            }
+            done = true;
+        } finally {
+            lock.writeLock().lock();
+            try {
+                if (done) {
+                    for (Object[] change : pending) {
+                        if (change[1] == null) {
+                            rebuilt.remove((String) change[0]);
+                        } else {
+                            rebuilt.add((String) change[0], (Double) change[1]);
+                        }
+                    }
+                    trie = rebuilt;
+                }
+                pending = null;
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+    }
+
+
+    @PreDestroy
+    public void shutdown() {
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+    }
+
+
+    /**
+     * The names and the suffix trie over them, not thread-safe
+     */
+    private static final class Trie {
+
+        private final int maxDepth;
+        /** completions cached per node, some of them may be deleted names */
+        private final int cached;
+
+        private final Node root = new Node();
+        private final Map<String, Integer> byKey = new HashMap<>();
+        private final List<String> names = new ArrayList<>();
+        private final List<String> keys = new ArrayList<>();
+        private double[] weights = new double[64];
+        /** number of items and categories of every name, 0 once deleted */
+        private int[] counts = new int[64];
+
+        Trie(int maxDepth, int cached) {
+            this.maxDepth = maxDepth;
+            this.cached = cached;
+        }
+
+        void add(String name, double weight) {
+            String key = name.toLowerCase(Locale.ROOT);
+            Integer entry = byKey.get(key);
+            if (entry == null) {
+                entry = names.size();
+                byKey.put(key, entry);
+                names.add(name);
+                keys.add(key);
+                if (entry == weights.length) {
+                    weights = Arrays.copyOf(weights, entry * 2);
+                    counts = Arrays.copyOf(counts, entry * 2);
+                }
+                weights[entry] = weight;
+                counts[entry] = 1;
+                insert(key, entry, true);
+                return;
+            }
+
+            counts[entry]++;
+            if (weight > weights[entry]) {
+                weights[entry] = weight;
+                //moves up in the caches it is in, and into the ones it may now reach
+                insert(key, entry, false);
+            }
+        }
+
+        void remove(String name) {
+            Integer entry = byKey.get(name.toLowerCase(Locale.ROOT));
+            if (entry != null && counts[entry] > 0) {
+                counts[entry]--;
+            }
+        }
+
+        private void insert(String key, int entry, boolean first) {
+            for (int start = 0; start < key.length(); start++) {
+                if (Character.isWhitespace(key.charAt(start))) {
+                    continue;
+                }
+                Node node = root;
+                int end = Math.min(key.length(), start + maxDepth);
+                for (int i = start; i < end; i++) {
+                    node = node.child(key.charAt(i));
+                    node.offer(entry, weights, cached);
+                    if (first && i - start + 1 == maxDepth) {
+                        node.keep(entry);
+                    }
+                }
+            }
+        }
+
+        List<String> complete(String key, int limit) {
+            Node node = root;
+            for (int i = 0; i < key.length() && i < maxDepth && node != null; i++) {
+                node = node.find(key.charAt(i));
+            }
+            List<String> result = new ArrayList<>();
+            if (node == null || key.isEmpty()) {
+                return result;
+            }
+
+            if (key.length() <= maxDepth) {
+                for (int i = 0; i < node.size && result.size() < limit; i++) {
+                    if (counts[node.top[i]] > 0) {
+                        result.add(names.get(node.top[i]));
+                    }
+                }
+                return result;
+            }
+
+            //longer than the trie: filter the names passing through the deepest node
+            TopK best = new TopK(limit);
+            for (int i = 0; i < node.kept; i++) {
+                int entry = node.all[i];
+                if (counts[entry] > 0 && keys.get(entry).contains(key)) {
+                    best.offer(entry, 0, (float) weights[entry]);
+                }
+            }
+            for (long entry : best.drain()) {
+                result.add(names.get((int) entry));
+            }
+            return result;
+        }
+    }
+
+
+    private static final class Node {
+
+        private char[] labels = new char[0];
+        private Node[] children = new Node[0];
+
+        /** best names first */
+        private int[] top = new int[2];
+        private int size;
+
+        /** every name passing through, only at the deepest level */
+        private int[] all;
+        private int kept;
+
+        Node find(char label) {
+            int i = Arrays.binarySearch(labels, label);
+            return i < 0 ? null : children[i];
+        }
+
+        Node child(char label) {
+            int i = Arrays.binarySearch(labels, label);
+            if (i >= 0) {
+                return children[i];
+            }
+            i = -i - 1;
+            char[] newLabels = new char[labels.length + 1];
+            Node[] newChildren = new Node[children.length + 1];
+            System.arraycopy(labels, 0, newLabels, 0, i);
+            System.arraycopy(children, 0, newChildren, 0, i);
+            newLabels[i] = label;
+            newChildren[i] = new Node();
+            System.arraycopy(labels, i, newLabels, i + 1, labels.length - i);
+            System.arraycopy(children, i, newChildren, i + 1, children.length - i);
+            labels = newLabels;
+            children = newChildren;
+            return newChildren[i];
+        }
+
+        /** puts a name at its place among the cached ones */
+        void offer(int entry, double[] weights, int cached) {
+            int at = -1;
+            for (int i = 0; i < size; i++) {
+                if (top[i] == entry) {
+                    at = i;
+                    break;
+                }
+            }
+            if (at < 0) {
+                if (size == cached && weights[top[size - 1]] >= weights[entry]) {
+                    return;
+                }
+                if (size < cached) {
+                    if (size == top.length) {
+                        top = Arrays.copyOf(top, Math.min(cached, size * 2));
+                    }
+                    size++;
+                }
+                at = size - 1;
+            }
+            //the weight of a name only grows, so it only moves up
+            while (at > 0 && weights[top[at - 1]] < weights[entry]) {
+                top[at] = top[at - 1];
+                at--;
+            }
+            top[at] = entry;
+        }
+
+        void keep(int entry) {
+            if (all == null) {
+                all = new int[2];
+            }
+            //the suffixes of a name are inserted one after the other
+            if (kept > 0 && all[kept - 1] == entry) {
+                return;
+            }
+            if (kept == all.length) {
+                all = Arrays.copyOf(all, kept * 2);
+            }
+            all[kept++] = entry;
+        }
+    }
+}
@@ -0,0 +1,103 @@
+package com.Auctions.backEnd.services.Search;
+
+/**
+ * A fixed grid of latitude/longitude cells of CELL_DEGREES each way
+ *
+ * A cell is numbered row by row (row * LON_CELLS + column), so the cells of
+ * a row that a circle crosses are one range of numbers. A segment keeps its
+ * documents sorted by cell (see Segment), so the documents around a point
+ * are found with one binary search per row the circle crosses.
+ */
+final class GeoGrid {
+
+    /** about 11 km of latitude */
+    static final double CELL_DEGREES = 0.1;
+    static final int LAT_CELLS = (int) Math.round(180 / CELL_DEGREES);
+    static final int LON_CELLS = (int) Math.round(360 / CELL_DEGREES);
+
+    static final double EARTH_RADIUS_KM = 6371.0088;
+    private static final double KM_PER_DEGREE = Math.PI * EARTH_RADIUS_KM / 180;
+
+    private GeoGrid() {
+    }
+
+    static int cell(double latitude, double longitude) {
+        return row(latitude) * LON_CELLS + column(longitude);
+    }
+
+    private static int row(double latitude) {
+        return Math.max(0, Math.min(LAT_CELLS - 1, (int) Math.floor((latitude + 90) / CELL_DEGREES)));
+    }
+
+    private static int column(double longitude) {
+        return Math.floorMod((int) Math.floor((longitude + 180) / CELL_DEGREES), LON_CELLS);
+    }
+
+
+    /**
+     * The cells that may hold points within a distance of a point,
+     * as [first, last] ranges of cell numbers
+     *
+     * @return the ranges, two numbers each
+     */
+    static int[] ranges(double latitude, double longitude, double radiusKm) {
+
+        double latitudeSpan = radiusKm / KM_PER_DEGREE;
+        double south = Math.max(-90, latitude - latitudeSpan);
+        double north = Math.min(90, latitude + latitudeSpan);
+
+        //the widest longitude span is at the latitude farthest from the equator
+        double widest = Math.toRadians(Math.max(Math.abs(south), Math.abs(north)));
+        double longitudeSpan = Math.cos(widest) < 1e-9 ? 360 : radiusKm / (KM_PER_DEGREE * Math.cos(widest));
+
+        int firstRow = row(south);
+        int lastRow = row(north);
+        int rows = lastRow - firstRow + 1;
+
+        int[] ranges;
+        if (longitudeSpan >= 180) {
+            ranges = new int[2 * rows];
+            for (int r = 0; r < rows; r++) {
+                ranges[2 * r] = (firstRow + r) * LON_CELLS;
+                ranges[2 * r + 1] = (firstRow + r) * LON_CELLS + LON_CELLS - 1;
+            }
+            return ranges;
+        }
+
+        int west = (int) Math.floor((longitude - longitudeSpan + 180) / CELL_DEGREES);
+        int east = (int) Math.floor((longitude + longitudeSpan + 180) / CELL_DEGREES);
+        boolean wraps = west < 0 || east >= LON_CELLS;
+        west = Math.floorMod(west, LON_CELLS);
+        east = Math.floorMod(east, LON_CELLS);
+
+        ranges = new int[(wraps ? 4 : 2) * rows];
+        int i = 0;
+        for (int row = firstRow; row <= lastRow; row++) {
+            int base = row * LON_CELLS;
+            if (wraps) {
+                //across the antimeridian
+                ranges[i++] = base + west;
+                ranges[i++] = base + LON_CELLS - 1;
+                ranges[i++] = base;
+                ranges[i++] = base + east;
+            } else {
+                ranges[i++] = base + west;
+                ranges[i++] = base + east;
+            }
+        }
+        return ranges;
+    }
+
+
+    /**
+     * @return the great-circle distance of two points in km (haversine)
+     */
+    static double distanceKm(double latitude1, double longitude1, double latitude2, double longitude2) {
+        double dLat = Math.toRadians(latitude2 - latitude1);
+        double dLon = Math.toRadians(longitude2 - longitude1);
+        double a = Math.sin(dLat / 2) * Math.sin(dLat / 2)
+                + Math.cos(Math.toRadians(latitude1)) * Math.cos(Math.toRadians(latitude2))
+                * Math.sin(dLon / 2) * Math.sin(dLon / 2);
+        return 2 * EARTH_RADIUS_KM * Math.asin(Math.min(1, Math.sqrt(a)));
+    }
+}
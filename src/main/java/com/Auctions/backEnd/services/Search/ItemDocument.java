@@ -0,0 +1,58 @@
+package com.Auctions.backEnd.services.Search;
+
+import com.Auctions.backEnd.models.Geolocation;
+import com.Auctions.backEnd.models.Item;
+import com.Auctions.backEnd.models.ItemCategory;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.Setter;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The searchable part of an item
+ *
+ * The words, the categories, the location and the end of the auction are
+ * fixed once indexed, the price, the number of bids and the completion
+ * change in place as bids come in (see ItemEvent)
+ */
+@Getter
+@AllArgsConstructor
+public class ItemDocument {
+
+    private final long id;
+    private final String name;
+    private final String description;
+    /** names of the category of the item and of its ancestors */
+    private final List<String> categories;
+    private final List<Long> categoryIds;
+    /** NaN if the item has no location */
+    private final double latitude;
+    private final double longitude;
+    /** end of the auction in epoch milliseconds, Long.MAX_VALUE if unknown */
+    private final long endsAt;
+
+    @Setter
+    private double price;
+    @Setter
+    private int bidCount;
+    @Setter
+    private boolean completed;
+
+    public static ItemDocument of(Item item) {
+        List<String> categories = new ArrayList<>();
+        List<Long> categoryIds = new ArrayList<>();
+        for (ItemCategory category : item.getCategories()) {
+            categories.add(category.getName());
+            categoryIds.add(category.getId());
+        }
+        Geolocation location = item.getLocation();
+        boolean located = location != null && location.getLatitude() != null && location.getLongitude() != null;
+        return new ItemDocument(item.getId(), item.getName(), item.getDescription(), categories, categoryIds,
+                located ? location.getLatitude() : Double.NaN, located ? location.getLongitude() : Double.NaN,
+                item.getEndsAt() == null ? Long.MAX_VALUE : item.getEndsAt().getTime(),
+                item.getCurrently() == null ? 0 : item.getCurrently(),
+                item.getBidCount() == null ? 0 : item.getBidCount(), item.isAuctionCompleted());
+    }
+}
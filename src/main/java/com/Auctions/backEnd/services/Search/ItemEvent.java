@@ -0,0 +1,59 @@
+package com.Auctions.backEnd.services.Search;
+
+import com.Auctions.backEnd.models.Item;
+import com.Auctions.backEnd.responses.PriceEvent;
+import lombok.AccessLevel;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+/**
+ * A change of an item the search index has to follow (see SearchIndexer)
+ */
+@Getter
+@AllArgsConstructor(access = AccessLevel.PRIVATE)
+public class ItemEvent {
+
+    public enum Type {
+        /** created or modified, the document replaces the indexed one */
+        SAVED,
+        DELETED,
+        /** a bid was accepted, which may also complete the auction */
+        PRICE,
+        /** the auction was closed */
+        COMPLETED,
+        /** wakes the indexer up for a rebuild */
+        REBUILD
+    }
+
+    private final Type type;
+    private final long itemId;
+    private final ItemDocument document;
+    private final Double price;
+    private final Integer bidCount;
+    private final boolean completed;
+
+    /**
+     * The document is taken right away, while the categories
+     * of the item can still be loaded
+     */
+    public static ItemEvent saved(Item item) {
+        return new ItemEvent(Type.SAVED, item.getId(), ItemDocument.of(item), null, null, false);
+    }
+
+    public static ItemEvent deleted(long itemId) {
+        return new ItemEvent(Type.DELETED, itemId, null, null, null, false);
+    }
+
+    public static ItemEvent price(PriceEvent price) {
+        return new ItemEvent(Type.PRICE, price.getItemId(), null,
+                price.getCurrently(), price.getBidCount(), price.isCompleted());
+    }
+
+    public static ItemEvent completed(long itemId) {
+        return new ItemEvent(Type.COMPLETED, itemId, null, null, null, true);
+    }
+
+    static ItemEvent rebuild() {
+        return new ItemEvent(Type.REBUILD, 0, null, null, null, false);
+    }
+}
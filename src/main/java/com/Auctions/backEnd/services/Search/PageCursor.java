@@ -0,0 +1,62 @@
+package com.Auctions.backEnd.services.Search;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.nio.ByteBuffer;
+import java.util.Base64;
+
+/**
+ * Where a page of ranked results ended, handed to the client as an opaque
+ * string so that the next page starts right after it without ranking the
+ * pages before it again
+ *
+ * The scope ties a cursor to the query it came from, e.g. the hash of
+ * the search text, so a cursor of another query is refused.
+ */
+@Getter
+@AllArgsConstructor
+public class PageCursor {
+
+    private static final int BYTES = 4 + 4 + 4 + 8 + 4;
+
+    private final int scope;
+    private final int rank;
+    private final float score;
+    private final long id;
+    /** number of results before the next page */
+    private final int offset;
+
+    /**
+     * @return true if the given result comes after the cursor
+     */
+    public boolean isAfter(int rank, float score, long id) {
+        return TopK.below(rank, score, id, this.rank, this.score, this.id);
+    }
+
+    public String encode() {
+        ByteBuffer buffer = ByteBuffer.allocate(BYTES);
+        buffer.putInt(scope).putInt(rank).putFloat(score).putLong(id).putInt(offset);
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(buffer.array());
+    }
+
+    /**
+     * @param cursor - a cursor given by encode()
+     * @param scope - the scope of the current query
+     * @return the cursor
+     * @throws IllegalArgumentException if the cursor is malformed or of another query
+     */
+    public static PageCursor decode(String cursor, int scope) {
+        byte[] bytes = Base64.getUrlDecoder().decode(cursor);
+        if (bytes.length != BYTES) {
+            throw new IllegalArgumentException("Invalid cursor");
+        }
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        PageCursor decoded = new PageCursor(buffer.getInt(), buffer.getInt(), buffer.getFloat(),
+                buffer.getLong(), buffer.getInt());
+        if (decoded.scope != scope || decoded.offset < 0) {
+            throw new IllegalArgumentException("Invalid cursor");
+        }
+        return decoded;
+    }
+}
@@ -0,0 +1,102 @@
+package com.Auctions.backEnd.services.Search;
+
+/**
+ * Computes one page of ranked results without ranking all of them
+ *
+ * The producer offers every candidate with its rank and score and the
+ * pager keeps only the best (page + 1) * size in a bounded heap (see
+ * TopK), so the memory and the sorting grow with the depth of the page
+ * and not with the number of candidates. With a cursor the candidates up
+ * to the end of the previous page are skipped, so any page deep down only
+ * keeps 'size' candidates.
+ *
+ * The total counts every candidate offered, it is exact unless the
+ * producer had to leave some candidates out and said so (estimated()).
+ */
+public class ResultPager {
+
+    private final int size;
+    private final int skip;
+    private final int scope;
+    private final PageCursor after;
+    private final TopK top;
+
+    private int total;
+    private boolean exact = true;
+
+    private int kept = -1;
+
+    /**
+     * @param page - the page number, ignored with a cursor
+     * @param size - the page size
+     * @param cursor - the cursor of the previous page, or null
+     * @param scope - the scope of the query (see PageCursor)
+     * @throws IllegalArgumentException if the cursor is invalid
+     */
+    public ResultPager(int page, int size, String cursor, int scope) {
+        this.size = size;
+        this.scope = scope;
+        this.after = cursor == null || cursor.isEmpty() ? null : PageCursor.decode(cursor, scope);
+        this.skip = after == null ? (int) Math.min(Integer.MAX_VALUE - size, (long) page * size) : 0;
+        this.top = new TopK(skip + size);
+    }
+
+
+    public void offer(long id, int rank, float score) {
+        total++;
+        if (after == null || after.isAfter(rank, score, id)) {
+            top.offer(id, rank, score);
+        }
+    }
+
+    /**
+     * The producer left candidates out, e.g. to bound its own work
+     */
+    public void estimated() {
+        exact = false;
+    }
+
+
+    /**
+     * @return the ids of the page, best first
+     */
+    public long[] page() {
+        if (kept < 0) {
+            kept = top.sort();
+        }
+        int from = Math.min(skip, kept);
+        long[] ids = new long[kept - from];
+        for (int i = from; i < kept; i++) {
+            ids[i - from] = top.id(i);
+        }
+        return ids;
+    }
+
+    /**
+     * @return the cursor of the page after this one, or null if this is the last one
+     */
+    public String next() {
+        page();
+        int offset = (after == null ? 0 : after.getOffset()) + kept;
+        if (kept <= skip || offset >= total) {
+            return null;
+        }
+        int last = kept - 1;
+        return new PageCursor(scope, top.rank(last), top.score(last), top.id(last), offset).encode();
+    }
+
+    /**
+     * @return the number of results before this page
+     */
+    public int getOffset() {
+        return after == null ? skip : after.getOffset();
+    }
+
+    public int getTotal() {
+        return total;
+    }
+
+    public boolean isExact() {
+        return exact;
+    }
+}
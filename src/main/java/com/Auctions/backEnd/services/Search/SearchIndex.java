@@ -0,0 +1,513 @@
+package com.Auctions.backEnd.services.Search;
+
+import com.Auctions.backEnd.repositories.ItemRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Service;
+
+import java.util.*;
+
+/**
+ * In-memory inverted index of the items for the search bar
+ *
+ * The name, the description and the category path of every item are split
+ * in words (see Tokenizer) and kept in posting lists of item ids, split in
+ * immutable segments (see Segment). Readers work on a snapshot of the
+ * segments and of their deleted documents taken from a volatile field, so
+ * they never lock. All the writes come from the single thread of the
+ * SearchIndexer, which builds a new snapshot per batch of changes and
+ * publishes it.
+ *
+ * A query word matches the terms starting with it, the exact term weighing
+ * more. The matches of all the words are scored with BM25 and the items
+ * matching more of the words rank first, so the items matching all of them
+ * (the intersection) come before the ones matching some of them (the rest
+ * of the union). Only the page asked for is kept (see ResultPager).
+ *
+ * The open auctions around a point are found through the location grid
+ * of the segments (see GeoGrid).
+ */
+@Service
+public class SearchIndex {
+
+    /** words of a query taken into account */
+    static final int MAX_WORDS = 16;
+    /** terms a query word may expand to, per segment */
+    static final int MAX_EXPANSIONS = 64;
+    static final float PREFIX_WEIGHT = 0.5f;
+    static final int MAX_SEGMENTS = 10;
+
+    private static final float K1 = 1.2f;
+    private static final float B = 0.75f;
+
+    private final ItemRepository itemRepository;
+    private final int batchSize;
+
+    private volatile Snapshot snapshot = Snapshot.EMPTY;
+
+    @Autowired
+    public SearchIndex(ItemRepository itemRepository,
+                       @Value("${app.search.batch-size:5000}") int batchSize) {
+        this.itemRepository = itemRepository;
+        this.batchSize = batchSize;
+    }
+
+
+    /**
+     * Indexes all the items again, a batch of rows at a time
+     */
+    void rebuild() {
+
+        long start = System.currentTimeMillis();
+        List<Segment> batches = new ArrayList<>();
+        long after = 0;
+        List<Object[]> rows;
+        do {
+            rows = itemRepository.getSearchRows(after, PageRequest.of(0, batchSize));
+            if (rows.isEmpty()) {
+                break;
+            }
+
+            batches.add(Segment.build(documents(rows)));
+            after = (Long) rows.get(rows.size() - 1)[0];
+        } while (rows.size() == batchSize);
+
+        Segment segment = merge(batches.toArray(new Segment[0]));
+        snapshot = new Snapshot(new Segment[]{segment}, new BitSet[]{new BitSet()});
+        System.out.println("Indexed " + segment.size() + " items for search in "
+                + (System.currentTimeMillis() - start) + " ms");
+    }
+
+
+    /**
+     * Catches up on the items changed since the given time, e.g. through
+     * other nodes, whose events only reach the index of their own node
+     *
+     * The changed rows replace their documents, but the price and the
+     * number of bids only ever go up, since the bids of this node may
+     * not have been written yet. Deletions leave no row behind: they are
+     * noticed by the index holding more items than the database.
+     *
+     * @param since - the time of the last catch-up, less a margin
+     * @return the number of changed items, or -1 if items were deleted
+     * and the index has to be built again
+     */
+    int sync(Date since) {
+
+        int changed = 0;
+        long after = 0;
+        List<Object[]> rows;
+        do {
+            rows = itemRepository.getSearchRowsChangedSince(since, after, PageRequest.of(0, batchSize));
+            if (rows.isEmpty()) {
+                break;
+            }
+
+            Snapshot current = snapshot;
+            List<ItemDocument> documents = documents(rows);
+            documents.forEach(document -> {
+                for (int s = current.segments.length - 1; s >= 0; s--) {
+                    Segment segment = current.segments[s];
+                    int doc = segment.ordinal(document.getId());
+                    if (doc >= 0 && !current.deleted[s].get(doc)) {
+                        document.setPrice(Math.max(document.getPrice(), segment.prices[doc]));
+                        document.setBidCount(Math.max(document.getBidCount(), segment.bidCounts[doc]));
+                        document.setCompleted(document.isCompleted() || segment.completed[doc]);
+                        break;
+                    }
+                }
+            });
+            snapshot = apply(current, documents, Collections.emptySet());
+
+            changed += rows.size();
+            after = (Long) rows.get(rows.size() - 1)[0];
+        } while (rows.size() == batchSize);
+
+        return snapshot.live > itemRepository.count() ? -1 : changed;
+    }
+
+    /**
+     * @param rows - rows of getSearchRows
+     * @return their documents, with the categories of the items
+     */
+    private List<ItemDocument> documents(List<Object[]> rows) {
+
+        List<Long> ids = new ArrayList<>(rows.size());
+        rows.forEach(row -> ids.add((Long) row[0]));
+        Map<Long, List<String>> categories = new HashMap<>();
+        Map<Long, List<Long>> categoryIds = new HashMap<>();
+        itemRepository.getCategoryNames(ids).forEach(row -> {
+            categoryIds.computeIfAbsent((Long) row[0], id -> new ArrayList<>()).add((Long) row[1]);
+            categories.computeIfAbsent((Long) row[0], id -> new ArrayList<>()).add((String) row[2]);
+        });
+
+        List<ItemDocument> documents = new ArrayList<>(rows.size());
+        rows.forEach(row -> documents.add(new ItemDocument((Long) row[0], (String) row[1], (String) row[2],
+                categories.getOrDefault((Long) row[0], Collections.emptyList()),
+                categoryIds.getOrDefault((Long) row[0], Collections.emptyList()),
+                row[6] == null || row[7] == null ? Double.NaN : (Double) row[6],
+                row[6] == null || row[7] == null ? Double.NaN : (Double) row[7],
+                row[8] == null ? Long.MAX_VALUE : ((Date) row[8]).getTime(),
+                row[3] == null ? 0 : (Double) row[3], row[4] == null ? 0 : (Integer) row[4],
+                Boolean.TRUE.equals(row[5]))));
+        return documents;
+    }
+
+
+    /**
+     * Applies a batch of changes in their order
+     *
+     * The saved and deleted items of the batch are folded into one new
+     * segment and one set of deletions, so a batch publishes one snapshot.
+     * Price changes of items indexed before are written in place (see
+     * Segment). The bids of an item may be published out of order, so the
+     * price and the number of bids only ever go up.
+     */
+    void apply(List<ItemEvent> events) {
+
+        Map<Long, ItemDocument> saved = new LinkedHashMap<>();
+        Set<Long> removed = new HashSet<>();
+        List<ItemEvent> changes = new ArrayList<>();
+
+        for (ItemEvent event : events) {
+            switch (event.getType()) {
+                case SAVED:
+                    saved.put(event.getItemId(), event.getDocument());
+                    removed.remove(event.getItemId());
+                    break;
+                case DELETED:
+                    saved.remove(event.getItemId());
+                    removed.add(event.getItemId());
+                    break;
+                case PRICE:
+                case COMPLETED:
+                    ItemDocument document = saved.get(event.getItemId());
+                    if (document != null) {
+                        change(document, event);
+                    } else if (!removed.contains(event.getItemId())) {
+                        changes.add(event);
+                    }
+                    break;
+                default:
+                    break;
+            }
+        }
+
+        if (!saved.isEmpty() || !removed.isEmpty()) {
+            snapshot = apply(snapshot, new ArrayList<>(saved.values()), removed);
+        }
+
+        Snapshot current = snapshot;
+        for (ItemEvent event : changes) {
+            for (int s = current.segments.length - 1; s >= 0; s--) {
+                Segment segment = current.segments[s];
+                int doc = segment.ordinal(event.getItemId());
+                if (doc >= 0 && !current.deleted[s].get(doc)) {
+                    if (event.getPrice() != null) {
+                        segment.prices[doc] = Math.max(segment.prices[doc], event.getPrice());
+                    }
+                    if (event.getBidCount() != null) {
+                        segment.bidCounts[doc] = Math.max(segment.bidCounts[doc], event.getBidCount());
+                    }
+                    segment.completed[doc] |= event.isCompleted();
+                    break;
+                }
+            }
+        }
+    }
+
+    private static void change(ItemDocument document, ItemEvent event) {
+        if (event.getPrice() != null) {
+            document.setPrice(Math.max(document.getPrice(), event.getPrice()));
+        }
+        if (event.getBidCount() != null) {
+            document.setBidCount(Math.max(document.getBidCount(), event.getBidCount()));
+        }
+        document.setCompleted(document.isCompleted() || event.isCompleted());
+    }
+
+
+    /**
+     * @return a snapshot where the given items are replaced or removed
+     */
+    private Snapshot apply(Snapshot current, List<ItemDocument> documents, Set<Long> removed) {
+
+        Segment added = documents.isEmpty() ? null : Segment.build(documents);
+
+        int count = current.segments.length + (added == null ? 0 : 1);
+        Segment[] segments = Arrays.copyOf(current.segments, count);
+        BitSet[] deleted = Arrays.copyOf(current.deleted, count);
+
+        for (int s = 0; s < current.segments.length; s++) {
+            BitSet copy = null;
+            for (long id : added == null ? new long[0] : added.ids) {
+                copy = delete(segments[s], deleted, s, copy, id);
+            }
+            for (Long id : removed) {
+                copy = delete(segments[s], deleted, s, copy, id);
+            }
+        }
+        if (added != null) {
+            segments[count - 1] = added;
+            deleted[count - 1] = new BitSet();
+        }
+
+        //keep the segments of geometric sizes, so that every document is merged O(log n) times
+        while (count > 1 && (count > MAX_SEGMENTS
+                || 2 * live(segments[count - 1], deleted[count - 1]) >= live(segments[count - 2], deleted[count - 2]))) {
+            Segment merged = Segment.merge(new Segment[]{segments[count - 2], segments[count - 1]},
+                    new BitSet[]{deleted[count - 2], deleted[count - 1]});
+            count--;
+            segments = Arrays.copyOf(segments, count);
+            deleted = Arrays.copyOf(deleted, count);
+            segments[count - 1] = merged;
+            deleted[count - 1] = new BitSet();
+        }
+        return new Snapshot(segments, deleted);
+    }
+
+    /** marks the document of an item deleted, the bit set is copied once per snapshot */
+    private static BitSet delete(Segment segment, BitSet[] deleted, int s, BitSet copy, long id) {
+        int doc = segment.ordinal(id);
+        if (doc < 0 || deleted[s].get(doc)) {
+            return copy;
+        }
+        if (copy == null) {
+            copy = (BitSet) deleted[s].clone();
+            deleted[s] = copy;
+        }
+        copy.set(doc);
+        return copy;
+    }
+
+    private static int live(Segment segment, BitSet deleted) {
+        return segment.size() - deleted.cardinality();
+    }
+
+    private static Segment merge(Segment[] segments) {
+        if (segments.length == 0) {
+            return Segment.EMPTY;
+        }
+        if (segments.length == 1) {
+            return segments[0];
+        }
+        BitSet[] deleted = new BitSet[segments.length];
+        Arrays.fill(deleted, new BitSet());
+        return Segment.merge(segments, deleted);
+    }
+
+
+    /**
+     * Offers every match of the words to the pager, which keeps the page
+     * asked for; the rank of a match is the number of words it matches
+     *
+     * @param text - the words to search
+     * @param pager - the page asked for
+     */
+    public void search(String text, ResultPager pager) {
+
+        Snapshot current = snapshot;
+        List<String> words = new ArrayList<>(new LinkedHashSet<>(Tokenizer.tokens(text)));
+        if (words.size() > MAX_WORDS) {
+            words = words.subList(0, MAX_WORDS);
+            pager.estimated();
+        }
+        if (words.isEmpty() || current.live == 0) {
+            return;
+        }
+
+        //document frequency of every term a word expands to, over all the segments
+        Map<String, Integer> frequencies = new HashMap<>();
+        for (Segment segment : current.segments) {
+            for (String word : words) {
+                int end = expansions(segment, word);
+                for (int t = segment.firstTerm(word); t < end; t++) {
+                    frequencies.merge(segment.terms[t], segment.docs[t].length, Integer::sum);
+                }
+                if (end < segment.terms.length && segment.terms[end].startsWith(word)) {
+                    //the terms past the cap are left out
+                    pager.estimated();
+                }
+            }
+        }
+
+        float averageLength = current.totalLength / Math.max(1, current.documents);
+
+        for (int s = 0; s < current.segments.length; s++) {
+            Segment segment = current.segments[s];
+            BitSet deleted = current.deleted[s];
+
+            int postings = 0;
+            for (String word : words) {
+                int end = expansions(segment, word);
+                for (int t = segment.firstTerm(word); t < end; t++) {
+                    postings += segment.docs[t].length;
+                }
+            }
+            if (postings == 0) {
+                continue;
+            }
+
+            Accumulator accumulator = new Accumulator(postings);
+            for (int w = 0; w < words.size(); w++) {
+                String word = words.get(w);
+                int end = expansions(segment, word);
+                for (int t = segment.firstTerm(word); t < end; t++) {
+                    int df = frequencies.get(segment.terms[t]);
+                    float idf = (float) Math.log(1 + (current.live - df + 0.5) / (df + 0.5));
+                    float weight = (segment.terms[t].length() == word.length() ? 1f : PREFIX_WEIGHT) * idf;
+
+                    int[] docs = segment.docs[t];
+                    float[] freqs = segment.freqs[t];
+                    for (int i = 0; i < docs.length; i++) {
+                        if (deleted.get(docs[i])) {
+                            continue;
+                        }
+                        float tf = freqs[i];
+                        float norm = K1 * (1 - B + B * segment.lengths[docs[i]] / averageLength);
+                        accumulator.add(docs[i], weight * tf * (K1 + 1) / (tf + norm), 1L << w);
+                    }
+                }
+            }
+
+            for (int i = 0; i < accumulator.keys.length; i++) {
+                if (accumulator.masks[i] != 0) {
+                    pager.offer(segment.ids[accumulator.keys[i]], Long.bitCount(accumulator.masks[i]),
+                            accumulator.scores[i]);
+                }
+            }
+        }
+    }
+
+    /**
+     * Offers every open auction within a distance of a point to the pager,
+     * the nearest first; only the cells of GeoGrid around the point are read
+     *
+     * An auction is left out once it has ended, even if its completion has
+     * not reached this index yet: the auctions are completed by the closure
+     * of one node only, so the flag may never be set on the others.
+     *
+     * @param latitude - latitude of the point
+     * @param longitude - longitude of the point
+     * @param radiusKm - the distance
+     * @param categoryId - optionally a category the auctions must be in
+     * @param lowerPrice - optionally the lowest current price
+     * @param higherPrice - optionally the highest current price
+     * @param pager - the page asked for
+     */
+    public void nearby(double latitude, double longitude, double radiusKm, Long categoryId,
+                       Double lowerPrice, Double higherPrice, ResultPager pager) {
+
+        Snapshot current = snapshot;
+        int[] ranges = GeoGrid.ranges(latitude, longitude, radiusKm);
+        long now = System.currentTimeMillis();
+
+        for (int s = 0; s < current.segments.length; s++) {
+            Segment segment = current.segments[s];
+            BitSet deleted = current.deleted[s];
+
+            for (int r = 0; r < ranges.length; r += 2) {
+                for (int i = segment.firstInCell(ranges[r]);
+                     i < segment.cells.length && segment.cells[i] <= ranges[r + 1]; i++) {
+                    int doc = segment.cellDocs[i];
+                    if (deleted.get(doc) || segment.completed[doc] || segment.endsAt[doc] <= now
+                            || (lowerPrice != null && segment.prices[doc] < lowerPrice)
+                            || (higherPrice != null && segment.prices[doc] > higherPrice)
+                            || (categoryId != null && !segment.inCategory(doc, categoryId))) {
+                        continue;
+                    }
+                    double distance = GeoGrid.distanceKm(latitude, longitude,
+                            segment.latitudes[doc], segment.longitudes[doc]);
+                    if (distance <= radiusKm) {
+                        pager.offer(segment.ids[doc], 0, (float) -distance);
+                    }
+                }
+            }
+        }
+    }
+
+    /** @return the end of the terms a word expands to in a segment */
+    private static int expansions(Segment segment, String word) {
+        int t = segment.firstTerm(word);
+        int end = t;
+        while (end < segment.terms.length && end - t < MAX_EXPANSIONS && segment.terms[end].startsWith(word)) {
+            end++;
+        }
+        return end;
+    }
+
+
+    /**
+     * @return the number of items indexed
+     */
+    public int size() {
+        return snapshot.live;
+    }
+
+    public int getSegmentCount() {
+        return snapshot.segments.length;
+    }
+
+
+    /**
+     * The segments and their deleted documents a query works on
+     */
+    private static final class Snapshot {
+
+        static final Snapshot EMPTY = new Snapshot(new Segment[0], new BitSet[0]);
+
+        final Segment[] segments;
+        final BitSet[] deleted;
+        final int live;
+        final int documents;
+        final float totalLength;
+
+        Snapshot(Segment[] segments, BitSet[] deleted) {
+            this.segments = segments;
+            this.deleted = deleted;
+            int live = 0;
+            int documents = 0;
+            float totalLength = 0;
+            for (int s = 0; s < segments.length; s++) {
+                live += SearchIndex.live(segments[s], deleted[s]);
+                documents += segments[s].size();
+                totalLength += segments[s].totalLength;
+            }
+            this.live = live;
+            this.documents = documents;
+            this.totalLength = totalLength;
+        }
+    }
+
+
+    /**
+     * Score and matched words of the documents of a segment hit by a query,
+     * in an open-addressing table of primitives
+     */
+    private static final class Accumulator {
+
+        final int[] keys;
+        final float[] scores;
+        final long[] masks;
+        private final int mask;
+
+        Accumulator(int expected) {
+            int capacity = Integer.highestOneBit(Math.max(2, expected) * 2 - 1) * 2;
+            keys = new int[capacity];
+            scores = new float[capacity];
+            masks = new long[capacity];
+            mask = capacity - 1;
+        }
+
+        void add(int doc, float score, long word) {
+            int i = (doc * 0x9E3779B9) >>> 1 & mask;
+            while (masks[i] != 0 && keys[i] != doc) {
+                i = (i + 1) & mask;
+            }
+            keys[i] = doc;
+            scores[i] += score;
+            masks[i] |= word;
+        }
+    }
+}
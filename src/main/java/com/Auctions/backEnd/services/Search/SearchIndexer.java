@@ -0,0 +1,234 @@
+package com.Auctions.backEnd.services.Search;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Keeps the SearchIndex in step with the items
+ *
+ * The controllers and the auction closer publish an ItemEvent after every
+ * change of an item. A single thread takes the events in small batches and
+ * applies them to the index, so the index has one writer and the requests
+ * never wait for it. The whole index, and the suggestions of the
+ * CompletionIndex with it, are only built at startup, or when an
+ * admin asks for it, or when events had to be dropped because the queue
+ * was full; the events published before a rebuild starts are covered by it.
+ *
+ * The events only reach the index of the node that made the change, so
+ * the same thread also catches up on the rows changed in the database
+ * since its last pass, every 'app.search.sync-seconds' (see
+ * SearchIndex.sync). The passes overlap, since the timestamps of the rows
+ * come from the clocks of the nodes and are committed a little later.
+ */
+@Service
+public class SearchIndexer {
+
+    private static final long RETRY_MILLIS = 5000;
+    private static final long SYNC_OVERLAP_MILLIS = 60000;
+
+    private final SearchIndex searchIndex;
+    private final CompletionIndex completionIndex;
+    private final BlockingQueue<ItemEvent> queue;
+    private final int batchSize;
+    private final long syncMillis;
+
+    private final AtomicBoolean rebuildRequested = new AtomicBoolean();
+    private final LongAdder applied = new LongAdder();
+    private final LongAdder batches = new LongAdder();
+    private final LongAdder dropped = new LongAdder();
+    private final LongAdder rebuilds = new LongAdder();
+    private final LongAdder synced = new LongAdder();
+
+    /** events queued and events applied so far, a failed batch counts once its rebuild is queued */
+    private long published;
+    private long processed;
+
+    /** start of the last rebuild or catch-up and time of the next one, only used by the indexer thread */
+    private long lastSync;
+    private long nextSync;
+
+    private Thread thread;
+    private volatile boolean running;
+
+    @Autowired
+    public SearchIndexer(SearchIndex searchIndex, CompletionIndex completionIndex,
+                         @Value("${app.search.queue-size:100000}") int queueSize,
+                         @Value("${app.search.event-batch-size:256}") int batchSize,
+                         @Value("${app.search.sync-seconds:60}") int syncSeconds) {
+        this.searchIndex = searchIndex;
+        this.completionIndex = completionIndex;
+        this.queue = new ArrayBlockingQueue<>(queueSize);
+        this.batchSize = batchSize;
+        this.syncMillis = syncSeconds * 1000L;
+    }
+
+
+    /**
+     * Starts the indexer thread, which first builds the index
+     */
+    public void start() {
+        nextSync = System.currentTimeMillis() + syncMillis;
+        requestRebuild();
+        running = true;
+        thread = new Thread(this::loop, "search-indexer");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+
+    /**
+     * Queues a change of an item, never blocks the caller
+     */
+    public void publish(ItemEvent event) {
+        if (!offer(event)) {
+            //the rebuild reads the change from the database
+            dropped.increment();
+            rebuildRequested.set(true);
+        }
+    }
+
+    /**
+     * Builds the whole index again on the indexer thread
+     */
+    public void requestRebuild() {
+        rebuildRequested.set(true);
+        //if the queue is full the thread is busy and will see the flag anyway
+        offer(ItemEvent.rebuild());
+    }
+
+    private synchronized boolean offer(ItemEvent event) {
+        if (queue.offer(event)) {
+            published++;
+            return true;
+        }
+        return false;
+    }
+
+
+    /**
+     * Waits until the events queued before the call have reached the index
+     *
+     * @param timeoutMillis - how long to wait at most
+     * @return false if the timeout elapsed first
+     * @throws InterruptedException - if interrupted while waiting
+     */
+    public synchronized boolean awaitIndexed(long timeoutMillis) throws InterruptedException {
+
+        long target = published;
+        long deadline = System.currentTimeMillis() + timeoutMillis;
+        while (processed < target) {
+            long left = deadline - System.currentTimeMillis();
+            if (left <= 0) {
+                return false;
+            }
+            wait(left);
+        }
+        return true;
+    }
+
+    private synchronized void processed(int events) {
+        processed += events;
+        notifyAll();
+    }
+
+
+    private void loop() {
+        List<ItemEvent> batch = new ArrayList<>(batchSize);
+
+        while (running) {
+            try {
+                long wait = nextSync - System.currentTimeMillis();
+                ItemEvent event = wait > 0 ? queue.poll(wait, TimeUnit.MILLISECONDS) : null;
+                if (event == null) {
+                    sync();
+                    continue;
+                }
+                batch.add(event);
+            } catch (InterruptedException e) {
+                return;
+            }
+            queue.drainTo(batch, batchSize - 1);
+
+            try {
+                if (rebuildRequested.getAndSet(false)) {
+                    //the changes of the batch were written before the rebuild reads the items
+                    rebuilds.increment();
+                    lastSync = System.currentTimeMillis();
+                    nextSync = lastSync + syncMillis;
+                    searchIndex.rebuild();
+                    completionIndex.rebuild();
+                } else {
+                    searchIndex.apply(batch);
+                }
+                applied.add(batch.size());
+                batches.increment();
+            } catch (Exception e) {
+                System.err.println("Could not update the search index, rebuilding it");
+                e.printStackTrace();
+                try {
+                    Thread.sleep(RETRY_MILLIS);
+                } catch (InterruptedException interrupted) {
+                    return;
+                }
+                requestRebuild();
+            }
+            processed(batch.size());
+            batch.clear();
+        }
+    }
+
+
+    private void sync() {
+        long start = System.currentTimeMillis();
+        nextSync = start + syncMillis;
+        try {
+            int changed = searchIndex.sync(new Date(lastSync - SYNC_OVERLAP_MILLIS));
+            if (changed < 0) {
+                requestRebuild();
+            } else {
+                synced.add(changed);
+                lastSync = start;
+            }
+        } catch (Exception e) {
+            //the next pass covers the same rows again
+            System.err.println("Could not catch up on the changed items");
+            e.printStackTrace();
+        }
+    }
+
+
+    public Map<String, Object> getCounters() {
+        Map<String, Object> counters = new LinkedHashMap<>();
+        counters.put("items", searchIndex.size());
+        counters.put("segments", searchIndex.getSegmentCount());
+        counters.put("queued", queue.size());
+        counters.put("applied", applied.sum());
+        counters.put("batches", batches.sum());
+        counters.put("dropped", dropped.sum());
+        counters.put("rebuilds", rebuilds.sum());
+        counters.put("synced", synced.sum());
+        return counters;
+    }
+
+
+    @PreDestroy
+    public void shutdown() {
+        running = false;
+        if (thread != null) {
+            thread.interrupt();
+        }
+    }
+}
@@ -0,0 +1,328 @@
+package com.Auctions.backEnd.services.Search;
+
+import java.util.*;
+
+/**
+ * An immutable part of the search index
+ *
+ * The documents of a segment are numbered by ascending item id, so that
+ * the posting list of every term is a sorted array of those numbers with
+ * the weighted frequency of the term beside it. A word of the name counts
+ * three times, a word of the category path twice and a word of the
+ * description once. The terms are kept sorted, so that all the terms
+ * starting with a prefix are next to each other.
+ *
+ * The words of a segment never change: a changed item is added in a new
+ * segment and its old document is marked deleted (see SearchIndex). The
+ * price, the number of bids and the completion of the documents are kept
+ * in arrays beside them and are updated in place by the indexer thread.
+ * Those writes are not synchronized with the queries: a query running
+ * meanwhile may still see the values from before a bid, and other threads
+ * are only guaranteed to see them once the indexer publishes its next
+ * snapshot. Copying the arrays for every bid would cost far more than a
+ * price filter that lags a bid behind.
+ *
+ * The documents with a location are also listed by the cell of GeoGrid
+ * they are in, so that the ones around a point are found without looking
+ * at the rest.
+ */
+final class Segment {
+
+    static final float NAME_WEIGHT = 3f;
+    static final float CATEGORY_WEIGHT = 2f;
+    static final float DESCRIPTION_WEIGHT = 1f;
+
+    static final Segment EMPTY = build(Collections.emptyList());
+
+    /** item id of every document, ascending */
+    final long[] ids;
+    /** weighted number of words of every document */
+    final float[] lengths;
+    final float totalLength;
+
+    final double[] prices;
+    final int[] bidCounts;
+    final boolean[] completed;
+
+    /** NaN for the documents without a location */
+    final double[] latitudes;
+    final double[] longitudes;
+    /** end of the auction of every document in epoch milliseconds */
+    final long[] endsAt;
+    final long[][] categoryIds;
+
+    /** cell of every document with a location, ascending, and the document beside it */
+    final int[] cells;
+    final int[] cellDocs;
+
+    final String[] terms;
+    final int[][] docs;
+    final float[][] freqs;
+
+    private Segment(long[] ids, float[] lengths, double[] prices, int[] bidCounts, boolean[] completed,
+                    double[] latitudes, double[] longitudes, long[] endsAt, long[][] categoryIds,
+                    TreeMap<String, Postings> postings) {
+        this.ids = ids;
+        this.lengths = lengths;
+        this.prices = prices;
+        this.bidCounts = bidCounts;
+        this.completed = completed;
+        this.latitudes = latitudes;
+        this.longitudes = longitudes;
+        this.endsAt = endsAt;
+        this.categoryIds = categoryIds;
+
+        //(cell, document) pairs in one long each, sorted by cell
+        long[] located = new long[ids.length];
+        int count = 0;
+        for (int doc = 0; doc < ids.length; doc++) {
+            if (!Double.isNaN(latitudes[doc]) && !Double.isNaN(longitudes[doc])) {
+                located[count++] = ((long) GeoGrid.cell(latitudes[doc], longitudes[doc]) << 32) | doc;
+            }
+        }
+        Arrays.sort(located, 0, count);
+        cells = new int[count];
+        cellDocs = new int[count];
+        for (int i = 0; i < count; i++) {
+            cells[i] = (int) (located[i] >>> 32);
+            cellDocs[i] = (int) located[i];
+        }
+
+        float total = 0;
+        for (float length : lengths) {
+            total += length;
+        }
+        this.totalLength = total;
+
+        terms = new String[postings.size()];
+        docs = new int[postings.size()][];
+        freqs = new float[postings.size()][];
+        int t = 0;
+        for (Map.Entry<String, Postings> entry : postings.entrySet()) {
+            terms[t] = entry.getKey();
+            entry.getValue().fill(t, docs, freqs);
+            t++;
+        }
+    }
+
+
+    /**
+     * @param documents - the documents, the last one wins if an item is given twice
+     * @return a segment of the documents
+     */
+    static Segment build(Collection<ItemDocument> documents) {
+
+        Map<Long, ItemDocument> byId = new HashMap<>();
+        documents.forEach(document -> byId.put(document.getId(), document));
+
+        long[] ids = new long[byId.size()];
+        int n = 0;
+        for (Long id : byId.keySet()) {
+            ids[n++] = id;
+        }
+        Arrays.sort(ids);
+
+        float[] lengths = new float[ids.length];
+        double[] prices = new double[ids.length];
+        int[] bidCounts = new int[ids.length];
+        boolean[] completed = new boolean[ids.length];
+        double[] latitudes = new double[ids.length];
+        double[] longitudes = new double[ids.length];
+        long[] endsAt = new long[ids.length];
+        long[][] categoryIds = new long[ids.length][];
+        TreeMap<String, Postings> postings = new TreeMap<>();
+        Map<String, Float> frequencies = new HashMap<>();
+
+        for (int doc = 0; doc < ids.length; doc++) {
+            ItemDocument document = byId.get(ids[doc]);
+            prices[doc] = document.getPrice();
+            bidCounts[doc] = document.getBidCount();
+            completed[doc] = document.isCompleted();
+            latitudes[doc] = document.getLatitude();
+            longitudes[doc] = document.getLongitude();
+            endsAt[doc] = document.getEndsAt();
+            categoryIds[doc] = new long[document.getCategoryIds() == null ? 0 : document.getCategoryIds().size()];
+            for (int c = 0; c < categoryIds[doc].length; c++) {
+                categoryIds[doc][c] = document.getCategoryIds().get(c);
+            }
+            frequencies.clear();
+            count(frequencies, document.getName(), NAME_WEIGHT);
+            count(frequencies, document.getDescription(), DESCRIPTION_WEIGHT);
+            if (document.getCategories() != null) {
+                document.getCategories().forEach(category -> count(frequencies, category, CATEGORY_WEIGHT));
+            }
+
+            float length = 0;
+            for (Map.Entry<String, Float> entry : frequencies.entrySet()) {
+                postings.computeIfAbsent(entry.getKey(), term -> new Postings()).add(doc, entry.getValue());
+                length += entry.getValue();
+            }
+            lengths[doc] = length;
+        }
+        return new Segment(ids, lengths, prices, bidCounts, completed, latitudes, longitudes, endsAt, categoryIds, postings);
+    }
+
+    private static void count(Map<String, Float> frequencies, String text, float weight) {
+        Tokenizer.tokens(text).forEach(token -> frequencies.merge(token, weight, Float::sum));
+    }
+
+
+    /**
+     * Merges the documents of several segments that are not deleted
+     *
+     * @param segments - the segments
+     * @param deleted - the deleted documents of every segment
+     * @return one segment of all the documents left
+     */
+    static Segment merge(Segment[] segments, BitSet[] deleted) {
+
+        int live = 0;
+        for (int s = 0; s < segments.length; s++) {
+            live += segments[s].size() - deleted[s].cardinality();
+        }
+
+        long[] ids = new long[live];
+        int n = 0;
+        for (int s = 0; s < segments.length; s++) {
+            for (int doc = 0; doc < segments[s].size(); doc++) {
+                if (!deleted[s].get(doc)) {
+                    ids[n++] = segments[s].ids[doc];
+                }
+            }
+        }
+        Arrays.sort(ids);
+
+        float[] lengths = new float[live];
+        double[] prices = new double[live];
+        int[] bidCounts = new int[live];
+        boolean[] completed = new boolean[live];
+        double[] latitudes = new double[live];
+        double[] longitudes = new double[live];
+        long[] endsAt = new long[live];
+        long[][] categoryIds = new long[live][];
+        int[][] remap = new int[segments.length][];
+        for (int s = 0; s < segments.length; s++) {
+            Segment segment = segments[s];
+            remap[s] = new int[segment.size()];
+            for (int doc = 0; doc < segment.size(); doc++) {
+                remap[s][doc] = deleted[s].get(doc) ? -1 : Arrays.binarySearch(ids, segment.ids[doc]);
+                int target = remap[s][doc];
+                if (target >= 0) {
+                    lengths[target] = segment.lengths[doc];
+                    prices[target] = segment.prices[doc];
+                    bidCounts[target] = segment.bidCounts[doc];
+                    completed[target] = segment.completed[doc];
+                    latitudes[target] = segment.latitudes[doc];
+                    longitudes[target] = segment.longitudes[doc];
+                    endsAt[target] = segment.endsAt[doc];
+                    categoryIds[target] = segment.categoryIds[doc];
+                }
+            }
+        }
+
+        TreeMap<String, Postings> postings = new TreeMap<>();
+        for (int s = 0; s < segments.length; s++) {
+            Segment segment = segments[s];
+            for (int t = 0; t < segment.terms.length; t++) {
+                Postings merged = null;
+                int[] termDocs = segment.docs[t];
+                for (int i = 0; i < termDocs.length; i++) {
+                    int doc = remap[s][termDocs[i]];
+                    if (doc >= 0) {
+                        if (merged == null) {
+                            merged = postings.computeIfAbsent(segment.terms[t], term -> new Postings());
+                        }
+                        merged.add(doc, segment.freqs[t][i]);
+                    }
+                }
+            }
+        }
+        return new Segment(ids, lengths, prices, bidCounts, completed, latitudes, longitudes, endsAt, categoryIds, postings);
+    }
+
+
+    int size() {
+        return ids.length;
+    }
+
+    /**
+     * @param id - an item id
+     * @return the number of the document of the item, or -1
+     */
+    int ordinal(long id) {
+        int doc = Arrays.binarySearch(ids, id);
+        return doc < 0 ? -1 : doc;
+    }
+
+    /**
+     * @param cell - a cell of GeoGrid
+     * @return the position of the first located document not before the cell
+     */
+    int firstInCell(int cell) {
+        int low = 0;
+        int high = cells.length;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (cells[middle] < cell) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    boolean inCategory(int doc, long categoryId) {
+        for (long id : categoryIds[doc]) {
+            if (id == categoryId) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @param prefix - the start of a term
+     * @return the position of the first term not smaller than the prefix
+     */
+    int firstTerm(String prefix) {
+        int t = Arrays.binarySearch(terms, prefix);
+        return t < 0 ? -t - 1 : t;
+    }
+
+
+    /**
+     * The posting list of a term while a segment is built, every entry is
+     * kept in one long (document number above, frequency bits below) so
+     * that the entries coming from several segments are sorted in place
+     */
+    private static final class Postings {
+
+        private long[] entries = new long[4];
+        private int size;
+        private boolean sorted = true;
+
+        void add(int doc, float freq) {
+            if (size == entries.length) {
+                entries = Arrays.copyOf(entries, size * 2);
+            }
+            long entry = ((long) doc << 32) | (Float.floatToRawIntBits(freq) & 0xffffffffL);
+            if (size > 0 && entries[size - 1] > entry) {
+                sorted = false;
+            }
+            entries[size++] = entry;
+        }
+
+        void fill(int t, int[][] docs, float[][] freqs) {
+            if (!sorted) {
+                Arrays.sort(entries, 0, size);
+            }
+            docs[t] = new int[size];
+            freqs[t] = new float[size];
+            for (int i = 0; i < size; i++) {
+                docs[t][i] = (int) (entries[i] >>> 32);
+                freqs[t][i] = Float.intBitsToFloat((int) entries[i]);
+            }
+        }
+    }
+}
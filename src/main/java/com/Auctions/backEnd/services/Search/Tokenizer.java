@@ -0,0 +1,38 @@
+package com.Auctions.backEnd.services.Search;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Splits text into lower-case words of letters and digits,
+ * the same way for the indexed items and for the queries
+ */
+public final class Tokenizer {
+
+    /** longer words are cut, they are not worth a term of their own */
+    static final int MAX_LENGTH = 40;
+
+    private Tokenizer() {
+    }
+
+    public static List<String> tokens(String text) {
+
+        List<String> tokens = new ArrayList<>();
+        if (text == null) {
+            return tokens;
+        }
+
+        int start = -1;
+        for (int i = 0; i <= text.length(); i++) {
+            boolean word = i < text.length() && Character.isLetterOrDigit(text.charAt(i));
+            if (word && start < 0) {
+                start = i;
+            } else if (!word && start >= 0) {
+                tokens.add(text.substring(start, Math.min(i, start + MAX_LENGTH)).toLowerCase(Locale.ROOT));
+                start = -1;
+            }
+        }
+        return tokens;
+    }
+}
@@ -0,0 +1,143 @@
+package com.Auctions.backEnd.services.Search;
+
+import java.util.Arrays;
+
+/**
+ * Keeps the k best matches of a query in a min-heap, so that ranking n
+ * matches takes O(n log k) time and O(k) memory instead of sorting them
+ * all. A match is better if it has a higher rank (e.g. the number of
+ * query words it matches), then a higher score, then a higher (newer)
+ * item id.
+ */
+final class TopK {
+
+    private final int k;
+
+    private long[] ids = new long[16];
+    private int[] matched = new int[16];
+    private float[] scores = new float[16];
+    private int size;
+
+    TopK(int k) {
+        this.k = k;
+    }
+
+
+    void offer(long id, int words, float score) {
+        if (k <= 0) {
+            return;
+        }
+        if (size < k) {
+            if (size == ids.length) {
+                int capacity = (int) Math.min(k, size * 2L);
+                ids = Arrays.copyOf(ids, capacity);
+                matched = Arrays.copyOf(matched, capacity);
+                scores = Arrays.copyOf(scores, capacity);
+            }
+            set(size, id, words, score);
+            up(size++);
+        } else if (worse(0, id, words, score)) {
+            set(0, id, words, score);
+            down(0);
+        }
+    }
+
+    /**
+     * Sorts the matches kept, best first, after which they are read
+     * with id(i), rank(i) and score(i); no more matches can be offered
+     *
+     * @return the number of matches kept
+     */
+    int sort() {
+        int kept = size;
+        //heap sort: the worst match goes to the end of what is left of the heap
+        while (size > 1) {
+            size--;
+            swap(0, size);
+            down(0);
+        }
+        size = 0;
+        return kept;
+    }
+
+    long id(int i) {
+        return ids[i];
+    }
+
+    int rank(int i) {
+        return matched[i];
+    }
+
+    float score(int i) {
+        return scores[i];
+    }
+
+    /**
+     * @return the ids kept, best first
+     */
+    long[] drain() {
+        int kept = sort();
+        return Arrays.copyOf(ids, kept);
+    }
+
+
+    /**
+     * @return true if the first match ranks below the second one
+     */
+    static boolean below(int rank, float score, long id, int otherRank, float otherScore, long otherId) {
+        if (rank != otherRank) {
+            return rank < otherRank;
+        }
+        if (score != otherScore) {
+            return score < otherScore;
+        }
+        return id < otherId;
+    }
+
+    /** true if the entry i ranks below the given match */
+    private boolean worse(int i, long id, int words, float score) {
+        return below(matched[i], scores[i], ids[i], words, score, id);
+    }
+
+    private void up(int i) {
+        while (i > 0) {
+            int parent = (i - 1) >>> 1;
+            if (!worse(i, ids[parent], matched[parent], scores[parent])) {
+                return;
+            }
+            swap(i, parent);
+            i = parent;
+        }
+    }
+
+    private void down(int i) {
+        while (true) {
+            int child = 2 * i + 1;
+            if (child >= size) {
+                return;
+            }
+            if (child + 1 < size && worse(child + 1, ids[child], matched[child], scores[child])) {
+                child++;
+            }
+            if (!worse(child, ids[i], matched[i], scores[i])) {
+                return;
+            }
+            swap(i, child);
+            i = child;
+        }
+    }
+
+    private void set(int i, long id, int words, float score) {
+        ids[i] = id;
+        matched[i] = words;
+        scores[i] = score;
+    }
+
+    private void swap(int i, int j) {
+        long id = ids[i];
+        int words = matched[i];
+        float score = scores[i];
+        set(i, ids[j], matched[j], scores[j]);
+        set(j, id, words, score);
+    }
+}
@@ -8,6 +8,7 @@ import org.springframework.security.core.userdetails.UsernameNotFoundException;
 import org.springframework.stereotype.Component;
 
 import java.util.Collections;
+import java.util.List;
 
 @Component
 public class AppAccountDetailService implements UserDetailsService {
@@ -27,9 +28,16 @@ public class AppAccountDetailService implements UserDetailsService {
         }
 
         return org.springframework.security.core.userdetails.User.withUsername(accountName)
-                .password(user.getPassword()).authorities(Collections.emptyList())
+                .password(user.getPassword()).authorities(roles(user).toArray(new String[0]))
                 .accountExpired(false).accountLocked(false).credentialsExpired(false)
                 .disabled(false).build();
     }
 
-}
\ No newline at end of file
+    /**
+     * @param account - an account
+     * @return its roles, as put in its tokens
+     */
+    public static List<String> roles(Account account) {
+        return account.isAdmin() ? Collections.singletonList("ROLE_ADMIN") : Collections.emptyList();
+    }
+}
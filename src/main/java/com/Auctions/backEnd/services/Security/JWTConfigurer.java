@@ -1,5 +1,9 @@
 package com.Auctions.backEnd.services.Security;
 
+import com.Auctions.backEnd.services.Idempotency.IdempotencyFilter;
+import com.Auctions.backEnd.services.Idempotency.IdempotencyStore;
+import com.Auctions.backEnd.services.RateLimit.RateLimitFilter;
+import com.Auctions.backEnd.services.RateLimit.RateLimiter;
 import org.springframework.security.config.annotation.SecurityConfigurerAdapter;
 import org.springframework.security.config.annotation.web.builders.HttpSecurity;
 import org.springframework.security.web.DefaultSecurityFilterChain;
@@ -9,14 +13,23 @@ public class JWTConfigurer
         extends SecurityConfigurerAdapter<DefaultSecurityFilterChain, HttpSecurity> {
 
     private final TokenProvider tokenProvider;
+    private final IdempotencyStore idempotencyStore;
+    private final RateLimiter rateLimiter;
 
-    public JWTConfigurer(TokenProvider tokenProvider) {
+    public JWTConfigurer(TokenProvider tokenProvider, IdempotencyStore idempotencyStore,
+                         RateLimiter rateLimiter) {
         this.tokenProvider = tokenProvider;
+        this.idempotencyStore = idempotencyStore;
+        this.rateLimiter = rateLimiter;
     }
 
     @Override
     public void configure(HttpSecurity http) throws Exception {
         JWTFilter customFilter = new JWTFilter(this.tokenProvider);
         http.addFilterBefore(customFilter, UsernamePasswordAuthenticationFilter.class);
+        //after the JWTFilter, so that the buckets and the keys are scoped by user;
+        //the rate limit comes first, so that replays are limited too
+        http.addFilterAfter(new RateLimitFilter(this.rateLimiter), JWTFilter.class);
+        http.addFilterAfter(new IdempotencyFilter(this.idempotencyStore), JWTFilter.class);
     }
 }
\ No newline at end of file
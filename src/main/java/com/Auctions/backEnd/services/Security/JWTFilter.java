@@ -32,9 +32,11 @@ public class JWTFilter extends GenericFilterBean {
             HttpServletRequest httpServletRequest = (HttpServletRequest) servletRequest;
             String jwt = resolveToken(httpServletRequest);
             if (jwt != null) {
-                Authentication authentication = this.tokenProvider.getAuthentication(jwt);
+                RequestIdentity identity = this.tokenProvider.getIdentity(jwt);
+                Authentication authentication = this.tokenProvider.getAuthentication(identity);
                 if (authentication != null) {
                     SecurityContextHolder.getContext().setAuthentication(authentication);
+                    RequestIdentity.bind(httpServletRequest, identity);
                 }
             }
             System.out.println(servletRequest);
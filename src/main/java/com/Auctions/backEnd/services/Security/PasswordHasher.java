@@ -0,0 +1,125 @@
+package com.Auctions.backEnd.services.Security;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PreDestroy;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Bounded pool for password hashing and verification
+ *
+ * A bcrypt hash costs hundreds of milliseconds of CPU, so the login and
+ * signup work runs on a fixed number of threads with a bounded queue
+ * instead of the request threads. When the queue is full the work is
+ * rejected at once and the caller answers <HTTP>SERVICE UNAVAILABLE</HTTP>,
+ * so a login storm cannot starve the rest of the API.
+ */
+@Service
+public class PasswordHasher {
+
+    private static final Pattern BCRYPT = Pattern.compile("^\\$2[aby]?\\$(\\d\\d)\\$");
+
+    private final ThreadPoolExecutor executor;
+    private final int cost;
+
+    private final LongAdder submitted = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder started = new LongAdder();
+    private final LongAdder waitNanos = new LongAdder();
+    private final LongAdder runNanos = new LongAdder();
+    private final LongAdder upgraded = new LongAdder();
+
+    @Autowired
+    public PasswordHasher(@Value("${app.password-hashing.threads:0}") int threads,
+                          @Value("${app.password-hashing.queue-size:64}") int queueSize,
+                          @Value("${app.password-hashing.cost:12}") int cost) {
+        int size = threads > 0 ? threads : Runtime.getRuntime().availableProcessors();
+        AtomicInteger counter = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(size, size, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueSize), runnable -> {
+                    Thread thread = new Thread(runnable, "password-hasher-" + counter.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                }, new ThreadPoolExecutor.AbortPolicy());
+        this.cost = cost;
+    }
+
+
+    /**
+     * Runs password work on the pool
+     *
+     * @param work - the hashing or verification, and whatever needs its result
+     * @return the result, failed with a RejectedExecutionException if the pool is saturated
+     */
+    public <T> CompletableFuture<T> submit(Supplier<T> work) {
+        long queuedAt = System.nanoTime();
+        CompletableFuture<T> future = new CompletableFuture<>();
+        try {
+            executor.execute(() -> {
+                long startedAt = System.nanoTime();
+                waitNanos.add(startedAt - queuedAt);
+                started.increment();
+                try {
+                    future.complete(work.get());
+                } catch (Throwable e) {
+                    future.completeExceptionally(e);
+                } finally {
+                    runNanos.add(System.nanoTime() - startedAt);
+                }
+            });
+            submitted.increment();
+        } catch (RejectedExecutionException e) {
+            rejected.increment();
+            future.completeExceptionally(e);
+        }
+        return future;
+    }
+
+
+    /**
+     * @param hash - a stored password hash
+     * @return true if it was hashed with a lower cost than the current one
+     */
+    public boolean needsUpgrade(String hash) {
+        Matcher matcher = BCRYPT.matcher(hash);
+        return matcher.find() && Integer.parseInt(matcher.group(1)) < cost;
+    }
+
+    public void upgraded() {
+        upgraded.increment();
+    }
+
+
+    /**
+     * @return queue depth, rejections and average latencies of the pool
+     */
+    public Map<String, Object> getCounters() {
+        long completed = executor.getCompletedTaskCount();
+        long startedTasks = started.sum();
+        Map<String, Object> counters = new LinkedHashMap<>();
+        counters.put("threads", executor.getPoolSize());
+        counters.put("active", executor.getActiveCount());
+        counters.put("queueDepth", executor.getQueue().size());
+        counters.put("submitted", submitted.sum());
+        counters.put("rejected", rejected.sum());
+        counters.put("upgraded", upgraded.sum());
+        counters.put("averageWaitMillis", startedTasks == 0 ? 0 : waitNanos.sum() / startedTasks / 1000000.0);
+        counters.put("averageRunMillis", completed == 0 ? 0 : runNanos.sum() / completed / 1000000.0);
+        return counters;
+    }
+
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+}
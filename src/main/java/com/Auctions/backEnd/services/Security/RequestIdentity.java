@@ -0,0 +1,122 @@
+package com.Auctions.backEnd.services.Security;
+
+import com.Auctions.backEnd.models.User;
+
+import javax.servlet.http.HttpServletRequest;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Identity of the user who makes a request
+ *
+ * It is filled once by the JWTFilter after the token is verified and kept
+ * as a request attribute, so that the controllers neither parse the token
+ * again nor look the user up by username: the user id travels in the 'uid'
+ * claim of the token and BaseController.requestUser() loads the User by
+ * primary key once per request. The roles travel in the 'roles' claim, so
+ * the JWTFilter authenticates the request without the database.
+ *
+ * The counters show how many token verifications and user lookups the
+ * requests needed.
+ */
+public class RequestIdentity {
+
+    private static final String ATTRIBUTE = RequestIdentity.class.getName();
+
+    private static final LongAdder requests = new LongAdder();
+    private static final LongAdder tokenVerifications = new LongAdder();
+    private static final LongAdder userLookups = new LongAdder();
+    private static final LongAdder usernameLookups = new LongAdder();
+    private static final LongAdder cachedUsers = new LongAdder();
+
+    private final String username;
+    private final Long userId;
+    private final List<String> roles;
+    private User user;
+
+    public RequestIdentity(String username, Long userId, List<String> roles) {
+        this.username = username;
+        this.userId = userId;
+        this.roles = roles;
+    }
+
+
+    /**
+     * @param request - the current request
+     * @return the identity of the request, null if it is not authenticated (yet)
+     */
+    public static RequestIdentity of(HttpServletRequest request) {
+        return (RequestIdentity) request.getAttribute(ATTRIBUTE);
+    }
+
+    /**
+     * Binds an identity to a request, after its token has been verified
+     *
+     * @param request - the current request
+     * @param identity - the identity
+     */
+    public static void bind(HttpServletRequest request, RequestIdentity identity) {
+        request.setAttribute(ATTRIBUTE, identity);
+        requests.increment();
+    }
+
+    static void tokenVerified() {
+        tokenVerifications.increment();
+    }
+
+    public String getUsername() {
+        return username;
+    }
+
+    /**
+     * @return the id of the user, null for tokens issued without the 'uid' claim
+     */
+    public Long getUserId() {
+        return userId;
+    }
+
+    /**
+     * @return the roles of the user, null for tokens issued without the 'roles' claim
+     */
+    public List<String> getRoles() {
+        return roles;
+    }
+
+
+    /**
+     * @return the user loaded earlier in this request, null if not loaded yet
+     */
+    public User getUser() {
+        if (user != null) {
+            cachedUsers.increment();
+        }
+        return user;
+    }
+
+    /**
+     * Keeps the user loaded for this request
+     *
+     * @param user - the user
+     * @param byId - true if it was loaded by primary key, false if by username
+     */
+    public void setUser(User user, boolean byId) {
+        this.user = user;
+        (byId ? userLookups : usernameLookups).increment();
+    }
+
+
+    /**
+     * @return the totals since startup
+     */
+    public static Map<String, Long> getCounters() {
+        Map<String, Long> counters = new LinkedHashMap<>();
+        counters.put("requests", requests.sum());
+        counters.put("tokenVerifications", tokenVerifications.sum());
+        counters.put("userLookupsById", userLookups.sum());
+        counters.put("userLookupsByUsername", usernameLookups.sum());
+        counters.put("userLookupsSaved", cachedUsers.sum());
+        return counters;
+    }
+}
@@ -0,0 +1,141 @@
+package com.Auctions.backEnd.services.Security;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Bounded cache of verified tokens
+ *
+ * The tokens are kept by the first 128 bits of their SHA-256, which is far
+ * cheaper than the base64 decoding, JSON parsing and HMAC of a verification
+ * and keeps the tokens themselves out of memory. An entry expires with its
+ * token or after a short TTL, whichever comes first, and the entries of a
+ * user can be dropped when their password changes.
+ *
+ * The cache is local to the node. Dropping the entries of a user does not
+ * make their tokens invalid, it only stops this node from answering them
+ * from memory.
+ */
+class TokenCache {
+
+    private static final class Key {
+        private final long high;
+        private final long low;
+
+        private Key(long high, long low) {
+            this.high = high;
+            this.low = low;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof Key && ((Key) o).high == high && ((Key) o).low == low;
+        }
+
+        @Override
+        public int hashCode() {
+            return Long.hashCode(high ^ low);
+        }
+    }
+
+    private static final class Entry {
+        private final RequestIdentity identity;
+        private final long expiresAt;
+
+        private Entry(RequestIdentity identity, long expiresAt) {
+            this.identity = identity;
+            this.expiresAt = expiresAt;
+        }
+    }
+
+    private static final ThreadLocal<MessageDigest> DIGEST = ThreadLocal.withInitial(() -> {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    });
+
+    private final ConcurrentHashMap<Key, Entry> entries = new ConcurrentHashMap<>();
+    private final int maxEntries;
+    private final long ttlMillis;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    TokenCache(int maxEntries, long ttlMillis) {
+        this.maxEntries = maxEntries;
+        this.ttlMillis = ttlMillis;
+    }
+
+
+    /**
+     * @param token - a token
+     * @return the identity of the token if it has been verified lately, null otherwise
+     */
+    RequestIdentity get(String token) {
+        Entry entry = entries.get(key(token));
+        if (entry == null || entry.expiresAt <= System.currentTimeMillis()) {
+            misses.increment();
+            return null;
+        }
+        hits.increment();
+        return new RequestIdentity(entry.identity.getUsername(), entry.identity.getUserId(), entry.identity.getRoles());
+    }
+
+
+    /**
+     * Keeps a verified token
+     *
+     * @param token - the token
+     * @param identity - its identity
+     * @param tokenExpiry - the expiration of the token
+     */
+    void put(String token, RequestIdentity identity, long tokenExpiry) {
+        long now = System.currentTimeMillis();
+        if (entries.size() >= maxEntries) {
+            entries.values().removeIf(entry -> entry.expiresAt <= now);
+            //still full: make room by dropping a tenth of it
+            Iterator<Entry> it = entries.values().iterator();
+            for (int i = maxEntries / 10; i >= 0 && entries.size() >= maxEntries && it.hasNext(); i--) {
+                it.next();
+                it.remove();
+            }
+        }
+        entries.put(key(token), new Entry(identity, Math.min(tokenExpiry, now + ttlMillis)));
+    }
+
+
+    /**
+     * Drops the tokens of a user
+     *
+     * @param username - the user
+     */
+    void invalidate(String username) {
+        entries.values().removeIf(entry -> entry.identity.getUsername().equals(username));
+    }
+
+    long getHits() {
+        return hits.sum();
+    }
+
+    long getMisses() {
+        return misses.sum();
+    }
+
+
+    private static Key key(String token) {
+        byte[] hash = DIGEST.get().digest(token.getBytes(StandardCharsets.US_ASCII));
+        long high = 0;
+        long low = 0;
+        for (int i = 0; i < 8; i++) {
+            high = (high << 8) | (hash[i] & 0xff);
+            low = (low << 8) | (hash[i + 8] & 0xff);
+        }
+        return new Key(high, low);
+    }
+}
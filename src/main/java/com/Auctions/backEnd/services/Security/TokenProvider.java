@@ -1,49 +1,137 @@
 package com.Auctions.backEnd.services.Security;
 
 import com.Auctions.backEnd.configs.AppConfig;
+import io.jsonwebtoken.Claims;
 import io.jsonwebtoken.Jwts;
 import io.jsonwebtoken.SignatureAlgorithm;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
 import org.springframework.security.core.Authentication;
+import org.springframework.security.core.authority.AuthorityUtils;
 import org.springframework.security.core.userdetails.UserDetails;
 import org.springframework.security.core.userdetails.UserDetailsService;
 import org.springframework.stereotype.Component;
 
 import java.nio.charset.StandardCharsets;
 import java.util.Base64;
+import java.util.Collection;
 import java.util.Date;
+import java.util.List;
 import java.util.UUID;
+import java.util.stream.Collectors;
 
 @Component
 public class TokenProvider {
 
+    /**
+     * Claim with the id of the User, so that a request does not need
+     * to look the user up by username
+     */
+    public static final String USER_ID_CLAIM = "uid";
+
+    /**
+     * Claim with the roles of the user, so that a request is
+     * authenticated without loading the account
+     */
+    public static final String ROLES_CLAIM = "roles";
+
     private final String secretKey;
 
     private final long tokenValidityInMilliseconds;
 
     private final UserDetailsService userService;
 
+    private final TokenCache cache;
+
     @Autowired
-    public TokenProvider(AppConfig config, UserDetailsService userService) {
+    public TokenProvider(AppConfig config, UserDetailsService userService,
+                         @Value("${app.token-cache.max-entries:10000}") int cacheSize,
+                         @Value("${app.token-cache.ttl-seconds:300}") int cacheTtlSeconds) {
         this.secretKey = Base64.getEncoder().encodeToString(config.getSecret().getBytes(StandardCharsets.UTF_8));
         this.tokenValidityInMilliseconds = 1000 * config.getTokenValidityInSeconds();
         this.userService = userService;
+        this.cache = new TokenCache(cacheSize, cacheTtlSeconds * 1000L);
     }
 
-    public String createToken(String username) {
+    public String createToken(String username, Long userId, Collection<String> roles) {
         Date now = new Date();
         Date validity = new Date(now.getTime() + this.tokenValidityInMilliseconds);
 
         return Jwts.builder().setId(UUID.randomUUID().toString()).setSubject(username)
+                .claim(USER_ID_CLAIM, userId)
+                .claim(ROLES_CLAIM, roles)
                 .setIssuedAt(now).signWith(SignatureAlgorithm.HS512, this.secretKey)
                 .setExpiration(validity).compact();
     }
 
+    /**
+     * Verifies a token, unless it has been verified lately
+     *
+     * @param token - the token
+     * @return the identity it carries
+     */
+    public RequestIdentity getIdentity(String token) {
+        RequestIdentity identity = cache.get(token);
+        if (identity != null) {
+            return identity;
+        }
+
+        Claims claims = Jwts.parser().setSigningKey(this.secretKey).parseClaimsJws(token).getBody();
+        Number userId = claims.get(USER_ID_CLAIM, Number.class);
+        List<?> roles = claims.get(ROLES_CLAIM, List.class);
+        RequestIdentity.tokenVerified();
+
+        identity = new RequestIdentity(claims.getSubject(), userId != null ? userId.longValue() : null,
+                roles != null ? roles.stream().map(String::valueOf).collect(Collectors.toList()) : null);
+        Date expiration = claims.getExpiration();
+        cache.put(token, identity, expiration != null ? expiration.getTime() : Long.MAX_VALUE);
+        return identity;
+    }
+
+
+    /**
+     * Forgets the verified tokens of a user on this node
+     * e.g. when the password changes or the account is deleted
+     *
+     * This does not revoke the tokens: they stay valid until they expire
+     * and are verified (and cached) again on their next use. Other nodes
+     * keep their own entries until their TTL runs out
+     *
+     * @param username - the user
+     */
+    public void forget(String username) {
+        cache.invalidate(username);
+    }
+
+    public long getCacheHits() {
+        return cache.getHits();
+    }
+
+    public long getCacheMisses() {
+        return cache.getMisses();
+    }
+
     public Authentication getAuthentication(String token) {
-        String username = Jwts.parser().setSigningKey(this.secretKey).parseClaimsJws(token)
-                .getBody().getSubject();
-        UserDetails userDetails = this.userService.loadUserByUsername(username);
+        return getAuthentication(getIdentity(token));
+    }
+
+    /**
+     * Authenticates a verified identity from the claims of its token;
+     * only tokens issued without the 'roles' claim load the account
+     *
+     * A deleted account is not noticed here, BaseController.requestUser()
+     * does not find its user
+     *
+     * @param identity - the identity
+     * @return the authentication
+     */
+    public Authentication getAuthentication(RequestIdentity identity) {
+        UserDetails userDetails = identity.getRoles() == null
+                ? this.userService.loadUserByUsername(identity.getUsername())
+                : org.springframework.security.core.userdetails.User.withUsername(identity.getUsername())
+                        .password("").authorities(AuthorityUtils.createAuthorityList(
+                                identity.getRoles().toArray(new String[0]))).build();
 
         return new UsernamePasswordAuthenticationToken(userDetails, "",
                 userDetails.getAuthorities());
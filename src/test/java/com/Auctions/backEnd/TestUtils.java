@@ -1,6 +1,8 @@
 package com.Auctions.backEnd;
 
+import com.Auctions.backEnd.models.ItemCategory;
 import com.Auctions.backEnd.repositories.*;
+import com.Auctions.backEnd.services.Search.SearchIndexer;
 import lombok.NoArgsConstructor;
 import org.json.simple.JSONObject;
 import org.json.simple.parser.JSONParser;
@@ -9,10 +11,16 @@ import org.springframework.http.MediaType;
 import org.springframework.lang.NonNull;
 import org.springframework.mock.web.MockMultipartFile;
 import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.RequestBuilder;
+import org.springframework.test.web.servlet.result.MockMvcResultMatchers;
 
 import org.springframework.test.web.servlet.ResultActions;
 
 import java.io.FileInputStream;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
 
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.*;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
@@ -42,8 +50,15 @@ public class TestUtils {
 	@Autowired
 	private NotificationRepository notificationRepository;
 
+	@Autowired
+	private SearchIndexer searchIndexer;
+
 	public void clearDB() {
 
+		//the closure notifies the sellers of the auctions that ended
+		notificationRepository.deleteAll();
+		notificationRepository.flush();
+
 		userRepository.deleteAll();
 		userRepository.flush();
 
@@ -62,10 +77,50 @@ public class TestUtils {
 		itemRepository.deleteAll();
 		itemRepository.flush();
 
-		notificationRepository.deleteAll();
-		notificationRepository.flush();
+		//created once at startup, every item needs it
+		ItemCategory root = new ItemCategory();
+		root.setName("All categories");
+		itemCategoryRepository.save(root);
+
+		//the search index and the suggestions are kept in memory
+		searchIndexer.requestRebuild();
+		awaitIndexed();
 	}
 
+	/**
+	 * Waits until the search index and the suggestions
+	 * include the changes made so far
+	 */
+	public void awaitIndexed() {
+		try {
+			if (!searchIndexer.awaitIndexed(30000)) {
+				throw new IllegalStateException("The search index is not up to date");
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * Performs a request whose route completes asynchronously
+	 * e.g. login and signup, and dispatches its result
+	 *
+	 * @param mvc - mvc
+	 * @param requestBuilder - the request
+	 * @return ResultActions(response from the server)
+	 * @throws Exception - mvc.perform throws exception
+	 */
+	public static ResultActions performAsync(@NonNull final MockMvc mvc,
+											 @NonNull final RequestBuilder requestBuilder) throws Exception {
+
+		MvcResult result = mvc.perform(requestBuilder)
+				.andExpect(MockMvcResultMatchers.request().asyncStarted())
+				.andReturn();
+
+		return mvc.perform(asyncDispatch(result));
+	}
+
+
 	/**
 	 * Utility function that creates an account and a user
 	 *
@@ -85,7 +140,7 @@ public class TestUtils {
 									   @NonNull final String  lastName,
 									   @NonNull final String  email) throws Exception {
 
-		final String token = ((JSONObject) new JSONParser().parse(mvc.perform(post("/auth/signup")
+		final String token = ((JSONObject) new JSONParser().parse(performAsync(mvc, post("/auth/signup")
 			.contentType(MediaType.APPLICATION_JSON_VALUE)
 			.content(String.format(
 				"{" +
@@ -124,7 +179,7 @@ public class TestUtils {
 							   @NonNull final String  username,
 							   @NonNull final String  password) throws Exception {
 
-		final String token = ((JSONObject) new JSONParser().parse(mvc.perform(post("/auth/login")
+		final String token = ((JSONObject) new JSONParser().parse(performAsync(mvc, post("/auth/login")
 				.contentType(MediaType.APPLICATION_JSON_VALUE)
 				.content(String.format(
 						"{" +
@@ -220,6 +275,19 @@ public class TestUtils {
 	}
 
 
+	/**
+	 * The end of an auction relative to now, so that the
+	 * auctions of the tests stay open whenever they run
+	 *
+	 * @param days - days from now
+	 * @return the date in ISO format
+	 */
+	public static String daysFromNow(final int days) {
+		return new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss.SSSXXX")
+				.format(new Date(System.currentTimeMillis() + TimeUnit.DAYS.toMillis(days)));
+	}
+
+
 	/**
 	 * Helper function
 	 * Given a user token it creates a post of this user
@@ -242,7 +310,7 @@ public class TestUtils {
 								.param("longitude", "23.76695")
 								.param("latitude", "37.968564")
 								.param("locationTitle", "Dit UoA")
-								.param("endsAt", "2025-09-26T01:30:00.000-04:00")
+								.param("endsAt", daysFromNow(30))
 								.param("description", "this is the description")
 								.header("Authorization", token)
 								.contentType(MediaType.APPLICATION_JSON))
@@ -291,7 +359,7 @@ public class TestUtils {
 								.param("longitude", "23.76695")
 								.param("latitude", "37.968564")
 								.param("locationTitle", "Dit UoA")
-								.param("endsAt", "2025-09-26T01:30:00.000-04:00")
+								.param("endsAt", daysFromNow(30))
 								.param("description", description)
 								.header("Authorization", token)
 								.contentType(MediaType.APPLICATION_JSON))
@@ -318,7 +386,7 @@ public class TestUtils {
 								.param("longitude", "23.76695")
 								.param("latitude", "37.968564")
 								.param("locationTitle", locationTitle)
-								.param("endsAt", "2025-09-26T01:30:00.000-04:00")
+								.param("endsAt", daysFromNow(30))
 								.param("description", description)
 								.header("Authorization", token)
 								.contentType(MediaType.APPLICATION_JSON))
@@ -736,6 +736,12 @@ public class AdminControllerTest {
                 .andExpect(status().isOk())
                 .andExpect(jsonPath("content.*", hasSize(3)));
 
+        //the token of the deleted user is still signed, but its user is gone
+        mvc.perform(get("/user/myNotifications")
+                .contentType(MediaType.APPLICATION_JSON)
+                .header("Authorization", user2))
+                .andExpect(status().isUnauthorized());
+
 
         mvc.perform(get("/account/checkUsername")
                 .contentType(MediaType.APPLICATION_JSON_VALUE)
@@ -753,4 +759,101 @@ public class AdminControllerTest {
                 .header("Authorization", user1))
                 .andExpect(status().isOk());
     }
-}
\ No newline at end of file
+
+
+    /**
+     * Admin gets the counters of the rate limiter
+     *
+     * @throws Exception - mvc.perform throws exception
+     */
+    @Test
+    @DisplayName("Get rate limit counters")
+    public void getRateLimits1() throws Exception {
+
+        mvc.perform(get("/admin/rateLimits")
+                .contentType(MediaType.APPLICATION_JSON)
+                .header("Authorization", user1))
+                .andExpect(status().isUnauthorized());
+
+        makeAdmin("user3");
+
+        mvc.perform(get("/admin/rateLimits")
+                .contentType(MediaType.APPLICATION_JSON)
+                .header("Authorization", user3))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("bid.rejected").exists())
+                .andExpect(jsonPath("search.allowed").exists())
+                .andExpect(jsonPath("recommend.clients").exists());
+    }
+
+
+    /**
+     * Admin gets the counters of the request identity
+     *
+     * @throws Exception - mvc.perform throws exception
+     */
+    @Test
+    @DisplayName("Get identity metrics")
+    public void getIdentityMetrics1() throws Exception {
+
+        makeAdmin("user3");
+
+        mvc.perform(get("/admin/identityMetrics")
+                .contentType(MediaType.APPLICATION_JSON)
+                .header("Authorization", user3))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("tokenVerifications").exists())
+                .andExpect(jsonPath("userLookupsById").exists())
+                .andExpect(jsonPath("tokenCacheHits").exists());
+    }
+
+
+    /**
+     * Admin gets the counters of the password hashing pool
+     *
+     * @throws Exception - mvc.perform throws exception
+     */
+    @Test
+    @DisplayName("Get password hashing counters")
+    public void getPasswordHashing1() throws Exception {
+
+        makeAdmin("user3");
+
+        mvc.perform(get("/admin/passwordHashing")
+                .contentType(MediaType.APPLICATION_JSON)
+                .header("Authorization", user3))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("queueDepth").exists())
+                .andExpect(jsonPath("rejected").exists());
+    }
+
+
+    /**
+     * Admin has the search index rebuilt and gets its counters
+     *
+     * @throws Exception - mvc.perform throws exception
+     */
+    @Test
+    @DisplayName("Rebuild search index")
+    public void rebuildSearchIndex1() throws Exception {
+
+        mvc.perform(post("/admin/rebuildSearchIndex")
+                .contentType(MediaType.APPLICATION_JSON)
+                .header("Authorization", user1))
+                .andExpect(status().isUnauthorized());
+
+        makeAdmin("user3");
+
+        mvc.perform(post("/admin/rebuildSearchIndex")
+                .contentType(MediaType.APPLICATION_JSON)
+                .header("Authorization", user3))
+                .andExpect(status().isOk());
+
+        mvc.perform(get("/admin/searchIndex")
+                .contentType(MediaType.APPLICATION_JSON)
+                .header("Authorization", user3))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("items").exists())
+                .andExpect(jsonPath("rebuilds").exists());
+    }
+}
@@ -5,6 +5,7 @@ import com.Auctions.backEnd.TestUtils;
 import com.Auctions.backEnd.configs.TestConfig;
 import com.Auctions.backEnd.models.Account;
 import com.Auctions.backEnd.repositories.AccountRepository;
+import com.Auctions.backEnd.services.Security.PasswordHasher;
 import org.json.simple  .JSONObject;
 import org.json.simple.parser.JSONParser;
 import org.junit.jupiter.api.AfterEach;
@@ -14,16 +15,23 @@ import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
 import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.MediaType;
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
 import org.springframework.test.web.servlet.MockMvc;
 import org.springframework.test.web.servlet.ResultActions;
 import org.springframework.test.web.servlet.result.MockMvcResultHandlers;
 import org.springframework.test.web.servlet.setup.MockMvcBuilders;
 import org.springframework.web.context.WebApplicationContext;
 
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+
 import static org.hamcrest.Matchers.is;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.*;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 
@@ -44,6 +52,9 @@ public class AuthControllerTest{
     @Autowired
     private AccountRepository accountRepository;
 
+    @Autowired
+    private PasswordHasher passwordHasher;
+
     private String user1;
     private String user2;
     private String user3;
@@ -92,7 +103,7 @@ public class AuthControllerTest{
      */
     private ResultActions performSignup(final String content) throws Exception {
 
-	    return mvc.perform(post("/auth/signup")
+	    return TestUtils.performAsync(mvc, post("/auth/signup")
                 .contentType(MediaType.APPLICATION_JSON)
                 .content(content));
     }
@@ -569,7 +580,7 @@ public class AuthControllerTest{
                 "\"password\" : \"myPwd123\" " +
                 "}";
 
-        mvc.perform(post("/auth/login")
+        TestUtils.performAsync(mvc, post("/auth/login")
                 .contentType(MediaType.APPLICATION_JSON)
                 .content(content))
                 .andExpect(status().isNotFound());
@@ -590,7 +601,7 @@ public class AuthControllerTest{
                 "\"password\" : \"myPwd123\" " +
                 "}";
 
-        mvc.perform(post("/auth/login")
+        TestUtils.performAsync(mvc, post("/auth/login")
                 .contentType(MediaType.APPLICATION_JSON)
                 .content(content))
                 .andExpect(status().isNotFound());
@@ -612,7 +623,7 @@ public class AuthControllerTest{
                 "\"password\" : \"myPwd123\" " +
                 "}";
 
-        mvc.perform(post("/auth/login")
+        TestUtils.performAsync(mvc, post("/auth/login")
                 .contentType(MediaType.APPLICATION_JSON)
                 .content(content))
                 .andExpect(status().isOk())
@@ -636,7 +647,7 @@ public class AuthControllerTest{
                 "}";
 
         final String token = "Bearer " + ((JSONObject) new JSONParser().parse(
-                mvc.perform(post("/auth/login")
+                TestUtils.performAsync(mvc, post("/auth/login")
                 .contentType(MediaType.APPLICATION_JSON)
                 .content(content))
                 .andExpect(status().isOk())
@@ -672,7 +683,7 @@ public class AuthControllerTest{
                 "\"password\" : \"myPwd123\" " +
                 "}";
 
-        mvc.perform(post("/auth/login")
+        TestUtils.performAsync(mvc, post("/auth/login")
                 .contentType(MediaType.APPLICATION_JSON)
                 .content(content))
                 .andExpect(status().isBadRequest());
@@ -694,12 +705,87 @@ public class AuthControllerTest{
                 "\"password\" : \"wrongPassword\" " +
                 "}";
 
-        mvc.perform(post("/auth/login")
+        TestUtils.performAsync(mvc, post("/auth/login")
                 .contentType(MediaType.APPLICATION_JSON)
                 .content(content))
                 .andExpect(status().isUnauthorized());
     }
 
+    /**
+     * Login of an account whose password was hashed with a lower cost
+     * The login succeeds and the stored hash is upgraded to the current cost
+     *
+     * @throws Exception - mvc.perform throws exception
+     */
+    @Test
+    @DisplayName("Login re-hashes a lower cost password")
+    public void authorize7() throws Exception {
+
+        Account account = accountRepository.findByUsername("user1");
+        account.setPassword(new BCryptPasswordEncoder(4).encode("myPwd123"));
+        accountRepository.save(account);
+        assertTrue(passwordHasher.needsUpgrade(accountRepository.findByUsername("user1").getPassword()));
+
+        final String content = "{" +
+                "\"username\" : \"user1\", " +
+                "\"password\" : \"myPwd123\" " +
+                "}";
+
+        TestUtils.performAsync(mvc, post("/auth/login")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(content))
+                .andExpect(status().isOk());
+
+        String upgraded = accountRepository.findByUsername("user1").getPassword();
+        assertTrue(!passwordHasher.needsUpgrade(upgraded));
+        assertTrue(new BCryptPasswordEncoder().matches("myPwd123", upgraded));
+    }
+
+    /**
+     * Signup while every thread and queue slot of the password pool is taken
+     * We should get back an HTTP <Code>SERVICE UNAVAILABLE</Code> with Retry-After
+     *
+     * @throws Exception - mvc.perform throws exception
+     */
+    @Test
+    @DisplayName("Signup while the password pool is full")
+    public void signup17() throws Exception {
+
+        CountDownLatch release = new CountDownLatch(1);
+        try {
+            CompletableFuture<Object> last;
+            do {
+                last = passwordHasher.submit(() -> {
+                    try {
+                        release.await();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                    return null;
+                });
+            } while (!last.isCompletedExceptionally());
+
+            final String content = "{" +
+                    "\"username\" : \"user4\", " +
+                    "\"password\" : \"myPwd123\", " +
+                    "\"email\" : \"email4@di.uoa.gr\", " +
+                    "\"firstName\" : \"FirstName4\", " +
+                    "\"lastName\" : \"LastName4\", " +
+                    "\"telNumber\" : \"1234567890\", " +
+                    "\"taxNumber\" : \"123345\", " +
+                    "\"longitude\" : \"23.76695\", " +
+                    "\"latitude\" : \"37.968564\", " +
+                    "\"locationTitle\" : \"Dit Uoa\" " +
+                    "}";
+
+            performSignup(content)
+                    .andExpect(status().isServiceUnavailable())
+                    .andExpect(header().string(HttpHeaders.RETRY_AFTER, "1"));
+        } finally {
+            release.countDown();
+        }
+    }
+
     /**
      * User accesses secure endpoint and the JWTFilter validates the token
      * This service is called at startup of the app to check
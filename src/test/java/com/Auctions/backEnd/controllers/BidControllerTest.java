@@ -5,8 +5,15 @@ import com.Auctions.backEnd.BackEndApplication;
 import com.Auctions.backEnd.TestUtils;
 import com.Auctions.backEnd.configs.TestConfig;
 import com.Auctions.backEnd.models.Account;
+import com.Auctions.backEnd.models.Bid;
+import com.Auctions.backEnd.models.Item;
 import com.Auctions.backEnd.models.ItemCategory;
+import com.Auctions.backEnd.models.ProxyBid;
 import com.Auctions.backEnd.repositories.*;
+import com.Auctions.backEnd.responses.PriceEvent;
+import com.Auctions.backEnd.services.Bid.BidEngine;
+import com.Auctions.backEnd.services.Bid.PriceFeed;
+import org.json.simple.JSONArray;
 import org.json.simple.JSONObject;
 import org.json.simple.parser.JSONParser;
 import org.junit.jupiter.api.AfterEach;
@@ -18,14 +25,27 @@ import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMock
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.http.MediaType;
 import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.request.MockHttpServletRequestBuilder;
 import org.springframework.test.web.servlet.result.MockMvcResultHandlers;
 import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
 import org.springframework.web.context.WebApplicationContext;
 
 import static org.hamcrest.Matchers.hasSize;
 import static org.hamcrest.Matchers.is;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import static org.springframework.security.test.web.servlet.setup.SecurityMockMvcConfigurers.springSecurity;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.*;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
 
@@ -58,6 +78,21 @@ public class BidControllerTest {
     @Autowired
     private UserRepository userRepository;
 
+    @Autowired
+    private ItemRepository itemRepository;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Autowired
+    private PriceFeed priceFeed;
+
+    @Autowired
+    private ProxyBidRepository proxyBidRepository;
+
+    @Autowired
+    private BidEngine bidEngine;
+
     private String user1;
     private String user2;
     private String user3;
@@ -81,12 +116,14 @@ public class BidControllerTest {
 //        categoryId = category.getId().toString();
         verify("user1");
         verify("user2");
+
+        categoryId = itemCategoryRepository.findItemCategoryByName("All categories").getId().toString();
     }
 
-//    @AfterEach
-//    public void after() {
-//        this.testUtils.clearDB();
-//    }
+    @AfterEach
+    public void after() {
+        this.testUtils.clearDB();
+    }
 
 
     private void verify(final String username) {
@@ -97,6 +134,19 @@ public class BidControllerTest {
         accountRepository.save(account);
     }
 
+    /**
+     * @return a MockMvc that runs the security filter chain,
+     * with the JWT, rate limit and idempotency filters
+     */
+    private MockMvc securedMvc() {
+        return MockMvcBuilders.webAppContextSetup(this.wac)
+                .apply(springSecurity())
+                //the chain redirects plain http to https
+                .defaultRequest(get("/").secure(true))
+                .alwaysDo(MockMvcResultHandlers.print())
+                .build();
+    }
+
     /**
      * User successfully makes a bid of 6.0E with firstBid 5.4E
      *
@@ -324,6 +374,378 @@ public class BidControllerTest {
     }
 
 
+    /**
+     * No bid can be made after the buy price has been reached
+     *
+     * @throws Exception - mvc.perform
+     */
+    @Test
+    @DisplayName("Bid after buyPrice")
+    public void makeBid6() throws Exception {
+
+        ItemCategory ic = itemCategoryRepository.findItemCategoryByName("All categories");
+        String item_id = TestUtils.makeItem(mvc, ic.getId().toString(), user1);
+
+        mvc.perform(post("/bid/makeBid/" + item_id)
+                .contentType(MediaType.APPLICATION_JSON)
+                .param("offer", "15.0")
+                .header("Authorization", user2))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("auctionCompleted", is(true)));
+
+        mvc.perform(post("/bid/makeBid/" + item_id)
+                .contentType(MediaType.APPLICATION_JSON)
+                .param("offer", "20.0")
+                .header("Authorization", user3))
+                .andExpect(status().isBadRequest());
+    }
+
+
+    /**
+     * The conditional update refuses an offer that is not higher
+     * than the stored price and leaves the item as it was
+     *
+     * @throws Exception - mvc.perform
+     */
+    @Test
+    @DisplayName("Conditional update - losing bid")
+    public void placeBid1() throws Exception {
+
+        long itemId = Long.parseLong(TestUtils.makeItem(mvc, categoryId, user1));
+        User bidder = userRepository.findByAccount_Username("user2");
+
+        assertEquals(1, itemRepository.placeBid(itemId, bidder, 6.0, new Date()));
+        assertEquals(0, itemRepository.placeBid(itemId, bidder, 6.0, new Date()));
+        assertEquals(0, itemRepository.placeBid(itemId, bidder, 5.9, new Date()));
+
+        Item item = itemRepository.findItemById(itemId);
+        assertEquals(6.0, item.getCurrently(), 0.0);
+        assertEquals(1, item.getBidCount().intValue());
+        assertEquals(bidder.getId(), item.getHighestBidder().getId());
+        assertFalse(item.isAuctionCompleted());
+    }
+
+    /**
+     * An offer reaching the buy price completes the auction in the same
+     * update, after which no offer is accepted
+     *
+     * @throws Exception - mvc.perform
+     */
+    @Test
+    @DisplayName("Conditional update - buy price")
+    public void placeBid2() throws Exception {
+
+        long itemId = Long.parseLong(TestUtils.makeItem(mvc, categoryId, user1));
+        User bidder = userRepository.findByAccount_Username("user2");
+
+        assertEquals(1, itemRepository.placeBid(itemId, bidder, 10.4, new Date()));
+
+        Item item = itemRepository.findItemById(itemId);
+        assertTrue(item.isAuctionCompleted());
+        assertEquals(10.4, item.getCurrently(), 0.0);
+        assertEquals(bidder.getId(), item.getHighestBidder().getId());
+
+        assertEquals(0, itemRepository.placeBid(itemId, bidder, 20.0, new Date()));
+        assertEquals(10.4, itemRepository.findItemById(itemId).getCurrently(), 0.0);
+    }
+
+    /**
+     * The conditional update refuses any offer once the auction has ended,
+     * even if the auction has not been closed yet
+     *
+     * @throws Exception - mvc.perform
+     */
+    @Test
+    @DisplayName("Conditional update - expired auction")
+    public void placeBid3() throws Exception {
+
+        long itemId = Long.parseLong(TestUtils.makeExpiredItem(mvc, categoryId, user1));
+        User bidder = userRepository.findByAccount_Username("user2");
+
+        assertEquals(0, itemRepository.placeBid(itemId, bidder, 6.0, new Date()));
+
+        Item item = itemRepository.findItemById(itemId);
+        assertEquals(5.3, item.getCurrently(), 0.0);
+        assertEquals(0, item.getBidCount().intValue());
+
+        mvc.perform(post("/bid/makeBid/" + itemId)
+                .contentType(MediaType.APPLICATION_JSON)
+                .param("offer", "6.0")
+                .header("Authorization", user2))
+                .andExpect(status().isBadRequest())
+                .andExpect(jsonPath("text", is("Auction has been completed and no bids can be made")));
+    }
+
+
+    /**
+     * Every accepted bid raises the bid count and makes its bidder the
+     * highest bidder; refused bids change neither. The most bid-on
+     * auction comes first in popularity
+     *
+     * @throws Exception - mvc.perform
+     */
+    @Test
+    @DisplayName("Bid count and highest bidder")
+    public void bidCount1() throws Exception {
+
+        long itemId = Long.parseLong(TestUtils.makeItem(mvc, categoryId, user1));
+        long quiet = Long.parseLong(TestUtils.makeItem(mvc, categoryId, user1));
+        User bidder2 = userRepository.findByAccount_Username("user2");
+        User bidder3 = userRepository.findByAccount_Username("user3");
+        verify("user3");
+
+        String[][] bids = {{user2, "6.0"}, {user3, "7.0"}, {user2, "8.0"}};
+        for (String[] bid : bids) {
+            mvc.perform(post("/bid/makeBid/" + itemId)
+                    .contentType(MediaType.APPLICATION_JSON)
+                    .param("offer", bid[1])
+                    .header("Authorization", bid[0]))
+                    .andExpect(status().isOk());
+        }
+
+        mvc.perform(post("/bid/makeBid/" + itemId)
+                .contentType(MediaType.APPLICATION_JSON)
+                .param("offer", "7.5")
+                .header("Authorization", user3))
+                .andExpect(status().isBadRequest());
+
+        Item item = itemRepository.findItemById(itemId);
+        assertEquals(3, item.getBidCount().intValue());
+        assertEquals(bidder2.getId(), item.getHighestBidder().getId());
+        assertEquals(8.0, item.getCurrently(), 0.0);
+
+        mvc.perform(post("/bid/makeBid/" + itemId)
+                .contentType(MediaType.APPLICATION_JSON)
+                .param("offer", "9.0")
+                .header("Authorization", user3))
+                .andExpect(status().isOk());
+
+        item = itemRepository.findItemById(itemId);
+        assertEquals(4, item.getBidCount().intValue());
+        assertEquals(bidder3.getId(), item.getHighestBidder().getId());
+
+        assertEquals(0, itemRepository.findItemById(quiet).getBidCount().intValue());
+        assertEquals(itemId, itemRepository.popularItems().get(0).getId().longValue());
+    }
+
+
+    /**
+     * Two users register proxy bids; the higher maximum leads
+     * one increment above the other maximum
+     *
+     * @throws Exception - mvc.perform
+     */
+    @Test
+    @DisplayName("Proxy bids")
+    public void proxyBid1() throws Exception {
+
+        ItemCategory ic = itemCategoryRepository.findItemCategoryByName("All categories");
+        String item_id = TestUtils.makeItem(mvc, ic.getId().toString(), user1);
+
+        mvc.perform(post("/bid/proxy/" + item_id)
+                .contentType(MediaType.APPLICATION_JSON)
+                .param("maxOffer", "8.0")
+                .header("Authorization", user2))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("leading", is(true)))
+                .andExpect(jsonPath("currently", is(5.8)));
+
+        mvc.perform(post("/bid/proxy/" + item_id)
+                .contentType(MediaType.APPLICATION_JSON)
+                .param("maxOffer", "9.0")
+                .header("Authorization", user3))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("leading", is(true)))
+                .andExpect(jsonPath("currently", is(8.5)))
+                .andExpect(jsonPath("bids.*", hasSize(2)))
+                .andExpect(jsonPath("bids[0].offer", is(8.0)))
+                .andExpect(jsonPath("bids[0].bidder", is("user2")))
+                .andExpect(jsonPath("bids[1].offer", is(8.5)))
+                .andExpect(jsonPath("bids[1].bidder", is("user3")))
+                .andExpect(jsonPath("bids[1].bidderId").isNumber())
+                .andExpect(jsonPath("bids[1].id").doesNotExist());
+
+        mvc.perform(post("/bid/proxy/" + item_id)
+                .contentType(MediaType.APPLICATION_JSON)
+                .param("maxOffer", "10.0")
+                .header("Authorization", user1))
+                .andExpect(status().isBadRequest());
+    }
+
+
+    /**
+     * Of two equal maximums the one set first wins, also once the
+     * auction is loaded again: a proxy registered first but raised
+     * later goes behind the other one
+     *
+     * @throws Exception - mvc.perform
+     */
+    @Test
+    @DisplayName("Proxy bids - ties")
+    public void proxyBid2() throws Exception {
+
+        ItemCategory ic = itemCategoryRepository.findItemCategoryByName("All categories");
+        long itemId = Long.parseLong(TestUtils.makeItem(mvc, ic.getId().toString(), user1));
+        String user4 = TestUtils.createAccount(mvc, "user4", "myPwd123", "FirstName4", "LastName4", "email4@di.uoa.gr");
+        verify("user4");
+
+        long now = System.currentTimeMillis();
+        //user3 registered first and raised to 8.0 after user2 set the same maximum
+        saveProxy(itemId, "user3", 8.0, new Date(now - 120000), new Date(now - 1000));
+        saveProxy(itemId, "user2", 8.0, new Date(now - 60000), new Date(now - 60000));
+        bidEngine.evict(itemId);
+
+        mvc.perform(post("/bid/makeBid/" + itemId)
+                .contentType(MediaType.APPLICATION_JSON)
+                .param("offer", "6.0")
+                .header("Authorization", user4))
+                .andExpect(status().isOk());
+
+        Item item = itemRepository.findItemById(itemId);
+        assertEquals(8.0, item.getCurrently(), 0.0);
+        assertEquals("user2", item.getHighestBidder().getAccount().getUsername());
+    }
+
+    private void saveProxy(long itemId, String username, double maxOffer, Date createdAt, Date raisedAt) {
+        ProxyBid proxy = new ProxyBid();
+        proxy.setItem(itemRepository.findItemById(itemId));
+        proxy.setBidder(userRepository.findByAccount_Username(username));
+        proxy.setMaxOffer(maxOffer);
+        proxy.setCreatedAt(createdAt);
+        proxy.setRaisedAt(raisedAt);
+        proxyBidRepository.save(proxy);
+    }
+
+
+    /**
+     * User places several bids with one request; every entry gets its own result
+     *
+     * @throws Exception - mvc.perform
+     */
+    @Test
+    @DisplayName("Batch of bids")
+    public void makeBids1() throws Exception {
+
+        ItemCategory ic = itemCategoryRepository.findItemCategoryByName("All categories");
+        String item1 = TestUtils.makeItem(mvc, ic.getId().toString(), user1);
+        String item2 = TestUtils.makeItem(mvc, ic.getId().toString(), user1);
+
+        mvc.perform(post("/bid/makeBids")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content("[{\"itemId\": " + item1 + ", \"offer\": 6.0}," +
+                        "{\"itemId\": " + item2 + ", \"offer\": 1.0}," +
+                        "{\"itemId\": 12345, \"offer\": 6.0}]")
+                .header("Authorization", user2))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.*", hasSize(3)))
+                .andExpect(jsonPath("[0].accepted", is(true)))
+                .andExpect(jsonPath("[1].accepted", is(false)))
+                .andExpect(jsonPath("[2].accepted", is(false)));
+    }
+
+
+    /**
+     * A retried bid with the same Idempotency-Key gets the first
+     * response back instead of being judged again
+     *
+     * @throws Exception - mvc.perform
+     */
+    @Test
+    @DisplayName("Retried bid")
+    public void makeBid7() throws Exception {
+
+        //the keys are honoured by a filter of the security chain
+        MockMvc secured = securedMvc();
+        ItemCategory ic = itemCategoryRepository.findItemCategoryByName("All categories");
+        String item_id = TestUtils.makeItem(mvc, ic.getId().toString(), user1);
+
+        secured.perform(post("/bid/makeBid/" + item_id)
+                .contentType(MediaType.APPLICATION_JSON)
+                .param("offer", "6.0")
+                .header("Idempotency-Key", "retry-1")
+                .header("Authorization", user2))
+                .andExpect(status().isOk())
+                .andExpect(header().doesNotExist("Idempotent-Replayed"));
+
+        secured.perform(post("/bid/makeBid/" + item_id)
+                .contentType(MediaType.APPLICATION_JSON)
+                .param("offer", "6.0")
+                .header("Idempotency-Key", "retry-1")
+                .header("Authorization", user2))
+                .andExpect(status().isOk())
+                .andExpect(header().string("Idempotent-Replayed", "true"));
+
+        secured.perform(post("/bid/makeBid/" + item_id)
+                .contentType(MediaType.APPLICATION_JSON)
+                .param("offer", "6.0")
+                .header("Authorization", user2))
+                .andExpect(status().isBadRequest());
+    }
+
+
+    /**
+     * A key reused for a different bid is rejected, requests
+     * without a valid token are never replayed and a batch
+     * is replayed by its body
+     *
+     * @throws Exception - mvc.perform
+     */
+    @Test
+    @DisplayName("Retried bid - key reused")
+    public void makeBid8() throws Exception {
+
+        MockMvc secured = securedMvc();
+        ItemCategory ic = itemCategoryRepository.findItemCategoryByName("All categories");
+        String item_id = TestUtils.makeItem(mvc, ic.getId().toString(), user1);
+
+        secured.perform(post("/bid/makeBid/" + item_id)
+                .contentType(MediaType.APPLICATION_JSON)
+                .param("offer", "6.0")
+                .header("Idempotency-Key", "retry-2")
+                .header("Authorization", user2))
+                .andExpect(status().isOk());
+
+        secured.perform(post("/bid/makeBid/" + item_id)
+                .contentType(MediaType.APPLICATION_JSON)
+                .param("offer", "7.0")
+                .header("Idempotency-Key", "retry-2")
+                .header("Authorization", user2))
+                .andExpect(status().isUnprocessableEntity())
+                .andExpect(header().doesNotExist("Idempotent-Replayed"));
+
+        for (int i = 0; i < 2; i++) {
+            secured.perform(post("/bid/makeBid/" + item_id)
+                    .contentType(MediaType.APPLICATION_JSON)
+                    .param("offer", "8.0")
+                    .header("Idempotency-Key", "retry-3"))
+                    .andExpect(status().is4xxClientError())
+                    .andExpect(header().doesNotExist("Idempotent-Replayed"));
+        }
+
+        //the body of a batch is part of the request
+        String batch = "[{\"itemId\": " + item_id + ", \"offer\": 7.0}]";
+        for (int i = 0; i < 2; i++) {
+            secured.perform(post("/bid/makeBids")
+                    .contentType(MediaType.APPLICATION_JSON)
+                    .content(batch)
+                    .header("Idempotency-Key", "retry-4")
+                    .header("Authorization", user2))
+                    .andExpect(status().isOk())
+                    .andExpect(jsonPath("[0].accepted", is(true)));
+        }
+        secured.perform(post("/bid/makeBids")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(batch.replace("7.0", "7.5"))
+                .header("Idempotency-Key", "retry-4")
+                .header("Authorization", user2))
+                .andExpect(status().isUnprocessableEntity());
+
+        Item item = itemRepository.findItemById(Long.parseLong(item_id));
+        assertEquals(7.0, item.getCurrently(), 0.0);
+        assertEquals(Integer.valueOf(2), item.getBidCount());
+    }
+
+
     /**
      * User gets the details of a bid using invalid bid id
      *
@@ -341,6 +763,252 @@ public class BidControllerTest {
     }
 
 
+    /**
+     * User browses the bid history of an auction
+     *
+     * @throws Exception - mvc.perform
+     */
+    @Test
+    @DisplayName("Bid history")
+    public void bidHistory1() throws Exception {
+
+        ItemCategory ic = itemCategoryRepository.findItemCategoryByName("All categories");
+        String item_id = TestUtils.makeItem(mvc, ic.getId().toString(), user1);
+
+        mvc.perform(get("/bid/history/" + item_id)
+                .contentType(MediaType.APPLICATION_JSON)
+                .header("Authorization", user2))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("bids.*", hasSize(0)))
+                .andExpect(jsonPath("nextOffer").doesNotExist());
+
+        mvc.perform(get("/bid/history/" + item_id)
+                .contentType(MediaType.APPLICATION_JSON)
+                .param("offer", "10.0")
+                .header("Authorization", user2))
+                .andExpect(status().isBadRequest());
+
+        mvc.perform(get("/bid/history/12345")
+                .contentType(MediaType.APPLICATION_JSON)
+                .header("Authorization", user2))
+                .andExpect(status().isNotFound());
+    }
+
+
+    /**
+     * Consecutive pages of the history neither overlap nor skip bids,
+     * also when several bids have the same offer
+     *
+     * @throws Exception - mvc.perform
+     */
+    @Test
+    @DisplayName("Bid history pages")
+    public void bidHistory2() throws Exception {
+
+        long itemId = Long.parseLong(TestUtils.makeItem(mvc, categoryId, user1));
+        long bidder2 = userRepository.findByAccount_Username("user2").getId();
+        long bidder3 = userRepository.findByAccount_Username("user3").getId();
+
+        double[] offers = {6.0, 7.0, 7.0, 8.0, 8.0, 8.0, 9.0};
+        new TransactionTemplate(transactionManager).execute(status -> {
+            for (int i = 0; i < offers.length; i++) {
+                Bid bid = new Bid(new Date());
+                bid.setItem(itemRepository.getOne(itemId));
+                bid.setBidder(userRepository.getOne(i % 2 == 0 ? bidder2 : bidder3));
+                bid.setOffer(offers[i]);
+                bidRepository.save(bid);
+            }
+            return null;
+        });
+
+        List<Long> all = historyIds(get("/bid/history/" + itemId).param("size", "100"), null);
+        assertEquals(offers.length, all.size());
+
+        List<Long> paged = new ArrayList<>();
+        List<Double> pagedOffers = new ArrayList<>();
+        JSONObject page = history(get("/bid/history/" + itemId).param("size", "2"));
+        while (true) {
+            historyIds(page, paged, pagedOffers);
+            if (page.get("nextOffer") == null) {
+                break;
+            }
+            page = history(get("/bid/history/" + itemId)
+                    .param("size", "2")
+                    .param("offer", page.get("nextOffer").toString())
+                    .param("id", page.get("nextId").toString()));
+        }
+
+        assertEquals(all, paged);
+        assertEquals(offers.length, new HashSet<>(paged).size());
+        for (int i = 1; i < pagedOffers.size(); i++) {
+            assertTrue(pagedOffers.get(i - 1) >= pagedOffers.get(i));
+        }
+    }
+
+    private JSONObject history(MockHttpServletRequestBuilder request) throws Exception {
+        String body = mvc.perform(request
+                .contentType(MediaType.APPLICATION_JSON)
+                .header("Authorization", user2))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getContentAsString();
+        return (JSONObject) new JSONParser().parse(body);
+    }
+
+    private List<Long> historyIds(MockHttpServletRequestBuilder request, List<Double> offers) throws Exception {
+        List<Long> ids = new ArrayList<>();
+        historyIds(history(request), ids, offers == null ? new ArrayList<>() : offers);
+        return ids;
+    }
+
+    private static void historyIds(JSONObject page, List<Long> ids, List<Double> offers) {
+        for (Object entry : (JSONArray) page.get("bids")) {
+            ids.add(((Number) ((JSONObject) entry).get("id")).longValue());
+            offers.add(((Number) ((JSONObject) entry).get("offer")).doubleValue());
+        }
+    }
+
+
+    /**
+     * A visitor follows the price of an auction: the stream starts with the
+     * current state, gets every accepted bid and ends with the auction
+     *
+     * @throws Exception - mvc.perform
+     */
+    @Test
+    @DisplayName("Price stream")
+    public void stream1() throws Exception {
+
+        long itemId = Long.parseLong(TestUtils.makeItem(mvc, categoryId, user1));
+
+        MvcResult stream = mvc.perform(get("/bid/stream/" + itemId))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        mvc.perform(post("/bid/makeBid/" + itemId)
+                .contentType(MediaType.APPLICATION_JSON)
+                .param("offer", "6.0")
+                .header("Authorization", user2))
+                .andExpect(status().isOk());
+
+        //reaching the buy price completes the auction and the stream
+        mvc.perform(post("/bid/makeBid/" + itemId)
+                .contentType(MediaType.APPLICATION_JSON)
+                .param("offer", "10.4")
+                .header("Authorization", user3))
+                .andExpect(status().isOk());
+
+        stream.getAsyncResult(5000);
+        String[] events = stream.getResponse().getContentAsString().split("\n\n");
+
+        assertEquals(3, events.length);
+        for (String event : events) {
+            assertTrue(event.startsWith("event:price\ndata:"));
+        }
+        JSONObject first = (JSONObject) new JSONParser().parse(events[0].substring(events[0].indexOf("data:") + 5));
+        JSONObject second = (JSONObject) new JSONParser().parse(events[1].substring(events[1].indexOf("data:") + 5));
+        JSONObject last = (JSONObject) new JSONParser().parse(events[2].substring(events[2].indexOf("data:") + 5));
+
+        assertEquals(5.3, ((Number) first.get("currently")).doubleValue(), 0.0);
+        assertEquals(6.0, ((Number) second.get("currently")).doubleValue(), 0.0);
+        assertEquals(1L, ((Number) second.get("bidCount")).longValue());
+        assertEquals(false, second.get("completed"));
+        assertEquals(10.4, ((Number) last.get("currently")).doubleValue(), 0.0);
+        assertEquals(true, last.get("completed"));
+
+        mvc.perform(get("/bid/stream/12345"))
+                .andExpect(status().isNotFound());
+    }
+
+
+    /**
+     * Prices published out of order never take a subscriber back
+     * to an older state of the auction
+     *
+     * @throws Exception - mvc.perform
+     */
+    @Test
+    @DisplayName("Price stream out of order")
+    public void stream2() throws Exception {
+
+        long itemId = Long.parseLong(TestUtils.makeItem(mvc, categoryId, user1));
+        Date endsAt = itemRepository.findItemById(itemId).getEndsAt();
+
+        MvcResult stream = mvc.perform(get("/bid/stream/" + itemId))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        //the second bid is published before the first one
+        priceFeed.publish(new PriceEvent(itemId, 7.0, 2, endsAt, false));
+        priceFeed.publish(new PriceEvent(itemId, 6.0, 1, endsAt, false));
+        priceFeed.publish(new PriceEvent(itemId, 7.0, 2, endsAt, true));
+
+        stream.getAsyncResult(5000);
+        String[] events = stream.getResponse().getContentAsString().split("\n\n");
+
+        assertEquals(3, events.length);
+        List<Long> bidCounts = new ArrayList<>();
+        for (String event : events) {
+            JSONObject data = (JSONObject) new JSONParser().parse(event.substring(event.indexOf("data:") + 5));
+            bidCounts.add(((Number) data.get("bidCount")).longValue());
+        }
+        assertEquals(Arrays.asList(0L, 2L, 2L), bidCounts);
+        assertTrue(events[2].contains("\"completed\":true"));
+    }
+
+
+    /**
+     * A batch made only of unknown auctions is answered entry by entry
+     *
+     * @throws Exception - mvc.perform
+     */
+    @Test
+    @DisplayName("Make bids - unknown auctions")
+    public void makeBids2() throws Exception {
+
+        mvc.perform(post("/bid/makeBids")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content("[{\"itemId\": 12345, \"offer\": 6.0}," +
+                        "{\"itemId\": 12346, \"offer\": 7.0}]")
+                .header("Authorization", user2))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.*", hasSize(2)))
+                .andExpect(jsonPath("[0].accepted", is(false)))
+                .andExpect(jsonPath("[0].error", is("Item not found. Invalid item Id")))
+                .andExpect(jsonPath("[1].accepted", is(false)))
+                .andExpect(jsonPath("[1].error", is("Item not found. Invalid item Id")));
+    }
+
+
+    /**
+     * A null entry gets its own error and a null batch is refused
+     *
+     * @throws Exception - mvc.perform
+     */
+    @Test
+    @DisplayName("Make bids - null entries")
+    public void makeBids3() throws Exception {
+
+        String item_id = TestUtils.makeItem(mvc, categoryId, user1);
+
+        mvc.perform(post("/bid/makeBids")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content("[null, {\"itemId\": " + item_id + ", \"offer\": 6.0}]")
+                .header("Authorization", user2))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.*", hasSize(2)))
+                .andExpect(jsonPath("[0].accepted", is(false)))
+                .andExpect(jsonPath("[0].error", is("Item id and offer are required")))
+                .andExpect(jsonPath("[1].accepted", is(true)));
+
+        mvc.perform(post("/bid/makeBids")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content("null")
+                .header("Authorization", user2))
+                .andExpect(status().isBadRequest())
+                .andExpect(jsonPath("text", is("Invalid input or request")));
+    }
+
+
     @Test
     public void test() throws Exception {
 
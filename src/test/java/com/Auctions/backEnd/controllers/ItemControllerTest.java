@@ -3,10 +3,13 @@ package com.Auctions.backEnd.controllers;
 import com.Auctions.backEnd.BackEndApplication;
 import com.Auctions.backEnd.TestUtils;
 import com.Auctions.backEnd.models.Account;
+import com.Auctions.backEnd.models.Item;
 import com.Auctions.backEnd.models.ItemCategory;
 import com.Auctions.backEnd.repositories.AccountRepository;
 import com.Auctions.backEnd.repositories.ItemCategoryRepository;
+import com.Auctions.backEnd.repositories.ItemRepository;
 import com.Auctions.backEnd.repositories.UserRepository;
+import com.Auctions.backEnd.services.Bid.BidJournal;
 
 import org.json.simple.JSONObject;
 import org.json.simple.parser.JSONParser;
@@ -18,19 +21,28 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.http.MediaType;
+import org.springframework.mock.web.MockHttpServletResponse;
 import org.springframework.mock.web.MockMultipartFile;
 import org.springframework.test.web.servlet.MockMvc;
 import org.springframework.test.web.servlet.result.MockMvcResultHandlers;
 import org.springframework.test.web.servlet.setup.MockMvcBuilders;
 import org.springframework.web.context.WebApplicationContext;
 
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.FileInputStream;
+import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Date;
 import java.util.List;
+import java.util.Random;
 
 import static com.Auctions.backEnd.TestUtils.*;
 import static org.hamcrest.Matchers.hasSize;
 import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.startsWith;
 import static org.junit.Assert.*;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.*;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
@@ -57,6 +69,12 @@ public class ItemControllerTest {
     @Autowired
     private ItemCategoryRepository itemCategoryRepository;
 
+    @Autowired
+    private ItemRepository itemRepository;
+
+    @Autowired
+    private BidJournal bidJournal;
+
     private String user1;
     private String user2;
     private String user3;
@@ -616,6 +634,98 @@ public class ItemControllerTest {
     }
 
 
+    /**
+     * @return a jpeg picture with some detail in it
+     */
+    private static byte[] picture(int width, int height) throws IOException {
+
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        Random random = new Random(42);
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                image.setRGB(x, y, (x * 255 / width) << 16 | (y * 255 / height) << 8 | random.nextInt(256));
+            }
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ImageIO.write(image, "jpg", out);
+        return out.toByteArray();
+    }
+
+
+    /**
+     * User downloads the picture of an item: the whole picture,
+     * a repeat view with its ETag, a part of it and its thumbnail
+     *
+     * @throws Exception - mvc.perform
+     */
+    @Test
+    @DisplayName("Download an item picture")
+    public void downloadFile1() throws Exception {
+
+        byte[] picture = picture(1600, 1200);
+        MockMultipartFile file = new MockMultipartFile(
+                "media",
+                "picture.jpg",
+                "image/jpeg",
+                picture);
+
+        JSONObject item = (JSONObject) new JSONParser().parse(mvc.perform(
+                multipart("/item")
+                        .file(file)
+                        .param("name", "item1")
+                        .param("buyPrice", "10.4")
+                        .param("firstBid", "5.3")
+                        .param("categoryId", categoryId)
+                        .param("longitude", "23.76695")
+                        .param("latitude", "37.968564")
+                        .param("locationTitle", "Dit UoA")
+                        .param("endsAt", daysFromNow(30))
+                        .param("description", "this is the description")
+                        .header("Authorization", user1)
+                        .contentType(MediaType.MULTIPART_FORM_DATA))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getContentAsString());
+
+        String link = "/media" + ((List) item.get("getMediaPath")).get(0);
+        assertNotNull(((List) item.get("getMediaVariants")).get(0));
+
+        String etag = mvc.perform(get(link))
+                .andExpect(status().isOk())
+                .andExpect(header().string("Cache-Control", "public, max-age=31536000, immutable"))
+                .andReturn().getResponse().getHeader("ETag");
+        assertNotNull(etag);
+
+        mvc.perform(get(link).header("If-None-Match", etag))
+                .andExpect(status().isNotModified());
+
+        mvc.perform(get(link).header("Range", "bytes=0-9"))
+                .andExpect(status().isPartialContent())
+                .andExpect(header().string("Content-Range", startsWith("bytes 0-9/")));
+
+        //the original until the variant is ready
+        long deadline = System.currentTimeMillis() + 10000;
+        MockHttpServletResponse thumb;
+        do {
+            Thread.sleep(100);
+            thumb = mvc.perform(get(link).param("size", "thumb"))
+                    .andExpect(status().isOk())
+                    .andReturn().getResponse();
+        } while (!thumb.getHeader("ETag").endsWith("-thumb\"") && System.currentTimeMillis() < deadline);
+
+        assertEquals("public, max-age=31536000, immutable", thumb.getHeader("Cache-Control"));
+        assertEquals("image/jpeg", thumb.getContentType());
+        assertTrue(thumb.getContentAsByteArray().length > 0);
+        assertTrue(thumb.getContentAsByteArray().length < picture.length);
+        BufferedImage variant = ImageIO.read(new ByteArrayInputStream(thumb.getContentAsByteArray()));
+        assertEquals(200, variant.getWidth());
+        assertEquals(150, variant.getHeight());
+
+        //the link ends in the picture extension, so the error can not be sent as json
+        mvc.perform(get(link).param("size", "huge"))
+                .andExpect(status().is4xxClientError());
+    }
+
+
     /**
      * User tries to create an item/auction with firstBid > buyPrice
      *
@@ -914,7 +1024,7 @@ public class ItemControllerTest {
 
 
     /**
-     * User gets item's details
+     * User gets item's details, with its highest bids
      *
      * @throws Exception - mvc.perform
      */
@@ -924,10 +1034,20 @@ public class ItemControllerTest {
 
         String item_id = TestUtils.makeItem(mvc, categoryId, user1);
 
+        mvc.perform(post("/bid/makeBid/" + item_id)
+                .contentType(MediaType.APPLICATION_JSON)
+                .param("offer", "6.0")
+                .header("Authorization", user2))
+                .andExpect(status().isOk());
+        assertTrue(bidJournal.awaitDrained(30000));
+
         mvc.perform(get("/item/" + item_id)
                 .contentType(MediaType.APPLICATION_JSON)
                 .header("Authorization", user1))
-                .andExpect(status().isOk());
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("bids.*", hasSize(1)))
+                .andExpect(jsonPath("bids[0].offer", is(6.0)))
+                .andExpect(jsonPath("topBids").doesNotExist());
     }
 
 
@@ -1424,6 +1544,44 @@ public class ItemControllerTest {
     }
 
 
+    /**
+     * The details of an auction are written only while it has no bids,
+     * so modifying it with the state read before a bid keeps the bid
+     *
+     * @throws Exception - mvc.perform
+     */
+    @Test
+    @DisplayName("Modify item - bid before the write")
+    public void modifyItem17() throws Exception {
+
+        ItemCategory ic = itemCategoryRepository.findItemCategoryByName("All categories");
+        long itemId = Long.parseLong(TestUtils.makeItem(mvc, ic.getId().toString(), user1));
+        Item stale = itemRepository.findItemById(itemId);
+
+        mvc.perform(post("/bid/makeBid/" + itemId)
+                .contentType(MediaType.APPLICATION_JSON)
+                .param("offer", "6.0")
+                .header("Authorization", user2))
+                .andExpect(status().isOk());
+
+        //what modifyItem writes if the bid arrives right after its check
+        assertEquals(0, itemRepository.modifyDetails(itemId, "renamed", stale.getDescription(),
+                stale.getEndsAt(), stale.getBuyPrice(), stale.getFirstBid(), new Date()));
+
+        Item item = itemRepository.findItemById(itemId);
+        assertEquals("item1", item.getName());
+        assertEquals(6.0, item.getCurrently(), 0.0);
+        assertEquals(Integer.valueOf(1), item.getBidCount());
+        assertEquals("user2", item.getHighestBidder().getAccount().getUsername());
+
+        mvc.perform(patch("/item/" + itemId)
+                .contentType(MediaType.APPLICATION_JSON)
+                .param("name", "renamed")
+                .header("Authorization", user1))
+                .andExpect(status().isForbidden());
+    }
+
+
     @Test
     @DisplayName("Get feed 1")
     public void getFeed1() throws Exception {
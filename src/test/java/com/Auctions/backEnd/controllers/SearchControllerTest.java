@@ -3,10 +3,18 @@ package com.Auctions.backEnd.controllers;
 import com.Auctions.backEnd.BackEndApplication;
 import com.Auctions.backEnd.TestUtils;
 import com.Auctions.backEnd.models.Account;
+import com.Auctions.backEnd.models.Item;
 import com.Auctions.backEnd.models.ItemCategory;
 import com.Auctions.backEnd.repositories.AccountRepository;
 import com.Auctions.backEnd.repositories.ItemCategoryRepository;
+import com.Auctions.backEnd.repositories.ItemRepository;
 import com.Auctions.backEnd.repositories.UserRepository;
+import com.Auctions.backEnd.services.Search.CompletionIndex;
+import com.Auctions.backEnd.services.Search.SearchIndexer;
+
+import com.jayway.jsonpath.JsonPath;
+import org.json.simple.JSONObject;
+import org.json.simple.parser.JSONParser;
 
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
@@ -17,13 +25,20 @@ import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMock
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.http.MediaType;
 import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.request.MockHttpServletRequestBuilder;
 import org.springframework.test.web.servlet.result.MockMvcResultHandlers;
 import org.springframework.test.web.servlet.setup.MockMvcBuilders;
 import org.springframework.web.context.WebApplicationContext;
 
+import java.util.Date;
+import java.util.List;
+
 import static com.Auctions.backEnd.TestUtils.*;
+import static org.hamcrest.Matchers.contains;
 import static org.hamcrest.Matchers.hasSize;
 import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.*;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
@@ -50,6 +65,15 @@ public class SearchControllerTest {
     @Autowired
     private ItemCategoryRepository itemCategoryRepository;
 
+    @Autowired
+    private ItemRepository itemRepository;
+
+    @Autowired
+    private CompletionIndex completionIndex;
+
+    @Autowired
+    private SearchIndexer searchIndexer;
+
     private String user1;
     private String user2;
     private String user3;
@@ -85,6 +109,18 @@ public class SearchControllerTest {
         accountRepository.save(account);
     }
 
+    /**
+     * @return a search bar request, once the changes made so far are indexed
+     */
+    private MockHttpServletRequestBuilder searchBar(final String text) {
+
+        testUtils.awaitIndexed();
+        return put("/search/searchBar")
+                .contentType(MediaType.TEXT_PLAIN)
+                .content(text)
+                .header("Authorization", user1);
+    }
+
     /**
      * User gets a list of results using the search bar
      *
@@ -233,6 +269,256 @@ public class SearchControllerTest {
     }
 
 
+    /**
+     * The items matching all the words come before the ones matching some
+     * of them, whatever their score; equal matches are ranked by BM25,
+     * where the words of the name count more than the description
+     *
+     * @throws Exception - mvc.perform
+     */
+    @Test
+    @DisplayName("Search bar ranking")
+    public void searchBar6() throws Exception {
+
+        TestUtils.makeDetailedItem
+                (mvc, categoryId, "red red red", "red red", user1);
+
+        TestUtils.makeDetailedItem
+                (mvc, categoryId, "red car", "description", user1);
+
+        TestUtils.makeDetailedItem
+                (mvc, categoryId, "car car", "car", user1);
+
+        mvc.perform(searchBar("red car"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("totalElements", is(3)))
+                .andExpect(jsonPath("content[0].name", is("red car")));
+
+        TestUtils.makeDetailedItem
+                (mvc, categoryId, "desk", "a lamp", user1);
+
+        TestUtils.makeDetailedItem
+                (mvc, categoryId, "lamp", "a desk", user1);
+
+        mvc.perform(searchBar("lamp"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("totalElements", is(2)))
+                .andExpect(jsonPath("content[*].name", contains("lamp", "desk")));
+    }
+
+
+    /**
+     * A word matches the words starting with it, not the ones containing it
+     *
+     * @throws Exception - mvc.perform
+     */
+    @Test
+    @DisplayName("Search bar by word prefix")
+    public void searchBar7() throws Exception {
+
+        TestUtils.makeDetailedItem
+                (mvc, categoryId, "dreams!", "fancy item", user1);
+
+        mvc.perform(searchBar("ream"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("totalElements", is(0)));
+
+        mvc.perform(searchBar("DREAM"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("totalElements", is(1)))
+                .andExpect(jsonPath("content[0].name", is("dreams!")));
+    }
+
+
+    /**
+     * A deleted item is no longer found
+     *
+     * @throws Exception - mvc.perform
+     */
+    @Test
+    @DisplayName("Search bar after a deletion")
+    public void searchBar8() throws Exception {
+
+        String deleted = TestUtils.makeDetailedItem
+                (mvc, categoryId, "old lamp", "description", user1);
+
+        String kept = TestUtils.makeDetailedItem
+                (mvc, categoryId, "new lamp", "description", user1);
+
+        mvc.perform(searchBar("lamp"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("totalElements", is(2)));
+
+        mvc.perform(delete("/item/" + deleted)
+                .header("Authorization", user1))
+                .andExpect(status().isOk());
+
+        mvc.perform(searchBar("lamp"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("totalElements", is(1)))
+                .andExpect(jsonPath("content[0].id", is(Integer.parseInt(kept))));
+    }
+
+
+    /**
+     * A short word expands to the first MAX_EXPANSIONS terms starting
+     * with it, so an item only reached by a later term is not found by it
+     *
+     * @throws Exception - mvc.perform
+     */
+    @Test
+    @DisplayName("Search bar expansions")
+    public void searchBar9() throws Exception {
+
+        //zq00 to zq68, in two descriptions of up to 255 characters
+        for (int from = 0; from < 69; from += 40) {
+            StringBuilder words = new StringBuilder();
+            for (int i = from; i < Math.min(69, from + 40); i++) {
+                words.append(String.format("zq%02d ", i));
+            }
+            TestUtils.makeDetailedItem
+                    (mvc, categoryId, "many words", words.toString(), user1);
+        }
+
+        TestUtils.makeDetailedItem
+                (mvc, categoryId, "late word", "zq69", user1);
+
+        //one segment, the cap is per segment
+        searchIndexer.requestRebuild();
+
+        //more than 64 words start with zq, so the total is an estimate
+        mvc.perform(searchBar("zq"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("totalElements", is(2)))
+                .andExpect(jsonPath("totalExact", is(false)))
+                .andExpect(jsonPath("content[*].name", contains("many words", "many words")));
+
+        mvc.perform(searchBar("zq69"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("totalElements", is(1)))
+                .andExpect(jsonPath("totalExact", is(true)))
+                .andExpect(jsonPath("content[0].name", is("late word")));
+    }
+
+
+    /**
+     * An item is added to the results when created, changed when modified
+     * or bid on and removed when deleted
+     *
+     * @throws Exception - mvc.perform
+     */
+    @Test
+    @DisplayName("Search bar follows the items")
+    public void searchBar10() throws Exception {
+
+        String item = TestUtils.makeDetailedItem
+                (mvc, categoryId, "vintage clock", "description", user1);
+
+        mvc.perform(searchBar("vintage"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("totalElements", is(1)))
+                .andExpect(jsonPath("content[0].id", is(Integer.parseInt(item))));
+
+        mvc.perform(patch("/item/" + item)
+                .param("name", "antique clock")
+                .header("Authorization", user1))
+                .andExpect(status().isOk());
+
+        mvc.perform(searchBar("vintage"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("totalElements", is(0)));
+
+        mvc.perform(searchBar("antique"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("totalElements", is(1)))
+                .andExpect(jsonPath("content[0].name", is("antique clock")));
+
+        mvc.perform(delete("/item/" + item)
+                .header("Authorization", user1))
+                .andExpect(status().isOk());
+
+        mvc.perform(searchBar("antique clock"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("totalElements", is(0)));
+
+        //the price filter of the nearby search reads the indexed price
+        String bidOn = TestUtils.makeItem(mvc, categoryId, user1);
+        mvc.perform(post("/bid/makeBid/" + bidOn)
+                .param("offer", "8.0")
+                .header("Authorization", user2))
+                .andExpect(status().isOk());
+        testUtils.awaitIndexed();
+
+        mvc.perform(get("/search/nearby")
+                .param("lat", "37.968564")
+                .param("lon", "23.76695")
+                .param("radiusKm", "1")
+                .param("lowerPrice", "7.5")
+                .header("Authorization", user1))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("totalElements", is(1)))
+                .andExpect(jsonPath("content[0].id", is(Integer.parseInt(bidOn))));
+    }
+
+
+    /**
+     * The pages reached through the cursors are the numbered pages,
+     * a cursor of another query or a malformed one is refused
+     *
+     * @throws Exception - mvc.perform
+     */
+    @Test
+    @DisplayName("Search bar cursors")
+    public void searchBar11() throws Exception {
+
+        for (int i = 0; i < 5; i++) {
+            TestUtils.makeDetailedItem
+                    (mvc, categoryId, "paged lamp", "description", user1);
+        }
+
+        String cursor = null;
+        for (int page = 0; page < 3; page++) {
+            String numbered = mvc.perform(searchBar("lamp")
+                    .param("page", String.valueOf(page))
+                    .param("size", "2"))
+                    .andExpect(status().isOk())
+                    .andExpect(jsonPath("totalElements", is(5)))
+                    .andReturn().getResponse().getContentAsString();
+
+            MockHttpServletRequestBuilder next = searchBar("lamp").param("size", "2");
+            if (cursor != null) {
+                next.param("cursor", cursor);
+            }
+            String followed = mvc.perform(next)
+                    .andExpect(status().isOk())
+                    .andReturn().getResponse().getContentAsString();
+
+            List<Integer> ids = JsonPath.read(numbered, "$.content[*].id");
+            assertEquals(page < 2 ? 2 : 1, ids.size());
+            assertEquals(ids, JsonPath.read(followed, "$.content[*].id"));
+            cursor = page < 2 ? JsonPath.read(followed, "$.cursor") : null;
+            if (page == 2) {
+                assertFalse(followed.contains("\"cursor\""));
+            }
+        }
+
+        String first = JsonPath.read(mvc.perform(searchBar("lamp").param("size", "2"))
+                .andReturn().getResponse().getContentAsString(), "$.cursor");
+
+        mvc.perform(searchBar("paged").param("cursor", first))
+                .andExpect(status().isBadRequest())
+                .andExpect(jsonPath("text", is("Invalid cursor")));
+
+        mvc.perform(searchBar("lamp").param("cursor", "!!!"))
+                .andExpect(status().isBadRequest())
+                .andExpect(jsonPath("text", is("Invalid cursor")));
+
+        mvc.perform(searchBar("lamp").param("cursor", "AAAA"))
+                .andExpect(status().isBadRequest())
+                .andExpect(jsonPath("text", is("Invalid cursor")));
+    }
+
+
     /**
      * User gets a list of all partially matched results
      *
@@ -358,6 +644,119 @@ public class SearchControllerTest {
     }
 
 
+    /**
+     * Suggestions are ranked by the bids of their auctions, then by how recent
+     * they are. The bids are counted again when the suggestions are rebuilt
+     *
+     * @throws Exception - mvc.perform
+     */
+    @Test
+    @DisplayName("Get partial match ranked")
+    public void getPartialMatchedSearch6() throws Exception {
+
+        String popular = TestUtils.makeDetailedItem
+                (mvc, categoryId, "popular dress", "description", user1);
+
+        TestUtils.makeDetailedItem
+                (mvc, categoryId, "older dress", "description", user1);
+
+        TestUtils.makeDetailedItem
+                (mvc, categoryId, "newer dress", "description", user1);
+
+        mvc.perform(get("/search/partialMatch")
+                .param("keyword", "dress")
+                .header("Authorization", user1))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$", contains("newer dress", "older dress", "popular dress")));
+
+        Item item = itemRepository.findItemById(Long.parseLong(popular));
+        item.setBidCount(5);
+        itemRepository.save(item);
+        completionIndex.rebuild();
+
+        mvc.perform(get("/search/partialMatch")
+                .param("keyword", "dress")
+                .header("Authorization", user1))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$", contains("popular dress", "newer dress", "older dress")));
+    }
+
+
+    /**
+     * Items with the same name are suggested once,
+     * until the last of them is deleted
+     *
+     * @throws Exception - mvc.perform
+     */
+    @Test
+    @DisplayName("Get partial match without duplicates")
+    public void getPartialMatchedSearch7() throws Exception {
+
+        String first = TestUtils.makeDetailedItem
+                (mvc, categoryId, "red dress", "description", user1);
+
+        String second = TestUtils.makeDetailedItem
+                (mvc, categoryId, "Red Dress", "description", user1);
+
+        mvc.perform(get("/search/partialMatch")
+                .param("keyword", "red")
+                .header("Authorization", user1))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$", hasSize(1)));
+
+        mvc.perform(delete("/item/" + first)
+                .header("Authorization", user1))
+                .andExpect(status().isOk());
+
+        mvc.perform(get("/search/partialMatch")
+                .param("keyword", "red")
+                .header("Authorization", user1))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$", hasSize(1)));
+
+        mvc.perform(delete("/item/" + second)
+                .header("Authorization", user1))
+                .andExpect(status().isOk());
+
+        mvc.perform(get("/search/partialMatch")
+                .param("keyword", "red")
+                .header("Authorization", user1))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$", hasSize(0)));
+    }
+
+
+    /**
+     * A renamed item is suggested by its new name only
+     *
+     * @throws Exception - mvc.perform
+     */
+    @Test
+    @DisplayName("Get partial match after rename")
+    public void getPartialMatchedSearch8() throws Exception {
+
+        String item = TestUtils.makeDetailedItem
+                (mvc, categoryId, "blue jacket", "description", user1);
+
+        mvc.perform(patch("/item/" + item)
+                .param("name", "green jacket")
+                .header("Authorization", user1))
+                .andExpect(status().isOk());
+
+        mvc.perform(get("/search/partialMatch")
+                .param("keyword", "jacket")
+                .header("Authorization", user1))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$", contains("green jacket")));
+
+        mvc.perform(get("/search/partialMatch")
+                .param("keyword", "blue")
+                .header("Authorization", user1))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$", hasSize(0)));
+    }
+
+
     @Test
     @DisplayName("Filter search 1")
     public void filterSearch1() throws Exception {
@@ -659,4 +1058,191 @@ public class SearchControllerTest {
                 .andExpect(status().isOk())
                 .andExpect(jsonPath("content.*", hasSize(3)));
     }
-}
\ No newline at end of file
+
+    /**
+     * User gets a bad request for a radius that is not positive
+     *
+     * @throws Exception - mvc.perform
+     */
+    @Test
+    @DisplayName("Nearby search with invalid radius")
+    public void nearby1() throws Exception {
+
+        mvc.perform(get("/search/nearby")
+                .param("lat", "37.97")
+                .param("lon", "23.72")
+                .param("radiusKm", "0")
+                .header("Authorization", user1))
+                .andExpect(status().isBadRequest());
+    }
+
+    /**
+     * User gets no results far from every item
+     *
+     * @throws Exception - mvc.perform
+     */
+    @Test
+    @DisplayName("Nearby search with no items around")
+    public void nearby2() throws Exception {
+
+        mvc.perform(get("/search/nearby")
+                .param("lat", "-60.0")
+                .param("lon", "-150.0")
+                .param("radiusKm", "10")
+                .header("Authorization", user1))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("totalElements", is(0)));
+    }
+
+    /**
+     * An item north of DIT, at about 1.1km for every 0.01 of latitude
+     *
+     * @return the id of the item
+     */
+    private String makeNearbyItem(final String name, final double north, final String firstBid,
+                                  final String category) throws Exception {
+
+        return ((JSONObject) new JSONParser().parse(
+                mvc.perform(post("/item")
+                        .param("name", name)
+                        .param("buyPrice", "100.0")
+                        .param("firstBid", firstBid)
+                        .param("categoryId", category)
+                        .param("latitude", String.valueOf(37.968564 + north))
+                        .param("longitude", "23.76695")
+                        .param("locationTitle", "Dit UoA")
+                        .param("endsAt", daysFromNow(30))
+                        .param("description", "this is the description")
+                        .header("Authorization", user1))
+                        .andExpect(status().isOk())
+                        .andReturn().getResponse().getContentAsString()))
+                .get("id").toString();
+    }
+
+    /**
+     * @return a nearby request around DIT, once the changes made so far are indexed
+     */
+    private MockHttpServletRequestBuilder nearby(final String radiusKm) {
+
+        testUtils.awaitIndexed();
+        return get("/search/nearby")
+                .param("lat", "37.968564")
+                .param("lon", "23.76695")
+                .param("radiusKm", radiusKm)
+                .header("Authorization", user1);
+    }
+
+    /**
+     * User gets the items within the radius, the nearest first,
+     * filtered by category and price
+     *
+     * @throws Exception - mvc.perform
+     */
+    @Test
+    @DisplayName("Nearby search filters")
+    public void nearby3() throws Exception {
+
+        ItemCategory cars = new ItemCategory();
+        cars.setName("cars");
+        itemCategoryRepository.save(cars);
+        String carsId = cars.getId().toString();
+
+        makeNearbyItem("far", 0.05, "50.0", categoryId);
+        makeNearbyItem("near", 0.001, "5.0", categoryId);
+        makeNearbyItem("outside", 0.2, "20.0", carsId);
+        makeNearbyItem("middle", 0.02, "20.0", carsId);
+
+        mvc.perform(nearby("10"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("totalElements", is(3)))
+                .andExpect(jsonPath("content[*].name", contains("near", "middle", "far")));
+
+        mvc.perform(nearby("3"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("totalElements", is(2)))
+                .andExpect(jsonPath("content[*].name", contains("near", "middle")));
+
+        mvc.perform(nearby("10").param("categoryId", carsId))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("totalElements", is(1)))
+                .andExpect(jsonPath("content[0].name", is("middle")));
+
+        mvc.perform(nearby("30").param("categoryId", carsId))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("content[*].name", contains("middle", "outside")));
+
+        mvc.perform(nearby("10")
+                .param("lowerPrice", "10.0")
+                .param("higherPrice", "30.0"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("totalElements", is(1)))
+                .andExpect(jsonPath("content[0].name", is("middle")));
+
+        mvc.perform(nearby("10").param("lowerPrice", "10.0"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("content[*].name", contains("middle", "far")));
+    }
+
+    /**
+     * User follows the cursors through the nearby items,
+     * a cursor of another search is refused
+     *
+     * @throws Exception - mvc.perform
+     */
+    @Test
+    @DisplayName("Nearby search cursors")
+    public void nearby4() throws Exception {
+
+        for (int i = 0; i < 5; i++) {
+            makeNearbyItem("item" + i, 0.01 * i, "5.0", categoryId);
+        }
+
+        String first = mvc.perform(nearby("10").param("size", "2"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("totalElements", is(5)))
+                .andExpect(jsonPath("totalPages", is(3)))
+                .andExpect(jsonPath("content[*].name", contains("item0", "item1")))
+                .andReturn().getResponse().getContentAsString();
+        String cursor = JsonPath.read(first, "$.cursor");
+
+        String second = mvc.perform(nearby("10").param("size", "2").param("cursor", cursor))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("content[*].name", contains("item2", "item3")))
+                .andReturn().getResponse().getContentAsString();
+        String last = JsonPath.read(second, "$.cursor");
+
+        mvc.perform(nearby("10").param("size", "2").param("cursor", last))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("content[*].name", contains("item4")))
+                .andExpect(jsonPath("cursor").doesNotExist());
+
+        mvc.perform(nearby("20").param("size", "2").param("cursor", cursor))
+                .andExpect(status().isBadRequest())
+                .andExpect(jsonPath("text", is("Invalid cursor")));
+    }
+
+    /**
+     * User does not get the auctions that have ended,
+     * even before they are completed
+     *
+     * @throws Exception - mvc.perform
+     */
+    @Test
+    @DisplayName("Nearby search without ended auctions")
+    public void nearby5() throws Exception {
+
+        makeNearbyItem("open", 0.001, "5.0", categoryId);
+        Item ended = itemRepository.findItemById(Long.parseLong(
+                makeNearbyItem("ended", 0.002, "5.0", categoryId)));
+
+        //ended but not closed yet, e.g. by the closure of another node
+        ended.setEndsAt(new Date(System.currentTimeMillis() - 1000));
+        itemRepository.save(ended);
+        searchIndexer.requestRebuild();
+
+        mvc.perform(nearby("10"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("totalElements", is(1)))
+                .andExpect(jsonPath("content[0].name", is("open")));
+    }
+}
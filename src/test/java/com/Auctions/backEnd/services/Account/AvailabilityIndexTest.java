@@ -0,0 +1,116 @@
+package com.Auctions.backEnd.services.Account;
+
+import com.Auctions.backEnd.BackEndApplication;
+import com.Auctions.backEnd.configs.TestConfig;
+import com.Auctions.backEnd.repositories.AccountRepository;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.web.servlet.mvc.method.annotation.RequestMappingHandlerMapping;
+
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+
+@SpringBootTest(classes = {TestConfig.class, BackEndApplication.class})
+public class AvailabilityIndexTest {
+
+    @Autowired
+    private AvailabilityIndex availabilityIndex;
+
+    @Autowired
+    private RequestMappingHandlerMapping requestMappingHandlerMapping;
+
+
+    /**
+     * An AccountRepository that finds nothing and records what it was asked
+     */
+    private static AccountRepository recording(List<Object> lookups) {
+        return (AccountRepository) Proxy.newProxyInstance(AccountRepository.class.getClassLoader(),
+                new Class<?>[] { AccountRepository.class }, (proxy, method, args) -> {
+                    if (method.getName().equals("getUsernamesAndEmails")) {
+                        return Collections.emptyList();
+                    }
+                    lookups.add(method.getName() + ":" + args[0]);
+                    return null;
+                });
+    }
+
+
+    /**
+     * Names that were never added are answered without a lookup,
+     * added names are looked up whatever their letter case
+     */
+    @Test
+    @DisplayName("Availability filter lookups")
+    public void lookups() {
+
+        List<Object> lookups = new ArrayList<>();
+        AvailabilityIndex index = new AvailabilityIndex(recording(lookups), requestMappingHandlerMapping, 1000, 0.01);
+        index.add("MixedUser", "Mixed@di.uoa.gr");
+
+        assertFalse(index.usernameTaken("freeuser"));
+        assertFalse(index.emailTaken("free@di.uoa.gr"));
+        assertTrue(lookups.isEmpty());
+
+        //not found by the repository, but asked
+        assertFalse(index.usernameTaken("mixeduser"));
+        assertFalse(index.usernameTaken("MIXEDUSER"));
+        assertFalse(index.emailTaken("mixed@DI.uoa.gr"));
+        assertEquals(Arrays.asList("findByUsername:mixeduser", "findByUsername:MIXEDUSER",
+                "findByEmail:mixed@DI.uoa.gr"), lookups);
+    }
+
+    /**
+     * The filter never misses an added name and stays
+     * close to its false positive rate
+     */
+    @Test
+    @DisplayName("Bloom filter")
+    public void bloomFilter() {
+
+        BloomFilter filter = new BloomFilter(10000, 0.01);
+        for (int i = 0; i < 10000; i++) {
+            filter.add("user" + i);
+        }
+        for (int i = 0; i < 10000; i++) {
+            assertTrue(filter.mightContain("user" + i));
+        }
+
+        int falsePositives = 0;
+        for (int i = 0; i < 100000; i++) {
+            if (filter.mightContain("other" + i)) {
+                falsePositives++;
+            }
+        }
+        assertTrue("False positives: " + falsePositives, falsePositives < 2000);
+    }
+
+    /**
+     * Usernames inside a route pattern are reserved, at every valid
+     * length and also outside of the valid lengths
+     */
+    @Test
+    @DisplayName("Reserved usernames")
+    public void reserved() {
+
+        assertTrue(availabilityIndex.isReserved("search"));
+        assertTrue(availabilityIndex.isReserved("searchBar"));
+        assertTrue(availabilityIndex.isReserved("openAuctions"));
+        assertTrue(availabilityIndex.isReserved("/item/openAuctions"));
+        assertTrue(availabilityIndex.isReserved("bid"));
+
+        assertFalse(availabilityIndex.isReserved("user1"));
+        assertFalse(availabilityIndex.isReserved("searchbar"));
+        assertFalse(availabilityIndex.isReserved("xyzzy"));
+        assertFalse(availabilityIndex.isReserved("averyveryverylongname"));
+    }
+}
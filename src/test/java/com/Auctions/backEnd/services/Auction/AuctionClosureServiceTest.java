@@ -0,0 +1,211 @@
+package com.Auctions.backEnd.services.Auction;
+
+import com.Auctions.backEnd.BackEndApplication;
+import com.Auctions.backEnd.TestUtils;
+import com.Auctions.backEnd.configs.TestConfig;
+import com.Auctions.backEnd.models.Account;
+import com.Auctions.backEnd.models.Notification;
+import com.Auctions.backEnd.repositories.*;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+import org.springframework.web.context.WebApplicationContext;
+
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.Matchers.containsInAnyOrder;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+
+@SpringBootTest(classes = {TestConfig.class, BackEndApplication.class})
+public class AuctionClosureServiceTest {
+
+    @Autowired
+    private TestUtils testUtils;
+
+    @Autowired
+    private WebApplicationContext wac;
+
+    @Autowired
+    private AccountRepository accountRepository;
+
+    @Autowired
+    private ItemCategoryRepository itemCategoryRepository;
+
+    @Autowired
+    private ItemRepository itemRepository;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private NotificationRepository notificationRepository;
+
+    @Autowired
+    private AuctionClosureService closureService;
+
+    @Autowired
+    private ClosureCoordinator coordinator;
+
+    private MockMvc mvc;
+    private String user1;
+    private String user2;
+    private String categoryId;
+
+
+    @BeforeEach
+    public void before() throws Exception {
+
+        mvc = MockMvcBuilders.webAppContextSetup(this.wac).build();
+
+        user1 = TestUtils.createAccount(mvc, "user1", "myPwd123", "FirstName1", "LastName1", "email1@di.uoa.gr");
+        user2 = TestUtils.createAccount(mvc, "user2", "myPwd123", "FirstName2", "LastName2", "email42@di.uoa.gr");
+        verify("user1");
+        verify("user2");
+
+        categoryId = itemCategoryRepository.findItemCategoryByName("All categories").getId().toString();
+    }
+
+    @AfterEach
+    public void after() {
+        notificationRepository.deleteAll();
+        this.testUtils.clearDB();
+    }
+
+    private void verify(final String username) {
+        Account account = accountRepository.findByUsername(username);
+        account.setVerified(true);
+        accountRepository.save(account);
+    }
+
+    /**
+     * @return a time after the end of the auctions of TestUtils.makeItem,
+     * the closure thread leaves them alone until then
+     */
+    private static Date afterTheEnd() {
+        return new Date(System.currentTimeMillis() + TimeUnit.DAYS.toMillis(31));
+    }
+
+    private List<Integer> allShards() {
+        List<Integer> shards = new ArrayList<>();
+        for (int shard = 0; shard < coordinator.getShardCount(); shard++) {
+            shards.add(shard);
+        }
+        return shards;
+    }
+
+    private List<Notification> notificationsOf(long itemId) {
+        List<Notification> notifications = new ArrayList<>();
+        notificationRepository.findAll().forEach(notification -> {
+            if (notification.getItemId() == itemId) {
+                notifications.add(notification);
+            }
+        });
+        return notifications;
+    }
+
+
+    /**
+     * Closing completes the due auctions, notifies every seller
+     * and the winners of the auctions that received bids
+     *
+     * @throws Exception - mvc.perform
+     */
+    @Test
+    @DisplayName("Close due auctions")
+    public void closeDue1() throws Exception {
+
+        long withBid = Long.parseLong(TestUtils.makeItem(mvc, categoryId, user1));
+        long withoutBid = Long.parseLong(TestUtils.makeItem(mvc, categoryId, user1));
+
+        mvc.perform(post("/bid/makeBid/" + withBid)
+                .contentType(MediaType.APPLICATION_JSON)
+                .param("offer", "6.0")
+                .header("Authorization", user2))
+                .andExpect(status().isOk());
+
+        List<Long> closed = closureService.closeDue(afterTheEnd(), coordinator.getShardCount(), allShards());
+        assertThat(closed, containsInAnyOrder(withBid, withoutBid));
+
+        assertTrue(itemRepository.findItemById(withBid).isAuctionCompleted());
+        assertTrue(itemRepository.findItemById(withoutBid).isAuctionCompleted());
+
+        long seller = userRepository.findByAccount_Username("user1").getId();
+        long winner = userRepository.findByAccount_Username("user2").getId();
+
+        List<Long> recipients = new ArrayList<>();
+        notificationsOf(withBid).forEach(notification -> recipients.add(notification.getRecipient().getId()));
+        assertThat(recipients, containsInAnyOrder(seller, winner));
+
+        List<Notification> sellerOnly = notificationsOf(withoutBid);
+        assertEquals(1, sellerOnly.size());
+        assertEquals(seller, sellerOnly.get(0).getRecipient().getId().longValue());
+    }
+
+    /**
+     * Auctions are closed and notified once; auctions that are not due
+     * or belong to other shards are left open
+     *
+     * @throws Exception - mvc.perform
+     */
+    @Test
+    @DisplayName("Close due auctions once")
+    public void closeDue2() throws Exception {
+
+        int shardCount = coordinator.getShardCount();
+        long first = Long.parseLong(TestUtils.makeItem(mvc, categoryId, user1));
+        long second;
+        do {
+            second = Long.parseLong(TestUtils.makeItem(mvc, categoryId, user1));
+        } while (second % shardCount == first % shardCount);
+
+        assertTrue(closureService.closeDue(new Date(), shardCount, allShards()).isEmpty());
+
+        List<Long> closed = closureService.closeDue(afterTheEnd(), shardCount,
+                Collections.singletonList((int) (first % shardCount)));
+        assertTrue(closed.contains(first));
+        assertFalse(closed.contains(second));
+        assertFalse(itemRepository.findItemById(second).isAuctionCompleted());
+
+        closed = closureService.closeDue(afterTheEnd(), shardCount, allShards());
+        assertTrue(closed.contains(second));
+
+        assertTrue(closureService.closeDue(afterTheEnd(), shardCount, allShards()).isEmpty());
+        assertEquals(1, notificationsOf(first).size());
+        assertEquals(1, notificationsOf(second).size());
+    }
+
+    /**
+     * Auctions closed by id are only closed if they are still open and due
+     *
+     * @throws Exception - mvc.perform
+     */
+    @Test
+    @DisplayName("Close due auctions by id")
+    public void closeDue3() throws Exception {
+
+        long itemId = Long.parseLong(TestUtils.makeItem(mvc, categoryId, user1));
+        List<Long> ids = Collections.singletonList(itemId);
+
+        assertTrue(closureService.closeDue(ids, new Date()).isEmpty());
+        assertFalse(itemRepository.findItemById(itemId).isAuctionCompleted());
+
+        assertEquals(ids, closureService.closeDue(ids, afterTheEnd()));
+        assertTrue(itemRepository.findItemById(itemId).isAuctionCompleted());
+
+        assertTrue(closureService.closeDue(ids, afterTheEnd()).isEmpty());
+        assertEquals(1, notificationsOf(itemId).size());
+    }
+}
@@ -0,0 +1,195 @@
+package com.Auctions.backEnd.services.Auction;
+
+import com.Auctions.backEnd.BackEndApplication;
+import com.Auctions.backEnd.TestUtils;
+import com.Auctions.backEnd.configs.TestConfig;
+import com.Auctions.backEnd.models.Account;
+import com.Auctions.backEnd.models.ClosureLease;
+import com.Auctions.backEnd.models.Item;
+import com.Auctions.backEnd.models.Notification;
+import com.Auctions.backEnd.models.User;
+import com.Auctions.backEnd.repositories.*;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.web.servlet.support.ServletContextApplicationContextInitializer;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.mock.web.MockServletContext;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.context.support.GenericWebApplicationContext;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+
+/**
+ * Two nodes, i.e. two application contexts, closing auctions
+ * of the same H2 database
+ */
+public class ClosureCoordinatorTest {
+
+    private static final int SHARDS = 16;
+
+    private final List<ConfigurableApplicationContext> nodes = new ArrayList<>();
+
+
+    private ConfigurableApplicationContext startNode(String nodeId, Path dir) {
+        ConfigurableApplicationContext context = new SpringApplicationBuilder(TestConfig.class, BackEndApplication.class)
+                //a mock servlet context as in @SpringBootTest, no server is started
+                .contextClass(GenericWebApplicationContext.class)
+                .initializers(new ServletContextApplicationContextInitializer(new MockServletContext()))
+                //as arguments, so that they override application.properties
+                .run(
+                        //the schema is shared, the second node must not drop it
+                        "--spring.jpa.hibernate.ddl-auto=update",
+                        "--spring.jmx.enabled=false",
+                        "--app.closure.node-id=" + nodeId,
+                        "--app.closure.shards=" + SHARDS,
+                        "--app.closure.lease-seconds=3",
+                        "--app.closure.sweep-seconds=1",
+                        "--app.bid-journal.path=" + dir.resolve(nodeId + ".journal"));
+        nodes.add(context);
+        return context;
+    }
+
+    @AfterEach
+    public void after() {
+        if (!nodes.isEmpty()) {
+            nodes.get(0).getBean(NotificationRepository.class).deleteAll();
+            nodes.get(0).getBean(TestUtils.class).clearDB();
+        }
+        nodes.forEach(ConfigurableApplicationContext::close);
+        nodes.clear();
+    }
+
+
+    private static void await(String what, BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 60000;
+        while (!condition.getAsBoolean()) {
+            if (System.currentTimeMillis() > deadline) {
+                throw new AssertionError("Timed out waiting until " + what);
+            }
+            Thread.sleep(200);
+        }
+    }
+
+    private static User makeUser(ConfigurableApplicationContext node, String username) {
+        Account account = new Account();
+        account.setUsername(username);
+        account.setPassword("password");
+        account.setEmail(username + "@di.uoa.gr");
+        account.setVerified(true);
+
+        User user = new User();
+        user.setFirstName(username);
+        user.setLastName(username);
+        user.setTelNumber("1234567890");
+        user.setTaxNumber("1234");
+        user.setAccount(account);
+
+        node.getBean(UserRepository.class).save(user);
+        node.getBean(AccountRepository.class).save(account);
+        return node.getBean(UserRepository.class).findByAccount_Username(username);
+    }
+
+    private static Set<Integer> shardsOf(ConfigurableApplicationContext node) {
+        return new HashSet<>(node.getBean(ClosureCoordinator.class).currentShards());
+    }
+
+
+    /**
+     * The shards are split between the nodes, the shards of a node that
+     * stops renewing are taken over and every auction is closed once
+     *
+     * @throws Exception - startup
+     */
+    @Test
+    @DisplayName("Closure split between nodes")
+    public void twoNodes() throws Exception {
+
+        Path dir = Files.createTempDirectory("closure-nodes");
+        ConfigurableApplicationContext nodeA = startNode("node-a", dir);
+        ConfigurableApplicationContext nodeB = startNode("node-b", dir);
+        ClosureLeaseRepository leases = nodeA.getBean(ClosureLeaseRepository.class);
+
+        await("both nodes hold shards", () -> {
+            Set<Integer> a = shardsOf(nodeA);
+            Set<Integer> b = shardsOf(nodeB);
+            return !a.isEmpty() && !b.isEmpty() && Collections.disjoint(a, b);
+        });
+
+        Set<Integer> shardsOfA = shardsOf(nodeA);
+        Set<Integer> shardsOfB = shardsOf(nodeB);
+        assertTrue(Collections.disjoint(shardsOfA, shardsOfB));
+        for (ClosureLease lease : leases.findAll()) {
+            if (shardsOfA.contains(lease.getShard())) {
+                assertEquals("node-a", lease.getOwner());
+            }
+            if (shardsOfB.contains(lease.getShard())) {
+                assertEquals("node-b", lease.getOwner());
+            }
+        }
+
+        //two auctions per shard, ending once the leases of A have run out
+        User seller = makeUser(nodeA, "seller");
+        User winner = makeUser(nodeA, "winner");
+        ItemRepository items = nodeA.getBean(ItemRepository.class);
+        Date endsAt = new Date(System.currentTimeMillis() + 5000);
+        Set<Long> itemIds = new HashSet<>();
+        Set<Long> withBids = new HashSet<>();
+        for (int i = 0; i < 2 * SHARDS; i++) {
+            Item item = new Item();
+            item.setSeller(seller);
+            item.setName("item " + i);
+            item.setFirstBid(1.0);
+            item.setCurrently(1.0);
+            item.setEndsAt(endsAt);
+            if (i % 2 == 0) {
+                item.setHighestBidder(winner);
+                item.setCurrently(2.0);
+                item.setBidCount(1);
+            }
+            item = items.save(item);
+            itemIds.add(item.getId());
+            if (i % 2 == 0) {
+                withBids.add(item.getId());
+            }
+        }
+
+        //node A stops renewing without giving its leases back
+        ((ScheduledExecutorService) ReflectionTestUtils.getField(
+                nodeA.getBean(ClosureCoordinator.class), "executor")).shutdownNow();
+
+        await("node A has no valid shards", () -> shardsOf(nodeA).isEmpty());
+        await("the shards of node A are taken over", () -> leases.findAll().stream()
+                .filter(lease -> shardsOfA.contains(lease.getShard()))
+                .noneMatch(lease -> lease.getOwner() == null || "node-a".equals(lease.getOwner())));
+        await("every auction is closed", () -> itemIds.stream()
+                .allMatch(itemId -> items.findItemById(itemId).isAuctionCompleted()));
+
+        //let a few more sweeps run before counting
+        Thread.sleep(2000);
+
+        Map<Long, Integer> sellerNotifications = new HashMap<>();
+        Map<Long, Integer> winnerNotifications = new HashMap<>();
+        for (Notification notification : nodeA.getBean(NotificationRepository.class).findAll()) {
+            if (!itemIds.contains(notification.getItemId())) {
+                continue;
+            }
+            Map<Long, Integer> counts = notification.getRecipient().getId().equals(seller.getId())
+                    ? sellerNotifications : winnerNotifications;
+            counts.merge(notification.getItemId(), 1, Integer::sum);
+        }
+
+        itemIds.forEach(itemId -> assertEquals(Integer.valueOf(1), sellerNotifications.get(itemId)));
+        assertEquals(withBids, winnerNotifications.keySet());
+        winnerNotifications.values().forEach(count -> assertEquals(Integer.valueOf(1), count));
+    }
+}
@@ -0,0 +1,126 @@
+package com.Auctions.backEnd.services.Auction;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+
+public class DeadlineQueueTest {
+
+    /**
+     * Entries come out by deadline, also past the initial capacity
+     * and with equal deadlines
+     */
+    @Test
+    @DisplayName("Deadline queue ordering")
+    public void ordering() {
+
+        DeadlineQueue queue = new DeadlineQueue();
+        Random random = new Random(42);
+        List<Long> expected = new ArrayList<>();
+        for (long itemId = 1; itemId <= 5000; itemId++) {
+            long deadline = random.nextInt(1000);
+            expected.add(deadline);
+            queue.push(deadline, itemId);
+        }
+        Collections.sort(expected);
+
+        assertEquals(5000, queue.size());
+        List<Long> popped = new ArrayList<>();
+        while (!queue.isEmpty()) {
+            popped.add(queue.peekDeadline());
+            queue.pop();
+        }
+        assertEquals(expected, popped);
+    }
+
+    /**
+     * The id travels with its deadline
+     */
+    @Test
+    @DisplayName("Deadline queue ids")
+    public void ids() {
+
+        DeadlineQueue queue = new DeadlineQueue();
+        queue.push(300, 3);
+        queue.push(100, 1);
+        queue.push(200, 2);
+
+        List<Long> ids = new ArrayList<>();
+        while (!queue.isEmpty()) {
+            ids.add(queue.peekId());
+            queue.pop();
+        }
+        assertEquals(Arrays.asList(1L, 2L, 3L), ids);
+    }
+
+    /**
+     * Every auction is in the queue once: pushing it again moves it and
+     * removing it takes it out, also with many ids in the index
+     */
+    @Test
+    @DisplayName("Deadline queue moves and removals")
+    public void movesAndRemovals() {
+
+        DeadlineQueue queue = new DeadlineQueue();
+        Map<Long, Long> expected = new HashMap<>();
+        Random random = new Random(7);
+        for (int i = 0; i < 50000; i++) {
+            long itemId = random.nextInt(5000);
+            if (random.nextInt(4) == 0) {
+                assertEquals(expected.remove(itemId) != null, queue.remove(itemId));
+            } else {
+                long deadline = random.nextInt(100000);
+                expected.put(itemId, deadline);
+                queue.push(deadline, itemId);
+            }
+        }
+
+        assertEquals(expected.size(), queue.size());
+        expected.forEach((itemId, deadline) -> assertEquals((long) deadline, queue.deadlineOf(itemId)));
+        long previous = Long.MIN_VALUE;
+        while (!queue.isEmpty()) {
+            assertTrue(queue.peekDeadline() >= previous);
+            previous = queue.peekDeadline();
+            assertEquals(expected.remove(queue.peekId()), Long.valueOf(previous));
+            queue.pop();
+        }
+        assertTrue(expected.isEmpty());
+        assertEquals(-1, queue.deadlineOf(1));
+    }
+
+    /**
+     * Only the latest deadline of a rescheduled auction closes it
+     * and a cancelled auction is never due
+     */
+    @Test
+    @DisplayName("Stale deadlines are skipped")
+    public void staleEntries() {
+
+        AuctionCloser closer = new AuctionCloser(null, null, null, null, null, null, 10);
+        closer.schedule(1, new Date(100));
+        closer.schedule(2, new Date(200));
+        closer.schedule(3, new Date(300));
+
+        //extended, then brought forward
+        closer.schedule(1, new Date(1000));
+        closer.schedule(2, new Date(150));
+        closer.cancel(3);
+
+        assertEquals(Collections.singletonList(2L), closer.takeDue(500));
+        assertTrue(closer.takeDue(999).isEmpty());
+        assertEquals(Collections.singletonList(1L), closer.takeDue(1000));
+        assertTrue(closer.takeDue(Long.MAX_VALUE).isEmpty());
+    }
+}
@@ -0,0 +1,157 @@
+package com.Auctions.backEnd.services.Bid;
+
+import com.Auctions.backEnd.BackEndApplication;
+import com.Auctions.backEnd.TestUtils;
+import com.Auctions.backEnd.configs.TestConfig;
+import com.Auctions.backEnd.models.Account;
+import com.Auctions.backEnd.models.Item;
+import com.Auctions.backEnd.models.User;
+import com.Auctions.backEnd.repositories.*;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+import org.springframework.web.context.WebApplicationContext;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+
+@SpringBootTest(classes = {TestConfig.class, BackEndApplication.class})
+public class BidEngineTest {
+
+    private static final int THREADS = 8;
+    private static final int BIDS_PER_THREAD = 100;
+
+    @Autowired
+    private TestUtils testUtils;
+
+    @Autowired
+    private WebApplicationContext wac;
+
+    @Autowired
+    private AccountRepository accountRepository;
+
+    @Autowired
+    private ItemRepository itemRepository;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private BidRepository bidRepository;
+
+    @Autowired
+    private BidEngine bidEngine;
+
+    @Autowired
+    private BidJournal bidJournal;
+
+    private final List<User> bidders = new ArrayList<>();
+    private long itemId;
+
+
+    @BeforeEach
+    public void before() throws Exception {
+
+        MockMvc mvc = MockMvcBuilders.webAppContextSetup(this.wac).build();
+
+        for (int i = 1; i <= 4; i++) {
+            TestUtils.createAccount(mvc, "user" + i, "myPwd123", "FirstName" + i, "LastName" + i,
+                    "email" + i + "@di.uoa.gr");
+            Account account = accountRepository.findByUsername("user" + i);
+            account.setVerified(true);
+            accountRepository.save(account);
+        }
+        for (int i = 2; i <= 4; i++) {
+            bidders.add(userRepository.findByAccount_Username("user" + i));
+        }
+
+        //no buy price, so that no bid completes the auction
+        Item item = new Item();
+        item.setSeller(userRepository.findByAccount_Username("user1"));
+        item.setName("hot item");
+        item.setFirstBid(1.0);
+        item.setCurrently(1.0);
+        item.setEndsAt(new Date(System.currentTimeMillis() + TimeUnit.DAYS.toMillis(1)));
+        itemId = itemRepository.save(item).getId();
+    }
+
+    @AfterEach
+    public void after() {
+        this.testUtils.clearDB();
+    }
+
+
+    /**
+     * Concurrent bids on one auction: every accepted bid is counted,
+     * stored once and the price is the highest accepted offer
+     *
+     * @throws Exception - the bidding threads
+     */
+    @Test
+    @DisplayName("Concurrent bids on one auction")
+    public void concurrentBids() throws Exception {
+
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<List<double[]>>> futures = new ArrayList<>();
+        for (int t = 0; t < THREADS; t++) {
+            final int thread = t;
+            futures.add(executor.submit(() -> {
+                User bidder = bidders.get(thread % bidders.size());
+                Random random = new Random(thread);
+                List<double[]> accepted = new ArrayList<>();
+                start.await();
+                for (int i = 0; i < BIDS_PER_THREAD; i++) {
+                    //rising offers of every thread, crossing the offers of the others
+                    double offer = 2.0 + i * THREADS + random.nextInt(2 * THREADS);
+                    BidEngine.Result result = bidEngine.placeBid(itemId, bidder, offer);
+                    if (result.getStatus() == BidEngine.Status.ACCEPTED) {
+                        accepted.add(new double[] { offer, bidder.getId() });
+                    } else {
+                        assertEquals(BidEngine.Status.TOO_LOW, result.getStatus());
+                    }
+                }
+                return accepted;
+            }));
+        }
+        start.countDown();
+
+        List<double[]> accepted = new ArrayList<>();
+        for (Future<List<double[]>> future : futures) {
+            accepted.addAll(future.get(60, TimeUnit.SECONDS));
+        }
+        executor.shutdown();
+        assertTrue(bidJournal.awaitDrained(30000));
+
+        accepted.sort(Comparator.comparingDouble(bid -> bid[0]));
+        double[] highest = accepted.get(accepted.size() - 1);
+
+        Item item = itemRepository.findItemById(itemId);
+        assertEquals(accepted.size(), item.getBidCount().intValue());
+        assertEquals(highest[0], item.getCurrently(), 0.0);
+        assertEquals((long) highest[1], item.getHighestBidder().getId().longValue());
+
+        //an accepted offer is always above the ones before it
+        List<Double> offers = new ArrayList<>();
+        accepted.forEach(bid -> offers.add(bid[0]));
+        assertEquals(offers.size(), new HashSet<>(offers).size());
+
+        List<Double> stored = new ArrayList<>();
+        bidRepository.findAll().forEach(bid -> {
+            if (bid.getItem().getId() == itemId) {
+                stored.add(bid.getOffer());
+            }
+        });
+        Collections.sort(stored);
+        assertEquals(offers, stored);
+    }
+}
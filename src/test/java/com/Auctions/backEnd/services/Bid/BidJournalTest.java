@@ -0,0 +1,200 @@
+package com.Auctions.backEnd.services.Bid;
+
+import com.Auctions.backEnd.BackEndApplication;
+import com.Auctions.backEnd.TestUtils;
+import com.Auctions.backEnd.configs.TestConfig;
+import com.Auctions.backEnd.models.Account;
+import com.Auctions.backEnd.models.Bid;
+import com.Auctions.backEnd.models.Item;
+import com.Auctions.backEnd.models.User;
+import com.Auctions.backEnd.repositories.*;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.web.context.WebApplicationContext;
+
+import java.nio.file.Files;
+import java.util.Date;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.hamcrest.Matchers.contains;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertThat;
+
+
+@SpringBootTest(classes = {TestConfig.class, BackEndApplication.class})
+public class BidJournalTest {
+
+    @Autowired
+    private TestUtils testUtils;
+
+    @Autowired
+    private WebApplicationContext wac;
+
+    @Autowired
+    private AccountRepository accountRepository;
+
+    @Autowired
+    private ItemCategoryRepository itemCategoryRepository;
+
+    @Autowired
+    private ItemRepository itemRepository;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private BidRepository bidRepository;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    private String path;
+    private long itemId;
+    private User bidder;
+
+
+    @BeforeEach
+    public void before() throws Exception {
+
+        MockMvc mvc = MockMvcBuilders.webAppContextSetup(this.wac).build();
+
+        String user1 = TestUtils.createAccount(mvc, "user1", "myPwd123", "FirstName1", "LastName1", "email1@di.uoa.gr");
+        Account account = accountRepository.findByUsername("user1");
+        account.setVerified(true);
+        accountRepository.save(account);
+        TestUtils.createAccount(mvc, "user2", "myPwd123", "FirstName2", "LastName2", "email42@di.uoa.gr");
+
+        String categoryId = itemCategoryRepository.findItemCategoryByName("All categories").getId().toString();
+        itemId = Long.parseLong(TestUtils.makeItem(mvc, categoryId, user1));
+        bidder = userRepository.findByAccount_Username("user2");
+
+        path = Files.createTempDirectory("bid-journal").resolve("bids.journal").toString();
+    }
+
+    @AfterEach
+    public void after() {
+        this.testUtils.clearDB();
+    }
+
+
+    private BidJournal journal(int capacity) throws Exception {
+        BidJournal journal = new BidJournal(itemRepository, userRepository, bidRepository,
+                transactionManager, path, capacity, 500);
+        journal.map();
+        return journal;
+    }
+
+    /**
+     * Places a bid the way the BidEngine does, optionally
+     * stopping (as if crashed) before its outcome is recorded
+     */
+    private void bid(BidJournal journal, double offer, boolean update, boolean complete) throws Exception {
+        Date now = new Date();
+        long seq = journal.append(itemId, bidder.getId(), offer, now.getTime());
+        boolean placed = update && itemRepository.placeBid(itemId, bidder, offer, now) > 0;
+        if (complete) {
+            journal.complete(seq, placed);
+        }
+    }
+
+    private List<Double> offers() {
+        return bidRepository.findByItem_IdOrderByOfferDesc(itemId, PageRequest.of(0, 100))
+                .stream().map(Bid::getOffer).collect(Collectors.toList());
+    }
+
+
+    /**
+     * Bids journaled before a crash reach the database after the restart;
+     * a bid left pending counts only if the item shows its offer
+     *
+     * @throws Exception - journal
+     */
+    @Test
+    @DisplayName("Replay after restart")
+    public void replay1() throws Exception {
+
+        BidJournal crashed = journal(16);
+        bid(crashed, 6.0, true, true);
+        //price raised, crashed before the outcome was recorded
+        bid(crashed, 7.0, true, false);
+        //crashed before the price was raised
+        bid(crashed, 8.0, false, false);
+
+        //stops at the first pending bid
+        assertEquals(1, crashed.drain());
+
+        BidJournal restarted = journal(16);
+        assertEquals(2, restarted.drain());
+
+        assertThat(offers(), contains(7.0, 6.0));
+        Item item = itemRepository.findItemById(itemId);
+        assertEquals(7.0, item.getCurrently(), 0.0);
+        assertEquals(bidRepository.findByItem_IdOrderByOfferDesc(itemId, PageRequest.of(0, 1)).get(0).getId(),
+                item.getHighestBidId());
+    }
+
+    /**
+     * Bids already saved before the crash are not saved twice
+     *
+     * @throws Exception - journal
+     */
+    @Test
+    @DisplayName("Replay skips saved bids")
+    public void replay2() throws Exception {
+
+        BidJournal crashed = journal(16);
+        bid(crashed, 6.0, true, true);
+        bid(crashed, 7.0, true, true);
+
+        //the first row was written but the flushed sequence not advanced
+        new TransactionTemplate(transactionManager).execute(status -> {
+            Bid saved = new Bid(new Date());
+            saved.setItem(itemRepository.getOne(itemId));
+            saved.setBidder(userRepository.getOne(bidder.getId()));
+            saved.setOffer(6.0);
+            return bidRepository.save(saved);
+        });
+
+        BidJournal restarted = journal(16);
+        assertEquals(2, restarted.drain());
+        assertEquals(0, restarted.drain());
+
+        assertThat(offers(), contains(7.0, 6.0));
+    }
+
+    /**
+     * The ring is reused once drained and the drainer
+     * stops at the first bid still pending
+     *
+     * @throws Exception - journal
+     */
+    @Test
+    @DisplayName("Ring wrap-around")
+    public void wrapAround() throws Exception {
+
+        BidJournal journal = journal(4);
+        for (int i = 1; i <= 10; i++) {
+            bid(journal, 5.3 + i * 0.25, true, true);
+            if (i % 3 == 0) {
+                journal.drain();
+            }
+        }
+
+        bid(journal, 9.0, true, false);
+        assertEquals(1, journal.drain());
+        assertEquals(0, journal.drain());
+
+        assertEquals(10, offers().size());
+        assertEquals(7.8, offers().get(0), 0.0);
+    }
+}
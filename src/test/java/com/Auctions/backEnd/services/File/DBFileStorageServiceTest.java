@@ -0,0 +1,158 @@
+package com.Auctions.backEnd.services.File;
+
+import com.Auctions.backEnd.BackEndApplication;
+import com.Auctions.backEnd.configs.TestConfig;
+import com.Auctions.backEnd.models.DBFile;
+import com.Auctions.backEnd.repositories.DBFileRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.mock.web.MockMultipartFile;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+
+@SpringBootTest(classes = {TestConfig.class, BackEndApplication.class})
+public class DBFileStorageServiceTest {
+
+    @Autowired
+    private DBFileStorageService storageService;
+
+    @Autowired
+    private DBFileRepository dbFileRepository;
+
+    @Value("${app.media.grace-minutes:60}")
+    private int graceMinutes;
+
+    private final Random random = new Random();
+    private final List<DBFile> stored = new ArrayList<>();
+
+
+    @AfterEach
+    public void after() throws Exception {
+        for (DBFile dbFile : stored) {
+            if (dbFileRepository.existsById(dbFile.getId())) {
+                dbFileRepository.deleteById(dbFile.getId());
+            }
+            Files.deleteIfExists(storageService.getPath(dbFile));
+            for (String variant : DBFile.VARIANTS.keySet()) {
+                Files.deleteIfExists(storageService.variantPath(dbFile.getHash(), variant));
+            }
+        }
+        stored.clear();
+    }
+
+    private byte[] content() {
+        byte[] content = new byte[4096];
+        random.nextBytes(content);
+        return content;
+    }
+
+    private DBFile store(String name, byte[] content) {
+        DBFile dbFile = storageService.storeFile(new MockMultipartFile("media", name, "image/png", content));
+        stored.add(dbFile);
+        return dbFile;
+    }
+
+    private long temporaryFiles() throws Exception {
+        try (Stream<Path> uploads = Files.list(storageService.tempPath("upload").getParent())) {
+            return uploads.count();
+        }
+    }
+
+    /**
+     * Makes a content look older than the grace window of the sweep
+     */
+    private void age(Path content) throws Exception {
+        long old = System.currentTimeMillis() - TimeUnit.MINUTES.toMillis(graceMinutes + 1);
+        Files.setLastModifiedTime(content, FileTime.fromMillis(old));
+    }
+
+
+    /**
+     * The same content is stored once and shared by its files,
+     * which keep their own names
+     *
+     * @throws Exception - file access
+     */
+    @Test
+    @DisplayName("Media deduplication")
+    public void dedup() throws Exception {
+
+        long uploads = temporaryFiles();
+        byte[] content = content();
+        DBFile first = store("first.png", content);
+        DBFile second = store("second.png", content);
+        DBFile other = store("other.png", content());
+
+        assertNotEquals(first.getId(), second.getId());
+        assertEquals("first.png", first.getFileName());
+        assertEquals("second.png", second.getFileName());
+
+        assertEquals(first.getHash(), second.getHash());
+        assertEquals(storageService.getPath(first), storageService.getPath(second));
+        assertArrayEquals(content, Files.readAllBytes(storageService.getPath(first)));
+
+        assertNotEquals(first.getHash(), other.getHash());
+        assertTrue(Files.exists(storageService.getPath(other)));
+
+        //nothing is left behind by the duplicate upload
+        assertEquals(uploads, temporaryFiles());
+    }
+
+    /**
+     * The sweep removes an unreferenced content with its variants only once
+     * it is older than the grace window; referenced contents stay
+     *
+     * @throws Exception - file access
+     */
+    @Test
+    @DisplayName("Media sweep grace window")
+    public void sweep() throws Exception {
+
+        DBFile orphan = store("orphan.png", content());
+        DBFile kept = store("kept.png", content());
+        Path orphanPath = storageService.getPath(orphan);
+        Path keptPath = storageService.getPath(kept);
+        Path variant = storageService.variantPath(orphan.getHash(), "thumb");
+        Files.write(variant, content());
+
+        dbFileRepository.deleteById(orphan.getId());
+
+        //unreferenced but recent, e.g. an upload whose file is not saved yet
+        storageService.sweep();
+        assertTrue(Files.exists(orphanPath));
+        assertTrue(Files.exists(variant));
+
+        age(orphanPath);
+        age(variant);
+        age(keptPath);
+        storageService.sweep();
+        assertFalse(Files.exists(orphanPath));
+        assertFalse(Files.exists(variant));
+        assertTrue(Files.exists(keptPath));
+
+        //reused contents are touched, so they survive a sweep
+        DBFile again = store("again.png", Files.readAllBytes(keptPath));
+        dbFileRepository.deleteById(kept.getId());
+        dbFileRepository.deleteById(again.getId());
+        storageService.sweep();
+        assertTrue(Files.exists(keptPath));
+    }
+}
@@ -0,0 +1,125 @@
+package com.Auctions.backEnd.services.File;
+
+import com.Auctions.backEnd.BackEndApplication;
+import com.Auctions.backEnd.configs.TestConfig;
+import com.Auctions.backEnd.models.DBFile;
+import com.Auctions.backEnd.repositories.DBFileRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.mock.web.MockMultipartFile;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+
+@SpringBootTest(classes = {TestConfig.class, BackEndApplication.class})
+public class ImagePipelineTest {
+
+    @Autowired
+    private DBFileStorageService storageService;
+
+    @Autowired
+    private DBFileRepository dbFileRepository;
+
+    private final List<DBFile> stored = new ArrayList<>();
+    private final List<ImagePipeline> pipelines = new ArrayList<>();
+
+
+    @AfterEach
+    public void after() throws Exception {
+        pipelines.forEach(ImagePipeline::shutdown);
+        for (DBFile dbFile : stored) {
+            dbFileRepository.deleteById(dbFile.getId());
+            Files.deleteIfExists(storageService.getPath(dbFile));
+            for (String variant : DBFile.VARIANTS.keySet()) {
+                Files.deleteIfExists(storageService.variantPath(dbFile.getHash(), variant));
+            }
+        }
+        stored.clear();
+    }
+
+    private ImagePipeline pipeline(long maxPixels) {
+        ImagePipeline pipeline = new ImagePipeline(storageService, 1, 4, maxPixels);
+        pipelines.add(pipeline);
+        return pipeline;
+    }
+
+    private DBFile store(int width, int height) throws Exception {
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        Random random = new Random();
+        for (int y = 0; y < height; y += 8) {
+            for (int x = 0; x < width; x += 8) {
+                image.setRGB(x, y, random.nextInt());
+            }
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ImageIO.write(image, "jpg", out);
+
+        DBFile dbFile = storageService.storeFile(new MockMultipartFile("media", "picture.jpg",
+                "image/jpeg", out.toByteArray()));
+        stored.add(dbFile);
+        return dbFile;
+    }
+
+    private static void await(Path path) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 10000;
+        while (!Files.exists(path) && System.currentTimeMillis() < deadline) {
+            Thread.sleep(50);
+        }
+    }
+
+
+    /**
+     * A large picture is decoded subsampled into variants of the right size
+     *
+     * @throws Exception - image io
+     */
+    @Test
+    @DisplayName("Variants of a large picture")
+    public void variants() throws Exception {
+
+        DBFile dbFile = store(4000, 3000);
+        pipeline(50000000).submit(dbFile);
+
+        for (String variant : DBFile.VARIANTS.keySet()) {
+            Path path = storageService.variantPath(dbFile.getHash(), variant);
+            await(path);
+            BufferedImage image = ImageIO.read(path.toFile());
+            assertEquals(DBFile.VARIANTS.get(variant).intValue(), image.getWidth());
+            assertEquals(DBFile.VARIANTS.get(variant) * 3 / 4, image.getHeight());
+        }
+    }
+
+    /**
+     * A picture over the pixel limit gets no variants
+     *
+     * @throws Exception - image io
+     */
+    @Test
+    @DisplayName("Pictures over the pixel limit")
+    public void pixelLimit() throws Exception {
+
+        DBFile tooLarge = store(1600, 1200);
+        DBFile small = store(400, 300);
+        ImagePipeline pipeline = pipeline(1000000);
+        pipeline.submit(tooLarge);
+        pipeline.submit(small);
+
+        //one worker, so the large picture has been handled before the small one
+        await(storageService.variantPath(small.getHash(), "medium"));
+        assertFalse(Files.exists(storageService.variantPath(tooLarge.getHash(), "thumb")));
+        assertFalse(Files.exists(storageService.variantPath(tooLarge.getHash(), "medium")));
+    }
+}
@@ -0,0 +1,57 @@
+package com.Auctions.backEnd.services.Idempotency;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+
+public class IdempotencyStoreTest {
+
+    private static IdempotencyStore.StoredResponse response() {
+        return new IdempotencyStore.StoredResponse("hash", 200, "application/json", new byte[0]);
+    }
+
+
+    /**
+     * A full store never drops the key of a running request,
+     * it refuses new keys until a request completes
+     */
+    @Test
+    @DisplayName("Idempotency store full of running requests")
+    public void full() {
+
+        //not persistent, the repository is never used
+        IdempotencyStore store = new IdempotencyStore(null, 2, 3600, false);
+
+        assertNull(store.claim("first"));
+        assertNull(store.claim("second"));
+        CompletableFuture<IdempotencyStore.StoredResponse> waiting = store.claim("first");
+        assertNotNull(waiting);
+
+        try {
+            store.claim("third");
+            fail("A key was claimed in a store full of running requests");
+        } catch (RejectedExecutionException e) {
+            //expected
+        }
+        assertFalse(waiting.isDone());
+        assertSame(waiting, store.claim("first"));
+
+        IdempotencyStore.StoredResponse response = response();
+        store.complete("first", response);
+        assertSame(response, waiting.join());
+
+        //the completed key makes room, the running one stays
+        assertNull(store.claim("third"));
+        assertNotNull(store.claim("second"));
+        assertFalse(store.claim("second").isDone());
+    }
+}
@@ -0,0 +1,112 @@
+package com.Auctions.backEnd.services.RateLimit;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.mock.web.MockFilterChain;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.authority.AuthorityUtils;
+import org.springframework.security.core.context.SecurityContextHolder;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+
+public class RateLimitFilterTest {
+
+    private RateLimiter rateLimiter;
+    private RateLimitFilter filter;
+
+
+    @BeforeEach
+    public void before() {
+        //bids: 2 per user, 4 per IP, refilled at 1 and 2 per second
+        rateLimiter = new RateLimiter(2, 1, 30, 10, 5, 1, 2);
+        filter = new RateLimitFilter(rateLimiter);
+    }
+
+    @AfterEach
+    public void after() {
+        SecurityContextHolder.clearContext();
+        rateLimiter.shutdown();
+    }
+
+    private MockHttpServletResponse bid(String username, String ip) throws Exception {
+
+        if (username != null) {
+            SecurityContextHolder.getContext().setAuthentication(new UsernamePasswordAuthenticationToken(
+                    username, "", AuthorityUtils.createAuthorityList("ROLE_USER")));
+        } else {
+            SecurityContextHolder.clearContext();
+        }
+
+        MockHttpServletRequest request = new MockHttpServletRequest("POST", "/bid/makeBid/1");
+        request.setRemoteAddr(ip);
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        MockFilterChain chain = new MockFilterChain();
+        filter.doFilter(request, response, chain);
+
+        //a rejected request never reaches the controllers
+        assertEquals(response.getStatus() == 429, chain.getRequest() == null);
+        return response;
+    }
+
+
+    /**
+     * A user over the limit gets 429 with the seconds to wait
+     *
+     * @throws Exception - doFilter
+     */
+    @Test
+    @DisplayName("Rate limit - user")
+    public void userLimit() throws Exception {
+
+        assertEquals(200, bid("user1", "10.0.0.1").getStatus());
+        assertEquals(200, bid("user1", "10.0.0.1").getStatus());
+
+        MockHttpServletResponse rejected = bid("user1", "10.0.0.1");
+        assertEquals(429, rejected.getStatus());
+        assertEquals("1", rejected.getHeader(HttpHeaders.RETRY_AFTER));
+        assertTrue(rejected.getContentAsString().contains("Too many requests"));
+
+        //another address does not reset the limit of the user
+        assertEquals(429, bid("user1", "10.0.0.2").getStatus());
+
+        Thread.sleep(1100);
+        MockHttpServletResponse refilled = bid("user1", "10.0.0.1");
+        assertEquals(200, refilled.getStatus());
+        assertNull(refilled.getHeader(HttpHeaders.RETRY_AFTER));
+    }
+
+    /**
+     * The users of an address share its larger bucket, which
+     * also limits the anonymous requests
+     *
+     * @throws Exception - doFilter
+     */
+    @Test
+    @DisplayName("Rate limit - address")
+    public void addressLimit() throws Exception {
+
+        assertEquals(200, bid("user1", "10.0.0.1").getStatus());
+        assertEquals(200, bid("user1", "10.0.0.1").getStatus());
+        //rejected by the user bucket, the address keeps its token
+        assertEquals(429, bid("user1", "10.0.0.1").getStatus());
+        assertEquals(200, bid("user2", "10.0.0.1").getStatus());
+        assertEquals(200, bid(null, "10.0.0.1").getStatus());
+
+        MockHttpServletResponse rejected = bid("user3", "10.0.0.1");
+        assertEquals(429, rejected.getStatus());
+        assertNotNull(rejected.getHeader(HttpHeaders.RETRY_AFTER));
+        assertEquals(429, bid(null, "10.0.0.1").getStatus());
+
+        assertEquals(200, bid("user3", "10.0.0.2").getStatus());
+        assertEquals(Long.valueOf(3), rateLimiter.getCounters().get("bid").get("rejected"));
+    }
+}
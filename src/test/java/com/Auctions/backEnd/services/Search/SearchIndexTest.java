@@ -0,0 +1,92 @@
+package com.Auctions.backEnd.services.Search;
+
+import com.Auctions.backEnd.repositories.ItemRepository;
+import com.Auctions.backEnd.responses.PriceEvent;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+
+public class SearchIndexTest {
+
+    /**
+     * An ItemRepository holding the given search rows, all of them changed lately
+     */
+    private static ItemRepository rows(List<Object[]> rows) {
+        return (ItemRepository) Proxy.newProxyInstance(ItemRepository.class.getClassLoader(),
+                new Class<?>[] { ItemRepository.class }, (proxy, method, args) -> {
+                    switch (method.getName()) {
+                        case "getSearchRows":
+                        case "getSearchRowsChangedSince":
+                            long after = (Long) args[args.length - 2];
+                            List<Object[]> page = new ArrayList<>();
+                            rows.forEach(row -> {
+                                if ((Long) row[0] > after) {
+                                    page.add(row);
+                                }
+                            });
+                            return page;
+                        case "count":
+                            return (long) rows.size();
+                        default:
+                            return Collections.emptyList();
+                    }
+                });
+    }
+
+    private static Object[] row(long id, String name, double currently, int bidCount) {
+        return new Object[] { id, name, "", currently, bidCount, false, 37.968564, 23.76695, null };
+    }
+
+    private static long[] search(SearchIndex index, String text) {
+        ResultPager pager = new ResultPager(0, 10, null, 0);
+        index.search(text, pager);
+        return pager.page();
+    }
+
+
+    /**
+     * Items created, modified or deleted through another node reach the
+     * index by the catch-up, without lowering the prices known to it
+     */
+    @Test
+    @DisplayName("Search index catch-up")
+    public void sync() {
+
+        List<Object[]> rows = new ArrayList<>();
+        rows.add(row(1, "vintage clock", 5.0, 0));
+        SearchIndex index = new SearchIndex(rows(rows), 2);
+        index.rebuild();
+
+        //a bid of this node, not written yet
+        index.apply(Collections.singletonList(ItemEvent.price(new PriceEvent(1L, 8.0, 1, null, false))));
+
+        rows.set(0, row(1, "antique clock", 5.0, 0));
+        rows.add(row(2, "barometer", 3.0, 0));
+        rows.add(row(3, "brass barometer", 4.0, 0));
+        assertEquals(3, index.sync(new Date()));
+
+        assertEquals(0, search(index, "vintage").length);
+        assertArrayEquals(new long[] { 1 }, search(index, "antique"));
+        assertEquals(2, search(index, "barometer").length);
+        assertEquals(3, index.size());
+
+        ResultPager pager = new ResultPager(0, 10, null, 0);
+        index.nearby(37.968564, 23.76695, 1, null, 7.5, null, pager);
+        assertArrayEquals(new long[] { 1 }, pager.page());
+
+        //a deletion leaves no row to catch up on
+        rows.remove(2);
+        assertEquals(-1, index.sync(new Date()));
+        index.rebuild();
+        assertArrayEquals(new long[] { 2 }, search(index, "barometer"));
+    }
+}